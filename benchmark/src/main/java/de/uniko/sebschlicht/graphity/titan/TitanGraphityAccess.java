@@ -0,0 +1,52 @@
+package de.uniko.sebschlicht.graphity.titan;
+
+import com.tinkerpop.blueprints.Vertex;
+
+import de.uniko.sebschlicht.graphity.titan.model.FeedEntryPage;
+import de.uniko.sebschlicht.socialnet.StatusUpdate;
+import de.uniko.sebschlicht.socialnet.StatusUpdateList;
+
+/**
+ * Grants benchmarks access to the vertex-level operations of a Graphity
+ * implementation, bypassing the user identifier lookup.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public abstract class TitanGraphityAccess {
+
+    public static boolean addFollowship(
+            TitanGraphity graphity,
+            Vertex vFollowing,
+            Vertex vFollowed) {
+        return graphity.addFollowship(vFollowing, vFollowed);
+    }
+
+    public static boolean removeFollowship(
+            TitanGraphity graphity,
+            Vertex vFollowing,
+            Vertex vFollowed) {
+        return graphity.removeFollowship(vFollowing, vFollowed);
+    }
+
+    public static long addStatusUpdate(
+            TitanGraphity graphity,
+            Vertex vAuthor,
+            StatusUpdate statusUpdate) {
+        return graphity.addStatusUpdate(vAuthor, statusUpdate);
+    }
+
+    public static StatusUpdateList readStatusUpdates(
+            TitanGraphity graphity,
+            Vertex vReader,
+            int numStatusUpdates) {
+        return graphity.readStatusUpdates(vReader, numStatusUpdates);
+    }
+
+    public static FeedEntryPage readFeedEntries(
+            TitanGraphity graphity,
+            Vertex vReader,
+            int numEntries) {
+        return graphity.readFeedEntries(vReader, numEntries, null);
+    }
+}
@@ -0,0 +1,106 @@
+package de.uniko.sebschlicht.graphity.titan.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.uniko.sebschlicht.graphity.exception.IllegalUserIdException;
+
+/**
+ * Social network graph shared by the Graphity benchmarks.<br>
+ * Throughput and latency percentiles are reported by the benchmark modes,
+ * the allocation rate by the GC profiler that is enabled by
+ * {@link BenchmarkLauncher}.
+ * 
+ * @author sebschlicht
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({
+    Mode.Throughput, Mode.SampleTime
+})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(
+        iterations = 5)
+@Measurement(
+        iterations = 10)
+public abstract class AbstractGraphityBenchmark {
+
+    /**
+     * seed of the random number generators
+     */
+    protected static final long SEED = 42;
+
+    @Param({
+        "READ_OPTIMIZED", "WRITE_OPTIMIZED", "HYBRID"
+    })
+    public GraphityVariant variant;
+
+    @Param({
+        "1000"
+    })
+    public int numUsers;
+
+    /**
+     * number of followers per user
+     */
+    @Param({
+        "10", "100"
+    })
+    public int numFollowers;
+
+    @Param({
+        "20"
+    })
+    public int numPostsPerUser;
+
+    protected SocialGraphFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IllegalUserIdException {
+        fixture =
+                new SocialGraphFixture(variant, numUsers, numFollowers,
+                        numPostsPerUser, SEED);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.shutdown();
+    }
+
+    /**
+     * random user selection of a single benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class UserSelector {
+
+        protected Random random;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            random = new Random(SEED + Thread.currentThread().getId());
+        }
+
+        /**
+         * @param numUsers
+         *            number of users in the social network
+         * @return random user index
+         */
+        public int nextUser(int numUsers) {
+            return random.nextInt(numUsers);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package de.uniko.sebschlicht.graphity.titan.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import com.tinkerpop.blueprints.Vertex;
+
+import de.uniko.sebschlicht.graphity.titan.TitanGraphityAccess;
+
+/**
+ * Measures followship creation, including the commit, between random users.
+ * Pairs that are already following each other are measured as well, since
+ * detecting them is part of the operation.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class AddFollowshipBenchmark extends AbstractGraphityBenchmark {
+
+    @Benchmark
+    public boolean addFollowship(UserSelector selector) {
+        int numUsers = fixture.getNumUsers();
+        Vertex vFollowing = fixture.getUserVertex(selector.nextUser(numUsers));
+        Vertex vFollowed = fixture.getUserVertex(selector.nextUser(numUsers));
+        if (vFollowing.equals(vFollowed)) {
+            fixture.getGraph().rollback();
+            return false;
+        }
+        boolean added =
+                TitanGraphityAccess.addFollowship(fixture.getGraphity(),
+                        vFollowing, vFollowed);
+        fixture.getGraph().commit();
+        return added;
+    }
+}
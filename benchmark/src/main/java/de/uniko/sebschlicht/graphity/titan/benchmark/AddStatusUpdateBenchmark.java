@@ -0,0 +1,33 @@
+package de.uniko.sebschlicht.graphity.titan.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import com.tinkerpop.blueprints.Vertex;
+
+import de.uniko.sebschlicht.graphity.titan.TitanGraphityAccess;
+import de.uniko.sebschlicht.socialnet.StatusUpdate;
+
+/**
+ * Measures status update publishing, including the commit, by random authors.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class AddStatusUpdateBenchmark extends AbstractGraphityBenchmark {
+
+    @Benchmark
+    public long addStatusUpdate(UserSelector selector) {
+        int iAuthor = selector.nextUser(fixture.getNumUsers());
+        Vertex vAuthor = fixture.getUserVertex(iAuthor);
+        StatusUpdate statusUpdate =
+                new StatusUpdate(String.valueOf(SocialGraphFixture
+                        .getUserIdentifier(iAuthor)),
+                        System.currentTimeMillis(),
+                        SocialGraphFixture.generateMessage(selector.random));
+        long idStatusUpdate =
+                TitanGraphityAccess.addStatusUpdate(fixture.getGraphity(),
+                        vAuthor, statusUpdate);
+        fixture.getGraph().commit();
+        return idStatusUpdate;
+    }
+}
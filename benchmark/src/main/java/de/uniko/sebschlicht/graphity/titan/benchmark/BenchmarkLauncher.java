@@ -0,0 +1,34 @@
+package de.uniko.sebschlicht.graphity.titan.benchmark;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks with the GC profiler attached, in order to report
+ * the allocation rate next to throughput and latency.<br>
+ * Accepts the regular JMH command line options.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class BenchmarkLauncher {
+
+    public static void main(String[] args) throws CommandLineOptionException,
+            IOException, RunnerException {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        if (cmdOptions.shouldHelp() || cmdOptions.shouldList()
+                || cmdOptions.shouldListProfilers()
+                || cmdOptions.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder().parent(cmdOptions)
+                .addProfiler(GCProfiler.class).build()).run();
+    }
+}
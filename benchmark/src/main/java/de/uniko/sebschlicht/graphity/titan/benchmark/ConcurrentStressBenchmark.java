@@ -0,0 +1,161 @@
+package de.uniko.sebschlicht.graphity.titan.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.thinkaurelius.titan.core.TitanException;
+import com.tinkerpop.blueprints.Vertex;
+
+import de.uniko.sebschlicht.graphity.exception.IllegalUserIdException;
+import de.uniko.sebschlicht.graphity.titan.TitanGraphityAccess;
+import de.uniko.sebschlicht.graphity.titan.impl.ReadOptimizedECGraphity;
+import de.uniko.sebschlicht.graphity.titan.impl.ReplicaLayerRepairer;
+import de.uniko.sebschlicht.socialnet.StatusUpdate;
+import de.uniko.sebschlicht.socialnet.StatusUpdateList;
+
+/**
+ * Measures a mixed workload of concurrent threads reading news feeds,
+ * publishing status updates and changing followships of random users.<br>
+ * Compares the read-optimized implementation to its variant writing versioned
+ * replica layers without locks. Transactions that fail to commit are rolled
+ * back and counted per operation by the <i>failed</i> counters.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class ConcurrentStressBenchmark extends AbstractGraphityBenchmark {
+
+    /**
+     * feed length of the read requests
+     */
+    protected static final int FEED_LENGTH = 15;
+
+    /**
+     * maximum number of replica layers checked per second by the repairer of
+     * the lock-free variant
+     */
+    @Param({
+        "1000"
+    })
+    public double repairRate;
+
+    protected ReplicaLayerRepairer repairer;
+
+    @Override
+    @Setup(Level.Trial)
+    public void setUp() throws IllegalUserIdException {
+        super.setUp();
+        if (fixture.getGraphity() instanceof ReadOptimizedECGraphity) {
+            repairer =
+                    new ReplicaLayerRepairer(fixture.getGraph(), repairRate,
+                            fixture.getNumUsers(), 0);
+            ((ReadOptimizedECGraphity) fixture.getGraphity())
+                    .setReplicaLayerRepairer(repairer);
+        }
+    }
+
+    @Override
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (repairer != null) {
+            try {
+                repairer.shutdown(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            repairer = null;
+        }
+        super.tearDown();
+    }
+
+    /**
+     * number of operations of a single benchmark thread that failed to
+     * commit
+     */
+    @State(Scope.Thread)
+    @AuxCounters
+    public static class Failures {
+
+        public long failed;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            failed = 0;
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public StatusUpdateList readStatusUpdates(UserSelector selector) {
+        Vertex vReader =
+                fixture.getUserVertex(selector.nextUser(fixture.getNumUsers()));
+        StatusUpdateList statusUpdates =
+                TitanGraphityAccess.readStatusUpdates(fixture.getGraphity(),
+                        vReader, FEED_LENGTH);
+        fixture.getGraph().rollback();
+        return statusUpdates;
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public long addStatusUpdate(UserSelector selector, Failures failures) {
+        int iAuthor = selector.nextUser(fixture.getNumUsers());
+        Vertex vAuthor = fixture.getUserVertex(iAuthor);
+        StatusUpdate statusUpdate =
+                new StatusUpdate(String.valueOf(SocialGraphFixture
+                        .getUserIdentifier(iAuthor)),
+                        System.currentTimeMillis(),
+                        SocialGraphFixture.generateMessage(selector.random));
+        try {
+            long idStatusUpdate =
+                    TitanGraphityAccess.addStatusUpdate(fixture.getGraphity(),
+                            vAuthor, statusUpdate);
+            fixture.getGraphity().commit();
+            return idStatusUpdate;
+        } catch (TitanException e) {
+            fixture.getGraphity().rollback();
+            failures.failed += 1;
+            return 0;
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public boolean changeFollowship(UserSelector selector, Failures failures) {
+        int numUsers = fixture.getNumUsers();
+        Vertex vFollowing = fixture.getUserVertex(selector.nextUser(numUsers));
+        Vertex vFollowed = fixture.getUserVertex(selector.nextUser(numUsers));
+        if (vFollowing.equals(vFollowed)) {
+            fixture.getGraph().rollback();
+            return false;
+        }
+        try {
+            // follow or unfollow, keeping the number of followships stable
+            boolean changed =
+                    TitanGraphityAccess.addFollowship(fixture.getGraphity(),
+                            vFollowing, vFollowed)
+                            || TitanGraphityAccess.removeFollowship(
+                                    fixture.getGraphity(), vFollowing,
+                                    vFollowed);
+            fixture.getGraphity().commit();
+            return changed;
+        } catch (TitanException e) {
+            fixture.getGraphity().rollback();
+            failures.failed += 1;
+            return false;
+        }
+    }
+}
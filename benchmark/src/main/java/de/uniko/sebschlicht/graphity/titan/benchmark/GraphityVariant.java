@@ -0,0 +1,95 @@
+package de.uniko.sebschlicht.graphity.titan.benchmark;
+
+import com.thinkaurelius.titan.core.TitanGraph;
+
+import de.uniko.sebschlicht.graphity.titan.TitanGraphity;
+import de.uniko.sebschlicht.graphity.titan.impl.HybridGraphity;
+import de.uniko.sebschlicht.graphity.titan.impl.ReadOptimizedECGraphity;
+import de.uniko.sebschlicht.graphity.titan.impl.ReadOptimizedGraphity;
+import de.uniko.sebschlicht.graphity.titan.impl.WriteOptimizedGraphity;
+
+/**
+ * Graphity implementations that can be benchmarked.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public enum GraphityVariant {
+
+    READ_OPTIMIZED {
+
+        @Override
+        public TitanGraphity create(TitanGraph graph) {
+            return new ReadOptimizedGraphity(graph);
+        }
+    },
+
+    /**
+     * read-optimized variant storing the last post timestamps on the replicas
+     */
+    READ_OPTIMIZED_REPLICA_TIMESTAMPS {
+
+        @Override
+        public TitanGraphity create(TitanGraph graph) {
+            ReadOptimizedGraphity graphity = new ReadOptimizedGraphity(graph);
+            graphity.setReplicaTimestamps(true);
+            return graphity;
+        }
+    },
+
+    /**
+     * read-optimized variant writing versioned replica layers without locks
+     */
+    READ_OPTIMIZED_EC {
+
+        @Override
+        public TitanGraphity create(TitanGraph graph) {
+            return new ReadOptimizedECGraphity(graph);
+        }
+    },
+
+    /**
+     * lock-free read-optimized variant storing the last post timestamps on
+     * the replicas
+     */
+    READ_OPTIMIZED_EC_REPLICA_TIMESTAMPS {
+
+        @Override
+        public TitanGraphity create(TitanGraph graph) {
+            ReadOptimizedECGraphity graphity =
+                    new ReadOptimizedECGraphity(graph);
+            graphity.setReplicaTimestamps(true);
+            return graphity;
+        }
+    },
+
+    WRITE_OPTIMIZED {
+
+        @Override
+        public TitanGraphity create(TitanGraph graph) {
+            return new WriteOptimizedGraphity(graph);
+        }
+    },
+
+    HYBRID {
+
+        @Override
+        public TitanGraphity create(TitanGraph graph) {
+            return new HybridGraphity(graph, HYBRID_FOLLOWER_THRESHOLD);
+        }
+    };
+
+    /**
+     * number of followers an author needs to be pulled in the hybrid variant
+     */
+    public static final long HYBRID_FOLLOWER_THRESHOLD = 50;
+
+    /**
+     * Creates a Graphity instance of this variant.
+     * 
+     * @param graph
+     *            Titan graph database holding the social network graph
+     * @return Graphity instance operating on the graph specified
+     */
+    public abstract TitanGraphity create(TitanGraph graph);
+}
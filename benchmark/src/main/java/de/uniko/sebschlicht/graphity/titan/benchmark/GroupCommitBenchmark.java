@@ -0,0 +1,92 @@
+package de.uniko.sebschlicht.graphity.titan.benchmark;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import de.uniko.sebschlicht.graphity.exception.IllegalUserIdException;
+import de.uniko.sebschlicht.graphity.titan.GroupCommitPipeline;
+
+/**
+ * Measures status update publishing of concurrent threads, either committing
+ * each status update on its own or via the group commit pipeline.
+ * 
+ * @author sebschlicht
+ * 
+ */
+@Threads(8)
+public class GroupCommitBenchmark extends AbstractGraphityBenchmark {
+
+    /**
+     * DIRECT - one commit per status update<br>
+     * GROUP - status updates are committed via the group commit pipeline
+     */
+    @Param({
+        "DIRECT", "GROUP"
+    })
+    public String commitMode;
+
+    /**
+     * maximum number of status updates committed at once
+     */
+    @Param({
+        "32"
+    })
+    public int maxBatchSize;
+
+    /**
+     * time in microseconds the pipeline waits for further status updates
+     */
+    @Param({
+        "500"
+    })
+    public long window;
+
+    protected GroupCommitPipeline pipeline;
+
+    @Override
+    @Setup(Level.Trial)
+    public void setUp() throws IllegalUserIdException {
+        super.setUp();
+        if ("GROUP".equals(commitMode)) {
+            pipeline =
+                    new GroupCommitPipeline(fixture.getGraphity(), 1,
+                            maxBatchSize, window, TimeUnit.MICROSECONDS, 3,
+                            1024);
+        }
+    }
+
+    @Override
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pipeline != null) {
+            try {
+                pipeline.shutdown(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            pipeline = null;
+        }
+        super.tearDown();
+    }
+
+    @Benchmark
+    public long addStatusUpdate(UserSelector selector)
+            throws IllegalUserIdException, InterruptedException,
+            ExecutionException {
+        long idAuthor =
+                SocialGraphFixture.getUserIdentifier(selector
+                        .nextUser(fixture.getNumUsers()));
+        String message = SocialGraphFixture.generateMessage(selector.random);
+        if (pipeline != null) {
+            return pipeline.addStatusUpdate(idAuthor, message).get();
+        }
+        return fixture.getGraphity().addStatusUpdate(idAuthor, message);
+    }
+}
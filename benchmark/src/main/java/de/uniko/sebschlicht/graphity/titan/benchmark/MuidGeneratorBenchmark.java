@@ -0,0 +1,108 @@
+package de.uniko.sebschlicht.graphity.titan.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.metalcon.domain.UidType;
+import de.metalcon.exceptions.ServiceOverloadedException;
+import de.uniko.sebschlicht.graphity.titan.MuidGenerator;
+
+/**
+ * Measures the MUID generation throughput of concurrent threads.<br>
+ * Each thread generates MUIDs of a single UID type, threads are distributed
+ * round-robin over the UID types. Since the number of MUIDs per UID type and
+ * second is limited, the sustained rate is reported via the <i>generated</i>
+ * counter, MUIDs refused due to overload via the <i>rejected</i> counter.
+ * Use <code>-t</code> to change the number of threads.
+ * 
+ * @author sebschlicht
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Threads(4)
+@Warmup(
+        iterations = 3)
+@Measurement(
+        iterations = 5)
+public class MuidGeneratorBenchmark {
+
+    /**
+     * number of MUIDs a thread reserves at once
+     */
+    @Param({
+        "1", "16", "64"
+    })
+    public int blockSize;
+
+    protected MuidGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        generator = new MuidGenerator((byte) 1, blockSize);
+    }
+
+    @Benchmark
+    public long generate(Generation generation) {
+        try {
+            long muid = generator.generate(generation.type).getValue();
+            generation.generated += 1;
+            return muid;
+        } catch (ServiceOverloadedException e) {
+            generation.rejected += 1;
+            return 0;
+        }
+    }
+
+    /**
+     * UID type and counters of a single benchmark thread
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Generation {
+
+        private static int numThreads = 0;
+
+        protected UidType type;
+
+        /**
+         * number of MUIDs generated
+         */
+        public long generated;
+
+        /**
+         * number of MUIDs refused due to overload
+         */
+        public long rejected;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            UidType[] types = UidType.values();
+            synchronized (Generation.class) {
+                type = types[numThreads++ % types.length];
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            generated = 0;
+            rejected = 0;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package de.uniko.sebschlicht.graphity.titan.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import com.tinkerpop.blueprints.Vertex;
+
+import de.uniko.sebschlicht.graphity.titan.TitanGraphityAccess;
+import de.uniko.sebschlicht.graphity.titan.model.FeedEntryPage;
+import de.uniko.sebschlicht.socialnet.StatusUpdateList;
+
+/**
+ * Measures news feed retrieval of random readers, with and without loading the
+ * content messages.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class ReadStatusUpdatesBenchmark extends AbstractGraphityBenchmark {
+
+    @Param({
+        "15", "100"
+    })
+    public int feedLength;
+
+    @Benchmark
+    public StatusUpdateList readStatusUpdates(UserSelector selector) {
+        Vertex vReader =
+                fixture.getUserVertex(selector.nextUser(fixture.getNumUsers()));
+        StatusUpdateList statusUpdates =
+                TitanGraphityAccess.readStatusUpdates(fixture.getGraphity(),
+                        vReader, feedLength);
+        // do not let the transaction cache grow across invocations
+        fixture.getGraph().rollback();
+        return statusUpdates;
+    }
+
+    @Benchmark
+    public FeedEntryPage readFeedEntries(UserSelector selector) {
+        Vertex vReader =
+                fixture.getUserVertex(selector.nextUser(fixture.getNumUsers()));
+        FeedEntryPage page =
+                TitanGraphityAccess.readFeedEntries(fixture.getGraphity(),
+                        vReader, feedLength);
+        // do not let the transaction cache grow across invocations
+        fixture.getGraph().rollback();
+        return page;
+    }
+}
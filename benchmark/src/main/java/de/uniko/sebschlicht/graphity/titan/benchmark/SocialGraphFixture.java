@@ -0,0 +1,183 @@
+package de.uniko.sebschlicht.graphity.titan.benchmark;
+
+import java.util.Random;
+
+import com.thinkaurelius.titan.core.TitanFactory;
+import com.thinkaurelius.titan.core.TitanGraph;
+import com.tinkerpop.blueprints.Vertex;
+
+import de.uniko.sebschlicht.graphity.exception.IllegalUserIdException;
+import de.uniko.sebschlicht.graphity.titan.TitanGraphity;
+import de.uniko.sebschlicht.graphity.titan.bootstrap.TitanBootstrapper;
+
+/**
+ * Reproducible social network graph in an embedded, in-memory Titan instance.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class SocialGraphFixture {
+
+    /**
+     * number of operations per transaction when building the graph
+     */
+    protected static final int COMMIT_INTERVAL = 1000;
+
+    /**
+     * length of generated status update messages
+     */
+    protected static final int MESSAGE_LENGTH = 140;
+
+    protected TitanGraph _graph;
+
+    protected TitanGraphity _graphity;
+
+    /**
+     * Titan vertex identifiers of the users, indexed by user index
+     */
+    protected long[] _userVertexIds;
+
+    /**
+     * random number generator used to build the graph
+     */
+    protected Random _random;
+
+    /**
+     * Builds a social network graph. Each user is followed by a fixed number
+     * of random users and publishes a fixed number of status updates. Status
+     * updates are published in rounds so that the streams interleave.
+     * 
+     * @param variant
+     *            Graphity implementation to build the graph with
+     * @param numUsers
+     *            number of users
+     * @param numFollowers
+     *            number of followers per user
+     * @param numPostsPerUser
+     *            number of status updates per user
+     * @param seed
+     *            seed of the random number generator
+     * @throws IllegalUserIdException
+     *             should not happen
+     */
+    public SocialGraphFixture(
+            GraphityVariant variant,
+            int numUsers,
+            int numFollowers,
+            int numPostsPerUser,
+            long seed) throws IllegalUserIdException {
+        _graph = TitanFactory.build().set("storage.backend", "inmemory").open();
+        TitanBootstrapper.createSchema(_graph);
+        _graphity = variant.create(_graph);
+        _graphity.init();
+        _random = new Random(seed);
+
+        // create users
+        _userVertexIds = new long[numUsers];
+        for (int iUser = 0; iUser < numUsers; ++iUser) {
+            Vertex vUser = _graphity.createUser(getUserIdentifier(iUser));
+            _userVertexIds[iUser] = (long) vUser.getId();
+        }
+        _graph.commit();
+
+        // create followships
+        int numOps = 0;
+        numFollowers = Math.min(numFollowers, numUsers - 1);
+        for (int iFollowed = 0; iFollowed < numUsers; ++iFollowed) {
+            int numUserFollowers = 0;
+            while (numUserFollowers < numFollowers) {
+                int iFollowing = _random.nextInt(numUsers);
+                if (iFollowing == iFollowed) {
+                    continue;
+                }
+                if (_graphity.addFollowship(getUserIdentifier(iFollowing),
+                        getUserIdentifier(iFollowed), false)) {
+                    numUserFollowers += 1;
+                    if (++numOps % COMMIT_INTERVAL == 0) {
+                        _graph.commit();
+                    }
+                }
+            }
+        }
+        _graph.commit();
+
+        // publish status updates
+        for (int iRound = 0; iRound < numPostsPerUser; ++iRound) {
+            for (int iUser = 0; iUser < numUsers; ++iUser) {
+                _graphity.addStatusUpdate(getUserIdentifier(iUser),
+                        nextMessage(), false);
+                if (++numOps % COMMIT_INTERVAL == 0) {
+                    _graph.commit();
+                }
+            }
+        }
+        _graph.commit();
+    }
+
+    /**
+     * @return Titan graph database holding the social network graph
+     */
+    public TitanGraph getGraph() {
+        return _graph;
+    }
+
+    /**
+     * @return Graphity instance operating on the social network graph
+     */
+    public TitanGraphity getGraphity() {
+        return _graphity;
+    }
+
+    /**
+     * @return number of users in the social network
+     */
+    public int getNumUsers() {
+        return _userVertexIds.length;
+    }
+
+    /**
+     * @param iUser
+     *            user index
+     * @return identifier of the user
+     */
+    public static long getUserIdentifier(int iUser) {
+        return iUser + 1;
+    }
+
+    /**
+     * Loads a user vertex in the transaction of the current thread.
+     * 
+     * @param iUser
+     *            user index
+     * @return user vertex
+     */
+    public Vertex getUserVertex(int iUser) {
+        return _graph.getVertex(_userVertexIds[iUser]);
+    }
+
+    /**
+     * @return random status update message
+     */
+    public String nextMessage() {
+        return generateMessage(_random);
+    }
+
+    /**
+     * Generates a random status update message.
+     * 
+     * @param random
+     *            random number generator to use
+     * @return status update message
+     */
+    public static String generateMessage(Random random) {
+        char[] message = new char[MESSAGE_LENGTH];
+        for (int i = 0; i < message.length; ++i) {
+            message[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(message);
+    }
+
+    public void shutdown() {
+        _graph.shutdown();
+    }
+}
@@ -8,7 +8,9 @@ public enum EdgeType {
 
     GRAPHITY("e_graphity"),
 
-    REPLICA("e_replica");
+    REPLICA("e_replica"),
+
+    PULL("e_pull");
 
     protected String label;
 
@@ -0,0 +1,496 @@
+package de.uniko.sebschlicht.graphity.titan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.thinkaurelius.titan.core.TitanException;
+
+/**
+ * Write pipeline applying concurrent write requests in shared transactions.<br>
+ * Writer threads collect requests for a short window or up to a maximum batch
+ * size and commit them at once. If the commit of a batch fails, e.g. due to a
+ * locking conflict, the batch is split in halves that are retried separately
+ * after a short randomized delay. A single request is retried up to a maximum
+ * number of times before its future fails. If a request itself fails, the
+ * batch is rolled back and committed again without this request, hence the
+ * changes of a failed request are never committed.<br>
+ * A single writer serializes all writes of this instance. Multiple writers
+ * only make sense if Titan detects conflicting transactions, i.e. if the
+ * schema uses locking.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class GroupCommitPipeline {
+
+    /**
+     * interval in milliseconds idle writers check for a shutdown
+     */
+    protected static final long IDLE_INTERVAL = 100;
+
+    /**
+     * maximum delay in milliseconds before the first retry, doubled with each
+     * further retry
+     */
+    protected static final long BACKOFF = 4;
+
+    protected final TitanGraphity _graphity;
+
+    /**
+     * maximum number of requests committed at once
+     */
+    protected final int _maxBatchSize;
+
+    /**
+     * time in nanoseconds a writer waits for further requests after the
+     * first request of a batch
+     */
+    protected final long _window;
+
+    /**
+     * number of retries of a single request before giving up
+     */
+    protected final int _maxRetries;
+
+    protected final BlockingQueue<WriteRequest<?>> _queue;
+
+    protected final Thread[] _writers;
+
+    protected volatile boolean _shutdown;
+
+    /**
+     * number of batches collected
+     */
+    protected final AtomicLong _numBatches;
+
+    /**
+     * number of successful commits
+     */
+    protected final AtomicLong _numCommits;
+
+    /**
+     * number of requests committed
+     */
+    protected final AtomicLong _numCommittedRequests;
+
+    /**
+     * number of commits that failed and lead to a split or retry
+     */
+    protected final AtomicLong _numConflicts;
+
+    /**
+     * number of requests given up or failed
+     */
+    protected final AtomicLong _numFailedRequests;
+
+    /**
+     * Creates and starts a group commit pipeline.
+     * 
+     * @param graphity
+     *            Graphity instance to apply the write requests to
+     * @param numWriters
+     *            number of writer threads, each committing its own batches
+     * @param maxBatchSize
+     *            maximum number of requests committed at once
+     * @param window
+     *            time a writer waits for further requests after the first
+     *            request of a batch
+     * @param unit
+     *            time unit of the window
+     * @param maxRetries
+     *            number of retries of a single request before giving up
+     * @param queueCapacity
+     *            maximum number of requests waiting, callers block if the
+     *            queue is full
+     */
+    public GroupCommitPipeline(
+            TitanGraphity graphity,
+            int numWriters,
+            int maxBatchSize,
+            long window,
+            TimeUnit unit,
+            int maxRetries,
+            int queueCapacity) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("batch size must be positive");
+        }
+        _graphity = graphity;
+        _maxBatchSize = maxBatchSize;
+        _window = unit.toNanos(window);
+        _maxRetries = maxRetries;
+        _queue = new LinkedBlockingQueue<WriteRequest<?>>(queueCapacity);
+        _numBatches = new AtomicLong(0);
+        _numCommits = new AtomicLong(0);
+        _numCommittedRequests = new AtomicLong(0);
+        _numConflicts = new AtomicLong(0);
+        _numFailedRequests = new AtomicLong(0);
+        _writers = new Thread[numWriters];
+        for (int i = 0; i < numWriters; ++i) {
+            _writers[i] = new Thread(new Writer(), "group-commit-" + (i + 1));
+            _writers[i].setDaemon(true);
+            _writers[i].start();
+        }
+    }
+
+    /**
+     * Queues a status update.
+     * 
+     * @param idAuthor
+     *            identifier of the author
+     * @param message
+     *            status update content
+     * @return future of the status update identifier, completes when the
+     *         status update has been committed
+     */
+    public Future<Long> addStatusUpdate(
+            final long idAuthor,
+            final String message) {
+        return submit(new WriteRequest<Long>() {
+
+            @Override
+            protected Long apply(TitanGraphity graphity) throws Exception {
+                return graphity.addStatusUpdate(idAuthor, message, false);
+            }
+        });
+    }
+
+    /**
+     * Queues a followship creation.
+     * 
+     * @param idFollowing
+     *            identifier of the user that wants to follow another user
+     * @param idFollowed
+     *            identifier of the user that will be followed
+     * @return future of the creation result, completes when the followship
+     *         has been committed
+     */
+    public Future<Boolean> addFollowship(
+            final long idFollowing,
+            final long idFollowed) {
+        return submit(new WriteRequest<Boolean>() {
+
+            @Override
+            protected Boolean apply(TitanGraphity graphity) throws Exception {
+                return graphity.addFollowship(idFollowing, idFollowed, false);
+            }
+        });
+    }
+
+    /**
+     * Queues a followship removal.
+     * 
+     * @param idFollowing
+     *            identifier of the user that wants to unfollow a user
+     * @param idFollowed
+     *            identifier of the user that will be unfollowed
+     * @return future of the removal result, completes when the removal has
+     *         been committed
+     */
+    public Future<Boolean> removeFollowship(
+            final long idFollowing,
+            final long idFollowed) {
+        return submit(new WriteRequest<Boolean>() {
+
+            @Override
+            protected Boolean apply(TitanGraphity graphity) throws Exception {
+                return graphity.removeFollowship(idFollowing, idFollowed,
+                        false);
+            }
+        });
+    }
+
+    protected <V> Future<V> submit(WriteRequest<V> request) {
+        if (_shutdown) {
+            throw new IllegalStateException("pipeline has been shut down");
+        }
+        try {
+            _queue.put(request);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.fail(e);
+        }
+        return request;
+    }
+
+    /**
+     * Stops accepting requests and waits for the writers to commit the
+     * requests queued.
+     * 
+     * @param timeout
+     *            maximum time to wait per writer
+     * @param unit
+     *            time unit of the timeout
+     * @return true - if all writers have terminated<br>
+     *         false - if the timeout elapsed before
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public boolean shutdown(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        _shutdown = true;
+        boolean terminated = true;
+        for (Thread writer : _writers) {
+            writer.join(unit.toMillis(timeout));
+            terminated &= !writer.isAlive();
+        }
+        return terminated;
+    }
+
+    /**
+     * Commits a batch of requests, splitting it on failure.
+     * 
+     * @param batch
+     *            requests to be committed
+     * @param numRetries
+     *            number of times the requests have been retried already
+     */
+    protected void commit(List<WriteRequest<?>> batch, int numRetries) {
+        WriteRequest<?> crrRequest = null;
+        try {
+            for (WriteRequest<?> request : batch) {
+                crrRequest = request;
+                request.execute(_graphity);
+            }
+            crrRequest = null;
+            _graphity.commit();
+        } catch (Exception e) {
+            _graphity.rollback();
+            if (crrRequest != null && !(e instanceof TitanException)) {
+                // invalid request, may have changed the graph partially
+                _numFailedRequests.incrementAndGet();
+                crrRequest.fail(e);
+                List<WriteRequest<?>> remaining =
+                        new ArrayList<WriteRequest<?>>(batch);
+                remaining.remove(crrRequest);
+                if (!remaining.isEmpty()) {
+                    commit(remaining, numRetries);
+                }
+                return;
+            }
+            // concurrent graph modification
+            _numConflicts.incrementAndGet();
+            backOff(numRetries);
+            int size = batch.size();
+            if (size > 1) {
+                commit(batch.subList(0, size / 2), numRetries);
+                commit(batch.subList(size / 2, size), numRetries);
+            } else if (numRetries < _maxRetries) {
+                commit(batch, numRetries + 1);
+            } else {
+                _numFailedRequests.incrementAndGet();
+                batch.get(0).fail(e);
+            }
+            return;
+        }
+        _numCommits.incrementAndGet();
+        _numCommittedRequests.addAndGet(batch.size());
+        for (WriteRequest<?> request : batch) {
+            request.complete();
+        }
+    }
+
+    /**
+     * Waits for a random time before a retry, so that conflicting writers do
+     * not collide again immediately.
+     * 
+     * @param numRetries
+     *            number of times the requests have been retried already
+     */
+    protected static void backOff(int numRetries) {
+        long maxDelay = BACKOFF << Math.min(numRetries, 6);
+        try {
+            Thread.sleep(1 + ThreadLocalRandom.current().nextLong(maxDelay));
+        } catch (InterruptedException e) {
+            // writer stops after the current batch
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return number of requests waiting for a writer
+     */
+    public int getQueueDepth() {
+        return _queue.size();
+    }
+
+    public long getNumBatches() {
+        return _numBatches.get();
+    }
+
+    public long getNumCommits() {
+        return _numCommits.get();
+    }
+
+    public long getNumCommittedRequests() {
+        return _numCommittedRequests.get();
+    }
+
+    public long getNumConflicts() {
+        return _numConflicts.get();
+    }
+
+    public long getNumFailedRequests() {
+        return _numFailedRequests.get();
+    }
+
+    /**
+     * @return average number of requests committed at once
+     */
+    public double getAverageBatchSize() {
+        long numCommits = _numCommits.get();
+        if (numCommits == 0) {
+            return 0;
+        }
+        return (double) _numCommittedRequests.get() / numCommits;
+    }
+
+    /**
+     * writer collecting and committing batches
+     */
+    protected class Writer implements Runnable {
+
+        @Override
+        public void run() {
+            List<WriteRequest<?>> batch =
+                    new ArrayList<WriteRequest<?>>(_maxBatchSize);
+            try {
+                while (true) {
+                    WriteRequest<?> request =
+                            _queue.poll(IDLE_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (request == null) {
+                        if (_shutdown) {
+                            return;
+                        }
+                        continue;
+                    }
+                    batch.add(request);
+                    long deadline = System.nanoTime() + _window;
+                    while (batch.size() < _maxBatchSize) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining > 0) {
+                            request =
+                                    _queue.poll(remaining,
+                                            TimeUnit.NANOSECONDS);
+                        } else {
+                            // take what is already waiting
+                            request = _queue.poll();
+                        }
+                        if (request == null) {
+                            break;
+                        }
+                        batch.add(request);
+                    }
+                    _numBatches.incrementAndGet();
+                    commit(batch, 0);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                for (WriteRequest<?> request : batch) {
+                    request.fail(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * write request along with the future of its result
+     * 
+     * @param <V>
+     *            result type
+     */
+    protected static abstract class WriteRequest<V> implements Future<V> {
+
+        private final CountDownLatch _done = new CountDownLatch(1);
+
+        /**
+         * result of the last execution
+         */
+        private V _result;
+
+        /**
+         * error of the last execution or the reason the request was given up
+         */
+        private Throwable _error;
+
+        /**
+         * Applies the request to the graph without committing.
+         * 
+         * @param graphity
+         *            Graphity instance to apply the request to
+         * @return request result
+         * @throws Exception
+         *             if the request is invalid
+         */
+        abstract protected V apply(TitanGraphity graphity) throws Exception;
+
+        /**
+         * Applies the request to the graph without committing.
+         * 
+         * @param graphity
+         *            Graphity instance to apply the request to
+         * @throws Exception
+         *             if the request is invalid or failed, the batch has to
+         *             be rolled back
+         */
+        protected void execute(TitanGraphity graphity) throws Exception {
+            _result = null;
+            _error = null;
+            _result = apply(graphity);
+        }
+
+        protected void complete() {
+            _done.countDown();
+        }
+
+        protected void fail(Throwable error) {
+            _error = error;
+            _done.countDown();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return _done.getCount() == 0;
+        }
+
+        @Override
+        public V get() throws InterruptedException, ExecutionException {
+            _done.await();
+            return getResult();
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws InterruptedException,
+                ExecutionException, TimeoutException {
+            if (!_done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return getResult();
+        }
+
+        private V getResult() throws ExecutionException {
+            if (_error != null) {
+                throw new ExecutionException(_error);
+            }
+            return _result;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package de.uniko.sebschlicht.graphity.titan;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import de.metalcon.domain.Muid;
+import de.metalcon.domain.UidType;
+import de.metalcon.domain.helper.UidConverter;
+import de.metalcon.exceptions.ServiceOverloadedException;
+
+/**
+ * Lock-free MUID generator with an independent counter per UID type.<br>
+ * The state of a counter (creation second and next id) is packed into a
+ * single long that is updated via CAS. Threads reserve small blocks of ids and
+ * hand them out without any synchronization until the block is exhausted or
+ * the second has passed.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class MuidGenerator {
+
+    /**
+     * default number of ids a thread reserves at once
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 16;
+
+    /**
+     * number of ids available per UID type and second
+     */
+    protected static final int NUM_IDS = UidConverter.getMaximumMuidID() + 1;
+
+    /**
+     * unique instance identifier, the MUID source
+     */
+    protected final byte _sourceId;
+
+    /**
+     * maximum number of ids a thread reserves at once
+     */
+    protected final int _blockSize;
+
+    /**
+     * counter state per UID type: creation second (high 32 bits) and next id
+     * (low 32 bits)
+     */
+    protected final AtomicLongArray _counters;
+
+    /**
+     * id blocks reserved by the current thread, per UID type
+     */
+    protected final ThreadLocal<IdBlock[]> _blocks;
+
+    public MuidGenerator(
+            byte sourceId) {
+        this(sourceId, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a MUID generator.
+     * 
+     * @param sourceId
+     *            unique instance identifier
+     * @param blockSize
+     *            maximum number of ids a thread reserves at once, use 1 to
+     *            disable reservation
+     */
+    public MuidGenerator(
+            byte sourceId,
+            int blockSize) {
+        if (blockSize < 1 || blockSize > NUM_IDS) {
+            throw new IllegalArgumentException("block size must be in [1, "
+                    + NUM_IDS + "]");
+        }
+        _sourceId = sourceId;
+        _blockSize = blockSize;
+        final int numTypes = UidType.values().length;
+        _counters = new AtomicLongArray(numTypes);
+        _blocks = new ThreadLocal<IdBlock[]>() {
+
+            @Override
+            protected IdBlock[] initialValue() {
+                IdBlock[] blocks = new IdBlock[numTypes];
+                for (int i = 0; i < numTypes; ++i) {
+                    blocks[i] = new IdBlock();
+                }
+                return blocks;
+            }
+        };
+    }
+
+    /**
+     * Generates a MUID.
+     * 
+     * @param type
+     *            UID type of the MUID
+     * @return MUID unique for this source
+     * @throws ServiceOverloadedException
+     *             if all ids of the UID type have been used during the current
+     *             second
+     */
+    public Muid generate(UidType type) throws ServiceOverloadedException {
+        int timestamp = (int) (System.currentTimeMillis() / 1000);
+        IdBlock block = _blocks.get()[type.ordinal()];
+        if (block.timestamp != timestamp || block.next == block.end) {
+            reserve(type, timestamp, block);
+        }
+        short id = (short) block.next++;
+        return Muid.createFromID(UidConverter.calculateMuidWithoutChecking(
+                type.getRawIdentifier(), _sourceId, block.timestamp, id));
+    }
+
+    /**
+     * Reserves a block of ids for the current thread.
+     * 
+     * @param type
+     *            UID type to reserve ids for
+     * @param timestamp
+     *            current second
+     * @param block
+     *            block of the current thread to be refilled
+     * @throws ServiceOverloadedException
+     *             if all ids of the UID type have been used during the current
+     *             second
+     */
+    protected void reserve(UidType type, int timestamp, IdBlock block)
+            throws ServiceOverloadedException {
+        int iType = type.ordinal();
+        while (true) {
+            long state = _counters.get(iType);
+            int stateTimestamp = (int) (state >>> 32);
+            int next = (int) state;
+            if (timestamp > stateTimestamp) {
+                // new second
+                stateTimestamp = timestamp;
+                next = 0;
+            } else if (next >= NUM_IDS) {
+                // we do not go back in time, even if the clock does
+                throw new ServiceOverloadedException(
+                        "Already created more than " + NUM_IDS
+                                + " MUIDs of type " + type
+                                + " during the current second");
+            }
+            int end = Math.min(next + _blockSize, NUM_IDS);
+            if (_counters.compareAndSet(iType, state,
+                    ((long) stateTimestamp << 32) | end)) {
+                block.timestamp = stateTimestamp;
+                block.next = next;
+                block.end = end;
+                return;
+            }
+            // concurrent reservation
+        }
+    }
+
+    public byte getSourceId() {
+        return _sourceId;
+    }
+
+    public int getBlockSize() {
+        return _blockSize;
+    }
+
+    /**
+     * ids of a single UID type reserved by a thread
+     */
+    protected static class IdBlock {
+
+        int timestamp = -1;
+
+        int next;
+
+        int end;
+    }
+}
@@ -1,22 +1,40 @@
 package de.uniko.sebschlicht.graphity.titan;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.thinkaurelius.titan.core.TitanGraph;
+import com.thinkaurelius.titan.core.TitanTransaction;
+import com.thinkaurelius.titan.core.TitanVertex;
 import com.thinkaurelius.titan.core.schema.TitanGraphIndex;
 import com.thinkaurelius.titan.core.schema.TitanManagement;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.TransactionalGraph;
 import com.tinkerpop.blueprints.Vertex;
 
 import de.metalcon.domain.Muid;
 import de.metalcon.domain.UidType;
-import de.metalcon.domain.helper.UidConverter;
 import de.metalcon.exceptions.ServiceOverloadedException;
 import de.uniko.sebschlicht.graphity.Graphity;
 import de.uniko.sebschlicht.graphity.exception.IllegalUserIdException;
 import de.uniko.sebschlicht.graphity.exception.UnknownFollowedIdException;
 import de.uniko.sebschlicht.graphity.exception.UnknownFollowingIdException;
 import de.uniko.sebschlicht.graphity.exception.UnknownReaderIdException;
+import de.uniko.sebschlicht.graphity.titan.cache.FeedCache;
+import de.uniko.sebschlicht.graphity.titan.cache.ReplicaLayerIndex;
+import de.uniko.sebschlicht.graphity.titan.cache.UserIdCache;
+import de.uniko.sebschlicht.graphity.titan.metrics.GraphityMetrics;
+import de.uniko.sebschlicht.graphity.titan.metrics.Operation;
+import de.uniko.sebschlicht.graphity.titan.metrics.TraversalCounter;
+import de.uniko.sebschlicht.graphity.titan.model.FeedCursor;
+import de.uniko.sebschlicht.graphity.titan.model.FeedEntry;
+import de.uniko.sebschlicht.graphity.titan.model.FeedEntryPage;
+import de.uniko.sebschlicht.graphity.titan.model.PostIteratorHeap;
+import de.uniko.sebschlicht.graphity.titan.model.StatusUpdatePage;
+import de.uniko.sebschlicht.graphity.titan.model.StatusUpdateProxy;
 import de.uniko.sebschlicht.graphity.titan.model.UserProxy;
+import de.uniko.sebschlicht.graphity.titan.requests.ServiceRequestFollow;
+import de.uniko.sebschlicht.graphity.titan.requests.ServiceRequestUnfollow;
 import de.uniko.sebschlicht.socialnet.StatusUpdate;
 import de.uniko.sebschlicht.socialnet.StatusUpdateList;
 
@@ -34,22 +52,66 @@ public abstract class TitanGraphity extends Graphity {
     protected static byte TITAN_ID;
 
     /**
-     * timestamp of last news item MUID creation
+     * generator for news item MUIDs
      */
-    protected static int LAST_MUID_CREATION_TIME = 0;
+    protected static volatile MuidGenerator MUID_GENERATOR =
+            new MuidGenerator(TITAN_ID);
 
     /**
-     * id of last news item MUID
+     * default number of vertices loaded ahead when reading news feeds
      */
-    protected static AtomicInteger LAST_MUID_ID = new AtomicInteger(0);
+    public static final int DEFAULT_PREFETCH_WINDOW_SIZE = 8;
 
     /**
      * Titan graph database holding the social network graph
      */
     protected TitanGraph graphDb;
 
+    /**
+     * transaction explicitly bound to the current thread, if any
+     */
+    protected final ThreadLocal<TitanTransaction> boundTransactions =
+            new ThreadLocal<TitanTransaction>();
+
+    /**
+     * heap merging the author streams of a news feed, per thread
+     */
+    protected final ThreadLocal<PostIteratorHeap> postIteratorHeaps =
+            new ThreadLocal<PostIteratorHeap>() {
+
+                @Override
+                protected PostIteratorHeap initialValue() {
+                    return new PostIteratorHeap();
+                }
+            };
+
     protected TitanGraphIndex userIndex;
 
+    /**
+     * (optional) cache of user vertex identifiers
+     */
+    protected UserIdCache userIdCache;
+
+    /**
+     * (optional) cache of materialized news feeds
+     */
+    protected FeedCache feedCache;
+
+    /**
+     * (optional) sorted index over the replica layers of active users
+     */
+    protected ReplicaLayerIndex replicaLayerIndex;
+
+    /**
+     * number of author streams loaded at once when reading news feeds
+     */
+    protected int prefetchWindowSize = DEFAULT_PREFETCH_WINDOW_SIZE;
+
+    /**
+     * (optional) instrumentation of the social network operations
+     */
+    protected GraphityMetrics metrics;
+
     /**
      * Creates a new Graphity instance using the Titan database provided.
      * 
@@ -69,6 +131,286 @@ public abstract class TitanGraphity extends Graphity {
         return graphDb;
     }
 
+    /**
+     * Sets the cache that resolves user identifiers to user vertices in front
+     * of the user index.
+     * 
+     * @param userIdCache
+     *            user identifier cache or <b>null</b> to query the index on
+     *            every lookup
+     */
+    public void setUserIdCache(UserIdCache userIdCache) {
+        this.userIdCache = userIdCache;
+    }
+
+    /**
+     * @return user identifier cache or <b>null</b> if not used
+     */
+    public UserIdCache getUserIdCache() {
+        return userIdCache;
+    }
+
+    /**
+     * Sets the cache that serves news feeds of active readers without
+     * accessing the graph.<br>
+     * Changes are passed to the cache when committed via {@link #commit()}.
+     * 
+     * @param feedCache
+     *            news feed cache or <b>null</b> to load every news feed from
+     *            graph
+     */
+    public void setFeedCache(FeedCache feedCache) {
+        this.feedCache = feedCache;
+    }
+
+    /**
+     * @return news feed cache or <b>null</b> if not used
+     */
+    public FeedCache getFeedCache() {
+        return feedCache;
+    }
+
+    /**
+     * Sets the index used to find the insertion position of a replica in a
+     * replica layer without walking the layer from its start. Ignored by
+     * implementations without replica layers.<br>
+     * Changes are passed to the index when committed via {@link #commit()}.
+     * 
+     * @param replicaLayerIndex
+     *            replica layer index or <b>null</b> to walk the replica layers
+     */
+    public void setReplicaLayerIndex(ReplicaLayerIndex replicaLayerIndex) {
+        this.replicaLayerIndex = replicaLayerIndex;
+    }
+
+    /**
+     * @return replica layer index or <b>null</b> if not used
+     */
+    public ReplicaLayerIndex getReplicaLayerIndex() {
+        return replicaLayerIndex;
+    }
+
+    /**
+     * Stages the insertion or move of a replica in the replica layer index,
+     * if used.
+     * 
+     * @param vUser
+     *            vertex of the user owning the replica layer
+     * @param vReplica
+     *            replica vertex
+     * @param timestamp
+     *            last post timestamp of the user replicated
+     */
+    protected void stageIndexPut(
+            Vertex vUser,
+            Vertex vReplica,
+            long timestamp) {
+        ReplicaLayerIndex replicaLayerIndex = this.replicaLayerIndex;
+        if (replicaLayerIndex != null) {
+            replicaLayerIndex.stagePut((long) vUser.getId(),
+                    (long) vReplica.getId(), timestamp);
+        }
+    }
+
+    /**
+     * Stages the removal of a replica from the replica layer index, if used.
+     * 
+     * @param vUser
+     *            vertex of the user owning the replica layer
+     * @param vReplica
+     *            replica vertex
+     */
+    protected void stageIndexRemoval(Vertex vUser, Vertex vReplica) {
+        ReplicaLayerIndex replicaLayerIndex = this.replicaLayerIndex;
+        if (replicaLayerIndex != null) {
+            replicaLayerIndex.stageRemoval((long) vUser.getId(),
+                    (long) vReplica.getId());
+        }
+    }
+
+    /**
+     * Sets the number of author streams whose next vertices are loaded at
+     * once when reading news feeds, using a single backend request per hop.
+     * Larger windows save backend requests for long news feeds but might load
+     * streams that are not needed for short ones.
+     * 
+     * @param prefetchWindowSize
+     *            number of author streams loaded at once, 1 to load each
+     *            stream on demand
+     */
+    public void setPrefetchWindowSize(int prefetchWindowSize) {
+        if (prefetchWindowSize < 1) {
+            throw new IllegalArgumentException(
+                    "window size must be positive");
+        }
+        this.prefetchWindowSize = prefetchWindowSize;
+    }
+
+    /**
+     * @return number of author streams loaded at once when reading news feeds
+     */
+    public int getPrefetchWindowSize() {
+        return prefetchWindowSize;
+    }
+
+    /**
+     * Sets the instrumentation recording latencies, traversal costs and
+     * transaction outcomes of the social network operations.
+     * 
+     * @param metrics
+     *            operation metrics or <b>null</b> to disable instrumentation
+     */
+    public void setMetrics(GraphityMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return operation metrics or <b>null</b> if not used
+     */
+    public GraphityMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Binds a transaction to the current thread. Subsequent operations of the
+     * thread access the graph via this transaction instead of the transaction
+     * Titan binds to the thread automatically, until the transaction is
+     * unbound.
+     * 
+     * @param tx
+     *            transaction opened via {@link TitanGraph#newTransaction()}
+     */
+    public void bindTransaction(TitanTransaction tx) {
+        boundTransactions.set(tx);
+    }
+
+    /**
+     * Unbinds the transaction bound to the current thread, if any. The
+     * transaction is neither committed nor rolled back.
+     */
+    public void unbindTransaction() {
+        boundTransactions.remove();
+    }
+
+    /**
+     * @return transaction bound to the current thread explicitly or the graph
+     *         database, accessed via the thread-bound transaction of Titan
+     */
+    protected TransactionalGraph getTransaction() {
+        TitanTransaction tx = boundTransactions.get();
+        if (tx != null) {
+            return tx;
+        }
+        return graphDb;
+    }
+
+    /**
+     * Commits the current transaction of the Titan graph database and
+     * triggers any work that has been deferred until the changes are
+     * persistent. If the commit fails, the deferred work is discarded.
+     */
+    public void commit() {
+        try {
+            getTransaction().commit();
+        } catch (RuntimeException e) {
+            // transaction has been closed, its changes are lost
+            if (metrics != null) {
+                metrics.recordRollback();
+            }
+            discardDeferred();
+            throw e;
+        }
+        if (metrics != null) {
+            metrics.recordCommit();
+        }
+        if (feedCache != null) {
+            feedCache.applyStaged();
+        }
+        if (replicaLayerIndex != null) {
+            replicaLayerIndex.applyStaged();
+        }
+        if (userIdCache != null) {
+            userIdCache.applyStaged();
+        }
+        onCommit();
+    }
+
+    /**
+     * Rolls back the current transaction of the Titan graph database and
+     * discards any work that has been deferred until commit.
+     */
+    public void rollback() {
+        try {
+            getTransaction().rollback();
+        } finally {
+            if (metrics != null) {
+                metrics.recordRollback();
+            }
+            discardDeferred();
+        }
+    }
+
+    /**
+     * Discards any work of the current thread that has been deferred until
+     * commit, e.g. after the transaction has been rolled back or failed to
+     * commit. Has no effect on the transaction itself.
+     */
+    public void discardDeferred() {
+        if (feedCache != null) {
+            feedCache.discardStaged();
+        }
+        if (replicaLayerIndex != null) {
+            replicaLayerIndex.discardStaged();
+        }
+        if (userIdCache != null) {
+            userIdCache.discardStaged();
+        }
+        onRollback();
+    }
+
+    /**
+     * Starts measuring an operation, if instrumented. Has to be followed by
+     * {@link #stopOperation(GraphityMetrics)} in any case.
+     * 
+     * @param operation
+     *            operation started by the current thread
+     * @return metrics to pass to {@link #stopOperation(GraphityMetrics)}
+     */
+    protected GraphityMetrics startOperation(Operation operation) {
+        GraphityMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.start(operation);
+        }
+        return metrics;
+    }
+
+    /**
+     * Stops measuring the operation of the current thread, if instrumented.
+     * 
+     * @param metrics
+     *            metrics returned by {@link #startOperation(Operation)}
+     */
+    protected static void stopOperation(GraphityMetrics metrics) {
+        if (metrics != null) {
+            metrics.stop();
+        }
+    }
+
+    /**
+     * Called after the current transaction has been committed.
+     */
+    protected void onCommit() {
+        // nothing deferred by default
+    }
+
+    /**
+     * Called after the current transaction has been rolled back or failed to
+     * commit.
+     */
+    protected void onRollback() {
+        // nothing deferred by default
+    }
+
     /**
      * Initializes the social graph instance in order to access and manipulate
      * the social network graph.
@@ -111,6 +453,27 @@ public abstract class TitanGraphity extends Graphity {
         mgmt.rollback();
     }
 
+    /**
+     * Parses a user identifier passed via the String-based API.
+     * 
+     * @param userIdentifier
+     *            identifier of the user
+     * @return numeric user identifier
+     * @throws IllegalUserIdException
+     *             if the user identifier is not a valid number
+     */
+    protected static long parseUserId(String userIdentifier)
+            throws IllegalUserIdException {
+        if (userIdentifier == null) {
+            throw new IllegalUserIdException(userIdentifier);
+        }
+        try {
+            return Long.parseLong(userIdentifier);
+        } catch (NumberFormatException e) {
+            throw new IllegalUserIdException(userIdentifier);
+        }
+    }
+
     /**
      * Creates a user that can act in the social network.
      * 
@@ -122,20 +485,29 @@ public abstract class TitanGraphity extends Graphity {
      */
     public Vertex createUser(String userIdentifier)
             throws IllegalUserIdException {
-        if (userIdentifier == null) {
-            throw new IllegalUserIdException(userIdentifier);
+        return createUser(parseUserId(userIdentifier));
+    }
+
+    /**
+     * Creates a user that can act in the social network.
+     * 
+     * @param idUser
+     *            identifier of the new user
+     * @return user vertex
+     * @throws IllegalUserIdException
+     *             if the user identifier is invalid
+     */
+    public Vertex createUser(long idUser) throws IllegalUserIdException {
+        if (idUser <= 0) {
+            throw new IllegalUserIdException(String.valueOf(idUser));
         }
-        try {
-            long idUser = Long.valueOf(userIdentifier);
-            if (idUser > 0) {
-                Vertex vUser = graphDb.addVertex(null);
-                vUser.setProperty(UserProxy.PROP_IDENTIFIER, idUser);
-                return vUser;
-            }
-        } catch (NumberFormatException e) {
-            // exception gets thrown below
+        Vertex vUser = getTransaction().addVertex(null);
+        vUser.setProperty(UserProxy.PROP_IDENTIFIER, idUser);
+        if (userIdCache != null) {
+            // cached when committed, concurrent lookups would not find it
+            userIdCache.stagePut(idUser, (long) vUser.getId());
         }
-        throw new IllegalUserIdException(userIdentifier);
+        return vUser;
     }
 
     /**
@@ -151,12 +523,81 @@ public abstract class TitanGraphity extends Graphity {
      */
     protected Vertex findUser(String userIdentifier)
             throws IllegalUserIdException {
-        if (userIdentifier == null) {
-            throw new IllegalUserIdException(userIdentifier);
+        return findUser(parseUserId(userIdentifier));
+    }
+
+    /**
+     * Searches the social network graph for an user.
+     * 
+     * @param idUser
+     *            identifier of the user searched
+     * @return user node - if the user is existing in social network graph<br>
+     *         <b>null</b> - if there is no vertex representing the user
+     *         specified
+     */
+    protected Vertex findUser(long idUser) {
+        return findUser(idUser, true);
+    }
+
+    /**
+     * Searches the social network graph for an user.
+     * 
+     * @param idUser
+     *            identifier of the user searched
+     * @param trustUnknown
+     *            if set to false, users cached as not existing are looked up
+     *            anyway, e.g. before a user is created
+     * @return user node - if the user is existing in social network graph<br>
+     *         <b>null</b> - if there is no vertex representing the user
+     *         specified
+     */
+    protected Vertex findUser(long idUser, boolean trustUnknown) {
+        if (userIdCache == null) {
+            return lookupUser(idUser);
+        }
+
+        long idVertex = userIdCache.get(idUser);
+        if (idVertex == UserIdCache.UNKNOWN) {
+            if (trustUnknown) {
+                return null;
+            }
+        } else if (idVertex != UserIdCache.MISSING) {
+            Vertex vUser = getTransaction().getVertex(idVertex);
+            if (vUser != null) {
+                TraversalCounter.visitVertex();
+                return vUser;
+            }
+            // user has been removed
+            userIdCache.invalidate(idUser);
+        }
+
+        Vertex vUser = lookupUser(idUser);
+        if (vUser == null) {
+            userIdCache.putUnknown(idUser);
+        } else if (!(vUser instanceof TitanVertex)
+                || !((TitanVertex) vUser).isNew()) {
+            // users created in the current transaction are staged already
+            userIdCache.put(idUser, (long) vUser.getId());
         }
+        return vUser;
+    }
+
+    /**
+     * Queries the user index for an user.
+     * 
+     * @param idUser
+     *            identifier of the user searched
+     * @return user node - if the user is existing in social network graph<br>
+     *         <b>null</b> - if there is no vertex representing the user
+     *         specified
+     */
+    protected Vertex lookupUser(long idUser) {
+        // the key is of type Long, querying with a String would need a conversion
         Iterable<Vertex> vUsers =
-                graphDb.getVertices(UserProxy.PROP_IDENTIFIER, userIdentifier);
+                getTransaction().getVertices(UserProxy.PROP_IDENTIFIER,
+                        idUser);
         for (Vertex vUser : vUsers) {
+            TraversalCounter.visitVertex();
             return vUser;
         }
         return null;
@@ -165,31 +606,39 @@ public abstract class TitanGraphity extends Graphity {
     /**
      * Loads a user from social network or lazily creates a new one.
      * 
-     * @param userIdentifier
+     * @param idUser
      *            identifier of the user to interact with
      * @return user vertex - existing or created vertex representing the user
      * @throws IllegalUserIdException
      *             if the user must be created and the identifier is invalid
      */
-    protected Vertex loadUser(String userIdentifier)
-            throws IllegalUserIdException {
-        Vertex vUser = findUser(userIdentifier);
+    protected Vertex loadUser(long idUser) throws IllegalUserIdException {
+        Vertex vUser = findUser(idUser, false);
         if (vUser != null) {
             // user is already existing
             return vUser;
         }
-        return createUser(userIdentifier);
+        return createUser(idUser);
     }
 
     @Override
     public boolean addUser(String userIdentifier) throws IllegalUserIdException {
-        Vertex vUser = findUser(userIdentifier);
-        if (vUser == null) {
-            // user identifier not in use yet
-            createUser(userIdentifier);
-            return true;
+        return addUser(parseUserId(userIdentifier));
+    }
+
+    public boolean addUser(long idUser) throws IllegalUserIdException {
+        GraphityMetrics metrics = startOperation(Operation.ADD_USER);
+        try {
+            Vertex vUser = findUser(idUser, false);
+            if (vUser == null) {
+                // user identifier not in use yet
+                createUser(idUser);
+                return true;
+            }
+            return false;
+        } finally {
+            stopOperation(metrics);
         }
-        return false;
     }
 
     @Override
@@ -202,27 +651,98 @@ public abstract class TitanGraphity extends Graphity {
             String idFollowing,
             String idFollowed,
             boolean autoCommit) throws IllegalUserIdException {
+        return addFollowship(parseUserId(idFollowing),
+                parseUserId(idFollowed), autoCommit);
+    }
+
+    public boolean addFollowship(long idFollowing, long idFollowed)
+            throws IllegalUserIdException {
+        return addFollowship(idFollowing, idFollowed, true);
+    }
+
+    public boolean addFollowship(
+            long idFollowing,
+            long idFollowed,
+            boolean autoCommit) throws IllegalUserIdException {
+        GraphityMetrics metrics = startOperation(Operation.ADD_FOLLOWSHIP);
         try {
             //TODO can not create locks manually, but we could force lock via write access
             Vertex vFollowing = loadUser(idFollowing);
             Vertex vFollowed = loadUser(idFollowed);
             if (addFollowship(vFollowing, vFollowed)) {
+                if (feedCache != null) {
+                    feedCache.stageInvalidation((long) vFollowing.getId());
+                }
                 if (autoCommit) {
-                    graphDb.commit();
+                    commit();
                 }
                 return true;
             }
             // no changes to commit/roll back
             return false;
-        } catch (NumberFormatException e) {
+        } catch (IllegalArgumentException e) {
             e.printStackTrace();
             return false;
+        } finally {
+            stopOperation(metrics);
+        }
+    }
+
+    /**
+     * Adds a followship requested at the time the request has been accepted.
+     * 
+     * @param request
+     *            follow request
+     * @param autoCommit
+     *            true - to commit the changes<br>
+     *            false - to leave the transaction open
+     * @return true - if the followship was successfully created<br>
+     *         false - if this followship is already existing
+     * @throws IllegalUserIdException
+     *             if a user identifier is invalid
+     */
+    public boolean addFollowship(
+            ServiceRequestFollow request,
+            boolean autoCommit) throws IllegalUserIdException {
+        GraphityMetrics metrics = startOperation(Operation.ADD_FOLLOWSHIP);
+        try {
+            Vertex vFollowing = loadUser(request.getSubscriberId());
+            request.setSubscriberVertex(vFollowing);
+            request.setFollowedVertex(loadUser(request.getFollowedId()));
+            if (addFollowship(request)) {
+                if (feedCache != null) {
+                    feedCache.stageInvalidation((long) vFollowing.getId());
+                }
+                if (autoCommit) {
+                    commit();
+                }
+                return true;
+            }
+            // no changes to commit/roll back
+            return false;
         } catch (IllegalArgumentException e) {
             e.printStackTrace();
             return false;
+        } finally {
+            stopOperation(metrics);
         }
     }
 
+    /**
+     * Adds a followship between the user vertices of a request to the social
+     * network graph. Versioned implementations may use the time stamp of the
+     * request, others ignore it.
+     * 
+     * @param request
+     *            follow request with both user vertices loaded
+     * @return true - if the followship was successfully created<br>
+     *         false - if this followship is already existing
+     */
+    protected boolean addFollowship(ServiceRequestFollow request) {
+        return addFollowship(request.getSubscriberVertex(),
+                request.getFollowedVertex());
+    }
+
     /**
      * Adds a followship between two user vertices to the social network graph.
      * 
@@ -248,35 +768,121 @@ public abstract class TitanGraphity extends Graphity {
             String idFollowed,
             boolean autoCommit) throws UnknownFollowingIdException,
             UnknownFollowedIdException, IllegalUserIdException {
+        return removeFollowship(parseUserId(idFollowing),
+                parseUserId(idFollowed), autoCommit);
+    }
+
+    public boolean removeFollowship(long idFollowing, long idFollowed)
+            throws UnknownFollowingIdException, UnknownFollowedIdException {
+        return removeFollowship(idFollowing, idFollowed, true);
+    }
+
+    public boolean removeFollowship(
+            long idFollowing,
+            long idFollowed,
+            boolean autoCommit) throws UnknownFollowingIdException,
+            UnknownFollowedIdException {
+        GraphityMetrics metrics = startOperation(Operation.REMOVE_FOLLOWSHIP);
         try {
             Vertex vFollowing = findUser(idFollowing);
             if (vFollowing == null) {
-                throw new UnknownFollowingIdException(idFollowing);
+                throw new UnknownFollowingIdException(
+                        String.valueOf(idFollowing));
             }
             Vertex vFollowed = findUser(idFollowed);
             if (vFollowed == null) {
-                throw new UnknownFollowedIdException(idFollowed);
+                throw new UnknownFollowedIdException(String.valueOf(idFollowed));
             }
 
             //TODO can not create locks manually, but we could force lock via write access
 
             if (removeFollowship(vFollowing, vFollowed)) {
+                if (feedCache != null) {
+                    feedCache.stageInvalidation((long) vFollowing.getId());
+                }
                 if (autoCommit) {
-                    graphDb.commit();
+                    commit();
                 }
                 return true;
             }
             // no changes to commit/roll back
             return false;
-        } catch (NumberFormatException e) {
+        } catch (IllegalArgumentException e) {
             e.printStackTrace();
             return false;
+        } finally {
+            stopOperation(metrics);
+        }
+    }
+
+    /**
+     * Removes a followship requested at the time the request has been
+     * accepted.
+     * 
+     * @param request
+     *            unfollow request
+     * @param autoCommit
+     *            true - to commit the changes<br>
+     *            false - to leave the transaction open
+     * @return true - if the followship was successfully removed<br>
+     *         false - if this followship is not existing
+     * @throws UnknownFollowingIdException
+     *             if the following user is not existing
+     * @throws UnknownFollowedIdException
+     *             if the followed user is not existing
+     */
+    public boolean removeFollowship(
+            ServiceRequestUnfollow request,
+            boolean autoCommit) throws UnknownFollowingIdException,
+            UnknownFollowedIdException {
+        GraphityMetrics metrics = startOperation(Operation.REMOVE_FOLLOWSHIP);
+        try {
+            Vertex vFollowing = findUser(request.getSubscriberId());
+            if (vFollowing == null) {
+                throw new UnknownFollowingIdException(
+                        String.valueOf(request.getSubscriberId()));
+            }
+            Vertex vFollowed = findUser(request.getFollowedId());
+            if (vFollowed == null) {
+                throw new UnknownFollowedIdException(
+                        String.valueOf(request.getFollowedId()));
+            }
+            request.setSubscriberVertex(vFollowing);
+            request.setFollowedVertex(vFollowed);
+            if (removeFollowship(request)) {
+                if (feedCache != null) {
+                    feedCache.stageInvalidation((long) vFollowing.getId());
+                }
+                if (autoCommit) {
+                    commit();
+                }
+                return true;
+            }
+            // no changes to commit/roll back
+            return false;
         } catch (IllegalArgumentException e) {
             e.printStackTrace();
             return false;
+        } finally {
+            stopOperation(metrics);
         }
     }
 
+    /**
+     * Removes a followship between the user vertices of a request from the
+     * social network graph. Versioned implementations may use the time stamp
+     * of the request, others ignore it.
+     * 
+     * @param request
+     *            unfollow request with both user vertices loaded
+     * @return true - if the followship was successfully removed<br>
+     *         false - if this followship is not existing
+     */
+    protected boolean removeFollowship(ServiceRequestUnfollow request) {
+        return removeFollowship(request.getSubscriberVertex(),
+                request.getFollowedVertex());
+    }
+
     /**
      * Removes a followship between two user vertices from the social network
      * graph.
@@ -302,16 +908,37 @@ public abstract class TitanGraphity extends Graphity {
             String idAuthor,
             String message,
             boolean autoCommit) throws IllegalUserIdException {
-        Vertex vAuthor = loadUser(idAuthor);
-        //TODO can not create locks manually, but we could force lock via write access
-        StatusUpdate statusUpdate =
-                new StatusUpdate(idAuthor, System.currentTimeMillis(), message);
-        long idStatusUpdate = addStatusUpdate(vAuthor, statusUpdate);
-        if (autoCommit && idStatusUpdate != 0) {
-            graphDb.commit();
+        return addStatusUpdate(parseUserId(idAuthor), message, autoCommit);
+    }
+
+    public long addStatusUpdate(long idAuthor, String message)
+            throws IllegalUserIdException {
+        return addStatusUpdate(idAuthor, message, true);
+    }
+
+    public long addStatusUpdate(
+            long idAuthor,
+            String message,
+            boolean autoCommit) throws IllegalUserIdException {
+        GraphityMetrics metrics = startOperation(Operation.ADD_STATUS_UPDATE);
+        try {
+            Vertex vAuthor = loadUser(idAuthor);
+            //TODO can not create locks manually, but we could force lock via write access
+            StatusUpdate statusUpdate =
+                    new StatusUpdate(String.valueOf(idAuthor),
+                            System.currentTimeMillis(), message);
+            long idStatusUpdate = addStatusUpdate(vAuthor, statusUpdate);
+            if (idStatusUpdate != 0 && feedCache != null) {
+                feedCache.stagePush((long) vAuthor.getId(), statusUpdate);
+            }
+            if (autoCommit && idStatusUpdate != 0) {
+                commit();
+            }
+            // nothing to commit/roll back
+            return idStatusUpdate;
+        } finally {
+            stopOperation(metrics);
         }
-        // nothing to commit/roll back
-        return idStatusUpdate;
     }
 
     /**
@@ -332,40 +959,368 @@ public abstract class TitanGraphity extends Graphity {
             String idReader,
             int numStatusUpdates) throws UnknownReaderIdException,
             IllegalUserIdException {
-        Vertex vReader = findUser(idReader);
-        if (vReader != null) {
-            return readStatusUpdates(vReader, numStatusUpdates);
+        return readStatusUpdates(parseUserId(idReader), numStatusUpdates);
+    }
+
+    public StatusUpdateList readStatusUpdates(long idReader, int numStatusUpdates)
+            throws UnknownReaderIdException {
+        GraphityMetrics metrics = startOperation(Operation.READ_STATUS_UPDATES);
+        try {
+            Vertex vReader = findUser(idReader);
+            if (vReader != null) {
+                return readStatusUpdates(vReader, numStatusUpdates);
+            }
+            throw new UnknownReaderIdException(String.valueOf(idReader));
+        } finally {
+            stopOperation(metrics);
+        }
+    }
+
+    /**
+     * Retrieves a page of the news feed of a user.
+     * 
+     * @param idReader
+     *            identifier of the reader
+     * @param numStatusUpdates
+     *            maximum number of status updates in the page
+     * @param cursor
+     *            cursor returned with the previous page or <b>null</b> to
+     *            retrieve the first page
+     * @return page of the reader's news feed, along with the cursor to
+     *         retrieve the next page
+     * @throws UnknownReaderIdException
+     *             if the reader is not existing
+     * @throws IllegalUserIdException
+     *             if the reader identifier is invalid
+     * @throws IllegalArgumentException
+     *             if the cursor is invalid or belongs to another reader
+     */
+    public StatusUpdatePage readStatusUpdates(
+            String idReader,
+            int numStatusUpdates,
+            String cursor) throws UnknownReaderIdException,
+            IllegalUserIdException {
+        return readStatusUpdates(parseUserId(idReader), numStatusUpdates,
+                cursor);
+    }
+
+    /**
+     * Retrieves a page of the news feed of a user.
+     * 
+     * @param idReader
+     *            identifier of the reader
+     * @param numStatusUpdates
+     *            maximum number of status updates in the page
+     * @param cursor
+     *            cursor returned with the previous page or <b>null</b> to
+     *            retrieve the first page
+     * @return page of the reader's news feed, along with the cursor to
+     *         retrieve the next page
+     * @throws UnknownReaderIdException
+     *             if the reader is not existing
+     * @throws IllegalArgumentException
+     *             if the cursor is invalid or belongs to another reader
+     */
+    public StatusUpdatePage readStatusUpdates(
+            long idReader,
+            int numStatusUpdates,
+            String cursor) throws UnknownReaderIdException {
+        GraphityMetrics metrics = startOperation(Operation.READ_STATUS_UPDATES);
+        try {
+            FeedCursor feedCursor = null;
+            if (cursor != null) {
+                feedCursor = FeedCursor.decode(cursor);
+            }
+            Vertex vReader = findUser(idReader);
+            if (vReader == null) {
+                throw new UnknownReaderIdException(String.valueOf(idReader));
+            }
+            checkCursor(vReader, feedCursor);
+            return readStatusUpdates(vReader, numStatusUpdates, feedCursor);
+        } finally {
+            stopOperation(metrics);
         }
-        throw new UnknownReaderIdException(idReader);
     }
 
-    abstract protected StatusUpdateList readStatusUpdates(
+    /**
+     * Retrieves a page of the news feed of a user, consisting of lightweight
+     * entries without content messages.
+     * 
+     * @param idReader
+     *            identifier of the reader
+     * @param numEntries
+     *            maximum number of entries in the page
+     * @param cursor
+     *            cursor returned with the previous page or <b>null</b> to
+     *            retrieve the first page
+     * @return page of the reader's news feed, along with the cursor to
+     *         retrieve the next page
+     * @throws UnknownReaderIdException
+     *             if the reader is not existing
+     * @throws IllegalUserIdException
+     *             if the reader identifier is invalid
+     * @throws IllegalArgumentException
+     *             if the cursor is invalid or belongs to another reader
+     * @see #loadMessages(long...)
+     */
+    public FeedEntryPage readFeedEntries(
+            String idReader,
+            int numEntries,
+            String cursor) throws UnknownReaderIdException,
+            IllegalUserIdException {
+        return readFeedEntries(parseUserId(idReader), numEntries, cursor);
+    }
+
+    /**
+     * Retrieves a page of the news feed of a user, consisting of lightweight
+     * entries without content messages.
+     * 
+     * @param idReader
+     *            identifier of the reader
+     * @param numEntries
+     *            maximum number of entries in the page
+     * @param cursor
+     *            cursor returned with the previous page or <b>null</b> to
+     *            retrieve the first page
+     * @return page of the reader's news feed, along with the cursor to
+     *         retrieve the next page
+     * @throws UnknownReaderIdException
+     *             if the reader is not existing
+     * @throws IllegalArgumentException
+     *             if the cursor is invalid or belongs to another reader
+     * @see #loadMessages(long...)
+     */
+    public FeedEntryPage readFeedEntries(
+            long idReader,
+            int numEntries,
+            String cursor) throws UnknownReaderIdException {
+        GraphityMetrics metrics = startOperation(Operation.READ_STATUS_UPDATES);
+        try {
+            FeedCursor feedCursor = null;
+            if (cursor != null) {
+                feedCursor = FeedCursor.decode(cursor);
+            }
+            Vertex vReader = findUser(idReader);
+            if (vReader == null) {
+                throw new UnknownReaderIdException(String.valueOf(idReader));
+            }
+            checkCursor(vReader, feedCursor);
+            return readFeedEntries(vReader, numEntries, feedCursor);
+        } finally {
+            stopOperation(metrics);
+        }
+    }
+
+    /**
+     * Loads the content messages of multiple status updates at once.<br>
+     * Status update vertices that have not been loaded by the current
+     * transaction are checked for existence separately.
+     * 
+     * @param statusUpdateIds
+     *            status update vertex identifiers, as provided by the news
+     *            feed entries
+     * @return content messages in the order of the identifiers, <b>null</b>
+     *         for status updates that are not existing
+     */
+    public String[] loadMessages(long... statusUpdateIds) {
+        List<Vertex> vStatusUpdates =
+                new ArrayList<Vertex>(statusUpdateIds.length);
+        TransactionalGraph tx = getTransaction();
+        for (long idStatusUpdate : statusUpdateIds) {
+            Vertex vStatusUpdate = tx.getVertex(idStatusUpdate);
+            if (vStatusUpdate != null) {
+                TraversalCounter.visitVertex();
+                vStatusUpdates.add(vStatusUpdate);
+            }
+        }
+        VertexPrefetcher.loadProperties(tx, vStatusUpdates,
+                StatusUpdateProxy.PROP_MESSAGE);
+
+        String[] messages = new String[statusUpdateIds.length];
+        int iVertex = 0;
+        for (int i = 0; i < statusUpdateIds.length
+                && iVertex < vStatusUpdates.size(); ++i) {
+            Vertex vStatusUpdate = vStatusUpdates.get(iVertex);
+            if ((long) vStatusUpdate.getId() == statusUpdateIds[i]) {
+                messages[i] =
+                        vStatusUpdate
+                                .getProperty(StatusUpdateProxy.PROP_MESSAGE);
+                iVertex += 1;
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Checks that a cursor belongs to the reader specified.
+     * 
+     * @param vReader
+     *            user vertex of the reader
+     * @param cursor
+     *            (optional) cursor to check
+     * @throws IllegalArgumentException
+     *             if the cursor belongs to another reader
+     */
+    protected static void checkCursor(Vertex vReader, FeedCursor cursor) {
+        if (cursor != null && cursor.getReaderId() != (long) vReader.getId()) {
+            throw new IllegalArgumentException(
+                    "feed cursor belongs to another reader");
+        }
+    }
+
+    protected StatusUpdateList readStatusUpdates(
+            Vertex vReader,
+            int numStatusUpdates) {
+        FeedCache feedCache = this.feedCache;
+        if (feedCache == null || numStatusUpdates > feedCache.getFeedLength()) {
+            return readStatusUpdates(vReader, numStatusUpdates, null)
+                    .getStatusUpdates();
+        }
+
+        long idReader = (long) vReader.getId();
+        List<StatusUpdate> statusUpdates =
+                feedCache.get(idReader, numStatusUpdates);
+        if (statusUpdates == null) {
+            // load the whole feed cached
+            long version = feedCache.getVersion();
+            StatusUpdatePage page =
+                    readStatusUpdates(vReader, feedCache.getFeedLength(), null);
+            statusUpdates = page.getStatusUpdateItems();
+            feedCache.put(idReader, loadFolloweeIds(vReader), statusUpdates,
+                    !page.hasNextPage(), version);
+            if (statusUpdates.size() > numStatusUpdates) {
+                statusUpdates = statusUpdates.subList(0, numStatusUpdates);
+            }
+        }
+        StatusUpdateList statusUpdateList = new StatusUpdateList();
+        for (StatusUpdate statusUpdate : statusUpdates) {
+            statusUpdateList.add(statusUpdate);
+        }
+        return statusUpdateList;
+    }
+
+    /**
+     * @return empty heap of the current thread to merge author streams
+     */
+    protected PostIteratorHeap getPostIteratorHeap() {
+        PostIteratorHeap postIterators = postIteratorHeaps.get();
+        postIterators.clear();
+        return postIterators;
+    }
+
+    /**
+     * Loads the users a user is following.
+     * 
+     * @param vReader
+     *            user vertex
+     * @return vertex identifiers of the users followed
+     */
+    protected long[] loadFolloweeIds(Vertex vReader) {
+        List<Long> followeeIds = new ArrayList<Long>();
+        for (Vertex vFollowed : vReader.getVertices(Direction.OUT,
+                EdgeType.FOLLOWS.getLabel())) {
+            TraversalCounter.traverseEdge();
+            // replica layer: follow the replica to the user replicated
+            for (Vertex vReplicated : vFollowed.getVertices(Direction.OUT,
+                    EdgeType.REPLICA.getLabel())) {
+                TraversalCounter.traverseEdge();
+                vFollowed = vReplicated;
+                break;
+            }
+            followeeIds.add((long) vFollowed.getId());
+        }
+        long[] result = new long[followeeIds.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = followeeIds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves a page of the news feed of a user.<br>
+     * The content messages of the status updates are loaded at once after the
+     * news feed entries have been merged.
+     * 
+     * @param vReader
+     *            user vertex of the reader
+     * @param numStatusUpdates
+     *            maximum number of status updates in the page
+     * @param cursor
+     *            merge state the previous page ended with or <b>null</b> to
+     *            retrieve the first page
+     * @return page of the reader's news feed
+     */
+    protected StatusUpdatePage readStatusUpdates(
             Vertex vReader,
-            int numStatusUpdates);
+            int numStatusUpdates,
+            FeedCursor cursor) {
+        FeedEntryPage page = readFeedEntries(vReader, numStatusUpdates, cursor);
+        List<FeedEntry> entries = page.getEntries();
+        long[] statusUpdateIds = new long[entries.size()];
+        for (int i = 0; i < statusUpdateIds.length; ++i) {
+            statusUpdateIds[i] = entries.get(i).getStatusUpdateId();
+        }
+        String[] messages = loadMessages(statusUpdateIds);
 
+        List<StatusUpdate> statusUpdates =
+                new ArrayList<StatusUpdate>(entries.size());
+        for (int i = 0; i < messages.length; ++i) {
+            if (messages[i] == null) {// concurrent graph modification
+                continue;
+            }
+            FeedEntry entry = entries.get(i);
+            statusUpdates.add(new StatusUpdate(String.valueOf(entry
+                    .getAuthorId()), entry.getPublished(), messages[i]));
+        }
+        return new StatusUpdatePage(statusUpdates, page.getFeedCursor());
+    }
+
+    /**
+     * Retrieves a page of the news feed of a user, consisting of lightweight
+     * entries. Content messages must not be loaded.
+     * 
+     * @param vReader
+     *            user vertex of the reader
+     * @param numEntries
+     *            maximum number of entries in the page
+     * @param cursor
+     *            merge state the previous page ended with or <b>null</b> to
+     *            retrieve the first page
+     * @return page of the reader's news feed
+     */
+    abstract protected FeedEntryPage readFeedEntries(
+            Vertex vReader,
+            int numEntries,
+            FeedCursor cursor);
+
+    /**
+     * Sets the unique Titan instance identifier.<br>
+     * Replaces the MUID generator, thus has to be called before any MUID is
+     * generated.
+     * 
+     * @param titanId
+     *            unique Titan instance identifier
+     */
     public static void setTitanId(byte titanId) {
         TITAN_ID = titanId;
+        MUID_GENERATOR =
+                new MuidGenerator(titanId, MUID_GENERATOR.getBlockSize());
+    }
+
+    /**
+     * Sets the number of MUIDs a thread reserves at once.<br>
+     * Replaces the MUID generator, thus has to be called before any MUID is
+     * generated.
+     * 
+     * @param blockSize
+     *            maximum number of MUIDs a thread reserves at once
+     */
+    public static void setMuidBlockSize(int blockSize) {
+        MUID_GENERATOR = new MuidGenerator(TITAN_ID, blockSize);
     }
 
     public static Muid generateMuid(UidType type)
             throws ServiceOverloadedException {
-        int timestamp = (int) (System.currentTimeMillis() / 1000);
-        short id = 0;
-        if (timestamp == LAST_MUID_CREATION_TIME) {
-            if (LAST_MUID_ID.intValue() == UidConverter.getMaximumMuidID()) {
-                // more than 65535 MUIDs / second
-                // we could separate this number by type
-                throw new ServiceOverloadedException(
-                        "Alreay created more then "
-                                + UidConverter.getMaximumMuidID()
-                                + " during the current second");
-            }
-            id = (short) LAST_MUID_ID.incrementAndGet();
-        } else {
-            LAST_MUID_ID.set(0);
-            LAST_MUID_CREATION_TIME = timestamp;
-        }
-        return Muid.createFromID(UidConverter.calculateMuidWithoutChecking(
-                type.getRawIdentifier(), TITAN_ID, timestamp, id));
+        return MUID_GENERATOR.generate(type);
     }
 }
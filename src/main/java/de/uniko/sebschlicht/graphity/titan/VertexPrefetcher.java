@@ -0,0 +1,154 @@
+package de.uniko.sebschlicht.graphity.titan;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.thinkaurelius.titan.core.TitanGraph;
+import com.thinkaurelius.titan.core.TitanMultiVertexQuery;
+import com.thinkaurelius.titan.core.TitanTransaction;
+import com.thinkaurelius.titan.core.TitanVertex;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.Vertex;
+
+import de.uniko.sebschlicht.graphity.titan.metrics.TraversalCounter;
+
+/**
+ * Loads adjacencies and properties of multiple vertices with a single backend
+ * request per hop.<br>
+ * The results are cached by the current transaction, so that subsequent
+ * accesses to the vertices, e.g. via {@link Walker} or the proxies, do not
+ * hit the storage backend anymore.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public abstract class VertexPrefetcher {
+
+    /**
+     * Walks along an edge type to the next vertex, for multiple vertices at
+     * once.
+     * 
+     * @param graphDb
+     *            graph database or transaction the vertices have been loaded
+     *            from
+     * @param sourceVertices
+     *            vertices to start from
+     * @param edgeLabel
+     *            label of the edge to walk along
+     * @return next vertex the edge specified directs to, per start vertex
+     *         having such an edge directing out
+     */
+    public static Map<Vertex, Vertex> nextVertices(
+            TransactionalGraph graphDb,
+            Collection<? extends Vertex> sourceVertices,
+            String edgeLabel) {
+        Map<Vertex, Vertex> nextVertices =
+                new HashMap<Vertex, Vertex>(sourceVertices.size() * 2);
+        List<TitanVertex> titanVertices = toTitanVertices(sourceVertices);
+        if (titanVertices == null) {
+            for (Vertex sourceVertex : sourceVertices) {
+                Vertex nextVertex = Walker.nextVertex(sourceVertex, edgeLabel);
+                if (nextVertex != null) {
+                    nextVertices.put(sourceVertex, nextVertex);
+                }
+            }
+            return nextVertices;
+        }
+        if (titanVertices.isEmpty()) {
+            return nextVertices;
+        }
+        TitanMultiVertexQuery<?> query = multiQuery(graphDb, titanVertices);
+        Map<TitanVertex, Iterable<TitanVertex>> adjacencies =
+                query.direction(Direction.OUT).labels(edgeLabel).vertices();
+        for (Map.Entry<TitanVertex, Iterable<TitanVertex>> adjacency : adjacencies
+                .entrySet()) {
+            for (TitanVertex nextVertex : adjacency.getValue()) {
+                TraversalCounter.traverseEdge();
+                nextVertices.put(adjacency.getKey(), nextVertex);
+                break;
+            }
+        }
+        return nextVertices;
+    }
+
+    /**
+     * Loads properties of multiple vertices at once.
+     * 
+     * @param graphDb
+     *            graph database or transaction the vertices have been loaded
+     *            from
+     * @param vertices
+     *            vertices to load the properties of
+     * @param keys
+     *            keys of the properties to load, all properties if none
+     */
+    public static void loadProperties(
+            TransactionalGraph graphDb,
+            Collection<? extends Vertex> vertices,
+            String... keys) {
+        List<TitanVertex> titanVertices = toTitanVertices(vertices);
+        if (titanVertices == null || titanVertices.isEmpty()) {
+            // properties are loaded on access
+            return;
+        }
+        TitanMultiVertexQuery<?> query = multiQuery(graphDb, titanVertices);
+        if (keys.length > 0) {
+            query.keys(keys);
+        }
+        query.properties();
+    }
+
+    /**
+     * Loads the newest status update of multiple users at once, including its
+     * properties.
+     * 
+     * @param graphDb
+     *            graph database or transaction the vertices have been loaded
+     *            from
+     * @param userVertices
+     *            user vertices
+     */
+    public static void loadNewestStatusUpdates(
+            TransactionalGraph graphDb,
+            Collection<? extends Vertex> userVertices) {
+        Map<Vertex, Vertex> statusUpdates =
+                nextVertices(graphDb, userVertices,
+                        EdgeType.PUBLISHED.getLabel());
+        loadProperties(graphDb, statusUpdates.values());
+    }
+
+    /**
+     * @return query on multiple vertices, in the explicit transaction if
+     *         specified or in the thread-bound transaction of the graph
+     *         database
+     */
+    protected static TitanMultiVertexQuery<?> multiQuery(
+            TransactionalGraph graphDb,
+            Collection<TitanVertex> vertices) {
+        if (graphDb instanceof TitanTransaction) {
+            return ((TitanTransaction) graphDb).multiQuery(vertices);
+        }
+        return ((TitanGraph) graphDb).multiQuery(vertices);
+    }
+
+    /**
+     * @return vertices casted to Titan vertices<br>
+     *         <b>null</b> - if any vertex is not a Titan vertex
+     */
+    protected static List<TitanVertex> toTitanVertices(
+            Collection<? extends Vertex> vertices) {
+        List<TitanVertex> titanVertices =
+                new ArrayList<TitanVertex>(vertices.size());
+        for (Vertex vertex : vertices) {
+            if (!(vertex instanceof TitanVertex)) {
+                return null;
+            }
+            titanVertices.add((TitanVertex) vertex);
+        }
+        return titanVertices;
+    }
+}
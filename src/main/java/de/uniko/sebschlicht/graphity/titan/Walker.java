@@ -1,9 +1,12 @@
 package de.uniko.sebschlicht.graphity.titan;
 
+import com.thinkaurelius.titan.core.Order;
+import com.thinkaurelius.titan.core.TitanVertex;
 import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Vertex;
 
+import de.uniko.sebschlicht.graphity.titan.metrics.TraversalCounter;
 import de.uniko.sebschlicht.graphity.titan.model.VersionedEdge;
 
 /**
@@ -27,6 +30,7 @@ public abstract class Walker {
     public static Vertex nextVertex(Vertex sourceVertex, String edgeLabel) {
         for (Vertex destinationNode : sourceVertex.getVertices(Direction.OUT,
                 edgeLabel)) {
+            TraversalCounter.traverseEdge();
             return destinationNode;
         }
         return null;
@@ -64,6 +68,7 @@ public abstract class Walker {
     public static Vertex previousVertex(Vertex sourceVertex, String edgeLabel) {
         for (Vertex destinationNode : sourceVertex.getVertices(Direction.IN,
                 edgeLabel)) {
+            TraversalCounter.traverseEdge();
             return destinationNode;
         }
         return null;
@@ -85,6 +90,7 @@ public abstract class Walker {
             Direction direction,
             String edgeLabel) {
         for (Edge edge : sourceVertex.getEdges(direction, edgeLabel)) {
+            TraversalCounter.scanEdge();
             edge.remove();
             break;
         }
@@ -92,7 +98,7 @@ public abstract class Walker {
 
     /**
      * Removes the most recent edge matching the given criteria retrieved by
-     * <i>getEdges</i>.
+     * <i>getMostRecentEdge</i>.
      * 
      * @param sourceVertex
      *            vertex to start from
@@ -112,13 +118,68 @@ public abstract class Walker {
         }
     }
 
+    /**
+     * Retrieves the most recent edge matching the given criteria. Uses the
+     * vertex-centric timestamp index if available, so that only a single edge
+     * is loaded.
+     * 
+     * @param sourceVertex
+     *            vertex to start from
+     * @param direction
+     *            direction the edge has for source vertex
+     * @param edgeLabel
+     *            label of the edge to retrieve
+     * @return edge with the highest timestamp or any edge if no edge is
+     *         versioned<br>
+     *         <b>null</b> - if the start vertex has no such edge
+     */
     public static VersionedEdge getMostRecentEdge(
             Vertex sourceVertex,
             Direction direction,
             String edgeLabel) {
-        //TODO should we use vertex-centric indices?
+        if (sourceVertex instanceof TitanVertex) {
+            try {
+                for (Edge edge : ((TitanVertex) sourceVertex).query()
+                        .labels(edgeLabel).direction(direction)
+                        .has(VersionedEdge.PROP_TIMESTAMP)
+                        .orderBy(VersionedEdge.PROP_TIMESTAMP, Order.DESC)
+                        .limit(1).edges()) {
+                    TraversalCounter.scanEdge();
+                    return new VersionedEdge(edge);
+                }
+                // there is no versioned edge
+                for (Edge edge : sourceVertex.getEdges(direction, edgeLabel)) {
+                    TraversalCounter.scanEdge();
+                    return new VersionedEdge(edge);
+                }
+                return null;
+            } catch (IllegalArgumentException e) {
+                // timestamp property is not defined in schema
+            }
+        }
+        return scanMostRecentEdge(sourceVertex, direction, edgeLabel);
+    }
+
+    /**
+     * Retrieves the most recent edge matching the given criteria by loading
+     * all of them.
+     * 
+     * @param sourceVertex
+     *            vertex to start from
+     * @param direction
+     *            direction the edge has for source vertex
+     * @param edgeLabel
+     *            label of the edge to retrieve
+     * @return edge with the highest timestamp<br>
+     *         <b>null</b> - if the start vertex has no such edge
+     */
+    protected static VersionedEdge scanMostRecentEdge(
+            Vertex sourceVertex,
+            Direction direction,
+            String edgeLabel) {
         VersionedEdge mostRecentEdge = null;
         for (Edge edge : sourceVertex.getEdges(direction, edgeLabel)) {
+            TraversalCounter.scanEdge();
             if (mostRecentEdge == null) {// first edge
                 mostRecentEdge = new VersionedEdge(edge);
             } else {// n-th edge
@@ -0,0 +1,290 @@
+package de.uniko.sebschlicht.graphity.titan.bootstrap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+
+/**
+ * Progress of a bootstrap that allows to resume it after a crash.<br>
+ * A checkpoint consists of the phase in progress, the chunks of this phase
+ * that have been committed and the timestamp of the first post. Node
+ * identifiers are allocated deterministically, hence they are not part of the
+ * checkpoint. The vertex identifier mapping is flushed before a checkpoint is
+ * written, so that it covers all chunks committed.<br>
+ * Checkpoints are written periodically and at the end of each phase. A file
+ * is replaced atomically by its successor.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class BootstrapCheckpoint {
+
+    /**
+     * default time in milliseconds between two checkpoints
+     */
+    public static final long DEFAULT_INTERVAL = 60000;
+
+    /**
+     * identifies checkpoint files of this format
+     */
+    protected static final int MAGIC = 0x47424350;
+
+    protected final File _file;
+
+    /**
+     * time in milliseconds between two checkpoints
+     */
+    protected final long _interval;
+
+    /**
+     * vertex identifier mapping to flush before writing a checkpoint
+     */
+    protected VertexIdMapper _vertexIds;
+
+    protected boolean _isGraphity;
+
+    protected int _numUsers;
+
+    protected int _chunkSize;
+
+    /**
+     * index of the phase in progress
+     */
+    protected int _phase;
+
+    /**
+     * chunks of the phase in progress that have been committed
+     */
+    protected BitSet _completedChunks;
+
+    protected int _numCompletedChunks;
+
+    /**
+     * timestamp of the first post, determined when the bootstrap starts
+     */
+    protected long _tsFirstPost;
+
+    /**
+     * index of the phase that was in progress when the checkpoint was loaded,
+     * -1 if the bootstrap has not been resumed
+     */
+    protected int _interruptedPhase;
+
+    protected long _lastWrite;
+
+    /**
+     * Creates a checkpoint for a new bootstrap.
+     * 
+     * @param file
+     *            file to write checkpoints to
+     * @param interval
+     *            time in milliseconds between two checkpoints
+     * @param isGraphity
+     *            whether the graph is loaded for ReadOptimizedGraphity
+     * @param numUsers
+     *            number of users to be loaded
+     * @param chunkSize
+     *            number of users per chunk
+     */
+    public BootstrapCheckpoint(
+            File file,
+            long interval,
+            boolean isGraphity,
+            int numUsers,
+            int chunkSize) {
+        _file = file;
+        _interval = interval;
+        _isGraphity = isGraphity;
+        _numUsers = numUsers;
+        _chunkSize = chunkSize;
+        _phase = 0;
+        _completedChunks = new BitSet();
+        _interruptedPhase = -1;
+        _lastWrite = System.currentTimeMillis();
+        // persisted with the first phase, before any post is created
+        _tsFirstPost = _lastWrite;
+    }
+
+    /**
+     * Loads the last checkpoint written to a file.
+     * 
+     * @param file
+     *            file checkpoints have been written to
+     * @param interval
+     *            time in milliseconds between two further checkpoints
+     * @param isGraphity
+     *            whether the graph is loaded for ReadOptimizedGraphity
+     * @param numUsers
+     *            number of users to be loaded
+     * @param chunkSize
+     *            number of users per chunk
+     * @return checkpoint to resume the bootstrap from
+     * @throws IOException
+     *             if the file could not be read
+     * @throws IllegalStateException
+     *             if the checkpoint belongs to a different bootstrap
+     */
+    public static BootstrapCheckpoint load(
+            File file,
+            long interval,
+            boolean isGraphity,
+            int numUsers,
+            int chunkSize) throws IOException {
+        BootstrapCheckpoint checkpoint =
+                new BootstrapCheckpoint(file, interval, isGraphity, numUsers,
+                        chunkSize);
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(
+                        new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalStateException("\"" + file
+                        + "\" is no bootstrap checkpoint");
+            }
+            if (in.readBoolean() != isGraphity || in.readInt() != numUsers
+                    || in.readInt() != chunkSize) {
+                throw new IllegalStateException("checkpoint \"" + file
+                        + "\" belongs to a different bootstrap");
+            }
+            checkpoint._phase = in.readInt();
+            checkpoint._tsFirstPost = in.readLong();
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; ++i) {
+                words[i] = in.readLong();
+            }
+            checkpoint._completedChunks = BitSet.valueOf(words);
+            checkpoint._numCompletedChunks =
+                    checkpoint._completedChunks.cardinality();
+        }
+        checkpoint._interruptedPhase = checkpoint._phase;
+        return checkpoint;
+    }
+
+    /**
+     * @param vertexIds
+     *            vertex identifier mapping to flush before writing a
+     *            checkpoint
+     */
+    public synchronized void setVertexIdMapper(VertexIdMapper vertexIds) {
+        _vertexIds = vertexIds;
+    }
+
+    /**
+     * @param phase
+     *            index of a phase
+     * @return true - if the phase has been interrupted, i.e. some of its
+     *         chunks may have been committed without being checkpointed
+     */
+    public boolean isInterrupted(int phase) {
+        return phase == _interruptedPhase;
+    }
+
+    /**
+     * @param phase
+     *            index of a phase
+     * @param iChunk
+     *            index of a chunk of the phase
+     * @return true - if the chunk has been committed
+     */
+    public synchronized boolean isCompleted(int phase, int iChunk) {
+        if (phase != _phase) {
+            return phase < _phase;
+        }
+        return _completedChunks.get(iChunk);
+    }
+
+    /**
+     * Marks a chunk as committed and writes a checkpoint if due.
+     * 
+     * @param phase
+     *            index of the phase in progress
+     * @param iChunk
+     *            index of the chunk committed
+     * @throws IOException
+     *             if the checkpoint could not be written
+     */
+    public synchronized void complete(int phase, int iChunk)
+            throws IOException {
+        if (phase != _phase || _completedChunks.get(iChunk)) {
+            return;
+        }
+        _completedChunks.set(iChunk);
+        _numCompletedChunks += 1;
+        if (System.currentTimeMillis() - _lastWrite >= _interval) {
+            write();
+        }
+    }
+
+    /**
+     * Marks a phase as finished and writes a checkpoint.
+     * 
+     * @param phase
+     *            index of the phase finished
+     * @throws IOException
+     *             if the checkpoint could not be written
+     */
+    public synchronized void finishPhase(int phase) throws IOException {
+        if (phase < _phase) {
+            return;
+        }
+        _phase = phase + 1;
+        _completedChunks.clear();
+        _numCompletedChunks = 0;
+        write();
+    }
+
+    /**
+     * @return timestamp of the first post
+     */
+    public long getFirstPostTimestamp() {
+        return _tsFirstPost;
+    }
+
+    /**
+     * Writes the current checkpoint, after flushing the vertex identifier
+     * mapping.
+     * 
+     * @throws IOException
+     *             if the checkpoint could not be written
+     */
+    public synchronized void write() throws IOException {
+        if (_vertexIds != null) {
+            _vertexIds.flush();
+        }
+        File tmpFile = new File(_file.getPath() + ".tmp");
+        FileOutputStream fileOut = new FileOutputStream(tmpFile);
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeInt(MAGIC);
+            out.writeBoolean(_isGraphity);
+            out.writeInt(_numUsers);
+            out.writeInt(_chunkSize);
+            out.writeInt(_phase);
+            out.writeLong(_tsFirstPost);
+            long[] words = _completedChunks.toLongArray();
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        Files.move(tmpFile.toPath(), _file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        _lastWrite = System.currentTimeMillis();
+        System.out.println("checkpoint: phase " + _phase + ", "
+                + _numCompletedChunks + " chunks");
+    }
+
+    public int getPhase() {
+        return _phase;
+    }
+}
@@ -0,0 +1,115 @@
+package de.uniko.sebschlicht.graphity.titan.bootstrap;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a single bootstrap phase.<br>
+ * Progress and throughput are reported whenever a number of users has been
+ * processed, workers may report their progress concurrently.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class BootstrapProgress {
+
+    /**
+     * default number of users processed between two reports
+     */
+    public static final long DEFAULT_INTERVAL = 100000;
+
+    protected final String _phase;
+
+    /**
+     * name of the items created in this phase
+     */
+    protected final String _unit;
+
+    /**
+     * number of users processed between two reports
+     */
+    protected final long _interval;
+
+    /**
+     * start of the phase in milliseconds
+     */
+    protected final long _start;
+
+    protected final AtomicLong _numUsers;
+
+    protected final AtomicLong _numItems;
+
+    /**
+     * number of users to be processed until the next report
+     */
+    protected final AtomicLong _nextReport;
+
+    /**
+     * Starts a bootstrap phase.
+     * 
+     * @param phase
+     *            name of the phase
+     * @param unit
+     *            name of the items created in this phase
+     * @param interval
+     *            number of users processed between two reports
+     */
+    public BootstrapProgress(
+            String phase,
+            String unit,
+            long interval) {
+        _phase = phase;
+        _unit = unit;
+        _interval = interval;
+        _start = System.currentTimeMillis();
+        _numUsers = new AtomicLong(0);
+        _numItems = new AtomicLong(0);
+        _nextReport = new AtomicLong(interval);
+        System.out.println(_phase + " started");
+    }
+
+    public BootstrapProgress(
+            String phase,
+            String unit) {
+        this(phase, unit, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Adds users processed and reports the progress if the next report is due.
+     * 
+     * @param numUsers
+     *            number of users processed
+     * @param numItems
+     *            number of items created for these users
+     */
+    public void add(long numUsers, long numItems) {
+        long users = _numUsers.addAndGet(numUsers);
+        long items = _numItems.addAndGet(numItems);
+        long nextReport = _nextReport.get();
+        if (users >= nextReport
+                && _nextReport.compareAndSet(nextReport, users + _interval)) {
+            report(users, items, "");
+        }
+    }
+
+    /**
+     * Reports the total progress of the phase.
+     */
+    public void finish() {
+        report(_numUsers.get(), _numItems.get(), " finished");
+    }
+
+    protected void report(long numUsers, long numItems, String suffix) {
+        long duration = Math.max(System.currentTimeMillis() - _start, 1);
+        System.out.println(_phase + suffix + ": " + numUsers + " users, "
+                + numItems + " " + _unit + " in " + duration + "ms ("
+                + (numItems * 1000 / duration) + " " + _unit + "/s)");
+    }
+
+    public long getNumUsers() {
+        return _numUsers.get();
+    }
+
+    public long getNumItems() {
+        return _numItems.get();
+    }
+}
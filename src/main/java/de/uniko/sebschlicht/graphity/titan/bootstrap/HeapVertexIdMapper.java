@@ -0,0 +1,51 @@
+package de.uniko.sebschlicht.graphity.titan.bootstrap;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Vertex identifier mapping held in a concurrent hash map on the heap.<br>
+ * Suitable for small graphs only, as each mapping costs two boxed Longs and
+ * a map entry. The mappings are not persisted.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class HeapVertexIdMapper implements VertexIdMapper {
+
+    protected final ConcurrentHashMap<Long, Long> _vertexIds;
+
+    public HeapVertexIdMapper() {
+        _vertexIds = new ConcurrentHashMap<Long, Long>();
+    }
+
+    @Override
+    public void put(long nodeId, long vertexId) {
+        _vertexIds.put(nodeId, vertexId);
+    }
+
+    @Override
+    public long get(long nodeId) {
+        Long vertexId = _vertexIds.get(nodeId);
+        return (vertexId != null) ? vertexId : 0;
+    }
+
+    @Override
+    public long size() {
+        return _vertexIds.size();
+    }
+
+    @Override
+    public void flush() {
+        // mappings are not persisted
+    }
+
+    @Override
+    public void flush(long firstNodeId, long lastNodeId) {
+        // mappings are not persisted
+    }
+
+    @Override
+    public void close() {
+        _vertexIds.clear();
+    }
+}
@@ -0,0 +1,313 @@
+package de.uniko.sebschlicht.graphity.titan.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Vertex identifier mapping held in a primitive open-addressing hash table
+ * outside of the heap.<br>
+ * The table is stored in direct buffers or, if a file is specified, in a
+ * memory-mapped file. Its capacity is fixed, hence the memory needed is known
+ * in advance and does not depend on the garbage collector. Each slot holds a
+ * node identifier and a vertex identifier, collisions are resolved via linear
+ * probing.<br>
+ * Insertions are serialized, lookups are lock-free. This is safe since
+ * mappings are never removed and a node identifier is looked up only after
+ * the phase mapping it has finished.<br>
+ * A table in a memory-mapped file can be flushed and reopened to resume an
+ * interrupted bootstrap.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class OffHeapVertexIdMapper implements VertexIdMapper {
+
+    /**
+     * number of bytes per slot
+     */
+    protected static final int SLOT_SIZE = 16;
+
+    /**
+     * number of slots per segment as power of two, a segment must not exceed
+     * the maximum buffer size
+     */
+    protected static final int SEGMENT_BITS = 26;
+
+    protected static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    /**
+     * maximum ratio of occupied slots
+     */
+    protected static final double MAX_LOAD_FACTOR = 0.75;
+
+    /**
+     * table segments, each holding 2^SEGMENT_BITS slots at most
+     */
+    protected final ByteBuffer[] _segments;
+
+    /**
+     * number of slots - 1, the number of slots is a power of two
+     */
+    protected final long _mask;
+
+    /**
+     * maximum number of mappings
+     */
+    protected final long _capacity;
+
+    protected final RandomAccessFile _file;
+
+    protected long _size;
+
+    /**
+     * Creates a mapper in direct buffers.
+     * 
+     * @param capacity
+     *            maximum number of mappings
+     */
+    public OffHeapVertexIdMapper(
+            long capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * Creates a mapper in a memory-mapped file. The file is overwritten.
+     * 
+     * @param capacity
+     *            maximum number of mappings
+     * @param file
+     *            file to store the table in or <b>null</b> to use direct
+     *            buffers
+     * @throws IllegalStateException
+     *             if the file could not be mapped
+     */
+    public OffHeapVertexIdMapper(
+            long capacity,
+            File file) {
+        this(capacity, file, false);
+    }
+
+    /**
+     * Creates a mapper in a memory-mapped file.
+     * 
+     * @param capacity
+     *            maximum number of mappings
+     * @param file
+     *            file to store the table in or <b>null</b> to use direct
+     *            buffers
+     * @param reuse
+     *            true - to reopen the table stored in the file<br>
+     *            false - to overwrite the file
+     * @throws IllegalStateException
+     *             if the file could not be mapped or does not contain a
+     *             table of this capacity
+     */
+    public OffHeapVertexIdMapper(
+            long capacity,
+            File file,
+            boolean reuse) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        long numSlots =
+                Long.highestOneBit((long) (capacity / MAX_LOAD_FACTOR)) << 1;
+        _mask = numSlots - 1;
+        _capacity = capacity;
+        int numSegments = (int) ((numSlots + SEGMENT_MASK) >>> SEGMENT_BITS);
+        _segments = new ByteBuffer[numSegments];
+        long segmentSize = Math.min(numSlots, SEGMENT_MASK + 1) * SLOT_SIZE;
+        try {
+            if (file != null) {
+                _file = new RandomAccessFile(file, "rw");
+                if (!reuse) {
+                    _file.setLength(0);
+                    _file.setLength(numSlots * SLOT_SIZE);
+                } else if (_file.length() != numSlots * SLOT_SIZE) {
+                    _file.close();
+                    throw new IllegalStateException("vertex id mapping \""
+                            + file + "\" does not match the capacity "
+                            + capacity);
+                }
+                FileChannel channel = _file.getChannel();
+                for (int i = 0; i < numSegments; ++i) {
+                    _segments[i] =
+                            channel.map(FileChannel.MapMode.READ_WRITE, i
+                                    * segmentSize, segmentSize);
+                }
+            } else {
+                _file = null;
+                for (int i = 0; i < numSegments; ++i) {
+                    // direct buffers are zeroed
+                    _segments[i] = ByteBuffer.allocateDirect((int) segmentSize);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to map vertex identifiers",
+                    e);
+        }
+        for (ByteBuffer segment : _segments) {
+            segment.order(ByteOrder.nativeOrder());
+        }
+        if (reuse) {
+            for (long slot = 0; slot <= _mask; ++slot) {
+                if (getKey(slot) != 0) {
+                    _size += 1;
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void put(long nodeId, long vertexId) {
+        if (nodeId <= 0) {
+            throw new IllegalArgumentException(
+                    "node identifier must be positive");
+        }
+        long slot = hash(nodeId) & _mask;
+        long key;
+        while ((key = getKey(slot)) != 0 && key != nodeId) {
+            slot = (slot + 1) & _mask;
+        }
+        if (key == 0) {
+            if (_size == _capacity) {
+                throw new IllegalStateException("vertex id mapper is full ("
+                        + _capacity + " mappings)");
+            }
+            _size += 1;
+        }
+        ByteBuffer segment = _segments[(int) (slot >>> SEGMENT_BITS)];
+        int offset = (int) (slot & SEGMENT_MASK) * SLOT_SIZE;
+        // value first, a lookup must not see a key without its value
+        segment.putLong(offset + 8, vertexId);
+        segment.putLong(offset, nodeId);
+    }
+
+    @Override
+    public long get(long nodeId) {
+        long slot = findSlot(nodeId);
+        if (slot < 0) {
+            return 0;
+        }
+        ByteBuffer segment = _segments[(int) (slot >>> SEGMENT_BITS)];
+        return segment.getLong((int) (slot & SEGMENT_MASK) * SLOT_SIZE + 8);
+    }
+
+    @Override
+    public synchronized long size() {
+        return _size;
+    }
+
+    /**
+     * @return maximum number of mappings
+     */
+    public long getCapacity() {
+        return _capacity;
+    }
+
+    /**
+     * @return number of bytes occupied by the table
+     */
+    public long getTableSize() {
+        return (_mask + 1) * SLOT_SIZE;
+    }
+
+    /**
+     * Writes the table to its file, if memory-mapped.
+     */
+    @Override
+    public synchronized void flush() {
+        if (_file == null) {
+            return;
+        }
+        for (ByteBuffer segment : _segments) {
+            ((MappedByteBuffer) segment).force();
+        }
+    }
+
+    /**
+     * Writes the segments holding the mappings of a range of node identifiers
+     * to the file, if memory-mapped. Since node identifiers are spread across
+     * the table, each segment containing a mapping of the range is written
+     * entirely.<br>
+     * Mappings may be added concurrently, they are written if they reside in
+     * one of the segments.
+     */
+    @Override
+    public void flush(long firstNodeId, long lastNodeId) {
+        if (_file == null) {
+            return;
+        }
+        boolean[] isDirty = new boolean[_segments.length];
+        for (long nodeId = firstNodeId; nodeId <= lastNodeId; ++nodeId) {
+            long slot = findSlot(nodeId);
+            if (slot >= 0) {
+                isDirty[(int) (slot >>> SEGMENT_BITS)] = true;
+            }
+        }
+        for (int i = 0; i < _segments.length; ++i) {
+            if (isDirty[i]) {
+                ((MappedByteBuffer) _segments[i]).force();
+            }
+        }
+    }
+
+    /**
+     * @return true - if the table is stored in a file and can be reopened
+     */
+    public boolean isPersistent() {
+        return _file != null;
+    }
+
+    /**
+     * Releases the table. The memory of direct buffers and mapped files is
+     * freed when the buffers are garbage collected.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (_file != null) {
+            _file.close();
+        }
+        for (int i = 0; i < _segments.length; ++i) {
+            _segments[i] = null;
+        }
+    }
+
+    /**
+     * @param nodeId
+     *            node identifier
+     * @return slot holding the node identifier<br>
+     *         -1 - if the node identifier is not mapped
+     */
+    protected long findSlot(long nodeId) {
+        if (nodeId <= 0) {
+            return -1;
+        }
+        long slot = hash(nodeId) & _mask;
+        long key;
+        while ((key = getKey(slot)) != 0) {
+            if (key == nodeId) {
+                return slot;
+            }
+            slot = (slot + 1) & _mask;
+        }
+        return -1;
+    }
+
+    protected long getKey(long slot) {
+        ByteBuffer segment = _segments[(int) (slot >>> SEGMENT_BITS)];
+        return segment.getLong((int) (slot & SEGMENT_MASK) * SLOT_SIZE);
+    }
+
+    /**
+     * spreads sequential node identifiers across the table
+     */
+    protected static long hash(long nodeId) {
+        long hash = nodeId * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 32);
+    }
+}
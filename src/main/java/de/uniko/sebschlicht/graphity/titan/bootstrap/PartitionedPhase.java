@@ -0,0 +1,369 @@
+package de.uniko.sebschlicht.graphity.titan.bootstrap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.thinkaurelius.titan.core.TitanGraph;
+import com.thinkaurelius.titan.core.TitanTransaction;
+
+import de.uniko.sebschlicht.graphity.bootstrap.User;
+
+/**
+ * Bootstrap phase processing the users in parallel.<br>
+ * The users are partitioned into chunks that are distributed among a number
+ * of worker threads. Each chunk is written in its own batch loading
+ * transaction, hence the phase must not depend on elements written by other
+ * chunks of the same phase.<br>
+ * Phases creating vertices allocate a contiguous range of node identifiers
+ * per chunk upfront. Thus the node identifiers of a vertex can be derived from
+ * the position of its user and do not have to be stored per user.<br>
+ * If a checkpoint is set, chunks committed are recorded. When resuming,
+ * chunks recorded are replayed in memory only, chunks of the interrupted
+ * phase that have been committed but not recorded are detected via the graph,
+ * by the first and the last element of the chunk.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public abstract class PartitionedPhase {
+
+    protected final TitanGraph _graph;
+
+    protected final List<User> _userList;
+
+    /**
+     * number of users per chunk
+     */
+    protected final int _chunkSize;
+
+    protected final BootstrapProgress _progress;
+
+    /**
+     * index of the next chunk to be processed
+     */
+    protected final AtomicInteger _nextChunk;
+
+    /**
+     * first node identifier per chunk, if the phase creates vertices
+     */
+    protected long[] _firstNodeIds;
+
+    /**
+     * node identifier following the last identifier allocated
+     */
+    protected long _endNodeId;
+
+    /**
+     * checkpoint to record the chunks committed, <b>null</b> if disabled
+     */
+    protected BootstrapCheckpoint _checkpoint;
+
+    /**
+     * index of this phase in the bootstrap
+     */
+    protected int _phase;
+
+    /**
+     * Creates a bootstrap phase.
+     * 
+     * @param graph
+     *            graph database to write to
+     * @param users
+     *            users to be processed
+     * @param chunkSize
+     *            number of users per chunk, committed at once
+     * @param progress
+     *            progress of the phase
+     */
+    public PartitionedPhase(
+            TitanGraph graph,
+            List<User> users,
+            int chunkSize,
+            BootstrapProgress progress) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+        _graph = graph;
+        _userList = users;
+        _chunkSize = chunkSize;
+        _progress = progress;
+        _nextChunk = new AtomicInteger(0);
+    }
+
+    /**
+     * Records the chunks committed in a checkpoint and skips the chunks
+     * recorded already.
+     * 
+     * @param checkpoint
+     *            bootstrap checkpoint
+     * @param phase
+     *            index of this phase in the bootstrap
+     */
+    public void setCheckpoint(BootstrapCheckpoint checkpoint, int phase) {
+        _checkpoint = checkpoint;
+        _phase = phase;
+    }
+
+    /**
+     * Processes all users and waits for the workers to finish.
+     * 
+     * @param numWorkers
+     *            number of worker threads
+     * @return number of items created
+     * @throws IllegalStateException
+     *             if a worker failed or the phase has been interrupted
+     */
+    public long run(int numWorkers) {
+        ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+        List<Future<Long>> workers = new ArrayList<Future<Long>>(numWorkers);
+        for (int i = 0; i < numWorkers; ++i) {
+            workers.add(executor.submit(new Worker()));
+        }
+        long numItems = 0;
+        try {
+            for (Future<Long> worker : workers) {
+                numItems += worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("bootstrap phase interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("bootstrap phase failed",
+                    e.getCause());
+        } finally {
+            // stops remaining workers if a worker failed
+            executor.shutdownNow();
+        }
+        if (_checkpoint != null) {
+            try {
+                _checkpoint.finishPhase(_phase);
+            } catch (IOException e) {
+                throw new IllegalStateException("failed to write checkpoint",
+                        e);
+            }
+        }
+        _progress.finish();
+        return numItems;
+    }
+
+    /**
+     * Allocates the node identifiers of the vertices created in this phase,
+     * in the order of the users.
+     * 
+     * @param firstNodeId
+     *            first node identifier to allocate
+     * @return node identifier following the last identifier allocated
+     */
+    public long allocateNodeIds(long firstNodeId) {
+        _firstNodeIds = new long[getNumChunks()];
+        long nodeId = firstNodeId;
+        for (int i = 0; i < _userList.size(); ++i) {
+            if (i % _chunkSize == 0) {
+                _firstNodeIds[i / _chunkSize] = nodeId;
+            }
+            nodeId += getNumVertices(_userList.get(i));
+        }
+        _endNodeId = nodeId;
+        return nodeId;
+    }
+
+    /**
+     * @param iChunk
+     *            index of the chunk
+     * @return last node identifier allocated for the chunk, less than its
+     *         first node identifier if the chunk creates no vertices
+     */
+    protected long getLastNodeId(int iChunk) {
+        if (iChunk + 1 < _firstNodeIds.length) {
+            return _firstNodeIds[iChunk + 1] - 1;
+        }
+        return _endNodeId - 1;
+    }
+
+    /**
+     * @param user
+     *            user to be processed
+     * @return number of vertices created for the user, 0 by default
+     */
+    protected long getNumVertices(User user) {
+        return 0;
+    }
+
+    /**
+     * @return number of chunks the users are partitioned into
+     */
+    public int getNumChunks() {
+        return (_userList.size() + _chunkSize - 1) / _chunkSize;
+    }
+
+    /**
+     * Processes a chunk of users without committing.
+     * 
+     * @param tx
+     *            batch loading transaction of the chunk
+     * @param users
+     *            users of the chunk
+     * @param iChunk
+     *            index of the chunk
+     * @return number of items created
+     */
+    abstract protected long processChunk(
+            TitanTransaction tx,
+            List<User> users,
+            int iChunk);
+
+    /**
+     * Applies the changes of a chunk committed before to the users, without
+     * writing to the graph.
+     * 
+     * @param users
+     *            users of the chunk
+     * @param iChunk
+     *            index of the chunk
+     * @return number of items created by the chunk
+     */
+    protected long replayChunk(List<User> users, int iChunk) {
+        return 0;
+    }
+
+    /**
+     * Called before the transaction of a chunk is committed, e.g. to persist
+     * data needed to detect the commit when resuming.
+     * 
+     * @param users
+     *            users of the chunk
+     * @param iChunk
+     *            index of the chunk
+     * @throws IOException
+     *             if the data could not be persisted
+     */
+    protected void beforeCommit(List<User> users, int iChunk)
+            throws IOException {
+        // nothing to persist by default
+    }
+
+    /**
+     * Checks whether a chunk of an interrupted phase has been committed.
+     * 
+     * @param tx
+     *            transaction checking the existence of vertices
+     * @param users
+     *            users of the chunk
+     * @param iChunk
+     *            index of the chunk
+     * @return true - if the chunk has been committed<br>
+     *         false - if the chunk has not been committed or writes nothing
+     */
+    protected boolean isCommitted(
+            TitanTransaction tx,
+            List<User> users,
+            int iChunk) {
+        return false;
+    }
+
+    /**
+     * Decides whether a chunk has been committed, given the state of its
+     * first and last element.
+     * 
+     * @param iChunk
+     *            index of the chunk
+     * @param isFirstCommitted
+     *            true - if the first element of the chunk exists
+     * @param isLastCommitted
+     *            true - if the last element of the chunk exists
+     * @return true - if both elements exist<br>
+     *         false - if neither element exists
+     * @throws IllegalStateException
+     *             if only one of the elements exists, i.e. the chunk has
+     *             been committed partially and can neither be skipped nor
+     *             written again
+     */
+    protected boolean isCommitted(
+            int iChunk,
+            boolean isFirstCommitted,
+            boolean isLastCommitted) {
+        if (isFirstCommitted != isLastCommitted) {
+            throw new IllegalStateException("chunk " + iChunk + " of phase "
+                    + _phase + " has been committed partially");
+        }
+        return isFirstCommitted;
+    }
+
+    /**
+     * @return true - if the chunk has been committed before
+     */
+    protected boolean isCompleted(List<User> users, int iChunk) {
+        if (_checkpoint == null) {
+            return false;
+        }
+        if (_checkpoint.isCompleted(_phase, iChunk)) {
+            return true;
+        }
+        if (!_checkpoint.isInterrupted(_phase)) {
+            return false;
+        }
+        TitanTransaction tx = _graph.newTransaction();
+        try {
+            return isCommitted(tx, users, iChunk);
+        } finally {
+            tx.rollback();
+        }
+    }
+
+    /**
+     * worker processing chunks until all chunks have been taken
+     */
+    protected class Worker implements Callable<Long> {
+
+        @Override
+        public Long call() throws IOException {
+            long numItems = 0;
+            int numChunks = getNumChunks();
+            int iChunk;
+            while ((iChunk = _nextChunk.getAndIncrement()) < numChunks) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new IllegalStateException("worker interrupted");
+                }
+                int from = iChunk * _chunkSize;
+                int to = Math.min(from + _chunkSize, _userList.size());
+                List<User> users = _userList.subList(from, to);
+                if (isCompleted(users, iChunk)) {
+                    long numChunkItems = replayChunk(users, iChunk);
+                    numItems += numChunkItems;
+                    _progress.add(users.size(), numChunkItems);
+                    if (_checkpoint != null) {
+                        _checkpoint.complete(_phase, iChunk);
+                    }
+                    continue;
+                }
+
+                TitanTransaction tx =
+                        _graph.buildTransaction().enableBatchLoading().start();
+                long numChunkItems;
+                try {
+                    numChunkItems = processChunk(tx, users, iChunk);
+                    // a chunk committed must be detectable when resuming
+                    beforeCommit(users, iChunk);
+                    tx.commit();
+                } finally {
+                    if (tx.isOpen()) {
+                        tx.rollback();
+                    }
+                }
+                numItems += numChunkItems;
+                _progress.add(users.size(), numChunkItems);
+                if (_checkpoint != null) {
+                    _checkpoint.complete(_phase, iChunk);
+                }
+            }
+            return numItems;
+        }
+    }
+}
@@ -4,37 +4,183 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Comparator;
+import java.util.List;
 
+import com.thinkaurelius.titan.core.EdgeLabel;
 import com.thinkaurelius.titan.core.Multiplicity;
+import com.thinkaurelius.titan.core.Order;
 import com.thinkaurelius.titan.core.PropertyKey;
 import com.thinkaurelius.titan.core.TitanFactory;
 import com.thinkaurelius.titan.core.TitanGraph;
+import com.thinkaurelius.titan.core.TitanTransaction;
+import com.thinkaurelius.titan.core.schema.ConsistencyModifier;
 import com.thinkaurelius.titan.core.schema.TitanManagement;
+import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Vertex;
-import com.tinkerpop.blueprints.util.wrappers.batch.BatchGraph;
-import com.tinkerpop.blueprints.util.wrappers.batch.VertexIDType;
 
 import de.uniko.sebschlicht.graphity.bootstrap.BootstrapClient;
 import de.uniko.sebschlicht.graphity.bootstrap.User;
 import de.uniko.sebschlicht.graphity.titan.EdgeType;
 import de.uniko.sebschlicht.graphity.titan.model.StatusUpdateProxy;
 import de.uniko.sebschlicht.graphity.titan.model.UserProxy;
+import de.uniko.sebschlicht.graphity.titan.model.VersionedEdge;
 
+/**
+ * Bootstrap client loading a social network into Titan.<br>
+ * The users are partitioned among a number of workers, each writing in its
+ * own batch loading transactions. Vertices are resolved via a shared
+ * {@link VertexIdMapper}, by default a primitive table outside of the heap
+ * sized for the network to be loaded.<br>
+ * Node identifiers are allocated per chunk in the order of the users, hence
+ * the identifiers of replicas are derived from their user's identifier
+ * instead of being held in memory.<br>
+ * If a checkpoint file is set, the progress is recorded to allow resuming an
+ * interrupted bootstrap. This requires the vertex identifier mapping to be
+ * stored in a file.
+ * 
+ * @author sebschlicht
+ * 
+ */
 public class TitanBootstrapper extends BootstrapClient {
 
-    private long _vertexId;
+    /**
+     * number of users per chunk committed at once by a worker
+     */
+    public static final int CHUNK_SIZE = 1000;
 
-    private long _edgeId;
+    public static final int PHASE_USERS = 0;
 
-    private BatchGraph<TitanGraph> _batchGraph;
+    public static final int PHASE_SUBSCRIPTIONS = 1;
+
+    public static final int PHASE_POSTS = 2;
+
+    public static final int PHASE_LINKS = 3;
+
+    private final TitanGraph _graph;
+
+    /**
+     * number of worker threads
+     */
+    private final int _numWorkers;
+
+    /**
+     * next node identifier to allocate
+     */
+    private long _nextNodeId;
+
+    /**
+     * Titan vertex identifiers per node identifier
+     */
+    private VertexIdMapper _vertexIds;
+
+    /**
+     * file to store the vertex identifier mapping in, <b>null</b> to keep it
+     * in memory
+     */
+    private File _idMappingFile;
+
+    /**
+     * users in the order they are partitioned
+     */
+    private List<User> _userList;
+
+    /**
+     * file to record the progress in, <b>null</b> to disable checkpoints
+     */
+    private File _checkpointFile;
+
+    /**
+     * whether to resume from the checkpoint file
+     */
+    private boolean _resume;
+
+    private BootstrapCheckpoint _checkpoint;
 
     public TitanBootstrapper(
             String configPath,
             boolean isGraphity) {
+        this(configPath, isGraphity, 1);
+    }
+
+    /**
+     * Creates a bootstrap client.
+     * 
+     * @param configPath
+     *            path to the Titan configuration file
+     * @param isGraphity
+     *            true - to load the graph for ReadOptimizedGraphity<br>
+     *            false - to load the graph for WriteOptimizedGraphity
+     * @param numWorkers
+     *            number of worker threads writing in parallel
+     */
+    public TitanBootstrapper(
+            String configPath,
+            boolean isGraphity,
+            int numWorkers) {
         super(isGraphity);
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException(
+                    "number of workers must be positive");
+        }
         TitanGraph graph = TitanFactory.open(configPath);
+        if (!createSchema(graph)) {
+            System.out.println("Graph schema was not created.");
+        }
+
+        _graph = graph;
+        _numWorkers = numWorkers;
+        _nextNodeId = 1;
+    }
+
+    /**
+     * Sets the mapper used to resolve vertices. If none is set, an off-heap
+     * mapper is created for the network to be loaded.
+     * 
+     * @param vertexIds
+     *            vertex identifier mapper
+     */
+    public void setVertexIdMapper(VertexIdMapper vertexIds) {
+        _vertexIds = vertexIds;
+    }
+
+    /**
+     * Stores the default vertex identifier mapping in a memory-mapped file
+     * instead of direct buffers.
+     * 
+     * @param idMappingFile
+     *            file to store the mapping in, is overwritten
+     */
+    public void setIdMappingFile(File idMappingFile) {
+        _idMappingFile = idMappingFile;
+    }
+
+    /**
+     * Records the progress of the bootstrap in a checkpoint file. Requires an
+     * identifier mapping file to be set.
+     * 
+     * @param checkpointFile
+     *            file to write checkpoints to
+     * @param resume
+     *            true - to resume the bootstrap recorded in the file<br>
+     *            false - to start a new bootstrap
+     */
+    public void setCheckpointFile(File checkpointFile, boolean resume) {
+        _checkpointFile = checkpointFile;
+        _resume = resume;
+    }
+
+    /**
+     * Creates the edge labels, property keys and indices used by the Graphity
+     * implementations.
+     * 
+     * @param graph
+     *            Titan graph database to create the schema in
+     * @return true - if the schema has been created<br>
+     *         false - if the schema could not be created, e.g. because it is
+     *         already existing
+     */
+    public static boolean createSchema(TitanGraph graph) {
         TitanManagement mgmt = graph.getManagementSystem();
         try {
             // create edge labels
@@ -42,10 +188,13 @@ public class TitanBootstrapper extends BootstrapClient {
                     .multiplicity(Multiplicity.SIMPLE).make();
             mgmt.makeEdgeLabel(EdgeType.FOLLOWS.getLabel())
                     .multiplicity(Multiplicity.MULTI).make();
-            mgmt.makeEdgeLabel(EdgeType.GRAPHITY.getLabel())
-                    .multiplicity(Multiplicity.SIMPLE).make();
+            EdgeLabel graphityLabel =
+                    mgmt.makeEdgeLabel(EdgeType.GRAPHITY.getLabel())
+                            .multiplicity(Multiplicity.MULTI).make();
             mgmt.makeEdgeLabel(EdgeType.REPLICA.getLabel())
                     .multiplicity(Multiplicity.MULTI).make();
+            mgmt.makeEdgeLabel(EdgeType.PULL.getLabel())
+                    .multiplicity(Multiplicity.SIMPLE).make();
 
             // create vertex properties and indices
             PropertyKey userIdKey =
@@ -53,51 +202,275 @@ public class TitanBootstrapper extends BootstrapClient {
                             .dataType(Long.class).make();
             mgmt.makePropertyKey(UserProxy.PROP_LAST_STREAM_UDPATE)
                     .dataType(Long.class).make();
+            PropertyKey numFollowersKey =
+                    mgmt.makePropertyKey(UserProxy.PROP_NUM_FOLLOWERS)
+                            .dataType(Long.class).make();
+            // concurrent followship changes must not lose counter updates
+            mgmt.setConsistency(numFollowersKey, ConsistencyModifier.LOCK);
+            mgmt.makePropertyKey(UserProxy.PROP_PULLED)
+                    .dataType(Boolean.class).make();
+            mgmt.makePropertyKey(UserProxy.PROP_CONVERTED)
+                    .dataType(Boolean.class).make();
             mgmt.makePropertyKey(StatusUpdateProxy.PROP_PUBLISHED)
                     .dataType(Long.class).make();
             mgmt.makePropertyKey(StatusUpdateProxy.PROP_MESSAGE)
                     .dataType(String.class).make();
 
+            // create edge properties and indices
+            PropertyKey timestampKey =
+                    mgmt.makePropertyKey(VersionedEdge.PROP_TIMESTAMP)
+                            .dataType(Long.class).make();
+
             // create user identifier index
             mgmt.buildIndex("user.id", Vertex.class).addKey(userIdKey).unique()
                     .buildCompositeIndex();
 
+            // create vertex-centric index to retrieve most recent edges
+            mgmt.buildEdgeIndex(graphityLabel, "versionedGraphity",
+                    Direction.OUT, Order.DESC, timestampKey);
+
             mgmt.commit();
+            return true;
         } catch (Exception e) {
-            System.out.println("Graph schema was not created.");
             mgmt.rollback();
+            return false;
         }
-
-        _vertexId = 1;
-        _edgeId = 1;
-        _batchGraph = new BatchGraph<>(graph, VertexIDType.NUMBER, 100000);
     }
 
     public void shutdown() {
-        _batchGraph.shutdown();
+        if (_checkpoint != null) {
+            try {
+                _checkpoint.write();
+            } catch (IOException e) {
+                System.err.println("failed to write checkpoint: "
+                        + e.getMessage());
+            }
+        }
+        _graph.shutdown();
+        if (_vertexIds != null) {
+            try {
+                _vertexIds.close();
+            } catch (IOException e) {
+                System.err.println("failed to release vertex id mapping: "
+                        + e.getMessage());
+            }
+        }
     }
 
     @Override
     protected long createUsers() {
-        long numUsers = 0, nodeId;
-        Vertex vertex;
-        Map<String, Object> userProperties;
-        ArrayList<User> tmp = new ArrayList<>();
-        Map<String, Object> noprops = new HashMap<>();
-        for (User user : _users.getUsers()) {
-            userProperties = new HashMap<>();
-            userProperties.put(UserProxy.PROP_IDENTIFIER, user.getId());
-            vertex = _batchGraph.addVertex(_vertexId++, userProperties);
-            nodeId = (long) vertex.getId();
-            user.setNodeId(nodeId);
-            numUsers += 1;
-
-            if (_isGraphity) {
+        _userList = new ArrayList<User>(_users.getUsers());
+        // node identifiers must not change when resuming
+        Collections.sort(_userList, new Comparator<User>() {
+
+            @Override
+            public int compare(User u1, User u2) {
+                return Long.compare(u1.getId(), u2.getId());
+            }
+        });
+        boolean resume = _resume && _checkpointFile != null;
+        if (_checkpointFile != null && _idMappingFile == null) {
+            throw new IllegalStateException(
+                    "checkpoints require a vertex id mapping file");
+        }
+        if (_vertexIds == null) {
+            long numVertices = countVertices();
+            _vertexIds =
+                    new OffHeapVertexIdMapper(numVertices, _idMappingFile,
+                            resume);
+            System.out.println("vertex id mapping: " + numVertices
+                    + " vertices, "
+                    + ((OffHeapVertexIdMapper) _vertexIds).getTableSize()
+                    + " bytes");
+        } else if (_checkpointFile != null) {
+            throw new IllegalStateException(
+                    "checkpoints require the default vertex id mapping");
+        }
+        if (_checkpointFile != null) {
+            try {
+                _checkpoint = loadCheckpoint(resume);
+            } catch (IOException e) {
+                throw new IllegalStateException("failed to load checkpoint",
+                        e);
+            }
+            _checkpoint.setVertexIdMapper(_vertexIds);
+        }
+
+        BootstrapProgress progress = new BootstrapProgress("users", "vertices");
+        UserCreation phase = new UserCreation(progress);
+        _nextNodeId = phase.allocateNodeIds(_nextNodeId);
+        setCheckpoint(phase, PHASE_USERS);
+        phase.run(_numWorkers);
+        return progress.getNumUsers();
+    }
+
+    @Override
+    protected long createSubscriptions() {
+        SubscriptionCreation phase =
+                new SubscriptionCreation(new BootstrapProgress(
+                        "subscriptions", "subscriptions"));
+        setCheckpoint(phase, PHASE_SUBSCRIPTIONS);
+        return phase.run(_numWorkers);
+    }
+
+    @Override
+    protected long createPosts() {
+        PostCreation phase =
+                new PostCreation(new BootstrapProgress("posts", "posts"));
+        _nextNodeId = phase.allocateNodeIds(_nextNodeId);
+        setCheckpoint(phase, PHASE_POSTS);
+        return phase.run(_numWorkers);
+    }
+
+    @Override
+    protected long linkPosts() {
+        PostLinking phase =
+                new PostLinking(new BootstrapProgress("post links", "posts"));
+        setCheckpoint(phase, PHASE_LINKS);
+        return phase.run(_numWorkers);
+    }
+
+    /**
+     * Creates a checkpoint for this bootstrap or loads the checkpoint to
+     * resume from.
+     * 
+     * @param resume
+     *            true - to load the checkpoint file<br>
+     *            false - to overwrite the checkpoint file
+     * @return bootstrap checkpoint
+     * @throws IOException
+     *             if the checkpoint file could not be read or written
+     */
+    protected BootstrapCheckpoint loadCheckpoint(boolean resume)
+            throws IOException {
+        if (!resume) {
+            BootstrapCheckpoint checkpoint =
+                    new BootstrapCheckpoint(_checkpointFile,
+                            BootstrapCheckpoint.DEFAULT_INTERVAL, _isGraphity,
+                            _userList.size(), CHUNK_SIZE);
+            // allows to resume if the first phase is interrupted
+            checkpoint.write();
+            return checkpoint;
+        }
+        BootstrapCheckpoint checkpoint =
+                BootstrapCheckpoint.load(_checkpointFile,
+                        BootstrapCheckpoint.DEFAULT_INTERVAL, _isGraphity,
+                        _userList.size(), CHUNK_SIZE);
+        System.out.println("resuming bootstrap at phase "
+                + checkpoint.getPhase());
+        return checkpoint;
+    }
+
+    protected void setCheckpoint(PartitionedPhase phase, int iPhase) {
+        if (_checkpoint != null) {
+            phase.setCheckpoint(_checkpoint, iPhase);
+        }
+    }
+
+    /**
+     * @return number of vertices of the network to be loaded
+     */
+    protected long countVertices() {
+        long numVertices = 0;
+        for (User user : _userList) {
+            numVertices += 1;
+            if (_isGraphity && user.getSubscriptions() != null) {
+                numVertices += user.getSubscriptions().length;
+            }
+            if (user.getPostNodeIds() != null) {
+                numVertices += user.getPostNodeIds().length;
+            }
+        }
+        return Math.max(numVertices, 1);
+    }
+
+    /**
+     * creates the user vertices and, for Graphity, the replica vertices
+     */
+    protected class UserCreation extends PartitionedPhase {
+
+        public UserCreation(
+                BootstrapProgress progress) {
+            super(TitanBootstrapper.this._graph,
+                    TitanBootstrapper.this._userList, CHUNK_SIZE, progress);
+        }
+
+        /**
+         * user vertex followed by its replica vertices
+         */
+        @Override
+        protected long getNumVertices(User user) {
+            long[] subscriptions = user.getSubscriptions();
+            if (!_isGraphity || subscriptions == null) {
+                return 1;
+            }
+            return 1 + subscriptions.length;
+        }
+
+        @Override
+        protected long processChunk(
+                TitanTransaction tx,
+                List<User> users,
+                int iChunk) {
+            return createUsers(tx, users, iChunk);
+        }
+
+        @Override
+        protected long replayChunk(List<User> users, int iChunk) {
+            return createUsers(null, users, iChunk);
+        }
+
+        @Override
+        protected void beforeCommit(List<User> users, int iChunk)
+                throws IOException {
+            flushMapping(_firstNodeIds[iChunk], getLastNodeId(iChunk));
+        }
+
+        @Override
+        protected boolean isCommitted(
+                TitanTransaction tx,
+                List<User> users,
+                int iChunk) {
+            return isCommitted(iChunk, isCreated(tx, _firstNodeIds[iChunk]),
+                    isCreated(tx, getLastNodeId(iChunk)));
+        }
+
+        /**
+         * Assigns the node identifiers to the users of a chunk, sorts their
+         * subscriptions and creates their vertices.
+         * 
+         * @param tx
+         *            batch loading transaction or <b>null</b> to replay the
+         *            chunk without creating vertices
+         * @param users
+         *            users of the chunk
+         * @param iChunk
+         *            index of the chunk
+         * @return number of vertices of the chunk
+         */
+        protected long createUsers(
+                TitanTransaction tx,
+                List<User> users,
+                int iChunk) {
+            long numVertices = 0;
+            long nodeId = _firstNodeIds[iChunk];
+            ArrayList<User> tmp = new ArrayList<>();
+            for (User user : users) {
+                if (tx != null) {
+                    Vertex vertex = tx.addVertex();
+                    vertex.setProperty(UserProxy.PROP_IDENTIFIER, user.getId());
+                    mapVertex(nodeId, vertex);
+                }
+                user.setNodeId(nodeId++);
+                numVertices += 1;
+
+                if (!_isGraphity) {
+                    continue;
+                }
                 long[] subscriptions = user.getSubscriptions();
                 if (subscriptions == null) {// can this happen?
                     continue;
                 }
-                long[] replicas = new long[subscriptions.length];
 
                 // sort subscriptions and create replica nodes
                 for (long idFollowed : subscriptions) {
@@ -107,143 +480,390 @@ public class TitanBootstrapper extends BootstrapClient {
                 int i = 0;
                 for (User followed : tmp) {
                     subscriptions[i] = followed.getId();
-                    vertex = _batchGraph.addVertex(_vertexId++, noprops);
-                    nodeId = (long) vertex.getId();
-                    replicas[i] = nodeId;
+                    if (tx != null) {
+                        mapVertex(nodeId, tx.addVertex());
+                    }
+                    nodeId += 1;
                     i += 1;
                 }
-                user.setReplicas(replicas);
                 tmp.clear();
+                numVertices += subscriptions.length;
             }
+            return numVertices;
         }
-        return numUsers;
     }
 
-    @Override
-    protected long createSubscriptions() {
-        long numSubscriptions = 0;
-        Vertex outVertex, inVertex;
-        for (User user : _users.getUsers()) {
-            long[] subscriptions = user.getSubscriptions();
-            if (subscriptions == null) {// can this happen?
-                continue;
-            }
-            if (!_isGraphity) {// WriteOptimizedGraphity
-                for (long idFollowed : subscriptions) {
-                    User followed = _users.getUser(idFollowed);
-                    outVertex = _batchGraph.getVertex(user.getNodeId());
-                    inVertex = _batchGraph.getVertex(followed.getNodeId());
-                    if (outVertex == null || inVertex == null) {
-                        throw new IllegalStateException(
-                                "user vertex is missing");
-                    }
-                    _batchGraph.addEdge(_edgeId++, outVertex, inVertex,
-                            EdgeType.FOLLOWS.getLabel());
-                    numSubscriptions += 1;
+    /**
+     * links the users to the users they follow, for Graphity via the replica
+     * layer
+     */
+    protected class SubscriptionCreation extends PartitionedPhase {
+
+        public SubscriptionCreation(
+                BootstrapProgress progress) {
+            super(TitanBootstrapper.this._graph,
+                    TitanBootstrapper.this._userList, CHUNK_SIZE, progress);
+        }
+
+        @Override
+        protected long processChunk(
+                TitanTransaction tx,
+                List<User> users,
+                int iChunk) {
+            long numSubscriptions = 0;
+            for (User user : users) {
+                long[] subscriptions = user.getSubscriptions();
+                if (subscriptions == null) {// can this happen?
+                    continue;
                 }
-            } else {// ReadOptimizedGraphity
-                // link users and replica layer
-                long prev = user.getNodeId();
-                long[] replicas = user.getReplicas();
-                for (int i = 0; i < replicas.length; ++i) {
-                    // user -> FOLLOWS -> replica
-                    outVertex = _batchGraph.getVertex(user.getNodeId());
-                    inVertex = _batchGraph.getVertex(replicas[i]);
-                    if (outVertex == null || inVertex == null) {
-                        throw new IllegalStateException(
-                                "user or replica vertex is missing");
+                Vertex vUser = getVertex(tx, user.getNodeId());
+                if (!_isGraphity) {// WriteOptimizedGraphity
+                    for (long idFollowed : subscriptions) {
+                        User followed = _users.getUser(idFollowed);
+                        addEdge(vUser, getVertex(tx, followed.getNodeId()),
+                                EdgeType.FOLLOWS);
                     }
-                    _batchGraph.addEdge(_edgeId++, outVertex, inVertex,
-                            EdgeType.FOLLOWS.getLabel());
-                    // replica -> REPLICA -> followed
-                    User followed = _users.getUser(subscriptions[i]);
-                    outVertex = _batchGraph.getVertex(replicas[i]);
-                    inVertex = _batchGraph.getVertex(followed.getNodeId());
-                    if (outVertex == null || inVertex == null) {
-                        throw new IllegalStateException(
-                                "replica or user vertex is missing");
+                } else {// ReadOptimizedGraphity
+                    // link users and replica layer
+                    Vertex vPrev = vUser;
+                    for (int i = 0; i < subscriptions.length; ++i) {
+                        // replicas follow their user's node
+                        Vertex vReplica =
+                                getVertex(tx, user.getNodeId() + 1 + i);
+                        User followed = _users.getUser(subscriptions[i]);
+                        addEdge(vUser, vReplica, EdgeType.FOLLOWS);
+                        addEdge(vReplica, getVertex(tx, followed.getNodeId()),
+                                EdgeType.REPLICA);
+                        addEdge(vPrev, vReplica, EdgeType.GRAPHITY);
+                        vPrev = vReplica;
                     }
-                    _batchGraph.addEdge(_edgeId++, outVertex, inVertex,
-                            EdgeType.REPLICA.getLabel());
-                    // user/replica -> GRAPHITY -> replica
-                    outVertex = _batchGraph.getVertex(prev);
-                    inVertex = _batchGraph.getVertex(replicas[i]);
-                    if (outVertex == null || inVertex == null) {
-                        throw new IllegalStateException(
-                                "user/replica or replica vertex is missing");
+                }
+                numSubscriptions += subscriptions.length;
+            }
+            return numSubscriptions;
+        }
+
+        @Override
+        protected long replayChunk(List<User> users, int iChunk) {
+            long numSubscriptions = 0;
+            for (User user : users) {
+                if (user.getSubscriptions() != null) {
+                    numSubscriptions += user.getSubscriptions().length;
+                }
+            }
+            return numSubscriptions;
+        }
+
+        /**
+         * checks the subscriptions of the chunk's first and last user having
+         * subscriptions
+         */
+        @Override
+        protected boolean isCommitted(
+                TitanTransaction tx,
+                List<User> users,
+                int iChunk) {
+            User first = null;
+            User last = null;
+            for (User user : users) {
+                long[] subscriptions = user.getSubscriptions();
+                if (subscriptions != null && subscriptions.length > 0) {
+                    if (first == null) {
+                        first = user;
                     }
-                    _batchGraph.addEdge(_edgeId++, outVertex, inVertex,
-                            EdgeType.GRAPHITY.getLabel());
-                    numSubscriptions += 1;
-                    prev = replicas[i];
+                    last = user;
                 }
             }
+            if (first == null) {
+                return false;
+            }
+            return isCommitted(iChunk,
+                    hasEdge(tx, first.getNodeId(), EdgeType.FOLLOWS),
+                    hasEdge(tx, last.getNodeId(), EdgeType.FOLLOWS));
         }
-        return numSubscriptions;
     }
 
-    @Override
-    protected long createPosts() {
-        long numTotalPosts = 0;
-        Vertex vertex;
-        Map<String, Object> postProperties;
-        long tsLastPost = System.currentTimeMillis();
-        long nodeId;
-        for (User user : _users.getUsers()) {
-            long[] userPostNodes = user.getPostNodeIds();
-            for (int iPost = 0; iPost < userPostNodes.length; ++iPost) {
-                postProperties = new HashMap<>();
-                postProperties
-                        .put(StatusUpdateProxy.PROP_PUBLISHED, tsLastPost);
-                postProperties.put(StatusUpdateProxy.PROP_MESSAGE,
-                        generatePostMessage(140));
-                vertex = _batchGraph.addVertex(_vertexId++, postProperties);
-                nodeId = (long) vertex.getId();
-                userPostNodes[iPost] = nodeId;
-                if (iPost == userPostNodes.length - 1) {
-                    user.setTsLastPost(tsLastPost);
+    /**
+     * creates the status update vertices, timestamped in the order of their
+     * node identifiers
+     */
+    protected class PostCreation extends PartitionedPhase {
+
+        /**
+         * timestamp of the first post
+         */
+        protected final long _tsFirstPost;
+
+        public PostCreation(
+                BootstrapProgress progress) {
+            super(TitanBootstrapper.this._graph,
+                    TitanBootstrapper.this._userList, CHUNK_SIZE, progress);
+            // keep the timestamps of posts created before an interruption
+            BootstrapCheckpoint checkpoint = TitanBootstrapper.this._checkpoint;
+            _tsFirstPost =
+                    (checkpoint != null) ? checkpoint.getFirstPostTimestamp()
+                            : System.currentTimeMillis();
+        }
+
+        @Override
+        protected long getNumVertices(User user) {
+            return user.getPostNodeIds().length;
+        }
+
+        @Override
+        protected long processChunk(
+                TitanTransaction tx,
+                List<User> users,
+                int iChunk) {
+            return createPosts(tx, users, iChunk);
+        }
+
+        @Override
+        protected long replayChunk(List<User> users, int iChunk) {
+            return createPosts(null, users, iChunk);
+        }
+
+        @Override
+        protected void beforeCommit(List<User> users, int iChunk)
+                throws IOException {
+            flushMapping(_firstNodeIds[iChunk], getLastNodeId(iChunk));
+        }
+
+        @Override
+        protected boolean isCommitted(
+                TitanTransaction tx,
+                List<User> users,
+                int iChunk) {
+            long numPosts = 0;
+            for (User user : users) {
+                numPosts += getNumVertices(user);
+            }
+            return numPosts > 0
+                    && isCommitted(iChunk,
+                            isCreated(tx, _firstNodeIds[iChunk]),
+                            isCreated(tx, getLastNodeId(iChunk)));
+        }
+
+        /**
+         * Assigns the node identifiers and timestamps to the posts of a
+         * chunk and creates their vertices.
+         * 
+         * @param tx
+         *            batch loading transaction or <b>null</b> to replay the
+         *            chunk without creating vertices
+         * @param users
+         *            users of the chunk
+         * @param iChunk
+         *            index of the chunk
+         * @return number of posts of the chunk
+         */
+        protected long createPosts(
+                TitanTransaction tx,
+                List<User> users,
+                int iChunk) {
+            long numPosts = 0;
+            long nodeId = _firstNodeIds[iChunk];
+            long tsLastPost = _tsFirstPost + (nodeId - _firstNodeIds[0]);
+            for (User user : users) {
+                long[] userPostNodes = user.getPostNodeIds();
+                for (int iPost = 0; iPost < userPostNodes.length; ++iPost) {
+                    if (tx != null) {
+                        Vertex vertex = tx.addVertex();
+                        vertex.setProperty(StatusUpdateProxy.PROP_PUBLISHED,
+                                tsLastPost);
+                        vertex.setProperty(StatusUpdateProxy.PROP_MESSAGE,
+                                generatePostMessage(140));
+                        mapVertex(nodeId, vertex);
+                    }
+                    userPostNodes[iPost] = nodeId++;
+                    if (iPost == userPostNodes.length - 1) {
+                        user.setTsLastPost(tsLastPost);
+                        if (tx != null) {
+                            getVertex(tx, user.getNodeId()).setProperty(
+                                    UserProxy.PROP_LAST_STREAM_UDPATE,
+                                    tsLastPost);
+                        }
+                    }
+                    tsLastPost += 1;
                 }
-                tsLastPost += 1;
-                numTotalPosts += 1;
+                numPosts += userPostNodes.length;
             }
+            return numPosts;
         }
-        return numTotalPosts;
     }
 
-    @Override
-    protected long linkPosts() {
-        long numTotalPosts = 0;
-        Vertex outVertex, inVertex;
-        for (User user : _users.getUsers()) {
-            long[] postNodeIds = user.getPostNodeIds();
-            if (postNodeIds == null) {// should not happen
-                continue;
+    /**
+     * links the users to their newest status update and the status updates
+     * to their predecessors
+     */
+    protected class PostLinking extends PartitionedPhase {
+
+        public PostLinking(
+                BootstrapProgress progress) {
+            super(TitanBootstrapper.this._graph,
+                    TitanBootstrapper.this._userList, CHUNK_SIZE, progress);
+        }
+
+        @Override
+        protected long processChunk(
+                TitanTransaction tx,
+                List<User> users,
+                int iChunk) {
+            long numPosts = 0;
+            for (User user : users) {
+                long[] postNodeIds = user.getPostNodeIds();
+                if (postNodeIds == null) {// should not happen
+                    continue;
+                }
+                // user -> newestPost -> ... -> oldestPost
+                Vertex vPrev = getVertex(tx, user.getNodeId());
+                for (int iPost = postNodeIds.length - 1; iPost >= 0; --iPost) {
+                    Vertex vPost = getVertex(tx, postNodeIds[iPost]);
+                    addEdge(vPrev, vPost, EdgeType.PUBLISHED);
+                    vPrev = vPost;
+                }
+                numPosts += postNodeIds.length;
             }
+            return numPosts;
+        }
 
-            for (int iPost = 0; iPost < postNodeIds.length; ++iPost) {
-                if (iPost + 1 < postNodeIds.length) {// newerPost -> olderPost
-                    outVertex = _batchGraph.getVertex(postNodeIds[iPost + 1]);
-                    inVertex = _batchGraph.getVertex(postNodeIds[iPost]);
-                    if (outVertex == null || inVertex == null) {
-                        throw new IllegalStateException(
-                                "news item vertex is missing");
-                    }
-                    _batchGraph.addEdge(_edgeId++, outVertex, inVertex,
-                            EdgeType.PUBLISHED.getLabel());
-                } else {// user -> newestPost
-                    outVertex = _batchGraph.getVertex(user.getNodeId());
-                    inVertex = _batchGraph.getVertex(postNodeIds[iPost]);
-                    if (outVertex == null || inVertex == null) {
-                        throw new IllegalStateException(
-                                "user or news item vertex is missing");
+        @Override
+        protected long replayChunk(List<User> users, int iChunk) {
+            long numPosts = 0;
+            for (User user : users) {
+                if (user.getPostNodeIds() != null) {
+                    numPosts += user.getPostNodeIds().length;
+                }
+            }
+            return numPosts;
+        }
+
+        /**
+         * checks the links to the newest posts of the chunk's first and last
+         * user having posts
+         */
+        @Override
+        protected boolean isCommitted(
+                TitanTransaction tx,
+                List<User> users,
+                int iChunk) {
+            User first = null;
+            User last = null;
+            for (User user : users) {
+                long[] postNodeIds = user.getPostNodeIds();
+                if (postNodeIds != null && postNodeIds.length > 0) {
+                    if (first == null) {
+                        first = user;
                     }
-                    _batchGraph.addEdge(_edgeId++, outVertex, inVertex,
-                            EdgeType.PUBLISHED.getLabel());
+                    last = user;
                 }
             }
-            numTotalPosts += postNodeIds.length;
+            if (first == null) {
+                return false;
+            }
+            return isCommitted(iChunk,
+                    hasEdge(tx, first.getNodeId(), EdgeType.PUBLISHED),
+                    hasEdge(tx, last.getNodeId(), EdgeType.PUBLISHED));
         }
-        return numTotalPosts;
+    }
+
+    /**
+     * Maps a node identifier to a vertex that has been created.
+     * 
+     * @param nodeId
+     *            node identifier allocated for the vertex
+     * @param vertex
+     *            vertex created in a batch loading transaction
+     */
+    protected void mapVertex(long nodeId, Vertex vertex) {
+        _vertexIds.put(nodeId, (long) vertex.getId());
+    }
+
+    /**
+     * Persists the mappings of the vertices created by a chunk before the
+     * chunk is committed, if checkpoints are enabled. Otherwise a chunk
+     * committed right before an interruption could not be detected when
+     * resuming and would be created again.
+     * 
+     * @param firstNodeId
+     *            first node identifier of the chunk
+     * @param lastNodeId
+     *            last node identifier of the chunk, inclusive
+     * @throws IOException
+     *             if the mappings could not be persisted
+     */
+    protected void flushMapping(long firstNodeId, long lastNodeId)
+            throws IOException {
+        if (_checkpoint != null && firstNodeId <= lastNodeId) {
+            _vertexIds.flush(firstNodeId, lastNodeId);
+        }
+    }
+
+    /**
+     * Resolves a vertex in a batch loading transaction via its node
+     * identifier, without reading it from the storage backend.
+     * 
+     * @param tx
+     *            batch loading transaction
+     * @param nodeId
+     *            node identifier of the vertex
+     * @return vertex
+     * @throws IllegalStateException
+     *             if the node identifier is unknown
+     */
+    protected Vertex getVertex(TitanTransaction tx, long nodeId) {
+        long vertexId = _vertexIds.get(nodeId);
+        if (vertexId == 0) {
+            throw new IllegalStateException("vertex " + nodeId
+                    + " is missing");
+        }
+        return tx.getVertex(vertexId);
+    }
+
+    /**
+     * Checks whether a vertex has been committed.
+     * 
+     * @param tx
+     *            transaction checking the existence of vertices
+     * @param nodeId
+     *            node identifier of the vertex
+     * @return true - if the vertex is mapped and exists in the graph
+     */
+    protected boolean isCreated(TitanTransaction tx, long nodeId) {
+        long vertexId = _vertexIds.get(nodeId);
+        return vertexId != 0 && tx.getVertex(vertexId) != null;
+    }
+
+    /**
+     * Checks whether a committed vertex has an outgoing edge.
+     * 
+     * @param tx
+     *            transaction checking the existence of vertices
+     * @param nodeId
+     *            node identifier of the vertex
+     * @param edgeType
+     *            type of the edge
+     * @return true - if the vertex has an outgoing edge of this type
+     */
+    protected boolean hasEdge(
+            TitanTransaction tx,
+            long nodeId,
+            EdgeType edgeType) {
+        long vertexId = _vertexIds.get(nodeId);
+        if (vertexId == 0) {
+            return false;
+        }
+        Vertex vertex = tx.getVertex(vertexId);
+        return vertex != null
+                && vertex.getEdges(Direction.OUT, edgeType.getLabel())
+                        .iterator().hasNext();
+    }
+
+    protected static void addEdge(
+            Vertex outVertex,
+            Vertex inVertex,
+            EdgeType edgeType) {
+        outVertex.addEdge(edgeType.getLabel(), inVertex);
     }
 
     private static boolean IS_SHUT_DOWN = false;
@@ -258,9 +878,9 @@ public class TitanBootstrapper extends BootstrapClient {
     }
 
     public static void main(String[] args) throws IOException {
-        if (args.length != 3) {
+        if (args.length < 3 || args.length > 6) {
             System.out
-                    .println("usage: TitanBootstrapper <pathBootstrapLog> <pathTitanConfig> <algorithm {stou|graphity}>");
+                    .println("usage: TitanBootstrapper <pathBootstrapLog> <pathTitanConfig> <algorithm {stou|graphity}> [<numWorkers> [<pathIdMapping> [resume]]]");
             throw new IllegalArgumentException("invalid number of arguments");
         }
         File fBootstrapLog = new File(args[0]);
@@ -277,10 +897,35 @@ public class TitanBootstrapper extends BootstrapClient {
             throw new IllegalArgumentException(
                     "Invalid social network algorithm! Use \"stou\" or \"graphity\".");
         }
+        int numWorkers = 1;
+        if (args.length >= 4) {
+            numWorkers = Integer.parseInt(args[3]);
+            System.out.println(numWorkers + " workers set");
+        }
         // only one bootstrap client shall run at once!
         final TitanBootstrapper bootstrapClient =
                 new TitanBootstrapper(fConfiguration.getAbsolutePath(),
-                        isGraphity);
+                        isGraphity, numWorkers);
+        if (args.length >= 5) {
+            File fIdMapping = new File(args[4]);
+            bootstrapClient.setIdMappingFile(fIdMapping);
+            System.out.println("vertex id mapping stored in "
+                    + fIdMapping.getAbsolutePath());
+            // record the progress next to the mapping
+            File fCheckpoint = new File(args[4] + ".checkpoint");
+            boolean resume = false;
+            if (args.length == 6) {
+                if (!"resume".equalsIgnoreCase(args[5])) {
+                    throw new IllegalArgumentException(
+                            "Invalid option \"" + args[5]
+                                    + "\"! Use \"resume\".");
+                }
+                resume = true;
+            }
+            bootstrapClient.setCheckpointFile(fCheckpoint, resume);
+            System.out.println("checkpoints written to "
+                    + fCheckpoint.getAbsolutePath());
+        }
 
         Runtime.getRuntime().addShutdownHook(new Thread() {
 
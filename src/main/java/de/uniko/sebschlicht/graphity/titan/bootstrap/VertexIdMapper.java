@@ -0,0 +1,56 @@
+package de.uniko.sebschlicht.graphity.titan.bootstrap;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * Mapping from node identifiers used during bootstrapping to Titan vertex
+ * identifiers.<br>
+ * Mappings may be added by multiple threads concurrently. A mapping is
+ * visible to other threads once the phase that added it has finished.<br>
+ * Flushing a mapper persists the mappings added, if supported.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public interface VertexIdMapper extends Closeable, Flushable {
+
+    /**
+     * Maps a node identifier to a vertex identifier.
+     * 
+     * @param nodeId
+     *            positive node identifier
+     * @param vertexId
+     *            positive Titan vertex identifier
+     * @throws IllegalStateException
+     *             if the mapper is full
+     */
+    void put(long nodeId, long vertexId);
+
+    /**
+     * @param nodeId
+     *            node identifier
+     * @return Titan vertex identifier mapped to the node identifier<br>
+     *         0 - if the node identifier is not mapped
+     */
+    long get(long nodeId);
+
+    /**
+     * @return number of node identifiers mapped
+     */
+    long size();
+
+    /**
+     * Persists the mappings of a range of node identifiers, if supported.
+     * Mappings of other node identifiers may be persisted as well.
+     * 
+     * @param firstNodeId
+     *            first node identifier of the range
+     * @param lastNodeId
+     *            last node identifier of the range, inclusive
+     * @throws IOException
+     *             if the mappings could not be persisted
+     */
+    void flush(long firstNodeId, long lastNodeId) throws IOException;
+}
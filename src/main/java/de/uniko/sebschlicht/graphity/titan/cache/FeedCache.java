@@ -0,0 +1,625 @@
+package de.uniko.sebschlicht.graphity.titan.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import de.uniko.sebschlicht.socialnet.StatusUpdate;
+
+/**
+ * Materialized news feeds of active readers.<br>
+ * For each reader cached the newest K status updates are held along with the
+ * users the reader is following. Committed status updates are pushed into the
+ * feeds of all cached followers of their author, followship changes
+ * invalidate the follower's feed. The total number of status updates cached
+ * is limited by a global budget, the least recently read feeds are evicted
+ * first.<br>
+ * The feeds are split into segments by reader, locked independently. The
+ * budget is divided evenly among the segments, each evicting its least
+ * recently read feeds. Hence reads of different readers do not contend for a
+ * single lock, pushes lock one segment at a time.<br>
+ * Changes are staged per thread until the transaction has been committed.
+ * All vertex identifiers are Titan vertex identifiers.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class FeedCache {
+
+    /**
+     * default number of segments
+     */
+    protected static final int DEFAULT_NUM_SEGMENTS = 16;
+
+    /**
+     * number of stripes used to detect changes during the load of a feed
+     */
+    protected static final int NUM_VERSION_STRIPES = 1024;
+
+    /**
+     * maximum number of status updates cached per reader (K)
+     */
+    protected final int _feedLength;
+
+    /**
+     * maximum number of status updates cached in total
+     */
+    protected final long _budget;
+
+    /**
+     * feeds cached, per segment of readers
+     */
+    protected final Segment[] _segments;
+
+    protected final int _segmentMask;
+
+    /**
+     * version of the last change, per stripe of authors and readers
+     */
+    protected final AtomicLongArray _versions;
+
+    /**
+     * version of the last change
+     */
+    protected final AtomicLong _version;
+
+    protected final AtomicLong _numHits;
+
+    protected final AtomicLong _numMisses;
+
+    protected final AtomicLong _numEvictions;
+
+    protected final AtomicLong _numPushes;
+
+    protected final AtomicLong _numInvalidations;
+
+    /**
+     * changes of the current transaction, per thread
+     */
+    protected final ThreadLocal<List<Change>> _stagedChanges;
+
+    /**
+     * Creates an empty feed cache with the default number of segments.
+     * 
+     * @param feedLength
+     *            maximum number of status updates cached per reader
+     * @param budget
+     *            maximum number of status updates cached in total
+     */
+    public FeedCache(
+            int feedLength,
+            long budget) {
+        this(feedLength, budget, DEFAULT_NUM_SEGMENTS);
+    }
+
+    /**
+     * Creates an empty feed cache.
+     * 
+     * @param feedLength
+     *            maximum number of status updates cached per reader
+     * @param budget
+     *            maximum number of status updates cached in total
+     * @param numSegments
+     *            number of independently locked segments, rounded up to a
+     *            power of two and reduced until each segment can hold a feed
+     */
+    public FeedCache(
+            int feedLength,
+            long budget,
+            int numSegments) {
+        if (feedLength < 1 || budget < feedLength) {
+            throw new IllegalArgumentException("feed length must be positive "
+                    + "and must not exceed the budget");
+        }
+        if (numSegments < 1) {
+            throw new IllegalArgumentException(
+                    "number of segments must be positive");
+        }
+        numSegments = Integer.highestOneBit(numSegments - 1) << 1;
+        if (numSegments == 0) {
+            numSegments = 1;
+        }
+        while (numSegments > 1 && budget / numSegments < feedLength) {
+            numSegments >>>= 1;
+        }
+        _feedLength = feedLength;
+        _budget = budget;
+        _segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; ++i) {
+            _segments[i] = new Segment(budget / numSegments);
+        }
+        _segmentMask = numSegments - 1;
+        _versions = new AtomicLongArray(NUM_VERSION_STRIPES);
+        _version = new AtomicLong(0);
+        _numHits = new AtomicLong(0);
+        _numMisses = new AtomicLong(0);
+        _numEvictions = new AtomicLong(0);
+        _numPushes = new AtomicLong(0);
+        _numInvalidations = new AtomicLong(0);
+        _stagedChanges = new ThreadLocal<List<Change>>() {
+
+            @Override
+            protected List<Change> initialValue() {
+                return new ArrayList<Change>();
+            }
+        };
+    }
+
+    protected Segment getSegment(long idReader) {
+        long h = idReader * 0xC2B2AE3D27D4EB4FL;
+        return _segments[(int) (h >>> 40) & _segmentMask];
+    }
+
+    /**
+     * Retrieves the newest status updates of a reader's news feed.
+     * 
+     * @param idReader
+     *            reader vertex identifier
+     * @param numStatusUpdates
+     *            number of status updates requested
+     * @return newest status updates of the reader's news feed, newest first -
+     *         if the request can be served from cache<br>
+     *         <b>null</b> - if the feed has to be loaded from graph
+     */
+    public List<StatusUpdate> get(long idReader, int numStatusUpdates) {
+        List<StatusUpdate> statusUpdates = null;
+        if (numStatusUpdates <= _feedLength) {
+            Segment segment = getSegment(idReader);
+            synchronized (segment) {
+                Feed feed = segment.feeds.get(idReader);
+                if (feed != null
+                        && (feed.statusUpdates.size() >= numStatusUpdates
+                                || feed.complete)) {
+                    int numServed =
+                            Math.min(numStatusUpdates,
+                                    feed.statusUpdates.size());
+                    statusUpdates =
+                            new ArrayList<StatusUpdate>(
+                                    feed.statusUpdates.subList(0, numServed));
+                }
+            }
+        }
+        if (statusUpdates == null) {
+            _numMisses.incrementAndGet();
+        } else {
+            _numHits.incrementAndGet();
+        }
+        return statusUpdates;
+    }
+
+    /**
+     * @return version to be passed to {@link #put} when the feed loaded has
+     *         been read from graph
+     */
+    public long getVersion() {
+        return _version.get();
+    }
+
+    /**
+     * Caches the news feed of a reader that has been loaded from graph.<br>
+     * The feed is dropped if a change that might affect it has been applied
+     * after the version specified.
+     * 
+     * @param idReader
+     *            reader vertex identifier
+     * @param followeeIds
+     *            vertex identifiers of the users followed by the reader
+     * @param statusUpdates
+     *            newest status updates of the reader's news feed, newest first
+     * @param complete
+     *            true - if the news feed has no further status updates<br>
+     *            false - if the feed might be longer
+     * @param version
+     *            cache version retrieved before the feed has been loaded
+     * @return true - if the feed has been cached<br>
+     *         false - if the feed is outdated already
+     */
+    public boolean put(
+            long idReader,
+            long[] followeeIds,
+            List<StatusUpdate> statusUpdates,
+            boolean complete,
+            long version) {
+        Feed feed = new Feed(followeeIds);
+        int numStatusUpdates = Math.min(statusUpdates.size(), _feedLength);
+        feed.statusUpdates.addAll(statusUpdates.subList(0, numStatusUpdates));
+        feed.complete = complete && numStatusUpdates == statusUpdates.size();
+
+        Segment segment = getSegment(idReader);
+        int numEvicted;
+        synchronized (segment) {
+            // changes are versioned before they reach the segment
+            if (_versions.get(stripe(idReader)) > version) {
+                return false;
+            }
+            for (long idFollowee : followeeIds) {
+                if (_versions.get(stripe(idFollowee)) > version) {
+                    return false;
+                }
+            }
+            segment.put(idReader, feed);
+            numEvicted = segment.evict();
+        }
+        _numEvictions.addAndGet(numEvicted);
+        return true;
+    }
+
+    /**
+     * Stages a status update to be pushed into the feeds of the author's
+     * followers when the current transaction is committed.
+     * 
+     * @param idAuthor
+     *            author vertex identifier
+     * @param statusUpdate
+     *            status update published
+     */
+    public void stagePush(long idAuthor, StatusUpdate statusUpdate) {
+        _stagedChanges.get().add(new Change(idAuthor, statusUpdate));
+    }
+
+    /**
+     * Stages the invalidation of a reader's feed until the current transaction
+     * is committed.
+     * 
+     * @param idReader
+     *            reader vertex identifier
+     */
+    public void stageInvalidation(long idReader) {
+        _stagedChanges.get().add(new Change(idReader, null));
+    }
+
+    /**
+     * Applies the changes staged by the current thread.
+     */
+    public void applyStaged() {
+        List<Change> changes = _stagedChanges.get();
+        if (changes.isEmpty()) {
+            return;
+        }
+        // feeds loaded before are rejected from now on
+        for (Change change : changes) {
+            markChanged(change.id);
+            if (change.statusUpdate != null) {
+                _numPushes.incrementAndGet();
+            } else {
+                _numInvalidations.incrementAndGet();
+            }
+        }
+        int numEvicted = 0;
+        for (Segment segment : _segments) {
+            synchronized (segment) {
+                for (Change change : changes) {
+                    if (change.statusUpdate != null) {
+                        segment.push(change.id, change.statusUpdate,
+                                _feedLength);
+                    } else {
+                        segment.remove(change.id);
+                    }
+                }
+                numEvicted += segment.evict();
+            }
+        }
+        _numEvictions.addAndGet(numEvicted);
+        changes.clear();
+    }
+
+    /**
+     * Discards the changes staged by the current thread.
+     */
+    public void discardStaged() {
+        _stagedChanges.get().clear();
+    }
+
+    /**
+     * Removes the feed of a reader.
+     * 
+     * @param idReader
+     *            reader vertex identifier
+     */
+    public void invalidate(long idReader) {
+        markChanged(idReader);
+        _numInvalidations.incrementAndGet();
+        Segment segment = getSegment(idReader);
+        synchronized (segment) {
+            segment.remove(idReader);
+        }
+    }
+
+    /**
+     * Removes all feeds.
+     */
+    public void clear() {
+        long version = _version.incrementAndGet();
+        for (int i = 0; i < NUM_VERSION_STRIPES; ++i) {
+            raiseVersion(i, version);
+        }
+        for (Segment segment : _segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Assigns a new version to the stripe of an author or reader changed.
+     * 
+     * @param id
+     *            author or reader vertex identifier
+     */
+    protected void markChanged(long id) {
+        raiseVersion(stripe(id), _version.incrementAndGet());
+    }
+
+    /**
+     * Sets the version of a stripe, unless it has a later version already.
+     * 
+     * @param stripe
+     *            version stripe
+     * @param version
+     *            version of the change
+     */
+    protected void raiseVersion(int stripe, long version) {
+        long current;
+        while ((current = _versions.get(stripe)) < version) {
+            if (_versions.compareAndSet(stripe, current, version)) {
+                return;
+            }
+        }
+    }
+
+    protected static int stripe(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (NUM_VERSION_STRIPES - 1);
+    }
+
+    public int getFeedLength() {
+        return _feedLength;
+    }
+
+    public long getBudget() {
+        return _budget;
+    }
+
+    /**
+     * @return number of status updates cached
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : _segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return number of feeds cached
+     */
+    public int getNumFeeds() {
+        int numFeeds = 0;
+        for (Segment segment : _segments) {
+            synchronized (segment) {
+                numFeeds += segment.feeds.size();
+            }
+        }
+        return numFeeds;
+    }
+
+    public long getNumHits() {
+        return _numHits.get();
+    }
+
+    public long getNumMisses() {
+        return _numMisses.get();
+    }
+
+    public long getNumEvictions() {
+        return _numEvictions.get();
+    }
+
+    public long getNumPushes() {
+        return _numPushes.get();
+    }
+
+    public long getNumInvalidations() {
+        return _numInvalidations.get();
+    }
+
+    /**
+     * @return ratio of reads served from cache
+     */
+    public double getHitRate() {
+        long numHits = _numHits.get();
+        long numReads = numHits + _numMisses.get();
+        if (numReads == 0) {
+            return 0;
+        }
+        return (double) numHits / numReads;
+    }
+
+    /**
+     * feeds of a segment of readers, guarded by the segment's monitor
+     */
+    protected static class Segment {
+
+        /**
+         * maximum number of status updates cached in this segment
+         */
+        final long budget;
+
+        /**
+         * feeds cached, in the order of their last access
+         */
+        final LinkedHashMap<Long, Feed> feeds;
+
+        /**
+         * feeds cached, per user followed
+         */
+        final Map<Long, Set<Feed>> feedsByFollowee;
+
+        /**
+         * number of status updates cached
+         */
+        long size;
+
+        Segment(
+                long budget) {
+            this.budget = budget;
+            feeds = new LinkedHashMap<Long, Feed>(16, 0.75f, true);
+            feedsByFollowee = new HashMap<Long, Set<Feed>>();
+        }
+
+        void put(long idReader, Feed feed) {
+            remove(idReader);
+            feeds.put(idReader, feed);
+            size += feed.statusUpdates.size();
+            for (long idFollowee : feed.followeeIds) {
+                Set<Feed> followers = feedsByFollowee.get(idFollowee);
+                if (followers == null) {
+                    followers = new HashSet<Feed>();
+                    feedsByFollowee.put(idFollowee, followers);
+                }
+                followers.add(feed);
+            }
+        }
+
+        /**
+         * Pushes a status update into the feeds of the author's followers.
+         * 
+         * @param idAuthor
+         *            author vertex identifier
+         * @param statusUpdate
+         *            status update published
+         * @param feedLength
+         *            maximum number of status updates per feed
+         */
+        void push(long idAuthor, StatusUpdate statusUpdate, int feedLength) {
+            Set<Feed> followers = feedsByFollowee.get(idAuthor);
+            if (followers == null) {
+                return;
+            }
+            for (Feed feed : followers) {
+                List<StatusUpdate> statusUpdates = feed.statusUpdates;
+                // status updates may be committed out of order
+                int index = 0;
+                while (index < statusUpdates.size()
+                        && statusUpdates.get(index).getPublished()
+                                > statusUpdate.getPublished()) {
+                    index += 1;
+                }
+                if (index == feedLength) {
+                    // older than any status update cached
+                    continue;
+                }
+                statusUpdates.add(index, statusUpdate);
+                size += 1;
+                if (statusUpdates.size() > feedLength) {
+                    statusUpdates.remove(statusUpdates.size() - 1);
+                    size -= 1;
+                    feed.complete = false;
+                }
+            }
+        }
+
+        void remove(long idReader) {
+            Feed feed = feeds.remove(idReader);
+            if (feed != null) {
+                unlink(feed);
+            }
+        }
+
+        void unlink(Feed feed) {
+            size -= feed.statusUpdates.size();
+            for (long idFollowee : feed.followeeIds) {
+                Set<Feed> followers = feedsByFollowee.get(idFollowee);
+                followers.remove(feed);
+                if (followers.isEmpty()) {
+                    feedsByFollowee.remove(idFollowee);
+                }
+            }
+        }
+
+        /**
+         * Evicts the least recently read feeds until the budget is met.
+         * 
+         * @return number of feeds evicted
+         */
+        int evict() {
+            int numEvicted = 0;
+            Iterator<Map.Entry<Long, Feed>> iFeeds =
+                    feeds.entrySet().iterator();
+            while (size > budget && iFeeds.hasNext()) {
+                Map.Entry<Long, Feed> eldest = iFeeds.next();
+                iFeeds.remove();
+                unlink(eldest.getValue());
+                numEvicted += 1;
+            }
+            return numEvicted;
+        }
+
+        void clear() {
+            feeds.clear();
+            feedsByFollowee.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * news feed of a single reader
+     */
+    protected static class Feed {
+
+        /**
+         * vertex identifiers of the users followed
+         */
+        final long[] followeeIds;
+
+        /**
+         * newest status updates, newest first
+         */
+        final List<StatusUpdate> statusUpdates;
+
+        /**
+         * whether the feed has no further status updates
+         */
+        boolean complete;
+
+        Feed(
+                long[] followeeIds) {
+            this.followeeIds = followeeIds;
+            statusUpdates = new ArrayList<StatusUpdate>();
+        }
+    }
+
+    /**
+     * status update pushed or feed invalidated
+     */
+    protected static class Change {
+
+        /**
+         * author vertex identifier if pushing, reader vertex identifier
+         * otherwise
+         */
+        final long id;
+
+        /**
+         * status update to push or <b>null</b> if invalidating
+         */
+        final StatusUpdate statusUpdate;
+
+        Change(
+                long id,
+                StatusUpdate statusUpdate) {
+            this.id = id;
+            this.statusUpdate = statusUpdate;
+        }
+    }
+}
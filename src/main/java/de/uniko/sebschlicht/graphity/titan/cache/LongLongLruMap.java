@@ -0,0 +1,283 @@
+package de.uniko.sebschlicht.graphity.titan.cache;
+
+/**
+ * Bounded map of primitive long keys to primitive long values evicting the
+ * least recently used entry when full.<br>
+ * Entries are stored in parallel arrays, linked in access order and located
+ * via an open-addressing hash table with linear probing, hence no objects are
+ * allocated per entry. This map is not thread-safe.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class LongLongLruMap {
+
+    /**
+     * index representing no entry
+     */
+    protected static final int NIL = -1;
+
+    /**
+     * maximum number of entries
+     */
+    protected final int _capacity;
+
+    protected final long[] _keys;
+
+    protected final long[] _values;
+
+    /**
+     * index of the entry used more recently
+     */
+    protected final int[] _prev;
+
+    /**
+     * index of the entry used less recently
+     */
+    protected final int[] _next;
+
+    /**
+     * hash table holding the entry index plus one, 0 marks an empty slot
+     */
+    protected final int[] _table;
+
+    protected final int _mask;
+
+    /**
+     * most recently used entry
+     */
+    protected int _head;
+
+    /**
+     * least recently used entry
+     */
+    protected int _tail;
+
+    protected int _size;
+
+    /**
+     * Creates an empty map.
+     * 
+     * @param capacity
+     *            maximum number of entries
+     */
+    public LongLongLruMap(
+            int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        _capacity = capacity;
+        _keys = new long[capacity];
+        _values = new long[capacity];
+        _prev = new int[capacity];
+        _next = new int[capacity];
+        // keep the load factor of the hash table below 0.5
+        int tableSize = Integer.highestOneBit(capacity) << 2;
+        _table = new int[tableSize];
+        _mask = tableSize - 1;
+        _head = NIL;
+        _tail = NIL;
+        _size = 0;
+    }
+
+    /**
+     * @return number of entries
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * @return maximum number of entries
+     */
+    public int capacity() {
+        return _capacity;
+    }
+
+    /**
+     * Retrieves the value of a key and marks the entry as most recently used.
+     * 
+     * @param key
+     *            key to look up
+     * @param defaultValue
+     *            value to return if the key is not contained
+     * @return value mapped to the key or the default value
+     */
+    public long get(long key, long defaultValue) {
+        int slot = findSlot(key);
+        if (slot == NIL) {
+            return defaultValue;
+        }
+        int entry = _table[slot] - 1;
+        moveToFront(entry);
+        return _values[entry];
+    }
+
+    /**
+     * Maps a key to a value and marks the entry as most recently used. Evicts
+     * the least recently used entry if the map is full.
+     * 
+     * @param key
+     *            key to map
+     * @param value
+     *            value to map the key to
+     * @return true - if an entry has been evicted<br>
+     *         false - otherwise
+     */
+    public boolean put(long key, long value) {
+        int slot = findSlot(key);
+        if (slot != NIL) {
+            int entry = _table[slot] - 1;
+            _values[entry] = value;
+            moveToFront(entry);
+            return false;
+        }
+
+        boolean evicted = false;
+        int entry;
+        if (_size == _capacity) {
+            // reuse least recently used entry
+            entry = _tail;
+            deleteSlot(findSlot(_keys[entry]));
+            unlink(entry);
+            evicted = true;
+        } else {
+            entry = _size++;
+        }
+        _keys[entry] = key;
+        _values[entry] = value;
+        insertSlot(key, entry);
+        linkFront(entry);
+        return evicted;
+    }
+
+    /**
+     * Removes the mapping of a key.
+     * 
+     * @param key
+     *            key to remove
+     * @return true - if the key was contained<br>
+     *         false - otherwise
+     */
+    public boolean remove(long key) {
+        int slot = findSlot(key);
+        if (slot == NIL) {
+            return false;
+        }
+        int entry = _table[slot] - 1;
+        deleteSlot(slot);
+        unlink(entry);
+
+        // move last entry into the gap to keep the entries compact
+        int last = --_size;
+        if (entry != last) {
+            _table[findSlot(_keys[last])] = entry + 1;
+            _keys[entry] = _keys[last];
+            _values[entry] = _values[last];
+            _prev[entry] = _prev[last];
+            _next[entry] = _next[last];
+            if (_prev[entry] != NIL) {
+                _next[_prev[entry]] = entry;
+            } else {
+                _head = entry;
+            }
+            if (_next[entry] != NIL) {
+                _prev[_next[entry]] = entry;
+            } else {
+                _tail = entry;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        for (int i = 0; i < _table.length; ++i) {
+            _table[i] = 0;
+        }
+        _head = NIL;
+        _tail = NIL;
+        _size = 0;
+    }
+
+    protected int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & _mask;
+    }
+
+    protected int findSlot(long key) {
+        int slot = hash(key);
+        while (_table[slot] != 0) {
+            if (_keys[_table[slot] - 1] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & _mask;
+        }
+        return NIL;
+    }
+
+    protected void insertSlot(long key, int entry) {
+        int slot = hash(key);
+        while (_table[slot] != 0) {
+            slot = (slot + 1) & _mask;
+        }
+        _table[slot] = entry + 1;
+    }
+
+    /**
+     * Empties a slot and shifts subsequent entries of the probe sequence back
+     * so that no tombstones are needed.
+     * 
+     * @param slot
+     *            slot to empty
+     */
+    protected void deleteSlot(int slot) {
+        int hole = slot;
+        int crr = (hole + 1) & _mask;
+        while (_table[crr] != 0) {
+            int ideal = hash(_keys[_table[crr] - 1]);
+            if (((crr - ideal) & _mask) >= ((crr - hole) & _mask)) {
+                _table[hole] = _table[crr];
+                hole = crr;
+            }
+            crr = (crr + 1) & _mask;
+        }
+        _table[hole] = 0;
+    }
+
+    protected void linkFront(int entry) {
+        _prev[entry] = NIL;
+        _next[entry] = _head;
+        if (_head != NIL) {
+            _prev[_head] = entry;
+        }
+        _head = entry;
+        if (_tail == NIL) {
+            _tail = entry;
+        }
+    }
+
+    protected void unlink(int entry) {
+        int prev = _prev[entry];
+        int next = _next[entry];
+        if (prev != NIL) {
+            _next[prev] = next;
+        } else {
+            _head = next;
+        }
+        if (next != NIL) {
+            _prev[next] = prev;
+        } else {
+            _tail = prev;
+        }
+    }
+
+    protected void moveToFront(int entry) {
+        if (entry != _head) {
+            unlink(entry);
+            linkFront(entry);
+        }
+    }
+}
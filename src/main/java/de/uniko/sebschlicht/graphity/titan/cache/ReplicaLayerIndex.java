@@ -0,0 +1,419 @@
+package de.uniko.sebschlicht.graphity.titan.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Sorted sidecar index over the replica layers of active users.<br>
+ * For each user indexed the replicas of the user's replica layer are held
+ * sorted by the last post timestamp of the users replicated. This allows to
+ * find the insertion position of a replica in O(log n) instead of walking
+ * along the replica layer from its start.<br>
+ * The index provides hints only: A replica found has to be checked against
+ * the replica layer before the walk continues from it, as writers not using
+ * this index, e.g. a repairer, might have changed the layer. Outdated layers
+ * are invalidated by the caller.<br>
+ * Layers are indexed once they have been walked completely and contain a
+ * minimum number of replicas. The total number of replicas indexed is
+ * limited by a budget, the least recently used layers are evicted first.<br>
+ * Changes are staged per thread until the transaction has been committed.
+ * All vertex identifiers are Titan vertex identifiers.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class ReplicaLayerIndex {
+
+    /**
+     * lookup result if the layer of the user is not indexed
+     */
+    public static final long MISSING = 0;
+
+    /**
+     * lookup result if no replica of the layer has a newer timestamp, i.e.
+     * the insertion position is the start of the layer
+     */
+    public static final long HEAD = -1;
+
+    /**
+     * number of stripes used to detect changes during the load of a layer
+     */
+    protected static final int NUM_VERSION_STRIPES = 1024;
+
+    /**
+     * maximum number of replicas indexed in total
+     */
+    protected final long _budget;
+
+    /**
+     * minimum number of replicas of a layer to be indexed
+     */
+    protected final int _minLayerSize;
+
+    /**
+     * replica layers indexed per user, least recently used first
+     */
+    protected final LinkedHashMap<Long, Layer> _layers;
+
+    /**
+     * versions of the last change applied per stripe of users
+     */
+    protected final long[] _versions;
+
+    protected long _version;
+
+    protected long _size;
+
+    protected long _numHits;
+
+    protected long _numMisses;
+
+    protected long _numEvictions;
+
+    protected long _numInvalidations;
+
+    /**
+     * changes staged by the current thread
+     */
+    protected final ThreadLocal<List<Change>> _stagedChanges;
+
+    /**
+     * Creates an empty replica layer index.
+     * 
+     * @param budget
+     *            maximum number of replicas indexed in total
+     * @param minLayerSize
+     *            minimum number of replicas of a layer to be indexed, shorter
+     *            layers are walked
+     */
+    public ReplicaLayerIndex(
+            long budget,
+            int minLayerSize) {
+        if (budget < 1 || minLayerSize < 1) {
+            throw new IllegalArgumentException(
+                    "budget and minimum layer size must be positive");
+        }
+        _budget = budget;
+        _minLayerSize = minLayerSize;
+        _layers = new LinkedHashMap<Long, Layer>(16, 0.75f, true);
+        _versions = new long[NUM_VERSION_STRIPES];
+        _stagedChanges = new ThreadLocal<List<Change>>() {
+
+            @Override
+            protected List<Change> initialValue() {
+                return new ArrayList<Change>();
+            }
+        };
+    }
+
+    /**
+     * Searches the replica layer of a user for the last replica whose user
+     * replicated has posted after a timestamp, i.e. the predecessor of a
+     * replica with this timestamp.
+     * 
+     * @param idUser
+     *            user vertex identifier
+     * @param timestamp
+     *            last post timestamp of the replica to be inserted
+     * @return identifier of the replica vertex with the oldest last post
+     *         timestamp that is newer than the timestamp specified<br>
+     *         {@link #HEAD} - if there is no such replica<br>
+     *         {@link #MISSING} - if the layer is not indexed
+     */
+    public synchronized long findPredecessor(long idUser, long timestamp) {
+        Layer layer = _layers.get(idUser);
+        if (layer == null) {
+            _numMisses += 1;
+            return MISSING;
+        }
+        _numHits += 1;
+        Map.Entry<Long, Set<Long>> entry =
+                layer.replicasByTimestamp.higherEntry(timestamp);
+        if (entry == null) {
+            return HEAD;
+        }
+        return entry.getValue().iterator().next();
+    }
+
+    /**
+     * @param idUser
+     *            user vertex identifier
+     * @return true - if the replica layer of the user is indexed<br>
+     *         false - otherwise
+     */
+    public synchronized boolean contains(long idUser) {
+        return _layers.containsKey(idUser);
+    }
+
+    /**
+     * @return version to be passed to {@link #put} when the layer has been
+     *         walked
+     */
+    public synchronized long getVersion() {
+        return _version;
+    }
+
+    /**
+     * Indexes the replica layer of a user that has been walked
+     * completely.<br>
+     * The layer is dropped if a change of the user's layer has been applied
+     * after the version specified or if the layer is too short.
+     * 
+     * @param idUser
+     *            user vertex identifier
+     * @param replicaIds
+     *            replica vertex identifiers
+     * @param timestamps
+     *            last post timestamps of the users replicated, per replica
+     * @param version
+     *            index version retrieved before the layer has been walked
+     * @return true - if the layer has been indexed<br>
+     *         false - if the layer is outdated already or too short
+     */
+    public synchronized boolean put(
+            long idUser,
+            long[] replicaIds,
+            long[] timestamps,
+            long version) {
+        if (replicaIds.length < _minLayerSize
+                || _versions[stripe(idUser)] > version) {
+            return false;
+        }
+        remove(idUser);
+        Layer layer = new Layer();
+        for (int i = 0; i < replicaIds.length; ++i) {
+            layer.put(replicaIds[i], timestamps[i]);
+        }
+        _layers.put(idUser, layer);
+        _size += layer.size();
+        evict();
+        return true;
+    }
+
+    /**
+     * Stages the insertion of a replica into a user's layer, or its move if
+     * indexed already, until the current transaction is committed.
+     * 
+     * @param idUser
+     *            user vertex identifier
+     * @param idReplica
+     *            replica vertex identifier
+     * @param timestamp
+     *            last post timestamp of the user replicated
+     */
+    public void stagePut(long idUser, long idReplica, long timestamp) {
+        _stagedChanges.get().add(new Change(idUser, idReplica, timestamp));
+    }
+
+    /**
+     * Stages the removal of a replica from a user's layer until the current
+     * transaction is committed.
+     * 
+     * @param idUser
+     *            user vertex identifier
+     * @param idReplica
+     *            replica vertex identifier
+     */
+    public void stageRemoval(long idUser, long idReplica) {
+        _stagedChanges.get().add(new Change(idUser, idReplica, null));
+    }
+
+    /**
+     * Applies the changes staged by the current thread.
+     */
+    public void applyStaged() {
+        List<Change> changes = _stagedChanges.get();
+        if (changes.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            for (Change change : changes) {
+                _versions[stripe(change.idUser)] = ++_version;
+                Layer layer = _layers.get(change.idUser);
+                if (layer == null) {
+                    continue;
+                }
+                _size -= layer.size();
+                if (change.timestamp != null) {
+                    layer.put(change.idReplica, change.timestamp);
+                } else {
+                    layer.remove(change.idReplica);
+                }
+                _size += layer.size();
+            }
+            evict();
+        }
+        changes.clear();
+    }
+
+    /**
+     * Discards the changes staged by the current thread.
+     */
+    public void discardStaged() {
+        _stagedChanges.get().clear();
+    }
+
+    /**
+     * Removes the layer of a user, e.g. if a replica found is not part of the
+     * layer anymore.
+     * 
+     * @param idUser
+     *            user vertex identifier
+     */
+    public synchronized void invalidate(long idUser) {
+        _versions[stripe(idUser)] = ++_version;
+        _numInvalidations += 1;
+        remove(idUser);
+    }
+
+    /**
+     * Removes all layers.
+     */
+    public synchronized void clear() {
+        _layers.clear();
+        _size = 0;
+        _version += 1;
+        for (int i = 0; i < _versions.length; ++i) {
+            _versions[i] = _version;
+        }
+    }
+
+    protected void remove(long idUser) {
+        Layer layer = _layers.remove(idUser);
+        if (layer != null) {
+            _size -= layer.size();
+        }
+    }
+
+    /**
+     * Evicts the least recently used layers until the budget is met.
+     */
+    protected void evict() {
+        Iterator<Map.Entry<Long, Layer>> iLayers =
+                _layers.entrySet().iterator();
+        while (_size > _budget && iLayers.hasNext()) {
+            Map.Entry<Long, Layer> eldest = iLayers.next();
+            iLayers.remove();
+            _size -= eldest.getValue().size();
+            _numEvictions += 1;
+        }
+    }
+
+    protected static int stripe(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (NUM_VERSION_STRIPES - 1);
+    }
+
+    public long getBudget() {
+        return _budget;
+    }
+
+    public int getMinLayerSize() {
+        return _minLayerSize;
+    }
+
+    /**
+     * @return number of replicas indexed
+     */
+    public synchronized long size() {
+        return _size;
+    }
+
+    /**
+     * @return number of replica layers indexed
+     */
+    public synchronized int getNumLayers() {
+        return _layers.size();
+    }
+
+    public synchronized long getNumHits() {
+        return _numHits;
+    }
+
+    public synchronized long getNumMisses() {
+        return _numMisses;
+    }
+
+    public synchronized long getNumEvictions() {
+        return _numEvictions;
+    }
+
+    public synchronized long getNumInvalidations() {
+        return _numInvalidations;
+    }
+
+    /**
+     * replica layer of a single user
+     */
+    protected static class Layer {
+
+        /**
+         * replica vertex identifiers per last post timestamp
+         */
+        final TreeMap<Long, Set<Long>> replicasByTimestamp =
+                new TreeMap<Long, Set<Long>>();
+
+        /**
+         * last post timestamp per replica vertex identifier
+         */
+        final Map<Long, Long> timestamps = new HashMap<Long, Long>();
+
+        void put(long idReplica, long timestamp) {
+            remove(idReplica);
+            Set<Long> replicas = replicasByTimestamp.get(timestamp);
+            if (replicas == null) {
+                replicas = new HashSet<Long>(2);
+                replicasByTimestamp.put(timestamp, replicas);
+            }
+            replicas.add(idReplica);
+            timestamps.put(idReplica, timestamp);
+        }
+
+        void remove(long idReplica) {
+            Long timestamp = timestamps.remove(idReplica);
+            if (timestamp == null) {
+                return;
+            }
+            Set<Long> replicas = replicasByTimestamp.get(timestamp);
+            replicas.remove(idReplica);
+            if (replicas.isEmpty()) {
+                replicasByTimestamp.remove(timestamp);
+            }
+        }
+
+        int size() {
+            return timestamps.size();
+        }
+    }
+
+    /**
+     * change staged until commit
+     */
+    protected static class Change {
+
+        final long idUser;
+
+        final long idReplica;
+
+        /**
+         * last post timestamp, <b>null</b> if the replica is removed
+         */
+        final Long timestamp;
+
+        Change(
+                long idUser,
+                long idReplica,
+                Long timestamp) {
+            this.idUser = idUser;
+            this.idReplica = idReplica;
+            this.timestamp = timestamp;
+        }
+    }
+}
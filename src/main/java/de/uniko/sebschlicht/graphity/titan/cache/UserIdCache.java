@@ -0,0 +1,351 @@
+package de.uniko.sebschlicht.graphity.titan.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, thread-safe cache mapping user identifiers to the identifiers of
+ * the user vertices.<br>
+ * The cache is split into segments that are locked independently, each
+ * evicting its least recently used entry when full. Unknown users can be
+ * cached as well, in order to answer repeated requests of unknown readers
+ * without index queries. These negative entries expire after a time to live,
+ * as the user may be created by another instance, and never replace the
+ * vertex of a user.<br>
+ * Users created in a transaction are staged per thread until the transaction
+ * has been committed.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class UserIdCache {
+
+    /**
+     * lookup result if the user is not cached
+     */
+    public static final long MISSING = 0;
+
+    /**
+     * lookup result if the user is cached as not existing
+     */
+    public static final long UNKNOWN = -1;
+
+    /**
+     * default number of segments
+     */
+    protected static final int DEFAULT_NUM_SEGMENTS = 16;
+
+    /**
+     * default time in milliseconds unknown users are cached
+     */
+    protected static final long DEFAULT_NEGATIVE_TTL = 10000;
+
+    /**
+     * Vertex identifiers per user. Unknown users are mapped to the negated
+     * time their entry expires at.
+     */
+    protected final LongLongLruMap[] _segments;
+
+    protected final int _segmentMask;
+
+    /**
+     * time in milliseconds unknown users are cached
+     */
+    protected final long _negativeTtl;
+
+    /**
+     * users created by the current thread, cached on commit
+     */
+    protected final ThreadLocal<List<Change>> _stagedChanges;
+
+    protected final AtomicLong _numHits;
+
+    protected final AtomicLong _numNegativeHits;
+
+    protected final AtomicLong _numMisses;
+
+    protected final AtomicLong _numEvictions;
+
+    /**
+     * Creates an empty cache with the default number of segments.
+     * 
+     * @param capacity
+     *            maximum number of users cached
+     */
+    public UserIdCache(
+            int capacity) {
+        this(capacity, DEFAULT_NUM_SEGMENTS);
+    }
+
+    /**
+     * Creates an empty cache.
+     * 
+     * @param capacity
+     *            maximum number of users cached
+     * @param numSegments
+     *            number of independently locked segments, rounded up to a
+     *            power of two
+     */
+    public UserIdCache(
+            int capacity,
+            int numSegments) {
+        this(capacity, numSegments, DEFAULT_NEGATIVE_TTL);
+    }
+
+    /**
+     * Creates an empty cache.
+     * 
+     * @param capacity
+     *            maximum number of users cached
+     * @param numSegments
+     *            number of independently locked segments, rounded up to a
+     *            power of two
+     * @param negativeTtl
+     *            time in milliseconds unknown users are cached
+     */
+    public UserIdCache(
+            int capacity,
+            int numSegments,
+            long negativeTtl) {
+        if (capacity < 1 || numSegments < 1 || negativeTtl < 1) {
+            throw new IllegalArgumentException(
+                    "capacity, number of segments and time to live must be "
+                            + "positive");
+        }
+        numSegments = Integer.highestOneBit(numSegments - 1) << 1;
+        if (numSegments == 0) {
+            numSegments = 1;
+        }
+        int segmentCapacity =
+                Math.max(1, (capacity + numSegments - 1) / numSegments);
+        _segments = new LongLongLruMap[numSegments];
+        for (int i = 0; i < numSegments; ++i) {
+            _segments[i] = new LongLongLruMap(segmentCapacity);
+        }
+        _segmentMask = numSegments - 1;
+        _negativeTtl = negativeTtl;
+        _stagedChanges = new ThreadLocal<List<Change>>() {
+
+            @Override
+            protected List<Change> initialValue() {
+                return new ArrayList<Change>();
+            }
+        };
+        _numHits = new AtomicLong(0);
+        _numNegativeHits = new AtomicLong(0);
+        _numMisses = new AtomicLong(0);
+        _numEvictions = new AtomicLong(0);
+    }
+
+    protected LongLongLruMap getSegment(long idUser) {
+        long h = idUser * 0xC2B2AE3D27D4EB4FL;
+        return _segments[(int) (h >>> 40) & _segmentMask];
+    }
+
+    /**
+     * Looks up a user.
+     * 
+     * @param idUser
+     *            user identifier
+     * @return identifier of the user vertex<br>
+     *         {@link #UNKNOWN} - if the user is cached as not existing<br>
+     *         {@link #MISSING} - if the user is not cached
+     */
+    public long get(long idUser) {
+        LongLongLruMap segment = getSegment(idUser);
+        long idVertex;
+        synchronized (segment) {
+            idVertex = segment.get(idUser, MISSING);
+            if (idVertex < 0) {
+                if (-idVertex > System.currentTimeMillis()) {
+                    idVertex = UNKNOWN;
+                } else {// negative entry expired
+                    segment.remove(idUser);
+                    idVertex = MISSING;
+                }
+            }
+        }
+        if (idVertex == MISSING) {
+            _numMisses.incrementAndGet();
+        } else if (idVertex == UNKNOWN) {
+            _numNegativeHits.incrementAndGet();
+        } else {
+            _numHits.incrementAndGet();
+        }
+        return idVertex;
+    }
+
+    /**
+     * Caches the vertex of a user that has been committed.
+     * 
+     * @param idUser
+     *            user identifier
+     * @param idVertex
+     *            identifier of the user vertex
+     */
+    public void put(long idUser, long idVertex) {
+        store(idUser, idVertex);
+    }
+
+    /**
+     * Caches a user as not existing, unless the vertex of the user is cached.
+     * The entry expires after the time to live.
+     * 
+     * @param idUser
+     *            user identifier
+     */
+    public void putUnknown(long idUser) {
+        LongLongLruMap segment = getSegment(idUser);
+        boolean evicted;
+        synchronized (segment) {
+            if (segment.get(idUser, MISSING) > 0) {
+                // user has been created concurrently
+                return;
+            }
+            evicted =
+                    segment.put(idUser,
+                            -(System.currentTimeMillis() + _negativeTtl));
+        }
+        if (evicted) {
+            _numEvictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stages the vertex of a user created in the current transaction, to be
+     * cached when the transaction has been committed.
+     * 
+     * @param idUser
+     *            user identifier
+     * @param idVertex
+     *            identifier of the user vertex
+     */
+    public void stagePut(long idUser, long idVertex) {
+        _stagedChanges.get().add(new Change(idUser, idVertex));
+    }
+
+    /**
+     * Caches the users staged by the current thread.
+     */
+    public void applyStaged() {
+        List<Change> changes = _stagedChanges.get();
+        if (changes.isEmpty()) {
+            return;
+        }
+        for (Change change : changes) {
+            // replaces negative entry, if any
+            store(change.idUser, change.idVertex);
+        }
+        changes.clear();
+    }
+
+    /**
+     * Discards the users staged by the current thread.
+     */
+    public void discardStaged() {
+        _stagedChanges.get().clear();
+    }
+
+    protected void store(long idUser, long value) {
+        LongLongLruMap segment = getSegment(idUser);
+        boolean evicted;
+        synchronized (segment) {
+            evicted = segment.put(idUser, value);
+        }
+        if (evicted) {
+            _numEvictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes a user from the cache.
+     * 
+     * @param idUser
+     *            user identifier
+     */
+    public void invalidate(long idUser) {
+        LongLongLruMap segment = getSegment(idUser);
+        synchronized (segment) {
+            segment.remove(idUser);
+        }
+    }
+
+    /**
+     * Removes all users from the cache.
+     */
+    public void clear() {
+        for (LongLongLruMap segment : _segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * @return number of users cached
+     */
+    public int size() {
+        int size = 0;
+        for (LongLongLruMap segment : _segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return number of lookups answered with a user vertex
+     */
+    public long getNumHits() {
+        return _numHits.get();
+    }
+
+    /**
+     * @return number of lookups answered with an unknown user
+     */
+    public long getNumNegativeHits() {
+        return _numNegativeHits.get();
+    }
+
+    /**
+     * @return number of lookups that could not be answered
+     */
+    public long getNumMisses() {
+        return _numMisses.get();
+    }
+
+    /**
+     * @return number of users evicted from the cache
+     */
+    public long getNumEvictions() {
+        return _numEvictions.get();
+    }
+
+    /**
+     * @return ratio of lookups answered by the cache, including unknown users
+     */
+    public double getHitRate() {
+        long numHits = _numHits.get() + _numNegativeHits.get();
+        long numLookups = numHits + _numMisses.get();
+        return (numLookups == 0) ? 0 : (double) numHits / numLookups;
+    }
+
+    /**
+     * user created, cached on commit
+     */
+    protected static class Change {
+
+        final long idUser;
+
+        final long idVertex;
+
+        Change(
+                long idUser,
+                long idVertex) {
+            this.idUser = idUser;
+            this.idVertex = idVertex;
+        }
+    }
+}
@@ -0,0 +1,500 @@
+package de.uniko.sebschlicht.graphity.titan.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.thinkaurelius.titan.core.TitanException;
+import com.thinkaurelius.titan.core.TitanGraph;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Vertex;
+
+import de.uniko.sebschlicht.graphity.titan.EdgeType;
+import de.uniko.sebschlicht.graphity.titan.cache.ReplicaLayerIndex;
+import de.uniko.sebschlicht.graphity.titan.model.UserProxy;
+
+/**
+ * Bounded background worker pool relinking the replica layers of an author's
+ * followers after a status update has been committed.<br>
+ * The followers are processed in chunks, each in a transaction of its own.
+ * Chunks failing to commit, e.g. due to locking conflicts, are retried. If
+ * the queue is full, the submitting thread waits for a free slot up to a
+ * timeout. Fan-outs that can not be queued in time are rejected.<br>
+ * Authors of fan-outs rejected or dropped, e.g. as a chunk exceeded the retry
+ * limit, are recorded and their fan-outs are queued again when another
+ * fan-out has finished, as far as the queue has free slots. Until then, the
+ * replicas of the author stay at their position in the replica layers not
+ * updated, hence the status update may be missing from or out of order in
+ * the news feeds of these followers. Authors recorded are kept in memory only
+ * and lost on shutdown.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class EgoNetworkUpdater {
+
+    protected final ReadOptimizedGraphity _graphity;
+
+    protected final TitanGraph _graphDb;
+
+    /**
+     * number of followers whose ego networks are updated per transaction
+     */
+    protected final int _chunkSize;
+
+    /**
+     * number of retries per chunk before giving up
+     */
+    protected final int _maxRetries;
+
+    /**
+     * time in nanoseconds a submission waits for a free slot in the queue
+     */
+    protected final long _submitTimeout;
+
+    protected final ArrayBlockingQueue<Runnable> _queue;
+
+    protected final ThreadPoolExecutor _executor;
+
+    /**
+     * number of fan-outs submitted but not finished yet
+     */
+    protected final AtomicInteger _numPendingFanOuts;
+
+    /**
+     * number of ego networks updated
+     */
+    protected final AtomicLong _numUpdatedEgoNetworks;
+
+    /**
+     * number of chunk retries
+     */
+    protected final AtomicLong _numRetries;
+
+    /**
+     * number of chunks dropped after exceeding the retry limit
+     */
+    protected final AtomicLong _numFailedChunks;
+
+    /**
+     * number of fan-outs rejected due to a full queue
+     */
+    protected final AtomicLong _numRejectedFanOuts;
+
+    /**
+     * identifiers of the authors whose fan-out has been rejected or dropped
+     * and has to be queued again
+     */
+    protected final Set<Long> _missedFanOuts;
+
+    /**
+     * time in milliseconds between the submission and the completion of the
+     * fan-out that finished most recently
+     */
+    protected volatile long _lastFanOutLag;
+
+    /**
+     * Creates and starts a background worker pool rejecting fan-outs
+     * immediately if the queue is full.
+     * 
+     * @param graphity
+     *            read-optimized Graphity instance to update ego networks of
+     * @param numThreads
+     *            number of worker threads
+     * @param queueCapacity
+     *            maximum number of fan-outs waiting for execution
+     * @param chunkSize
+     *            number of followers whose ego networks are updated per
+     *            transaction
+     * @param maxRetries
+     *            number of retries per chunk if the commit fails
+     */
+    public EgoNetworkUpdater(
+            ReadOptimizedGraphity graphity,
+            int numThreads,
+            int queueCapacity,
+            int chunkSize,
+            int maxRetries) {
+        this(graphity, numThreads, queueCapacity, chunkSize, maxRetries, 0,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates and starts a background worker pool.
+     * 
+     * @param graphity
+     *            read-optimized Graphity instance to update ego networks of
+     * @param numThreads
+     *            number of worker threads
+     * @param queueCapacity
+     *            maximum number of fan-outs waiting for execution
+     * @param chunkSize
+     *            number of followers whose ego networks are updated per
+     *            transaction
+     * @param maxRetries
+     *            number of retries per chunk if the commit fails
+     * @param submitTimeout
+     *            maximum time a submission waits for a free slot in the
+     *            queue, 0 to reject fan-outs immediately if the queue is full
+     * @param unit
+     *            time unit of the submission timeout
+     */
+    public EgoNetworkUpdater(
+            ReadOptimizedGraphity graphity,
+            int numThreads,
+            int queueCapacity,
+            int chunkSize,
+            int maxRetries,
+            long submitTimeout,
+            TimeUnit unit) {
+        _graphity = graphity;
+        _graphDb = graphity.getGraph();
+        _chunkSize = chunkSize;
+        _maxRetries = maxRetries;
+        _submitTimeout = unit.toNanos(submitTimeout);
+        _numPendingFanOuts = new AtomicInteger(0);
+        _numUpdatedEgoNetworks = new AtomicLong(0);
+        _numRetries = new AtomicLong(0);
+        _numFailedChunks = new AtomicLong(0);
+        _numRejectedFanOuts = new AtomicLong(0);
+        _missedFanOuts =
+                Collections
+                        .newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+        _queue = new ArrayBlockingQueue<Runnable>(queueCapacity);
+        _executor =
+                new ThreadPoolExecutor(numThreads, numThreads, 0L,
+                        TimeUnit.MILLISECONDS, _queue, new ThreadFactory() {
+
+                            private final AtomicInteger numThreads =
+                                    new AtomicInteger(0);
+
+                            @Override
+                            public Thread newThread(Runnable runnable) {
+                                Thread thread =
+                                        new Thread(runnable, "ego-network-"
+                                                + numThreads.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        }, new RejectedExecutionHandler() {
+
+                            @Override
+                            public void rejectedExecution(
+                                    Runnable fanOut,
+                                    ThreadPoolExecutor executor) {
+                                waitForSlot(fanOut, executor);
+                            }
+                        });
+    }
+
+    /**
+     * Schedules the update of the ego networks of an author's followers.
+     * 
+     * @param idAuthor
+     *            identifier of the author vertex
+     * @return true - if the fan-out has been queued<br>
+     *         false - if the fan-out has been rejected as the queue is full
+     */
+    public boolean submit(long idAuthor) {
+        _numPendingFanOuts.incrementAndGet();
+        try {
+            _executor.execute(new FanOut(idAuthor, false));
+            return true;
+        } catch (RejectedExecutionException e) {
+            _numPendingFanOuts.decrementAndGet();
+            _numRejectedFanOuts.incrementAndGet();
+            _missedFanOuts.add(idAuthor);
+            return false;
+        }
+    }
+
+    /**
+     * Queues the fan-outs of authors whose fan-out has been rejected or
+     * dropped, as long as the queue has free slots.
+     */
+    protected void requeueMissedFanOuts() {
+        Iterator<Long> iMissed = _missedFanOuts.iterator();
+        while (iMissed.hasNext() && !_executor.isShutdown()
+                && _queue.remainingCapacity() > 0) {
+            long idAuthor = iMissed.next();
+            iMissed.remove();
+            _numPendingFanOuts.incrementAndGet();
+            if (!_queue.offer(new FanOut(idAuthor, true))) {
+                _numPendingFanOuts.decrementAndGet();
+                _missedFanOuts.add(idAuthor);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Queues a fan-out rejected by the executor as soon as the queue has a
+     * free slot, up to the submission timeout.
+     * 
+     * @param fanOut
+     *            fan-out rejected
+     * @param executor
+     *            executor that rejected the fan-out
+     * @throws RejectedExecutionException
+     *             if there was no free slot in time or the executor has been
+     *             shut down
+     */
+    protected void waitForSlot(Runnable fanOut, ThreadPoolExecutor executor) {
+        if (!executor.isShutdown() && _submitTimeout > 0) {
+            try {
+                if (executor.getQueue().offer(fanOut, _submitTimeout,
+                        TimeUnit.NANOSECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        throw new RejectedExecutionException("fan-out queue is full");
+    }
+
+    /**
+     * @return number of fan-outs waiting for execution
+     */
+    public int getQueueDepth() {
+        return _queue.size();
+    }
+
+    /**
+     * @return number of fan-outs submitted but not finished yet
+     */
+    public int getNumPendingFanOuts() {
+        return _numPendingFanOuts.get();
+    }
+
+    /**
+     * @return time in milliseconds the oldest fan-out waiting for execution
+     *         has been queued
+     */
+    public long getLag() {
+        FanOut oldest = (FanOut) _queue.peek();
+        return (oldest != null) ? System.currentTimeMillis()
+                - oldest.submitted : 0;
+    }
+
+    /**
+     * @return time in milliseconds between the submission and the completion
+     *         of the fan-out that finished most recently
+     */
+    public long getLastFanOutLag() {
+        return _lastFanOutLag;
+    }
+
+    /**
+     * @return number of ego networks updated
+     */
+    public long getNumUpdatedEgoNetworks() {
+        return _numUpdatedEgoNetworks.get();
+    }
+
+    /**
+     * @return number of chunk retries
+     */
+    public long getNumRetries() {
+        return _numRetries.get();
+    }
+
+    /**
+     * @return number of chunks dropped after exceeding the retry limit or
+     *         failing
+     */
+    public long getNumFailedChunks() {
+        return _numFailedChunks.get();
+    }
+
+    /**
+     * @return number of fan-outs rejected due to a full queue
+     */
+    public long getNumRejectedFanOuts() {
+        return _numRejectedFanOuts.get();
+    }
+
+    /**
+     * @return number of authors whose fan-out has been rejected or dropped
+     *         and has not been queued again yet
+     */
+    public int getNumMissedFanOuts() {
+        return _missedFanOuts.size();
+    }
+
+    /**
+     * Stops accepting fan-outs and waits for the pending ones to finish.
+     * 
+     * @param timeout
+     *            maximum time to wait
+     * @param unit
+     *            unit of the timeout
+     * @return true - if all fan-outs have finished<br>
+     *         false - if the timeout elapsed before
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public boolean shutdown(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        _executor.shutdown();
+        return _executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Loads the identifiers of the replicas of an author.
+     * 
+     * @param idAuthor
+     *            identifier of the author vertex
+     * @return identifiers of the replica vertices
+     */
+    protected List<Long> loadReplicaIds(long idAuthor) {
+        List<Long> replicaIds = new ArrayList<Long>();
+        try {
+            Vertex vAuthor = _graphDb.getVertex(idAuthor);
+            if (vAuthor != null) {
+                for (Vertex vReplica : vAuthor.getVertices(Direction.IN,
+                        EdgeType.REPLICA.getLabel())) {
+                    replicaIds.add((long) vReplica.getId());
+                }
+            }
+        } finally {
+            _graphDb.rollback();
+        }
+        return replicaIds;
+    }
+
+    /**
+     * Updates the ego networks of a chunk of followers in a single
+     * transaction.
+     * 
+     * @param idAuthor
+     *            identifier of the author vertex
+     * @param replicaIds
+     *            identifiers of the replica vertices in the chunk
+     * @return true - if the chunk has been committed<br>
+     *         false - if the chunk has been dropped
+     */
+    protected boolean updateChunk(long idAuthor, List<Long> replicaIds) {
+        ReplicaLayerIndex index = _graphity.getReplicaLayerIndex();
+        for (int iTry = 0; iTry <= _maxRetries; ++iTry) {
+            int numUpdated = 0;
+            try {
+                Vertex vAuthor = _graphDb.getVertex(idAuthor);
+                if (vAuthor == null) {// concurrent graph modification
+                    _graphDb.rollback();
+                    return false;
+                }
+                long lastPost = new UserProxy(vAuthor).getLastPostTimestamp();
+                for (long idReplica : replicaIds) {
+                    Vertex vReplica = _graphDb.getVertex(idReplica);
+                    if (vReplica == null) {// concurrent graph modification
+                        continue;
+                    }
+                    if (_graphity.updateEgoNetwork(vReplica, lastPost)) {
+                        numUpdated += 1;
+                    }
+                }
+                _graphDb.commit();
+                if (index != null) {
+                    index.applyStaged();
+                }
+                _numUpdatedEgoNetworks.addAndGet(numUpdated);
+                return true;
+            } catch (TitanException e) {
+                rollback(index);
+                if (iTry < _maxRetries) {
+                    _numRetries.incrementAndGet();
+                }
+            } catch (RuntimeException e) {
+                // not caused by a conflict, a retry would fail as well
+                rollback(index);
+                break;
+            }
+        }
+        _numFailedChunks.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Rolls back the transaction of the current worker.
+     * 
+     * @param index
+     *            replica layer index whose changes staged are discarded, if
+     *            used
+     */
+    protected void rollback(ReplicaLayerIndex index) {
+        if (index != null) {
+            index.discardStaged();
+        }
+        _graphDb.rollback();
+    }
+
+    /**
+     * fan-out of a single status update
+     */
+    protected class FanOut implements Runnable {
+
+        protected final long idAuthor;
+
+        protected final long submitted;
+
+        /**
+         * flag whether the fan-out has been queued again after it had been
+         * rejected or dropped
+         */
+        protected final boolean requeued;
+
+        public FanOut(
+                long idAuthor,
+                boolean requeued) {
+            this.idAuthor = idAuthor;
+            this.requeued = requeued;
+            submitted = System.currentTimeMillis();
+        }
+
+        @Override
+        public void run() {
+            boolean complete = true;
+            try {
+                List<Long> replicaIds = loadReplicaIds(idAuthor);
+                for (int iChunk = 0; iChunk < replicaIds.size(); iChunk +=
+                        _chunkSize) {
+                    complete &=
+                            updateChunk(idAuthor, replicaIds.subList(iChunk,
+                                    Math.min(iChunk + _chunkSize,
+                                            replicaIds.size())));
+                }
+                if (!complete) {
+                    _missedFanOuts.add(idAuthor);
+                }
+            } catch (RuntimeException e) {
+                // replicas could not be loaded, the fan-out is dropped
+                _numFailedChunks.incrementAndGet();
+                _missedFanOuts.add(idAuthor);
+                complete = false;
+            } finally {
+                _lastFanOutLag = System.currentTimeMillis() - submitted;
+                _numPendingFanOuts.decrementAndGet();
+            }
+            /*
+             * Fan-outs queued again that failed do not queue further ones,
+             * otherwise a fan-out failing permanently would be retried in a
+             * loop.
+             */
+            if (complete || !requeued) {
+                requeueMissedFanOuts();
+            }
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package de.uniko.sebschlicht.graphity.titan.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.thinkaurelius.titan.core.TitanGraph;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+
+import de.uniko.sebschlicht.graphity.titan.EdgeType;
+import de.uniko.sebschlicht.graphity.titan.VertexPrefetcher;
+import de.uniko.sebschlicht.graphity.titan.Walker;
+import de.uniko.sebschlicht.graphity.titan.metrics.TraversalCounter;
+import de.uniko.sebschlicht.graphity.titan.model.PostIteratorHeap;
+import de.uniko.sebschlicht.graphity.titan.model.UserPostIterator;
+import de.uniko.sebschlicht.graphity.titan.model.UserProxy;
+
+/**
+ * Graphity implementation that pushes status updates into the followers'
+ * replica layers, except for authors with many followers. As soon as an
+ * author reaches the follower threshold, its replicas are removed from the
+ * replica layers of its followers and the followers pull its status updates
+ * at read time instead.<br>
+ * The write cost of a status update is therefore bounded by the follower
+ * threshold, while the read cost grows by the number of such authors
+ * followed.<br>
+ * Followers are counted via a counter on the user vertex that is seeded from
+ * the user's replicas when read first. Authors stay pulled once they reached
+ * the threshold. The followers are converted to pull by a
+ * {@link PullSwitcher} in background, after the followship that reached the
+ * threshold has been committed. Until all followers have been converted,
+ * status updates are still pushed to the followers not converted yet.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class HybridGraphity extends ReadOptimizedGraphity {
+
+    /**
+     * default number of followers converted to pull per transaction
+     */
+    protected static final int DEFAULT_SWITCH_CHUNK_SIZE = 100;
+
+    /**
+     * default number of retries per chunk of followers converted
+     */
+    protected static final int DEFAULT_SWITCH_RETRIES = 3;
+
+    /**
+     * number of followers an author needs to have its status updates pulled
+     */
+    protected long _followerThreshold;
+
+    /**
+     * background worker converting followers to pull, <b>null</b> to convert
+     * them inline
+     */
+    protected PullSwitcher _pullSwitcher;
+
+    /**
+     * authors of the current transaction that reached the follower threshold
+     */
+    protected final ThreadLocal<List<Long>> _pendingSwitches =
+            new ThreadLocal<List<Long>>() {
+
+                @Override
+                protected List<Long> initialValue() {
+                    return new ArrayList<Long>();
+                }
+            };
+
+    /**
+     * Creates a new hybrid Graphity instance using the Titan database
+     * provided.
+     * 
+     * @param graphDb
+     *            Titan graph database holding any Graphity social network graph
+     *            to operate on
+     * @param followerThreshold
+     *            number of followers an author needs to have its status updates
+     *            pulled instead of pushed
+     */
+    public HybridGraphity(
+            TitanGraph graphDb,
+            long followerThreshold) {
+        super(graphDb);
+        if (followerThreshold < 1) {
+            throw new IllegalArgumentException(
+                    "follower threshold must be positive");
+        }
+        _followerThreshold = followerThreshold;
+        _pullSwitcher =
+                new PullSwitcher(this, DEFAULT_SWITCH_CHUNK_SIZE,
+                        DEFAULT_SWITCH_RETRIES);
+    }
+
+    /**
+     * Sets the background worker converting the followers of authors that
+     * reached the follower threshold. Changes must be committed via
+     * {@link #commit()} for the conversion to be scheduled.
+     * 
+     * @param pullSwitcher
+     *            background worker or <b>null</b> to convert the followers
+     *            inline, in the transaction reaching the threshold
+     */
+    public void setPullSwitcher(PullSwitcher pullSwitcher) {
+        _pullSwitcher = pullSwitcher;
+    }
+
+    /**
+     * @return background worker converting followers to pull or <b>null</b>
+     *         if the followers are converted inline
+     */
+    public PullSwitcher getPullSwitcher() {
+        return _pullSwitcher;
+    }
+
+    @Override
+    protected void onCommit() {
+        super.onCommit();
+        List<Long> pendingSwitches = _pendingSwitches.get();
+        if (!pendingSwitches.isEmpty()) {
+            PullSwitcher pullSwitcher = _pullSwitcher;
+            if (pullSwitcher != null) {
+                for (long idAuthor : pendingSwitches) {
+                    pullSwitcher.submit(idAuthor);
+                }
+            }
+            pendingSwitches.clear();
+        }
+    }
+
+    @Override
+    protected void onRollback() {
+        super.onRollback();
+        _pendingSwitches.get().clear();
+    }
+
+    @Override
+    protected boolean addFollowship(Vertex vFollowing, Vertex vFollowed) {
+        UserProxy pFollowed = new UserProxy(vFollowed);
+        // read before the replica is created, in case the counter is seeded
+        long numFollowers = pFollowed.getNumFollowers() + 1;
+        if (pFollowed.isPulled()) {
+            if (findReplica(vFollowing, vFollowed) != null) {
+                // user is already following this user
+                return false;
+            }
+            // create replica outside of following's replica layer
+            final Vertex newReplica = getTransaction().addVertex(null);
+            vFollowing.addEdge(EdgeType.FOLLOWS.getLabel(), newReplica);
+            newReplica.addEdge(EdgeType.REPLICA.getLabel(), vFollowed);
+            vFollowing.addEdge(EdgeType.PULL.getLabel(), vFollowed);
+        } else if (!super.addFollowship(vFollowing, vFollowed)) {
+            return false;
+        }
+
+        pFollowed.setNumFollowers(numFollowers);
+        if (!pFollowed.isPulled() && numFollowers >= _followerThreshold) {
+            switchToPull(pFollowed);
+        }
+        return true;
+    }
+
+    /**
+     * Marks an author as pulled and schedules the conversion of its followers,
+     * i.e. the removal of its replicas from the replica layers of its
+     * followers. Without a background worker, the followers are converted in
+     * the current transaction.
+     * 
+     * @param pAuthor
+     *            author that reached the follower threshold
+     */
+    protected void switchToPull(UserProxy pAuthor) {
+        pAuthor.setPulled(true);
+        Vertex vAuthor = pAuthor.getVertex();
+        if (_pullSwitcher != null) {
+            _pendingSwitches.get().add((long) vAuthor.getId());
+            return;
+        }
+        for (Vertex vReplica : vAuthor.getVertices(Direction.IN,
+                EdgeType.REPLICA.getLabel())) {
+            TraversalCounter.traverseEdge();
+            pullReplica(vReplica, vAuthor);
+        }
+        pAuthor.setConverted(true);
+    }
+
+    /**
+     * Removes a replica of a pulled author from the replica layer of the
+     * follower and lets the follower pull the author's status updates
+     * instead.
+     * 
+     * @param vReplica
+     *            replica of the author
+     * @param vAuthor
+     *            author vertex
+     * @return true - if the follower has been converted<br>
+     *         false - if the replica is not part of a replica layer, e.g.
+     *         converted already
+     */
+    protected boolean pullReplica(Vertex vReplica, Vertex vAuthor) {
+        if (Walker.previousVertex(vReplica,
+                EdgeType.GRAPHITY.getLabel()) == null) {
+            return false;
+        }
+        Vertex vFollowing =
+                Walker.previousVertex(vReplica, EdgeType.FOLLOWS.getLabel());
+        if (vFollowing == null) {// concurrent graph modification
+            return false;
+        }
+        stageIndexRemoval(vFollowing, vReplica);
+        unlinkFromReplicaLayer(vReplica);
+        vFollowing.addEdge(EdgeType.PULL.getLabel(), vAuthor);
+        return true;
+    }
+
+    @Override
+    protected boolean removeFollowship(Vertex vFollowing, Vertex vFollowed) {
+        UserProxy pFollowed = new UserProxy(vFollowed);
+        // read before the replica is removed, in case the counter is seeded
+        long numFollowers = pFollowed.getNumFollowers();
+        if (pFollowed.isPulled()) {
+            Vertex vReplica = findReplica(vFollowing, vFollowed);
+            if (vReplica == null) {
+                return false;
+            }
+            if (Walker.previousVertex(vReplica,
+                    EdgeType.GRAPHITY.getLabel()) != null) {
+                // follower has not been converted to pull yet
+                stageIndexRemoval(vFollowing, vReplica);
+                unlinkFromReplicaLayer(vReplica);
+            }
+            for (Edge pull : vFollowing.getEdges(Direction.OUT,
+                    EdgeType.PULL.getLabel())) {
+                TraversalCounter.scanEdge();
+                if (pull.getVertex(Direction.IN).equals(vFollowed)) {
+                    pull.remove();
+                    break;
+                }
+            }
+            removeReplica(vReplica);
+        } else if (!super.removeFollowship(vFollowing, vFollowed)) {
+            return false;
+        }
+
+        if (numFollowers > 0) {
+            pFollowed.setNumFollowers(numFollowers - 1);
+        }
+        return true;
+    }
+
+    @Override
+    protected void updateFollowers(Vertex vAuthor) {
+        UserProxy pAuthor = new UserProxy(vAuthor);
+        /*
+         * Until all followers have been converted, replicas still linked to a
+         * replica layer are moved to the top. Replicas converted are skipped.
+         */
+        if (!pAuthor.isPulled() || !pAuthor.isConverted()) {
+            super.updateFollowers(vAuthor);
+        }
+    }
+
+    @Override
+    protected void addPulledStreams(
+            Vertex vReader,
+            PostIteratorHeap postIterators) {
+        List<Vertex> pulledUsers = new ArrayList<Vertex>();
+        for (Vertex vPulled : vReader.getVertices(Direction.OUT,
+                EdgeType.PULL.getLabel())) {
+            TraversalCounter.traverseEdge();
+            pulledUsers.add(vPulled);
+        }
+        VertexPrefetcher.loadNewestStatusUpdates(getTransaction(), pulledUsers);
+
+        UserPostIterator postIterator;
+        for (Vertex vPulled : pulledUsers) {
+            postIterator = postIterators.obtain(new UserProxy(vPulled));
+            if (postIterator.hasNext()) {
+                postIterators.add(postIterator);
+            } else {
+                postIterators.recycle(postIterator);
+            }
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package de.uniko.sebschlicht.graphity.titan.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.thinkaurelius.titan.core.TitanException;
+import com.thinkaurelius.titan.core.TitanGraph;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Vertex;
+
+import de.uniko.sebschlicht.graphity.titan.EdgeType;
+import de.uniko.sebschlicht.graphity.titan.cache.ReplicaLayerIndex;
+import de.uniko.sebschlicht.graphity.titan.model.UserProxy;
+
+/**
+ * Background worker converting the followers of authors that reached the
+ * follower threshold of a {@link HybridGraphity} from push to pull.<br>
+ * The replicas of an author are removed from the replica layers of its
+ * followers in chunks, each in a transaction of its own. Chunks failing to
+ * commit, e.g. due to locking conflicts, are retried. Until a follower has
+ * been converted, the author's replica stays in the follower's replica layer
+ * and is still moved to the top when the author posts.<br>
+ * The author is marked as converted along with the last chunk, if all chunks
+ * have been committed. A conversion is idempotent: Replicas not linked to a
+ * replica layer are skipped, hence an author can be submitted again, e.g.
+ * after a chunk has been dropped.<br>
+ * Like fan-outs, conversions rewrite the replica layers of the followers and
+ * are not isolated from concurrent writes to these layers, unless the storage
+ * backend locks them.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class PullSwitcher {
+
+    protected final HybridGraphity _graphity;
+
+    protected final TitanGraph _graphDb;
+
+    /**
+     * number of followers converted per transaction
+     */
+    protected final int _chunkSize;
+
+    /**
+     * number of retries per chunk before giving up
+     */
+    protected final int _maxRetries;
+
+    protected final ExecutorService _executor;
+
+    /**
+     * number of conversions submitted but not finished yet
+     */
+    protected final AtomicInteger _numPendingSwitches;
+
+    /**
+     * number of followers converted
+     */
+    protected final AtomicLong _numPulledReplicas;
+
+    /**
+     * number of chunk retries
+     */
+    protected final AtomicLong _numRetries;
+
+    /**
+     * number of chunks dropped after exceeding the retry limit or failing
+     */
+    protected final AtomicLong _numFailedChunks;
+
+    /**
+     * Creates and starts a background worker.
+     * 
+     * @param graphity
+     *            hybrid Graphity instance to convert followers of
+     * @param chunkSize
+     *            number of followers converted per transaction
+     * @param maxRetries
+     *            number of retries per chunk if the commit fails
+     */
+    public PullSwitcher(
+            HybridGraphity graphity,
+            int chunkSize,
+            int maxRetries) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+        _graphity = graphity;
+        _graphDb = graphity.getGraph();
+        _chunkSize = chunkSize;
+        _maxRetries = maxRetries;
+        _numPendingSwitches = new AtomicInteger(0);
+        _numPulledReplicas = new AtomicLong(0);
+        _numRetries = new AtomicLong(0);
+        _numFailedChunks = new AtomicLong(0);
+        _executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "pull-switch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Schedules the conversion of an author's followers from push to pull.
+     * The author has to be marked as pulled already.
+     * 
+     * @param idAuthor
+     *            identifier of the author vertex
+     */
+    public void submit(final long idAuthor) {
+        _numPendingSwitches.incrementAndGet();
+        _executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    switchToPull(idAuthor);
+                } finally {
+                    _numPendingSwitches.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return number of conversions submitted but not finished yet
+     */
+    public int getNumPendingSwitches() {
+        return _numPendingSwitches.get();
+    }
+
+    /**
+     * @return number of followers converted
+     */
+    public long getNumPulledReplicas() {
+        return _numPulledReplicas.get();
+    }
+
+    /**
+     * @return number of chunk retries
+     */
+    public long getNumRetries() {
+        return _numRetries.get();
+    }
+
+    /**
+     * @return number of chunks dropped after exceeding the retry limit or
+     *         failing
+     */
+    public long getNumFailedChunks() {
+        return _numFailedChunks.get();
+    }
+
+    /**
+     * Stops accepting conversions and waits for the pending ones to finish.
+     * 
+     * @param timeout
+     *            maximum time to wait
+     * @param unit
+     *            unit of the timeout
+     * @return true - if all conversions have finished<br>
+     *         false - if the timeout elapsed before
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public boolean shutdown(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        _executor.shutdown();
+        return _executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Converts the followers of an author chunk by chunk.
+     * 
+     * @param idAuthor
+     *            identifier of the author vertex
+     */
+    protected void switchToPull(long idAuthor) {
+        List<Long> replicaIds;
+        try {
+            replicaIds = loadReplicaIds(idAuthor);
+        } catch (RuntimeException e) {
+            // replicas could not be loaded, the conversion is dropped
+            _numFailedChunks.incrementAndGet();
+            return;
+        }
+        boolean converted = true;
+        int iChunk = 0;
+        do {
+            int iEnd = Math.min(iChunk + _chunkSize, replicaIds.size());
+            // the author is marked as converted along with the last chunk
+            boolean last = converted && iEnd == replicaIds.size();
+            converted &=
+                    convertChunk(idAuthor, replicaIds.subList(iChunk, iEnd),
+                            last);
+            iChunk = iEnd;
+        } while (iChunk < replicaIds.size());
+    }
+
+    /**
+     * Loads the identifiers of the replicas of an author.
+     * 
+     * @param idAuthor
+     *            identifier of the author vertex
+     * @return identifiers of the replica vertices
+     */
+    protected List<Long> loadReplicaIds(long idAuthor) {
+        List<Long> replicaIds = new ArrayList<Long>();
+        try {
+            Vertex vAuthor = _graphDb.getVertex(idAuthor);
+            if (vAuthor != null) {
+                for (Vertex vReplica : vAuthor.getVertices(Direction.IN,
+                        EdgeType.REPLICA.getLabel())) {
+                    replicaIds.add((long) vReplica.getId());
+                }
+            }
+        } finally {
+            _graphDb.rollback();
+        }
+        return replicaIds;
+    }
+
+    /**
+     * Converts a chunk of followers in a single transaction.
+     * 
+     * @param idAuthor
+     *            identifier of the author vertex
+     * @param replicaIds
+     *            identifiers of the replica vertices in the chunk
+     * @param markConverted
+     *            true - to mark the author as converted, if all previous
+     *            chunks have been committed<br>
+     *            false - if further followers have to be converted
+     * @return true - if the chunk has been committed<br>
+     *         false - if the chunk has been dropped
+     */
+    protected boolean convertChunk(
+            long idAuthor,
+            List<Long> replicaIds,
+            boolean markConverted) {
+        ReplicaLayerIndex index = _graphity.getReplicaLayerIndex();
+        for (int iTry = 0; iTry <= _maxRetries; ++iTry) {
+            int numPulled = 0;
+            try {
+                Vertex vAuthor = _graphDb.getVertex(idAuthor);
+                if (vAuthor == null) {// concurrent graph modification
+                    _graphDb.rollback();
+                    return false;
+                }
+                for (long idReplica : replicaIds) {
+                    Vertex vReplica = _graphDb.getVertex(idReplica);
+                    if (vReplica == null) {// concurrent graph modification
+                        continue;
+                    }
+                    if (_graphity.pullReplica(vReplica, vAuthor)) {
+                        numPulled += 1;
+                    }
+                }
+                if (markConverted) {
+                    new UserProxy(vAuthor).setConverted(true);
+                }
+                _graphDb.commit();
+                if (index != null) {
+                    index.applyStaged();
+                }
+                _numPulledReplicas.addAndGet(numPulled);
+                return true;
+            } catch (TitanException e) {
+                rollback(index);
+                if (iTry < _maxRetries) {
+                    _numRetries.incrementAndGet();
+                }
+            } catch (RuntimeException e) {
+                // not caused by a conflict, a retry would fail as well
+                rollback(index);
+                break;
+            }
+        }
+        _numFailedChunks.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Rolls back the transaction of the worker.
+     * 
+     * @param index
+     *            replica layer index whose changes staged are discarded, if
+     *            used
+     */
+    protected void rollback(ReplicaLayerIndex index) {
+        if (index != null) {
+            index.discardStaged();
+        }
+        _graphDb.rollback();
+    }
+}
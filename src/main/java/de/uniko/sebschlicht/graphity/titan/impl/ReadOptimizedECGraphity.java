@@ -1,5 +1,10 @@
 package de.uniko.sebschlicht.graphity.titan.impl;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import com.thinkaurelius.titan.core.TitanGraph;
 import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Edge;
@@ -8,55 +13,190 @@ import com.tinkerpop.blueprints.Vertex;
 import de.uniko.sebschlicht.graphity.titan.EdgeType;
 import de.uniko.sebschlicht.graphity.titan.TitanGraphity;
 import de.uniko.sebschlicht.graphity.titan.Walker;
+import de.uniko.sebschlicht.graphity.titan.cache.ReplicaLayerIndex;
+import de.uniko.sebschlicht.graphity.titan.metrics.TraversalCounter;
+import de.uniko.sebschlicht.graphity.titan.model.FeedCursor;
+import de.uniko.sebschlicht.graphity.titan.model.FeedEntry;
+import de.uniko.sebschlicht.graphity.titan.model.FeedEntryPage;
+import de.uniko.sebschlicht.graphity.titan.model.PostIteratorHeap;
+import de.uniko.sebschlicht.graphity.titan.model.StatusUpdateProxy;
+import de.uniko.sebschlicht.graphity.titan.model.UserPostIterator;
 import de.uniko.sebschlicht.graphity.titan.model.UserProxy;
 import de.uniko.sebschlicht.graphity.titan.model.VersionedEdge;
+import de.uniko.sebschlicht.graphity.titan.model.VersionedReplicaQueue;
 import de.uniko.sebschlicht.graphity.titan.requests.ServiceRequestFollow;
+import de.uniko.sebschlicht.graphity.titan.requests.ServiceRequestUnfollow;
+import de.uniko.sebschlicht.socialnet.StatusUpdate;
 
+/**
+ * Read-optimized Graphity that does not rely on locks of the storage backend,
+ * e.g. for eventually consistent backends like Cassandra.<br>
+ * The replica layers are written via GRAPHITY edges versioned by timestamps:
+ * an edge is never updated but replaced by a more recent one. Concurrent
+ * writes may leave multiple GRAPHITY edges per vertex, duplicate replicas and
+ * replicas out of order. Reads walk along the most recent edges and skip
+ * duplicate and dangling replicas, a {@link ReplicaLayerRepairer} removes the
+ * anomalies in background.
+ * 
+ * @author sebschlicht
+ * 
+ */
 public class ReadOptimizedECGraphity extends TitanGraphity {
 
+    /**
+     * (optional) background worker repairing the replica layers
+     */
+    protected ReplicaLayerRepairer _layerRepairer;
+
+    /**
+     * subscribers of the current transaction whose replica layers have to be
+     * checked in background
+     */
+    protected final ThreadLocal<List<Long>> _pendingRepairs =
+            new ThreadLocal<List<Long>>() {
+
+                @Override
+                protected List<Long> initialValue() {
+                    return new ArrayList<Long>();
+                }
+            };
+
+    /**
+     * flag whether replicas carry the last post timestamp of the user
+     * replicated
+     */
+    protected boolean _replicaTimestamps;
+
     public ReadOptimizedECGraphity(
             TitanGraph graphDb) {
         super(graphDb);
     }
 
-    public boolean addFollowship(ServiceRequestFollow request) {
-        // try to find the replica node of the user followed
-        Vertex vUserFollowed;
-        for (Vertex vFollowedReplica : request.getSubscriberVertex()
-                .getVertices(Direction.OUT, EdgeType.FOLLOWS.getLabel())) {
-            /*
-             * In an EC storage backend there may be FOLLOWS edges that point to
-             * multiple replicas of the same user.
-             * <br>
-             * We could fix them when adding a FOLLOWS edge or when accessing
-             * the news stream of the user/a follower.
-             * <br>
-             * This happens when two request try to add the same subscription
-             * concurrently. Actually we don't expect this to happen.
-             */
-            /*
-             * A replica will never have multiple REPLICA edges.
-             */
-            vUserFollowed =
-                    Walker.nextVertex(vFollowedReplica,
-                            EdgeType.REPLICA.getLabel());
+    /**
+     * Enables or disables the denormalization of the last post timestamps.
+     * If enabled, each replica inserted or moved stores the timestamp of the
+     * newest status update of the user replicated, so that walks along a
+     * replica layer do not have to load the users replicated. Replicas
+     * without a timestamp fall back to the user's timestamp, timestamps
+     * outdated by concurrent writes are corrected by the
+     * {@link ReplicaLayerRepairer}.<br>
+     * Replica timestamps are not updated while disabled, thus the mode should
+     * not be disabled for a graph that is going to be used with the mode
+     * enabled again.
+     * 
+     * @param replicaTimestamps
+     *            true - to store the last post timestamps on replicas<br>
+     *            false - to load them from the users replicated
+     */
+    public void setReplicaTimestamps(boolean replicaTimestamps) {
+        _replicaTimestamps = replicaTimestamps;
+    }
 
-            /*
-             * Another request may add a subscription to the subscriber
-             * concurrently.
-             * We don't need to care, because the worst case is that it is the
-             * same subscription we want to add. How to resolve such issues is
-             * described above.
-             * In production, we don't expect this to happen.
-             * In our evaluation this case is rare but there is a chance.
-             */
-            if (vUserFollowed == null) {
-                continue;
-            }
-            if (vUserFollowed.equals(request.getSubscriberVertex())) {
-                // user is already following this user
-                return false;
+    /**
+     * @return true - if replicas carry the last post timestamp of the user
+     *         replicated<br>
+     *         false - otherwise
+     */
+    public boolean hasReplicaTimestamps() {
+        return _replicaTimestamps;
+    }
+
+    /**
+     * Sets a background worker checking the replica layers changed. Each
+     * replica layer is submitted after the transaction changing it has been
+     * committed.
+     * 
+     * @param layerRepairer
+     *            replica layer repairer or <b>null</b> to repair on-read only
+     */
+    public void setReplicaLayerRepairer(ReplicaLayerRepairer layerRepairer) {
+        _layerRepairer = layerRepairer;
+    }
+
+    /**
+     * @return replica layer repairer or <b>null</b> if not set
+     */
+    public ReplicaLayerRepairer getReplicaLayerRepairer() {
+        return _layerRepairer;
+    }
+
+    @Override
+    protected void onCommit() {
+        List<Long> pendingRepairs = _pendingRepairs.get();
+        if (!pendingRepairs.isEmpty()) {
+            ReplicaLayerRepairer layerRepairer = _layerRepairer;
+            if (layerRepairer != null) {
+                for (long idSubscriber : pendingRepairs) {
+                    layerRepairer.submit(idSubscriber);
+                }
             }
+            pendingRepairs.clear();
+        }
+    }
+
+    @Override
+    protected void onRollback() {
+        _pendingRepairs.get().clear();
+    }
+
+    /**
+     * Adds a followship at the time the request has been accepted.
+     * 
+     * @param request
+     *            follow request with both user vertices loaded
+     * @return true - if the followship was successfully created<br>
+     *         false - if this followship is already existing
+     */
+    @Override
+    public boolean addFollowship(ServiceRequestFollow request) {
+        return addFollowship(request.getSubscriberVertex(),
+                request.getFollowedVertex(), request.getTimestamp());
+    }
+
+    @Override
+    protected boolean addFollowship(Vertex vFollowing, Vertex vFollowed) {
+        return addFollowship(vFollowing, vFollowed, System.currentTimeMillis());
+    }
+
+    /**
+     * Adds a followship between two user vertices.
+     * 
+     * @param vSubscriber
+     *            vertex of the user that wants to follow another user
+     * @param vFollowed
+     *            vertex of the user that will be followed
+     * @param timestamp
+     *            version of the GRAPHITY edges written
+     * @return true - if the followship was successfully created<br>
+     *         false - if this followship is already existing
+     */
+    protected boolean addFollowship(
+            Vertex vSubscriber,
+            Vertex vFollowed,
+            long timestamp) {
+        // try to find the replica node of the user followed
+        /*
+         * In an EC storage backend there may be FOLLOWS edges that point to
+         * multiple replicas of the same user.
+         * <br>
+         * We could fix them when adding a FOLLOWS edge or when accessing
+         * the news stream of the user/a follower.
+         * <br>
+         * This happens when two request try to add the same subscription
+         * concurrently. Actually we don't expect this to happen.
+         */
+        /*
+         * Another request may add a subscription to the subscriber
+         * concurrently.
+         * We don't need to care, because the worst case is that it is the
+         * same subscription we want to add. How to resolve such issues is
+         * described above.
+         * In production, we don't expect this to happen.
+         * In our evaluation this case is rare but there is a chance.
+         */
+        if (!findReplicas(vSubscriber, vFollowed).isEmpty()) {
+            // user is already following this user
+            return false;
         }
 
         // create replica for user followed
@@ -66,15 +206,12 @@ public class ReadOptimizedECGraphity extends TitanGraphity {
          * replica is followed, but not yet linked to its target user. The
          * read and write algorithms are aware of this state and can handle it.
          */
-        final Vertex rFollowed = graphDb.addVertex(null);
-        request.getSubscriberVertex().addEdge(EdgeType.FOLLOWS.getLabel(),
-                rFollowed);
-        rFollowed.addEdge(EdgeType.REPLICA.getLabel(),
-                request.getFollowedVertex());
+        final Vertex rFollowed = getTransaction().addVertex(null);
+        vSubscriber.addEdge(EdgeType.FOLLOWS.getLabel(), rFollowed);
+        rFollowed.addEdge(EdgeType.REPLICA.getLabel(), vFollowed);
 
         // insert replica in subsriber's ego network
-        insertIntoEgoNetwork(request.getSubscriberVertex(), rFollowed,
-                request.getTimestamp());
+        insertIntoEgoNetwork(vSubscriber, rFollowed, timestamp);
         return true;
     }
 
@@ -82,74 +219,563 @@ public class ReadOptimizedECGraphity extends TitanGraphity {
             Vertex vSubscriber,
             Vertex rFollowed,
             long timestamp) {
-        if (Walker.nextVertex(vSubscriber, EdgeType.GRAPHITY.getLabel()) == null) {
-            // very first subscription of the subscriber
+        _pendingRepairs.get().add((long) vSubscriber.getId());
+        /*
+         * Concurrent subscription creation for the same user may create
+         * multiple GRAPHITY edges starting from the same vertex.
+         * <br>
+         * We only walk along the most recent edge, the others are removed by
+         * the replica layer repairer.
+         */
+        // search for insertion index within subscriber's replica layer
+        final long followedTimestamp = getLastUpdateByReplica(rFollowed);
+        if (_replicaTimestamps) {
+            rFollowed.setProperty(UserProxy.PROP_LAST_STREAM_UDPATE,
+                    followedTimestamp);
+        }
+        Set<Object> visited = new HashSet<Object>();
+        Vertex prevReplica = seekReplicaLayer(vSubscriber, followedTimestamp);
+        visited.add(prevReplica.getId());
+        Vertex crrReplica;
+        while (true) {
+            // get next user in subscriber's replica layer
+            crrReplica =
+                    Walker.nextMostRecentVertex(prevReplica,
+                            EdgeType.GRAPHITY.getLabel());
+            if (crrReplica == null || !visited.add(crrReplica.getId())) {
+                // end of the replica layer or cycle to be cut
+                crrReplica = null;
+                break;
+            }
+            if (getLastUpdateByReplica(crrReplica) <= followedTimestamp) {
+                // insertion position has been found
+                break;
+            }
+            prevReplica = crrReplica;
+        }
+
+        // previous replica is the predecessor of the followed replica
+        long version = unlinkMostRecent(prevReplica, timestamp);
+        linkVersioned(prevReplica, rFollowed, version);
+        // re-link next replica in replica layer, if existing
+        if (crrReplica != null) {
+            linkVersioned(rFollowed, crrReplica, version);
+        }
+        stageIndexPut(vSubscriber, rFollowed, followedTimestamp);
+    }
+
+    /**
+     * Looks up the replica layer index for a replica preceding the insertion
+     * position of a replica. The replica found has to be linked via the most
+     * recent GRAPHITY edge of a vertex, otherwise the layer is invalidated.
+     * Layers not indexed yet are walked and indexed.
+     * 
+     * @param vUser
+     *            vertex of the user owning the replica layer
+     * @param timestamp
+     *            last post timestamp of the replica to be inserted
+     * @return replica to continue the search for the insertion position
+     *         from<br>
+     *         user vertex - if the layer has to be walked from its start
+     */
+    protected Vertex seekReplicaLayer(Vertex vUser, long timestamp) {
+        ReplicaLayerIndex index = replicaLayerIndex;
+        if (index == null) {
+            return vUser;
+        }
+        long idUser = (long) vUser.getId();
+        long idReplica = index.findPredecessor(idUser, timestamp);
+        if (idReplica == ReplicaLayerIndex.MISSING
+                && indexReplicaLayer(index, vUser)) {
+            idReplica = index.findPredecessor(idUser, timestamp);
+        }
+        if (idReplica == ReplicaLayerIndex.MISSING
+                || idReplica == ReplicaLayerIndex.HEAD) {
+            return vUser;
+        }
+        Vertex vReplica = getTransaction().getVertex(idReplica);
+        if (vReplica != null) {
+            TraversalCounter.visitVertex();
+            if (vUser.equals(Walker.previousVertex(vReplica,
+                    EdgeType.FOLLOWS.getLabel()))
+                    && isLinked(vReplica)
+                    && getLastUpdateByReplica(vReplica) > timestamp) {
+                return vReplica;
+            }
+        }
+        // replica has been removed or moved by a concurrent writer
+        index.invalidate(idUser);
+        return vUser;
+    }
+
+    /**
+     * @param vReplica
+     *            replica vertex
+     * @return true - if the most recent GRAPHITY edge of any vertex points to
+     *         the replica<br>
+     *         false - if the replica is reachable via outdated edges only
+     */
+    protected static boolean isLinked(Vertex vReplica) {
+        for (Vertex vPrev : vReplica.getVertices(Direction.IN,
+                EdgeType.GRAPHITY.getLabel())) {
+            TraversalCounter.traverseEdge();
+            if (vReplica.equals(Walker.nextMostRecentVertex(vPrev,
+                    EdgeType.GRAPHITY.getLabel()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Walks along the most recent GRAPHITY edges of a replica layer and adds
+     * it to the replica layer index.
+     * 
+     * @param index
+     *            replica layer index
+     * @param vUser
+     *            vertex of the user owning the replica layer
+     * @return true - if the layer has been indexed<br>
+     *         false - if the layer is too short or has been changed
+     *         concurrently
+     */
+    protected boolean indexReplicaLayer(
+            ReplicaLayerIndex index,
+            Vertex vUser) {
+        long version = index.getVersion();
+        Set<Object> visited = new HashSet<Object>();
+        visited.add(vUser.getId());
+        List<Vertex> replicas = new ArrayList<Vertex>();
+        Vertex vReplica = vUser;
+        while ((vReplica =
+                Walker.nextMostRecentVertex(vReplica,
+                        EdgeType.GRAPHITY.getLabel())) != null) {
+            TraversalCounter.traverseEdge();
+            if (!visited.add(vReplica.getId())) {// cycle to be cut
+                break;
+            }
+            replicas.add(vReplica);
+        }
+        if (replicas.size() < index.getMinLayerSize()) {
+            return false;
+        }
+        long[] replicaIds = new long[replicas.size()];
+        long[] timestamps = new long[replicas.size()];
+        for (int i = 0; i < replicaIds.length; ++i) {
+            vReplica = replicas.get(i);
+            replicaIds[i] = (long) vReplica.getId();
+            timestamps[i] = getLastUpdateByReplica(vReplica);
+        }
+        return index.put((long) vUser.getId(), replicaIds, timestamps, version);
+    }
+
+    /**
+     * find all replicas of a followed user
+     * 
+     * @param vFollowing
+     *            vertex of the following user
+     * @param vFollowed
+     *            vertex of the followed user
+     * @return replicas of the followed user in the following user's ego
+     *         network, empty if the user is not following the other user
+     */
+    protected static List<Vertex> findReplicas(
+            Vertex vFollowing,
+            Vertex vFollowed) {
+        List<Vertex> replicas = new ArrayList<Vertex>(1);
+        Vertex vUserFollowed;
+        for (Vertex vFollowedReplica : vFollowing.getVertices(Direction.OUT,
+                EdgeType.FOLLOWS.getLabel())) {
+            TraversalCounter.traverseEdge();
             /*
-             * Concurrent subscription creation for the same user may create two
-             * GRAPHITY edges starting from the subscriber to two replicas.
-             * <br>
-             * We can easily fix this problem by removing every but the most
-             * recent GRAPHITY edge of a user whenever we see more than one.
-             * We could either
-             * 1. fix this when reading or
-             * 2. read only the most recent edge and fix this on the next
-             * write request/cleanup process.
+             * A replica will never have multiple REPLICA edges.
              */
-            vSubscriber.addEdge(EdgeType.GRAPHITY.getLabel(), rFollowed);
+            vUserFollowed =
+                    Walker.nextVertex(vFollowedReplica,
+                            EdgeType.REPLICA.getLabel());
+            if (vUserFollowed == null) {// replica not linked yet
+                continue;
+            }
+            if (vUserFollowed.equals(vFollowed)) {
+                replicas.add(vFollowedReplica);
+            }
+        }
+        return replicas;
+    }
+
+    /**
+     * Removes a followship at the time the request has been accepted.
+     * 
+     * @param request
+     *            unfollow request with both user vertices loaded
+     * @return true - if the followship was successfully removed<br>
+     *         false - if this followship is not existing
+     */
+    @Override
+    protected boolean removeFollowship(ServiceRequestUnfollow request) {
+        return removeFollowship(request.getSubscriberVertex(),
+                request.getFollowedVertex(), request.getTimestamp());
+    }
+
+    @Override
+    protected boolean removeFollowship(Vertex vFollowing, Vertex vFollowed) {
+        return removeFollowship(vFollowing, vFollowed,
+                System.currentTimeMillis());
+    }
+
+    /**
+     * Removes a followship between two user vertices.
+     * 
+     * @param vFollowing
+     *            vertex of the user that wants to unfollow a user
+     * @param vFollowed
+     *            vertex of the user that will be unfollowed
+     * @param timestamp
+     *            version of the GRAPHITY edges written
+     * @return true - if the followship was successfully removed<br>
+     *         false - if this followship is not existing
+     */
+    protected boolean removeFollowship(
+            Vertex vFollowing,
+            Vertex vFollowed,
+            long timestamp) {
+        // find all replicas of the user followed, there may be duplicates
+        List<Vertex> replicas = findReplicas(vFollowing, vFollowed);
+        // there is no such followship existing
+        if (replicas.isEmpty()) {
+            return false;
+        }
+        for (Vertex vReplica : replicas) {
+            stageIndexRemoval(vFollowing, vReplica);
+            unlinkFromReplicaLayer(vReplica, timestamp);
+            // removes the FOLLOWS and REPLICA edge
+            vReplica.remove();
+        }
+        _pendingRepairs.get().add((long) vFollowing.getId());
+        return true;
+    }
+
+    /**
+     * Bridges a replica in the replica layer, leaving the replica itself
+     * intact. Each vertex whose most recent GRAPHITY edge points to the replica
+     * is linked to the successor of the replica.
+     * 
+     * @param replica
+     *            replica of the user that will be bridged
+     * @param timestamp
+     *            version of the GRAPHITY edges written
+     */
+    protected static void unlinkFromReplicaLayer(
+            final Vertex replica,
+            long timestamp) {
+        Vertex vNext =
+                Walker.nextMostRecentVertex(replica,
+                        EdgeType.GRAPHITY.getLabel());
+        unlinkAll(replica);
+        if (replica.equals(vNext)) {
+            vNext = null;
+        }
+
+        List<Edge> prevEdges = new ArrayList<Edge>(1);
+        for (Edge edge : replica.getEdges(Direction.IN,
+                EdgeType.GRAPHITY.getLabel())) {
+            TraversalCounter.scanEdge();
+            prevEdges.add(edge);
+        }
+        for (Edge edge : prevEdges) {
+            Vertex vPrev = edge.getVertex(Direction.OUT);
+            VersionedEdge ePrev =
+                    Walker.getMostRecentEdge(vPrev, Direction.OUT,
+                            EdgeType.GRAPHITY.getLabel());
+            // edges that are not the most recent ones are outdated
+            boolean isPredecessor =
+                    ePrev != null && edge.equals(ePrev.getEdge());
+            edge.remove();
+            if (isPredecessor && vNext != null && !vNext.equals(vPrev)) {
+                linkVersioned(vPrev, vNext,
+                        Math.max(timestamp, ePrev.getTimestamp() + 1));
+            }
+        }
+    }
+
+    /**
+     * Removes all GRAPHITY edges starting at a vertex.
+     * 
+     * @param vertex
+     *            vertex in a replica layer
+     */
+    protected static void unlinkAll(Vertex vertex) {
+        List<Edge> edges = new ArrayList<Edge>(1);
+        for (Edge edge : vertex.getEdges(Direction.OUT,
+                EdgeType.GRAPHITY.getLabel())) {
+            TraversalCounter.scanEdge();
+            edges.add(edge);
+        }
+        for (Edge edge : edges) {
+            edge.remove();
+        }
+    }
+
+    /**
+     * Removes the most recent GRAPHITY edge starting at a vertex.
+     * 
+     * @param vertex
+     *            vertex in a replica layer
+     * @param timestamp
+     *            version of the GRAPHITY edge that will replace the edge
+     * @return version for the replacing edge, more recent than the edge
+     *         removed
+     */
+    protected static long unlinkMostRecent(Vertex vertex, long timestamp) {
+        VersionedEdge mostRecentEdge =
+                Walker.getMostRecentEdge(vertex, Direction.OUT,
+                        EdgeType.GRAPHITY.getLabel());
+        if (mostRecentEdge == null) {
+            return timestamp;
+        }
+        mostRecentEdge.getEdge().remove();
+        return Math.max(timestamp, mostRecentEdge.getTimestamp() + 1);
+    }
+
+    /**
+     * Adds a versioned GRAPHITY edge.
+     * 
+     * @param vertex
+     *            vertex in a replica layer
+     * @param vNext
+     *            successor of the vertex
+     * @param timestamp
+     *            version of the edge
+     */
+    protected static void linkVersioned(
+            Vertex vertex,
+            Vertex vNext,
+            long timestamp) {
+        Edge edge = vertex.addEdge(EdgeType.GRAPHITY.getLabel(), vNext);
+        new VersionedEdge(edge).setTimestamp(timestamp);
+    }
+
+    @Override
+    protected long addStatusUpdate(Vertex vAuthor, StatusUpdate statusUpdate) {
+        // create new status update vertex and fill via proxy
+        Vertex crrUpdate = getTransaction().addVertex(null);
+        StatusUpdateProxy pStatusUpdate = new StatusUpdateProxy(crrUpdate);
+        pStatusUpdate.initVertex(statusUpdate.getPublished(),
+                statusUpdate.getMessage());
+
+        // add status update to user (link vertex, update user)
+        /*
+         * The stream of an author is written by the author only, hence it is
+         * not versioned.
+         */
+        UserProxy pAuthor = new UserProxy(vAuthor);
+        pAuthor.addStatusUpdate(pStatusUpdate);
+
+        // update ego networks of status update author followers
+        updateEgoNetworks(vAuthor, statusUpdate.getPublished());
+
+        return pStatusUpdate.getIdentifier();
+    }
+
+    /**
+     * update the ego networks of a user's followers
+     * 
+     * @param user
+     *            user where changes have occurred
+     * @param timestamp
+     *            version of the GRAPHITY edges written
+     */
+    protected void updateEgoNetworks(final Vertex user, long timestamp) {
+        // loop through followers
+        for (Vertex followedReplica : user.getVertices(Direction.IN,
+                EdgeType.REPLICA.getLabel())) {
+            TraversalCounter.traverseEdge();
+            updateEgoNetwork(followedReplica, timestamp);
+        }
+    }
+
+    /**
+     * update the ego network of a single follower by moving the replica of
+     * the user where changes have occurred to the top of its replica layer
+     * 
+     * @param followedReplica
+     *            replica of the user where changes have occurred
+     * @param timestamp
+     *            version of the GRAPHITY edges written
+     */
+    protected void updateEgoNetwork(
+            final Vertex followedReplica,
+            long timestamp) {
+        // load the user corresponding
+        final Vertex followingUser =
+                Walker.previousVertex(followedReplica,
+                        EdgeType.FOLLOWS.getLabel());
+        if (followingUser == null) {// concurrent graph modifcation
+            return;
+        }
+        if (_replicaTimestamps) {
+            Long lastPost =
+                    followedReplica
+                            .getProperty(UserProxy.PROP_LAST_STREAM_UDPATE);
+            // status updates of an author may be committed out of order
+            if (lastPost == null || lastPost < timestamp) {
+                followedReplica.setProperty(UserProxy.PROP_LAST_STREAM_UDPATE,
+                        timestamp);
+            }
+        }
+        Vertex lastPosterReplica =
+                Walker.nextMostRecentVertex(followingUser,
+                        EdgeType.GRAPHITY.getLabel());
+        stageIndexPut(followingUser, followedReplica, timestamp);
+        if (followedReplica.equals(lastPosterReplica)) {
+            // replica is at the top already
+            return;
+        }
+        _pendingRepairs.get().add((long) followingUser.getId());
+
+        // bridge user node
+        unlinkFromReplicaLayer(followedReplica, timestamp);
+
+        // insert user's replica at its new position
+        lastPosterReplica =
+                Walker.nextMostRecentVertex(followingUser,
+                        EdgeType.GRAPHITY.getLabel());
+        long version = unlinkMostRecent(followingUser, timestamp);
+        linkVersioned(followingUser, followedReplica, version);
+        if (lastPosterReplica != null) {
+            linkVersioned(followedReplica, lastPosterReplica, version);
+        }
+    }
+
+    @Override
+    protected FeedEntryPage readFeedEntries(
+            Vertex vReader,
+            int numEntries,
+            FeedCursor cursor) {
+        List<FeedEntry> entries = new ArrayList<FeedEntry>();
+        final PostIteratorHeap postIterators = getPostIteratorHeap();
+
+        UserProxy pCrrUser = null;
+        UserPostIterator userPostIterator;
+        VersionedReplicaQueue replicas;
+        if (cursor == null) {
+            // load first user by replica
+            replicas =
+                    new VersionedReplicaQueue(getTransaction(), vReader,
+                            prefetchWindowSize);
+            pCrrUser = replicas.poll();
+            if (pCrrUser != null) {
+                userPostIterator = postIterators.obtain(pCrrUser);
+                userPostIterator.setReplicaVertex(replicas.getReplicaVertex());
+
+                if (userPostIterator.hasNext()) {
+                    postIterators.add(userPostIterator);
+                } else {
+                    postIterators.recycle(userPostIterator);
+                }
+            }
         } else {
-            // search for insertion index within subscriber's replica layer
-            final long followedTimestamp = getLastUpdateByReplica(rFollowed);
-            long crrTimestamp;
-            Vertex prevReplica = null;
-            Vertex crrReplica = vSubscriber;
-            do {
-                // get next user in subscriber's replica layer
-                prevReplica = crrReplica;
-                crrReplica =
-                        Walker.nextMostRecentVertex(prevReplica,
-                                EdgeType.GRAPHITY.getLabel());
-                // TODO we repair on-read
-                if (crrReplica != null) {// there is still a user in the replica layer
-                    crrTimestamp = getLastUpdateByReplica(crrReplica);
+            // resume merge where the previous page ended
+            userPostIterator = cursor.resume(getTransaction(), postIterators);
+            Vertex vLastLoaded = null;
+            if (userPostIterator != null) {
+                pCrrUser = userPostIterator.getUser();
+                vLastLoaded = userPostIterator.getReplicaVertex();
+            }
+            replicas =
+                    new VersionedReplicaQueue(getTransaction(), vLastLoaded,
+                            prefetchWindowSize);
+            // streams restored must not be loaded twice via duplicates
+            for (UserPostIterator postIterator : postIterators) {
+                replicas.skipUser(postIterator.getUser().getVertex());
+            }
+        }
+
+        // handle user queue
+        UserProxy pPrevUser = pCrrUser;
+        UserProxy pUser;
+        StatusUpdateProxy pStatusUpdate;
+        long boundary = (cursor != null) ? cursor.getBoundary() : 0;
+        while (entries.size() < numEntries && !postIterators.isEmpty()) {
+            // add last recent status update
+            userPostIterator = postIterators.peek();
+            pStatusUpdate = userPostIterator.next();
+            entries.add(pStatusUpdate.getFeedEntry());
+            boundary = pStatusUpdate.getPublished();
+            pUser = userPostIterator.getUser();
+
+            // re-position iterator, pool it if empty
+            postIterators.updateTop();
+
+            // load additional user if necessary
+            while (pUser == pPrevUser) {
+                pCrrUser = replicas.poll();
+                // check if additional user existing
+                if (pCrrUser == null) {
+                    break;
+                }
+                userPostIterator = postIterators.obtain(pCrrUser);
+                userPostIterator.setReplicaVertex(replicas.getReplicaVertex());
+                boolean hasStatusUpdates = userPostIterator.hasNext();
+                if (cursor != null) {
+                    /*
+                     * skip status updates published since the cursor, the
+                     * user may have been exhausted by the previous page
+                     */
+                    userPostIterator.skipPublishedSince(cursor.getBoundary());
+                }
+                // check if user has status updates
+                if (userPostIterator.hasNext()) {
+                    postIterators.add(userPostIterator);
+                    pPrevUser = pCrrUser;
                 } else {
-                    crrTimestamp = 0;
+                    postIterators.recycle(userPostIterator);
+                    if (!hasStatusUpdates) {
+                        // further users do not need to be loaded
+                        pPrevUser = null;
+                    }
+                    /*
+                     * Otherwise the replica has been moved or duplicated since
+                     * the previous page and the next user has to be loaded.
+                     */
                 }
-            } while (crrTimestamp > followedTimestamp);
-
-            // re-link next replica in replica layer, if existing
-            if (crrReplica != null) {
-                /*
-                 * Previous replica (following user or a replica of its replica
-                 * layer) might have multiple GRAPHITY edges starting.
-                 * <br>
-                 * We remove the most recent one and repair on-read.
-                 */
-                Walker.removeMostRecentEdge(prevReplica, Direction.OUT,
-                        EdgeType.GRAPHITY.getLabel());
-                Edge eCrr =
-                        rFollowed.addEdge(EdgeType.GRAPHITY.getLabel(),
-                                crrReplica);
-                VersionedEdge verEdge = new VersionedEdge(eCrr);
-                verEdge.setTimestamp(timestamp);
             }
-            // previous replica is the predecessor of the followed replica
-            Edge ePrev =
-                    prevReplica
-                            .addEdge(EdgeType.GRAPHITY.getLabel(), rFollowed);
-            VersionedEdge verEdge = new VersionedEdge(ePrev);
-            verEdge.setTimestamp(timestamp);
         }
+
+        FeedCursor nextCursor =
+                FeedCursor.create(vReader, boundary, postIterators, pPrevUser);
+        postIterators.clear();
+        return new FeedEntryPage(entries, nextCursor);
+    }
+
+    /**
+     * Retrieves the timestamp of the last recent status update of the user
+     * specified, from the replica if replica timestamps are enabled.
+     * 
+     * @param rUser
+     *            replica of the user
+     * @return timestamp of the user's last recent status update
+     */
+    protected long getLastUpdateByReplica(final Vertex rUser) {
+        if (_replicaTimestamps) {
+            Long lastPost =
+                    rUser.getProperty(UserProxy.PROP_LAST_STREAM_UDPATE);
+            if (lastPost != null) {
+                return lastPost;
+            }
+        }
+        return getLastUpdateByUser(rUser);
     }
 
     /**
      * Retrieves the timestamp of the last recent status update of the user
-     * specified.
+     * specified from the user replicated, ignoring replica timestamps.
      * 
      * @param rUser
      *            replica of the user
      * @return timestamp of the user's last recent status update
      */
-    protected static long getLastUpdateByReplica(final Vertex rUser) {
+    protected static long getLastUpdateByUser(final Vertex rUser) {
         final Vertex user =
                 Walker.nextVertex(rUser, EdgeType.REPLICA.getLabel());
         /*
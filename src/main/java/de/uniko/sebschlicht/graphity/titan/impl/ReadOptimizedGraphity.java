@@ -1,6 +1,7 @@
 package de.uniko.sebschlicht.graphity.titan.impl;
 
-import java.util.TreeSet;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.thinkaurelius.titan.core.TitanGraph;
 import com.tinkerpop.blueprints.Direction;
@@ -9,76 +10,275 @@ import com.tinkerpop.blueprints.Vertex;
 import de.uniko.sebschlicht.graphity.titan.EdgeType;
 import de.uniko.sebschlicht.graphity.titan.TitanGraphity;
 import de.uniko.sebschlicht.graphity.titan.Walker;
-import de.uniko.sebschlicht.graphity.titan.model.PostIteratorComparator;
+import de.uniko.sebschlicht.graphity.titan.cache.ReplicaLayerIndex;
+import de.uniko.sebschlicht.graphity.titan.metrics.TraversalCounter;
+import de.uniko.sebschlicht.graphity.titan.model.FeedCursor;
+import de.uniko.sebschlicht.graphity.titan.model.FeedEntry;
+import de.uniko.sebschlicht.graphity.titan.model.FeedEntryPage;
+import de.uniko.sebschlicht.graphity.titan.model.PostIteratorHeap;
+import de.uniko.sebschlicht.graphity.titan.model.ReplicaQueue;
 import de.uniko.sebschlicht.graphity.titan.model.StatusUpdateProxy;
 import de.uniko.sebschlicht.graphity.titan.model.UserPostIterator;
 import de.uniko.sebschlicht.graphity.titan.model.UserProxy;
 import de.uniko.sebschlicht.socialnet.StatusUpdate;
-import de.uniko.sebschlicht.socialnet.StatusUpdateList;
 
 public class ReadOptimizedGraphity extends TitanGraphity {
 
+    /**
+     * (optional) background worker pool updating the ego networks of the
+     * followers
+     */
+    protected EgoNetworkUpdater _egoNetworkUpdater;
+
+    /**
+     * authors of the current transaction whose followers' ego networks have to
+     * be updated in background
+     */
+    protected final ThreadLocal<List<Long>> _pendingFanOuts =
+            new ThreadLocal<List<Long>>() {
+
+                @Override
+                protected List<Long> initialValue() {
+                    return new ArrayList<Long>();
+                }
+            };
+
+    /**
+     * flag whether replicas carry the last post timestamp of the user
+     * replicated
+     */
+    protected boolean _replicaTimestamps;
+
     public ReadOptimizedGraphity(
             TitanGraph graphDb) {
         super(graphDb);
     }
 
+    /**
+     * Sets the background worker pool that updates the ego networks of the
+     * followers when a status update has been added. If set, status updates
+     * are acknowledged as soon as the PUBLISHED chain has been committed and
+     * the replica layers are relinked asynchronously. Changes must be
+     * committed via {@link #commit()} for the relinking to be scheduled.
+     * 
+     * @param egoNetworkUpdater
+     *            background worker pool or <b>null</b> to update the ego
+     *            networks inline
+     */
+    public void setEgoNetworkUpdater(EgoNetworkUpdater egoNetworkUpdater) {
+        _egoNetworkUpdater = egoNetworkUpdater;
+    }
+
+    /**
+     * @return background worker pool updating the ego networks or <b>null</b>
+     *         if the ego networks are updated inline
+     */
+    public EgoNetworkUpdater getEgoNetworkUpdater() {
+        return _egoNetworkUpdater;
+    }
+
+    /**
+     * Enables or disables the denormalization of the last post timestamps.
+     * If enabled, each replica created or moved stores the timestamp of the
+     * newest status update of the user replicated, so that walks along a
+     * replica layer do not have to load the users replicated. Replicas
+     * without a timestamp, e.g. created while disabled, fall back to the
+     * user's timestamp.<br>
+     * Replica timestamps are not updated while disabled, thus the mode should
+     * not be disabled for a graph that is going to be used with the mode
+     * enabled again.
+     * 
+     * @param replicaTimestamps
+     *            true - to store the last post timestamps on replicas<br>
+     *            false - to load them from the users replicated
+     */
+    public void setReplicaTimestamps(boolean replicaTimestamps) {
+        _replicaTimestamps = replicaTimestamps;
+    }
+
+    /**
+     * @return true - if replicas carry the last post timestamp of the user
+     *         replicated<br>
+     *         false - otherwise
+     */
+    public boolean hasReplicaTimestamps() {
+        return _replicaTimestamps;
+    }
+
+    @Override
+    protected void onCommit() {
+        List<Long> pendingFanOuts = _pendingFanOuts.get();
+        if (!pendingFanOuts.isEmpty()) {
+            EgoNetworkUpdater egoNetworkUpdater = _egoNetworkUpdater;
+            if (egoNetworkUpdater != null) {
+                for (long idAuthor : pendingFanOuts) {
+                    egoNetworkUpdater.submit(idAuthor);
+                }
+            }
+            pendingFanOuts.clear();
+        }
+    }
+
+    @Override
+    protected void onRollback() {
+        _pendingFanOuts.get().clear();
+    }
+
     @Override
     protected boolean addFollowship(Vertex vFollowing, Vertex vFollowed) {
         // try to find the replica node of the user followed
-        Vertex vUserFollowed;
-        for (Vertex vFollowedReplica : vFollowing.getVertices(Direction.OUT,
-                EdgeType.FOLLOWS.getLabel())) {
-            vUserFollowed =
-                    Walker.nextVertex(vFollowedReplica,
-                            EdgeType.REPLICA.getLabel());
-            if (vUserFollowed == null) {// concurrent graph modification
-                continue;
-            }
-            if (vUserFollowed.equals(vFollowed)) {
-                // user is already following this user
-                return false;
-            }
+        if (findReplica(vFollowing, vFollowed) != null) {
+            // user is already following this user
+            return false;
         }
 
         // create replica
-        final Vertex newReplica = graphDb.addVertex(null);
+        final Vertex newReplica = getTransaction().addVertex(null);
         vFollowing.addEdge(EdgeType.FOLLOWS.getLabel(), newReplica);
         newReplica.addEdge(EdgeType.REPLICA.getLabel(), vFollowed);
+        final long followedTimestamp =
+                new UserProxy(vFollowed).getLastPostTimestamp();
+        if (_replicaTimestamps) {
+            newReplica.setProperty(UserProxy.PROP_LAST_STREAM_UDPATE,
+                    followedTimestamp);
+        }
         // check if followed user is the first in following's ego network
         if (Walker.nextVertex(vFollowing, EdgeType.GRAPHITY.getLabel()) == null) {
             vFollowing.addEdge(EdgeType.GRAPHITY.getLabel(), newReplica);
         } else {
-            // search for insertion index within following replica layer
-            final long followedTimestamp = getLastUpdateByReplica(newReplica);
-            long crrTimestamp;
-            Vertex prevReplica = vFollowing;
-            Vertex nextReplica = null;
-            while (true) {
-                // get next user
-                nextReplica =
-                        Walker.nextVertex(prevReplica,
-                                EdgeType.GRAPHITY.getLabel());
-                if (nextReplica != null) {
-                    crrTimestamp = getLastUpdateByReplica(nextReplica);
-                    // step on if current user has newer status updates
-                    if (crrTimestamp > followedTimestamp) {
-                        prevReplica = nextReplica;
-                        continue;
-                    }
+            linkIntoReplicaLayer(
+                    seekReplicaLayer(vFollowing, followedTimestamp),
+                    newReplica, followedTimestamp);
+        }
+        stageIndexPut(vFollowing, newReplica, followedTimestamp);
+        return true;
+    }
+
+    /**
+     * Links a replica that is not part of a replica layer into a replica
+     * layer, at the position of its last post timestamp.
+     * 
+     * @param vStart
+     *            user vertex owning the replica layer or a replica in the
+     *            layer preceding the insertion position, to start the search
+     *            for the insertion position at
+     * @param replica
+     *            replica to be linked
+     * @param timestamp
+     *            timestamp of the newest status update of the user replicated
+     */
+    protected void linkIntoReplicaLayer(
+            Vertex vStart,
+            Vertex replica,
+            long timestamp) {
+        // search for insertion index within following replica layer
+        long crrTimestamp;
+        Vertex prevReplica = vStart;
+        Vertex nextReplica = null;
+        while (true) {
+            // get next user
+            nextReplica =
+                    Walker.nextVertex(prevReplica,
+                            EdgeType.GRAPHITY.getLabel());
+            if (nextReplica != null) {
+                crrTimestamp = getLastUpdateByReplica(nextReplica);
+                // step on if current user has newer status updates
+                if (crrTimestamp > timestamp) {
+                    prevReplica = nextReplica;
+                    continue;
                 }
-                // insertion position has been found
-                break;
             }
-            // insert followed user's replica into following's ego network
-            if (nextReplica != null) {
-                Walker.removeSingleEdge(prevReplica, Direction.OUT,
-                        EdgeType.GRAPHITY.getLabel());
-                newReplica.addEdge(EdgeType.GRAPHITY.getLabel(), nextReplica);
+            // insertion position has been found
+            break;
+        }
+        // insert followed user's replica into following's ego network
+        if (nextReplica != null) {
+            Walker.removeSingleEdge(prevReplica, Direction.OUT,
+                    EdgeType.GRAPHITY.getLabel());
+            replica.addEdge(EdgeType.GRAPHITY.getLabel(), nextReplica);
+        }
+        prevReplica.addEdge(EdgeType.GRAPHITY.getLabel(), replica);
+    }
+
+    /**
+     * Looks up the replica layer index for a replica preceding the insertion
+     * position of a replica. The replica found is checked against the replica
+     * layer, the layer is invalidated if the check fails. Layers not indexed
+     * yet are walked and indexed.
+     * 
+     * @param vUser
+     *            vertex of the user owning the replica layer
+     * @param timestamp
+     *            last post timestamp of the replica to be inserted
+     * @return replica to continue the search for the insertion position
+     *         from<br>
+     *         user vertex - if the layer has to be walked from its start
+     */
+    protected Vertex seekReplicaLayer(Vertex vUser, long timestamp) {
+        ReplicaLayerIndex index = replicaLayerIndex;
+        if (index == null) {
+            return vUser;
+        }
+        long idUser = (long) vUser.getId();
+        long idReplica = index.findPredecessor(idUser, timestamp);
+        if (idReplica == ReplicaLayerIndex.MISSING
+                && indexReplicaLayer(index, vUser)) {
+            idReplica = index.findPredecessor(idUser, timestamp);
+        }
+        if (idReplica == ReplicaLayerIndex.MISSING
+                || idReplica == ReplicaLayerIndex.HEAD) {
+            return vUser;
+        }
+        Vertex vReplica = getTransaction().getVertex(idReplica);
+        if (vReplica != null) {
+            TraversalCounter.visitVertex();
+            if (vUser.equals(Walker.previousVertex(vReplica,
+                    EdgeType.FOLLOWS.getLabel()))
+                    && Walker.previousVertex(vReplica,
+                            EdgeType.GRAPHITY.getLabel()) != null
+                    && getLastUpdateByReplica(vReplica) > timestamp) {
+                return vReplica;
             }
-            prevReplica.addEdge(EdgeType.GRAPHITY.getLabel(), newReplica);
         }
-        return true;
+        // replica has been removed or unlinked without using the index
+        index.invalidate(idUser);
+        return vUser;
+    }
+
+    /**
+     * Walks along a replica layer and adds it to the replica layer index.
+     * 
+     * @param index
+     *            replica layer index
+     * @param vUser
+     *            vertex of the user owning the replica layer
+     * @return true - if the layer has been indexed<br>
+     *         false - if the layer is too short or has been changed
+     *         concurrently
+     */
+    protected boolean indexReplicaLayer(
+            ReplicaLayerIndex index,
+            Vertex vUser) {
+        long version = index.getVersion();
+        List<Vertex> replicas = new ArrayList<Vertex>();
+        Vertex vReplica = vUser;
+        while ((vReplica =
+                Walker.nextVertex(vReplica,
+                        EdgeType.GRAPHITY.getLabel())) != null) {
+            TraversalCounter.traverseEdge();
+            replicas.add(vReplica);
+        }
+        if (replicas.size() < index.getMinLayerSize()) {
+            return false;
+        }
+        long[] replicaIds = new long[replicas.size()];
+        long[] timestamps = new long[replicas.size()];
+        for (int i = 0; i < replicaIds.length; ++i) {
+            vReplica = replicas.get(i);
+            replicaIds[i] = (long) vReplica.getId();
+            timestamps[i] = getLastUpdateByReplica(vReplica);
+        }
+        return index.put((long) vUser.getId(), replicaIds, timestamps, version);
     }
 
     /**
@@ -88,9 +288,23 @@ public class ReadOptimizedGraphity extends TitanGraphity {
      *            replica of the user that will be removed
      */
     private void removeFromReplicaLayer(final Vertex followedReplica) {
+        unlinkFromReplicaLayer(followedReplica);
+        removeReplica(followedReplica);
+    }
+
+    /**
+     * bridge a replica in the replica layer, leaving the replica itself intact
+     * 
+     * @param followedReplica
+     *            replica of the user that will be bridged
+     */
+    protected void unlinkFromReplicaLayer(final Vertex followedReplica) {
         final Vertex prev =
                 Walker.previousVertex(followedReplica,
                         EdgeType.GRAPHITY.getLabel());
+        if (prev == null) {// replica is not part of the replica layer
+            return;
+        }
         final Vertex next =
                 Walker.nextVertex(followedReplica, EdgeType.GRAPHITY.getLabel());
         // bridge the user replica in the replica layer
@@ -101,6 +315,15 @@ public class ReadOptimizedGraphity extends TitanGraphity {
                     EdgeType.GRAPHITY.getLabel());
             prev.addEdge(EdgeType.GRAPHITY.getLabel(), next);
         }
+    }
+
+    /**
+     * remove a replica that is not part of a replica layer (anymore)
+     * 
+     * @param followedReplica
+     *            replica of the user that will be removed
+     */
+    protected static void removeReplica(final Vertex followedReplica) {
         // remove the followship
         Walker.removeSingleEdge(followedReplica, Direction.IN,
                 EdgeType.FOLLOWS.getLabel());
@@ -110,12 +333,22 @@ public class ReadOptimizedGraphity extends TitanGraphity {
         followedReplica.remove();
     }
 
-    @Override
-    protected boolean removeFollowship(Vertex vFollowing, Vertex vFollowed) {
-        // find the replica node of the user followed
-        Vertex vUserFollowed, vReplica = null;
+    /**
+     * find the replica of a followed user
+     * 
+     * @param vFollowing
+     *            vertex of the following user
+     * @param vFollowed
+     *            vertex of the followed user
+     * @return replica of the followed user in the following user's ego
+     *         network<br>
+     *         <b>null</b> - if the user is not following the other user
+     */
+    protected static Vertex findReplica(Vertex vFollowing, Vertex vFollowed) {
+        Vertex vUserFollowed;
         for (Vertex vFollowedReplica : vFollowing.getVertices(Direction.OUT,
                 EdgeType.FOLLOWS.getLabel())) {
+            TraversalCounter.traverseEdge();
             vUserFollowed =
                     Walker.nextVertex(vFollowedReplica,
                             EdgeType.REPLICA.getLabel());
@@ -123,14 +356,21 @@ public class ReadOptimizedGraphity extends TitanGraphity {
                 continue;
             }
             if (vUserFollowed.equals(vFollowed)) {
-                vReplica = vFollowedReplica;
-                break;
+                return vFollowedReplica;
             }
         }
+        return null;
+    }
+
+    @Override
+    protected boolean removeFollowship(Vertex vFollowing, Vertex vFollowed) {
+        // find the replica node of the user followed
+        Vertex vReplica = findReplica(vFollowing, vFollowed);
         // there is no such followship existing
         if (vReplica == null) {
             return false;
         }
+        stageIndexRemoval(vFollowing, vReplica);
         removeFromReplicaLayer(vReplica);
         return true;
     }
@@ -142,59 +382,77 @@ public class ReadOptimizedGraphity extends TitanGraphity {
      *            user where changes have occurred
      */
     private void updateEgoNetworks(final Vertex user) {
-        Vertex followingUser, lastPosterReplica;
-        Vertex prevReplica, nextReplica;
+        final long lastPost = new UserProxy(user).getLastPostTimestamp();
         // loop through followers
         for (Vertex followedReplica : user.getVertices(Direction.IN,
                 EdgeType.REPLICA.getLabel())) {
-            // load each replica and the user corresponding
-            followingUser =
-                    Walker.previousVertex(followedReplica,
-                            EdgeType.FOLLOWS.getLabel());
-            if (followingUser == null) {// concurrent graph modifcation
-                continue;
-            }
+            TraversalCounter.traverseEdge();
+            updateEgoNetwork(followedReplica, lastPost);
+        }
+    }
 
-            // bridge user node
-            prevReplica =
-                    Walker.previousVertex(followedReplica,
-                            EdgeType.GRAPHITY.getLabel());
-            if (prevReplica == null) {// concurrent graph modifcation
-                continue;
-            }
+    /**
+     * update the ego network of a single follower by moving the replica of
+     * the user where changes have occurred up to the position of its last
+     * post, i.e. to the top of its replica layer unless replicas of users
+     * that posted more recently have been moved there already, e.g. by
+     * fan-outs committed out of order
+     * 
+     * @param followedReplica
+     *            replica of the user where changes have occurred
+     * @param lastPost
+     *            timestamp of the newest status update of the user replicated
+     * @return true - if the ego network has been updated<br>
+     *         false - if the replica has been unlinked concurrently
+     */
+    protected boolean updateEgoNetwork(
+            final Vertex followedReplica,
+            final long lastPost) {
+        Vertex followingUser;
+        Vertex prevReplica, nextReplica;
+        // load the user corresponding
+        followingUser =
+                Walker.previousVertex(followedReplica,
+                        EdgeType.FOLLOWS.getLabel());
+        if (followingUser == null) {// concurrent graph modifcation
+            return false;
+        }
 
-            if (!prevReplica.equals(followingUser)) {
-                Walker.removeSingleEdge(followedReplica, Direction.IN,
+        // bridge user node
+        prevReplica =
+                Walker.previousVertex(followedReplica,
                         EdgeType.GRAPHITY.getLabel());
-                nextReplica =
-                        Walker.nextVertex(followedReplica,
-                                EdgeType.GRAPHITY.getLabel());
-                if (nextReplica != null) {
-                    Walker.removeSingleEdge(followedReplica, Direction.OUT,
-                            EdgeType.GRAPHITY.getLabel());
-                    prevReplica.addEdge(EdgeType.GRAPHITY.getLabel(),
-                            nextReplica);
-                }
-            }
-            // insert user's replica at its new position
-            lastPosterReplica =
-                    Walker.nextVertex(followingUser,
-                            EdgeType.GRAPHITY.getLabel());
-            if (!lastPosterReplica.equals(followedReplica)) {
-                Walker.removeSingleEdge(followingUser, Direction.OUT,
+        if (prevReplica == null) {// concurrent graph modifcation
+            return false;
+        }
+        if (_replicaTimestamps) {
+            followedReplica.setProperty(UserProxy.PROP_LAST_STREAM_UDPATE,
+                    lastPost);
+        }
+        stageIndexPut(followingUser, followedReplica, lastPost);
+
+        if (prevReplica.equals(followingUser)) {// replica is on top already
+            return true;
+        }
+        Walker.removeSingleEdge(followedReplica, Direction.IN,
+                EdgeType.GRAPHITY.getLabel());
+        nextReplica =
+                Walker.nextVertex(followedReplica,
                         EdgeType.GRAPHITY.getLabel());
-                followingUser.addEdge(EdgeType.GRAPHITY.getLabel(),
-                        followedReplica);
-                followedReplica.addEdge(EdgeType.GRAPHITY.getLabel(),
-                        lastPosterReplica);
-            }
+        if (nextReplica != null) {
+            Walker.removeSingleEdge(followedReplica, Direction.OUT,
+                    EdgeType.GRAPHITY.getLabel());
+            prevReplica.addEdge(EdgeType.GRAPHITY.getLabel(), nextReplica);
         }
+        // insert user's replica at its new position
+        linkIntoReplicaLayer(followingUser, followedReplica, lastPost);
+        return true;
     }
 
     @Override
     protected long addStatusUpdate(Vertex vAuthor, StatusUpdate statusUpdate) {
         // create new status update vertex and fill via proxy
-        Vertex crrUpdate = graphDb.addVertex(null);
+        Vertex crrUpdate = getTransaction().addVertex(null);
         StatusUpdateProxy pStatusUpdate = new StatusUpdateProxy(crrUpdate);
         //TODO handle service overload
         pStatusUpdate.initVertex(statusUpdate.getPublished(),
@@ -205,67 +463,116 @@ public class ReadOptimizedGraphity extends TitanGraphity {
         pAuthor.addStatusUpdate(pStatusUpdate);
 
         // update ego networks of status update author followers
-        updateEgoNetworks(vAuthor);
+        updateFollowers(vAuthor);
 
         return pStatusUpdate.getIdentifier();
     }
 
+    /**
+     * Updates the ego networks of an author's followers after the author has
+     * published a status update.
+     * 
+     * @param vAuthor
+     *            user vertex of the status update author
+     */
+    protected void updateFollowers(Vertex vAuthor) {
+        if (_egoNetworkUpdater == null) {
+            updateEgoNetworks(vAuthor);
+        } else {
+            // relink replica layers as soon as the status update is persistent
+            _pendingFanOuts.get().add((long) vAuthor.getId());
+        }
+    }
+
     @Override
-    protected StatusUpdateList readStatusUpdates(
+    protected FeedEntryPage readFeedEntries(
             Vertex vReader,
-            int numStatusUpdates) {
-        StatusUpdateList statusUpdates = new StatusUpdateList();
-        final TreeSet<UserPostIterator> postIterators =
-                new TreeSet<UserPostIterator>(new PostIteratorComparator());
+            int numEntries,
+            FeedCursor cursor) {
+        List<FeedEntry> entries = new ArrayList<FeedEntry>();
+        final PostIteratorHeap postIterators = getPostIteratorHeap();
 
-        // load first user by replica
         UserProxy pCrrUser = null;
         UserPostIterator userPostIterator;
-        Vertex vReplica =
-                Walker.nextVertex(vReader, EdgeType.GRAPHITY.getLabel());
-        if (vReplica != null) {
-            pCrrUser =
-                    new UserProxy(Walker.nextVertex(vReplica,
-                            EdgeType.REPLICA.getLabel()));
-            userPostIterator = new UserPostIterator(pCrrUser);
-            userPostIterator.setReplicaVertex(vReplica);
-
-            if (userPostIterator.hasNext()) {
-                postIterators.add(userPostIterator);
+        ReplicaQueue replicas;
+        if (cursor == null) {
+            // load first user by replica
+            replicas =
+                    new ReplicaQueue(getTransaction(), vReader,
+                            prefetchWindowSize);
+            pCrrUser = replicas.poll();
+            if (pCrrUser != null) {
+                userPostIterator = postIterators.obtain(pCrrUser);
+                userPostIterator.setReplicaVertex(replicas.getReplicaVertex());
+
+                if (userPostIterator.hasNext()) {
+                    postIterators.add(userPostIterator);
+                } else {
+                    postIterators.recycle(userPostIterator);
+                }
+            }
+            addPulledStreams(vReader, postIterators);
+        } else {
+            // resume merge where the previous page ended
+            userPostIterator = cursor.resume(getTransaction(), postIterators);
+            Vertex vLastLoaded = null;
+            if (userPostIterator != null) {
+                pCrrUser = userPostIterator.getUser();
+                vLastLoaded = userPostIterator.getReplicaVertex();
+            }
+            replicas =
+                    new ReplicaQueue(getTransaction(), vLastLoaded,
+                            prefetchWindowSize);
+            /*
+             * Replicas may have been moved since the previous page, e.g. the
+             * replica last loaded to the top when its user posted. Streams
+             * restored must not be loaded twice.
+             */
+            for (UserPostIterator postIterator : postIterators) {
+                replicas.skipUser(postIterator.getUser().getVertex());
             }
         }
 
         // handle user queue
         UserProxy pPrevUser = pCrrUser;
-        while (statusUpdates.size() < numStatusUpdates
+        UserProxy pUser;
+        StatusUpdateProxy pStatusUpdate;
+        long boundary = (cursor != null) ? cursor.getBoundary() : 0;
+        while (entries.size() < numEntries
                 && !postIterators.isEmpty()) {
             // add last recent status update
-            userPostIterator = postIterators.pollLast();
-            statusUpdates.add(userPostIterator.next().getStatusUpdate());
+            userPostIterator = postIterators.peek();
+            pStatusUpdate = userPostIterator.next();
+            entries.add(pStatusUpdate.getFeedEntry());
+            boundary = pStatusUpdate.getPublished();
+            pUser = userPostIterator.getUser();
 
-            // re-add iterator if not empty
-            if (userPostIterator.hasNext()) {
-                postIterators.add(userPostIterator);
-            }
+            // re-position iterator, pool it if empty
+            postIterators.updateTop();
 
             // load additional user if necessary
-            if (userPostIterator.getUser() == pPrevUser) {
-                vReplica =
-                        Walker.nextVertex(userPostIterator.getReplicaVertex(),
-                                EdgeType.GRAPHITY.getLabel());
+            if (pUser == pPrevUser) {
+                pCrrUser = replicas.poll();
                 // check if additional user existing
-                if (vReplica != null) {
-                    pCrrUser =
-                            new UserProxy(Walker.nextVertex(vReplica,
-                                    EdgeType.REPLICA.getLabel()));
-                    userPostIterator = new UserPostIterator(pCrrUser);
-                    userPostIterator.setReplicaVertex(vReplica);
+                if (pCrrUser != null) {
+                    userPostIterator = postIterators.obtain(pCrrUser);
+                    userPostIterator.setReplicaVertex(replicas
+                            .getReplicaVertex());
+                    if (cursor != null) {
+                        /*
+                         * skip status updates published since the cursor, the
+                         * user may have been exhausted by the previous page
+                         */
+                        userPostIterator.skipPublishedSince(cursor
+                                .getBoundary());
+                    }
                     // check if user has status updates
                     if (userPostIterator.hasNext()) {
                         postIterators.add(userPostIterator);
                         pPrevUser = pCrrUser;
                     } else {
                         // further users do not need to be loaded
+                        postIterators.recycle(userPostIterator);
                         pPrevUser = null;
                     }
                 }
@@ -276,12 +583,30 @@ public class ReadOptimizedGraphity extends TitanGraphity {
         //            final UserProxy posterNode = new UserProxy(nReader);
         //            UserPostIterator postIterator = new UserPostIterator(posterNode);
         //
-        //            while ((statusUpdates.size() < numStatusUpdates)
+        //            while ((entries.size() < numEntries)
         //                    && postIterator.hasNext()) {
         //                statusUpdates.add(postIterator.next().getStatusUpdate());
         //            }
 
-        return statusUpdates;
+        FeedCursor nextCursor =
+                FeedCursor.create(vReader, boundary, postIterators, pPrevUser);
+        postIterators.clear();
+        return new FeedEntryPage(entries, nextCursor);
+    }
+
+    /**
+     * Adds the streams of users that are not part of the reader's replica
+     * layer but have to be merged into the news feed.
+     * 
+     * @param vReader
+     *            user vertex of the reader
+     * @param postIterators
+     *            post iterators to merge
+     */
+    protected void addPulledStreams(
+            Vertex vReader,
+            PostIteratorHeap postIterators) {
+        // all streams are pushed into the replica layer
     }
 
     /**
@@ -292,7 +617,14 @@ public class ReadOptimizedGraphity extends TitanGraphity {
      *            replica of the user
      * @return timestamp of the user's last recent status update
      */
-    private static long getLastUpdateByReplica(final Vertex userReplica) {
+    protected long getLastUpdateByReplica(final Vertex userReplica) {
+        if (_replicaTimestamps) {
+            Long lastPost =
+                    userReplica.getProperty(UserProxy.PROP_LAST_STREAM_UDPATE);
+            if (lastPost != null) {
+                return lastPost;
+            }
+        }
         final Vertex user =
                 Walker.nextVertex(userReplica, EdgeType.REPLICA.getLabel());
         if (user == null) {// concurrent graph modification
@@ -0,0 +1,683 @@
+package de.uniko.sebschlicht.graphity.titan.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.thinkaurelius.titan.core.TitanGraph;
+import com.thinkaurelius.titan.core.TitanTransaction;
+import com.thinkaurelius.titan.core.TitanVertex;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+
+import de.uniko.sebschlicht.graphity.titan.EdgeType;
+import de.uniko.sebschlicht.graphity.titan.Walker;
+import de.uniko.sebschlicht.graphity.titan.cache.ReplicaLayerIndex;
+import de.uniko.sebschlicht.graphity.titan.metrics.TraversalCounter;
+import de.uniko.sebschlicht.graphity.titan.model.UserProxy;
+import de.uniko.sebschlicht.graphity.titan.model.VersionedEdge;
+
+/**
+ * Background worker repairing the replica layers written by
+ * {@link ReadOptimizedECGraphity} without locks.<br>
+ * Concurrent writes may leave multiple GRAPHITY edges per vertex, duplicate
+ * replicas of the same user and replicas out of timestamp order. A check
+ * rebuilds the layer of a user from its replicas: a single replica is kept
+ * per user followed, the replicas are ordered by the last post of the users
+ * replicated and every vertex keeps a single GRAPHITY edge to its successor.
+ * Replicas that are not linked to a user yet are kept at the end of the
+ * layer, layer vertices that are not followed anymore are unlinked. Only
+ * anomalous layers are written to, each in a transaction of its own.<br>
+ * Layers are checked when submitted, e.g. after a subscription has been
+ * committed, and in periodic sweeps over all users. Checks are rate-limited
+ * so that the repair does not compete with foreground requests.<br>
+ * A sweep walks the user identifiers in ascending order, in pages resolved
+ * via the user index, each in a short transaction of its own and paced like
+ * the checks. A sweep ends after a number of consecutive pages without any
+ * user, hence users behind larger gaps in the identifier space are not swept.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class ReplicaLayerRepairer implements ReplicaLayerRepairerMBean {
+
+    /**
+     * number of user identifiers resolved per sweep page
+     */
+    protected static final int SWEEP_PAGE_SIZE = 100;
+
+    /**
+     * number of consecutive pages without users that end a sweep
+     */
+    protected static final int MAX_EMPTY_SWEEP_PAGES = 10;
+
+    protected final TitanGraph _graphDb;
+
+    /**
+     * minimum time in nanoseconds between two checks
+     */
+    protected final long _checkInterval;
+
+    /**
+     * minimum time in milliseconds between the starts of two sweeps, 0 if
+     * sweeps are disabled
+     */
+    protected final long _sweepInterval;
+
+    /**
+     * maximum number of layers submitted but not checked yet
+     */
+    protected final int _queueCapacity;
+
+    /**
+     * user vertex identifiers submitted, in order of submission
+     */
+    protected final LinkedHashSet<Long> _queue;
+
+    /**
+     * user vertex identifiers of layers found anomalous that have not been
+     * repaired yet
+     */
+    protected final Set<Long> _pendingAnomalies;
+
+    protected final Thread _worker;
+
+    /**
+     * (optional) index whose layers are invalidated when repaired
+     */
+    protected volatile ReplicaLayerIndex _replicaLayerIndex;
+
+    protected volatile boolean _running;
+
+    /**
+     * time in milliseconds the repairer has been started at
+     */
+    protected final long _tsStart;
+
+    protected final AtomicLong _numCheckedLayers;
+
+    protected final AtomicLong _numRepairedLayers;
+
+    protected final AtomicLong _numRemovedEdges;
+
+    protected final AtomicLong _numAddedEdges;
+
+    protected final AtomicLong _numMergedReplicas;
+
+    protected final AtomicLong _numFailedRepairs;
+
+    protected final AtomicLong _numSweeps;
+
+    /**
+     * Creates and starts a repair worker.
+     * 
+     * @param graphDb
+     *            graph database holding the replica layers
+     * @param maxChecksPerSecond
+     *            maximum number of layers checked per second
+     * @param queueCapacity
+     *            maximum number of layers submitted but not checked yet,
+     *            further submissions are dropped
+     * @param sweepInterval
+     *            minimum time in milliseconds between the starts of two
+     *            sweeps over all users, 0 to check submitted layers only
+     */
+    public ReplicaLayerRepairer(
+            TitanGraph graphDb,
+            double maxChecksPerSecond,
+            int queueCapacity,
+            long sweepInterval) {
+        if (maxChecksPerSecond <= 0) {
+            throw new IllegalArgumentException("check rate must be positive");
+        }
+        _graphDb = graphDb;
+        _checkInterval =
+                (long) (TimeUnit.SECONDS.toNanos(1) / maxChecksPerSecond);
+        _queueCapacity = queueCapacity;
+        _sweepInterval = sweepInterval;
+        _queue = new LinkedHashSet<Long>();
+        _pendingAnomalies = new HashSet<Long>();
+        _numCheckedLayers = new AtomicLong(0);
+        _numRepairedLayers = new AtomicLong(0);
+        _numRemovedEdges = new AtomicLong(0);
+        _numAddedEdges = new AtomicLong(0);
+        _numMergedReplicas = new AtomicLong(0);
+        _numFailedRepairs = new AtomicLong(0);
+        _numSweeps = new AtomicLong(0);
+        _tsStart = System.currentTimeMillis();
+        _running = true;
+        _worker = new Thread(new Worker(), "replica-layer-repair");
+        _worker.setDaemon(true);
+        _worker.start();
+    }
+
+    /**
+     * Schedules the check of a user's replica layer. Layers already
+     * scheduled are checked once.
+     * 
+     * @param idUser
+     *            identifier of the user vertex
+     * @return true - if the layer has been scheduled<br>
+     *         false - if the queue is full
+     */
+    public boolean submit(long idUser) {
+        synchronized (_queue) {
+            if (_queue.size() >= _queueCapacity && !_queue.contains(idUser)) {
+                return false;
+            }
+            _queue.add(idUser);
+            _queue.notify();
+            return true;
+        }
+    }
+
+    /**
+     * Sets the replica layer index used by the Graphity instance writing the
+     * layers. Layers repaired are removed from the index.
+     * 
+     * @param replicaLayerIndex
+     *            replica layer index or <b>null</b> to disable invalidation
+     */
+    public void setReplicaLayerIndex(ReplicaLayerIndex replicaLayerIndex) {
+        _replicaLayerIndex = replicaLayerIndex;
+    }
+
+    /**
+     * Stops the worker after the current check.
+     * 
+     * @param timeout
+     *            maximum time to wait for the worker to stop
+     * @param unit
+     *            time unit of the timeout
+     * @return true - if the worker has stopped<br>
+     *         false - if the timeout elapsed before
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public boolean shutdown(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        _running = false;
+        synchronized (_queue) {
+            _queue.notify();
+        }
+        _worker.join(unit.toMillis(timeout));
+        return !_worker.isAlive();
+    }
+
+    /**
+     * Checks the replica layer of a user and repairs it if anomalous.
+     * 
+     * @param idUser
+     *            identifier of the user vertex
+     * @return true - if the layer has been repaired<br>
+     *         false - if the layer is intact or the user is not existing
+     */
+    protected boolean check(long idUser) {
+        try {
+            boolean repaired = repair(idUser);
+            if (repaired) {
+                // pending until committed
+                synchronized (_queue) {
+                    _pendingAnomalies.add(idUser);
+                }
+                _graphDb.commit();
+                _numRepairedLayers.incrementAndGet();
+                ReplicaLayerIndex replicaLayerIndex = _replicaLayerIndex;
+                if (replicaLayerIndex != null) {
+                    replicaLayerIndex.invalidate(idUser);
+                }
+            } else {
+                _graphDb.rollback();
+            }
+            synchronized (_queue) {
+                _pendingAnomalies.remove(idUser);
+            }
+            return repaired;
+        } catch (RuntimeException e) {
+            // e.g. a concurrent modification, retried with the next sweep
+            _graphDb.rollback();
+            _numFailedRepairs.incrementAndGet();
+            return false;
+        } finally {
+            _numCheckedLayers.incrementAndGet();
+        }
+    }
+
+    /**
+     * Rebuilds the replica layer of a user without committing.
+     * 
+     * @param idUser
+     *            identifier of the user vertex
+     * @return true - if the layer was anomalous and has been changed<br>
+     *         false - if the layer is intact
+     */
+    protected boolean repair(long idUser) {
+        Vertex vUser = _graphDb.getVertex(idUser);
+        if (vUser == null) {
+            return false;
+        }
+
+        // current layer, along the most recent GRAPHITY edges
+        final Map<Object, Integer> layerPositions =
+                new HashMap<Object, Integer>();
+        List<Vertex> layer = new ArrayList<Vertex>();
+        Vertex vCrr = vUser;
+        while ((vCrr =
+                Walker.nextMostRecentVertex(vCrr,
+                        EdgeType.GRAPHITY.getLabel())) != null) {
+            if (layerPositions.containsKey(vCrr.getId())
+                    || vCrr.equals(vUser)) {// cycle
+                break;
+            }
+            if (isRemoved(vCrr)) {// outdated edge to a replica removed
+                break;
+            }
+            layerPositions.put(vCrr.getId(), layer.size());
+            layer.add(vCrr);
+        }
+
+        // keep a single replica per user followed, preferably in the layer
+        List<Vertex> replicas = new ArrayList<Vertex>();
+        for (Vertex vReplica : vUser.getVertices(Direction.OUT,
+                EdgeType.FOLLOWS.getLabel())) {
+            TraversalCounter.traverseEdge();
+            if (!isRemoved(vReplica)) {
+                replicas.add(vReplica);
+            }
+        }
+        Collections.sort(replicas, new Comparator<Vertex>() {
+
+            @Override
+            public int compare(Vertex v1, Vertex v2) {
+                return Long.compare(getPosition(v1), getPosition(v2));
+            }
+
+            protected long getPosition(Vertex vReplica) {
+                Integer position = layerPositions.get(vReplica.getId());
+                return (position != null) ? position : Integer.MAX_VALUE
+                        + (long) vReplica.getId();
+            }
+        });
+        Map<Object, Vertex> followedUsers = new HashMap<Object, Vertex>();
+        final Map<Object, Long> timestamps = new HashMap<Object, Long>();
+        List<Vertex> kept = new ArrayList<Vertex>(replicas.size());
+        Set<Object> merged = new HashSet<Object>();
+        for (Vertex vReplica : replicas) {
+            Vertex vFollowed =
+                    Walker.nextVertex(vReplica, EdgeType.REPLICA.getLabel());
+            if (vFollowed != null) {
+                if (followedUsers.containsKey(vFollowed.getId())) {
+                    // duplicate replica
+                    merged.add(vReplica.getId());
+                    vReplica.remove();
+                    continue;
+                }
+                followedUsers.put(vFollowed.getId(), vReplica);
+            }
+            // replicas not linked yet are ordered last
+            long lastPost =
+                    ReadOptimizedECGraphity.getLastUpdateByUser(vReplica);
+            timestamps.put(vReplica.getId(), lastPost);
+            if (vReplica.getProperty(UserProxy.PROP_LAST_STREAM_UDPATE)
+                    != null) {
+                // replica timestamp may be outdated by concurrent writes
+                vReplica.setProperty(UserProxy.PROP_LAST_STREAM_UDPATE,
+                        lastPost);
+            }
+            kept.add(vReplica);
+        }
+
+        // order replicas by the last post of the users replicated
+        final Map<Object, Integer> replicaPositions =
+                new HashMap<Object, Integer>();
+        for (int i = 0; i < kept.size(); ++i) {
+            replicaPositions.put(kept.get(i).getId(), i);
+        }
+        Collections.sort(kept, new Comparator<Vertex>() {
+
+            @Override
+            public int compare(Vertex v1, Vertex v2) {
+                int result =
+                        Long.compare(timestamps.get(v2.getId()),
+                                timestamps.get(v1.getId()));
+                if (result != 0) {
+                    return result;
+                }
+                return Integer.compare(replicaPositions.get(v1.getId()),
+                        replicaPositions.get(v2.getId()));
+            }
+        });
+
+        // link each vertex to its successor only
+        int numRemoved = 0;
+        int numAdded = 0;
+        long timestamp = System.currentTimeMillis();
+        Vertex vPrev = vUser;
+        for (Vertex vReplica : kept) {
+            numRemoved += unlinkExcept(vPrev, vReplica);
+            if (!isLinked(vPrev, vReplica)) {
+                link(vPrev, vReplica, timestamp);
+                numAdded += 1;
+            }
+            vPrev = vReplica;
+        }
+        numRemoved += unlinkExcept(vPrev, null);
+        // unlink layer vertices that are not followed anymore
+        for (Vertex vLayer : layer) {
+            if (!replicaPositions.containsKey(vLayer.getId())
+                    && !merged.contains(vLayer.getId())) {
+                numRemoved += unlinkExcept(vLayer, null);
+            }
+        }
+
+        _numMergedReplicas.addAndGet(merged.size());
+        _numRemovedEdges.addAndGet(numRemoved);
+        _numAddedEdges.addAndGet(numAdded);
+        return merged.size() + numRemoved + numAdded > 0;
+    }
+
+    /**
+     * Removes the GRAPHITY edges starting at a vertex, except for the most
+     * recent edge to its successor.
+     * 
+     * @param vertex
+     *            vertex in a replica layer
+     * @param vNext
+     *            successor of the vertex or <b>null</b> to remove all edges
+     * @return number of edges removed
+     */
+    protected static int unlinkExcept(Vertex vertex, Vertex vNext) {
+        List<Edge> edges = new ArrayList<Edge>();
+        VersionedEdge keep = null;
+        for (Edge edge : vertex.getEdges(Direction.OUT,
+                EdgeType.GRAPHITY.getLabel())) {
+            TraversalCounter.scanEdge();
+            if (vNext != null && edge.getVertex(Direction.IN).equals(vNext)) {
+                VersionedEdge crrEdge = new VersionedEdge(edge);
+                if (keep == null) {
+                    keep = crrEdge;
+                    continue;
+                }
+                if (crrEdge.getTimestamp() > keep.getTimestamp()) {
+                    edges.add(keep.getEdge());
+                    keep = crrEdge;
+                    continue;
+                }
+            }
+            edges.add(edge);
+        }
+        for (Edge edge : edges) {
+            edge.remove();
+        }
+        return edges.size();
+    }
+
+    /**
+     * @return true - if the most recent GRAPHITY edge of the vertex points to
+     *         the successor<br>
+     *         false - if there is no such edge or another edge is more
+     *         recent, e.g. an outdated entry of the vertex-centric index
+     */
+    protected static boolean isLinked(Vertex vertex, Vertex vNext) {
+        return vNext.equals(Walker.nextMostRecentVertex(vertex,
+                EdgeType.GRAPHITY.getLabel()));
+    }
+
+    /**
+     * @return true - if the vertex has been removed, but is still reachable
+     *         via an outdated edge<br>
+     *         false - otherwise
+     */
+    protected static boolean isRemoved(Vertex vertex) {
+        return vertex instanceof TitanVertex
+                && ((TitanVertex) vertex).isRemoved();
+    }
+
+    protected static void link(Vertex vertex, Vertex vNext, long timestamp) {
+        Edge edge = vertex.addEdge(EdgeType.GRAPHITY.getLabel(), vNext);
+        new VersionedEdge(edge).setTimestamp(timestamp);
+    }
+
+    /**
+     * @return identifier of the next user submitted or <b>null</b> if none
+     */
+    protected Long poll() {
+        synchronized (_queue) {
+            Iterator<Long> iterator = _queue.iterator();
+            if (!iterator.hasNext()) {
+                return null;
+            }
+            Long idUser = iterator.next();
+            iterator.remove();
+            return idUser;
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        synchronized (_queue) {
+            return _queue.size();
+        }
+    }
+
+    @Override
+    public int getNumPendingAnomalies() {
+        synchronized (_queue) {
+            return _pendingAnomalies.size();
+        }
+    }
+
+    @Override
+    public long getNumCheckedLayers() {
+        return _numCheckedLayers.get();
+    }
+
+    @Override
+    public long getNumRepairedLayers() {
+        return _numRepairedLayers.get();
+    }
+
+    @Override
+    public long getNumRemovedEdges() {
+        return _numRemovedEdges.get();
+    }
+
+    @Override
+    public long getNumAddedEdges() {
+        return _numAddedEdges.get();
+    }
+
+    @Override
+    public long getNumMergedReplicas() {
+        return _numMergedReplicas.get();
+    }
+
+    @Override
+    public long getNumFailedRepairs() {
+        return _numFailedRepairs.get();
+    }
+
+    @Override
+    public long getNumSweeps() {
+        return _numSweeps.get();
+    }
+
+    @Override
+    public double getCheckThroughput() {
+        return getRate(_numCheckedLayers.get());
+    }
+
+    @Override
+    public double getRepairThroughput() {
+        return getRate(_numRepairedLayers.get());
+    }
+
+    protected double getRate(long count) {
+        long duration = System.currentTimeMillis() - _tsStart;
+        return (duration > 0) ? count * 1000.0 / duration : 0;
+    }
+
+    /**
+     * worker checking the layers submitted and sweeping over all users when
+     * idle
+     */
+    protected class Worker implements Runnable {
+
+        /**
+         * user vertex identifiers of the current sweep page not checked yet
+         */
+        protected final Queue<Long> sweepPage = new ArrayDeque<Long>();
+
+        /**
+         * first user identifier of the next sweep page, 0 if no sweep is
+         * running
+         */
+        protected long nextSweepId;
+
+        /**
+         * number of consecutive sweep pages without users
+         */
+        protected int numEmptyPages;
+
+        protected long tsLastSweep;
+
+        /**
+         * earliest time in nanoseconds of the next check
+         */
+        protected long nextCheck;
+
+        @Override
+        public void run() {
+            try {
+                while (_running) {
+                    Long idUser = poll();
+                    if (idUser == null) {
+                        idUser = nextSweepUser();
+                    }
+                    if (idUser == null) {
+                        waitForSubmission();
+                        continue;
+                    }
+                    pace();
+                    check(idUser);
+                }
+            } catch (InterruptedException e) {
+                // stop
+            }
+        }
+
+        /**
+         * @return identifier of the next user vertex of the current sweep or
+         *         <b>null</b> if no sweep is due
+         * @throws InterruptedException
+         *             if interrupted while pacing the sweep
+         */
+        protected Long nextSweepUser() throws InterruptedException {
+            if (nextSweepId == 0) {
+                long now = System.currentTimeMillis();
+                if (_sweepInterval <= 0
+                        || now - tsLastSweep < _sweepInterval) {
+                    return null;
+                }
+                tsLastSweep = now;
+                nextSweepId = 1;
+                numEmptyPages = 0;
+            }
+            while (sweepPage.isEmpty()) {
+                if (numEmptyPages >= MAX_EMPTY_SWEEP_PAGES || !_running) {
+                    finishSweep();
+                    return null;
+                }
+                // submitted layers take precedence over the sweep
+                if (getQueueDepth() > 0) {
+                    return null;
+                }
+                pace();
+                if (!loadSweepPage()) {
+                    // retried with the next sweep
+                    finishSweep();
+                    return null;
+                }
+            }
+            return sweepPage.poll();
+        }
+
+        /**
+         * Resolves the next page of user identifiers in a transaction of its
+         * own.
+         * 
+         * @return true - if the page has been loaded<br>
+         *         false - if the user index could not be queried
+         */
+        protected boolean loadSweepPage() {
+            TitanTransaction tx = _graphDb.newTransaction();
+            try {
+                long lastId = nextSweepId + SWEEP_PAGE_SIZE;
+                for (long idUser = nextSweepId; idUser < lastId; ++idUser) {
+                    for (Vertex vUser : tx.getVertices(
+                            UserProxy.PROP_IDENTIFIER, idUser)) {
+                        sweepPage.add((long) vUser.getId());
+                    }
+                }
+                nextSweepId = lastId;
+                if (sweepPage.isEmpty()) {
+                    numEmptyPages += 1;
+                } else {
+                    numEmptyPages = 0;
+                }
+                return true;
+            } catch (RuntimeException e) {
+                sweepPage.clear();
+                return false;
+            } finally {
+                tx.rollback();
+            }
+        }
+
+        protected void finishSweep() {
+            if (nextSweepId != 0 && numEmptyPages >= MAX_EMPTY_SWEEP_PAGES) {
+                _numSweeps.incrementAndGet();
+            }
+            sweepPage.clear();
+            nextSweepId = 0;
+        }
+
+        protected void waitForSubmission() throws InterruptedException {
+            synchronized (_queue) {
+                if (_queue.isEmpty() && _running) {
+                    long timeout = 1000;
+                    if (_sweepInterval > 0) {
+                        timeout =
+                                Math.max(1, tsLastSweep + _sweepInterval
+                                        - System.currentTimeMillis());
+                    }
+                    _queue.wait(timeout);
+                }
+            }
+        }
+
+        /**
+         * waits until the next check is allowed by the rate limit
+         */
+        protected void pace() throws InterruptedException {
+            long now = System.nanoTime();
+            if (nextCheck > now) {
+                TimeUnit.NANOSECONDS.sleep(nextCheck - now);
+                now = nextCheck;
+            }
+            nextCheck = now + _checkInterval;
+        }
+    }
+}
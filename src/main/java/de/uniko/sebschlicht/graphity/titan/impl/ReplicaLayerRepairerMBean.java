@@ -0,0 +1,66 @@
+package de.uniko.sebschlicht.graphity.titan.impl;
+
+/**
+ * JMX view on the progress of a {@link ReplicaLayerRepairer}.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public interface ReplicaLayerRepairerMBean {
+
+    /**
+     * @return number of replica layers submitted but not checked yet
+     */
+    int getQueueDepth();
+
+    /**
+     * @return number of replica layers found anomalous that have not been
+     *         repaired yet, e.g. as the repair failed to commit
+     */
+    int getNumPendingAnomalies();
+
+    /**
+     * @return number of replica layers checked
+     */
+    long getNumCheckedLayers();
+
+    /**
+     * @return number of replica layers repaired
+     */
+    long getNumRepairedLayers();
+
+    /**
+     * @return number of GRAPHITY edges removed
+     */
+    long getNumRemovedEdges();
+
+    /**
+     * @return number of GRAPHITY edges added to restore the timestamp order
+     */
+    long getNumAddedEdges();
+
+    /**
+     * @return number of duplicate replicas removed
+     */
+    long getNumMergedReplicas();
+
+    /**
+     * @return number of repairs that failed to commit
+     */
+    long getNumFailedRepairs();
+
+    /**
+     * @return number of sweeps over all users completed
+     */
+    long getNumSweeps();
+
+    /**
+     * @return replica layers checked per second since the start
+     */
+    double getCheckThroughput();
+
+    /**
+     * @return replica layers repaired per second since the start
+     */
+    double getRepairThroughput();
+}
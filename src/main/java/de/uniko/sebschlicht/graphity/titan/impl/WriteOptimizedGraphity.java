@@ -1,6 +1,11 @@
 package de.uniko.sebschlicht.graphity.titan.impl;
 
-import java.util.TreeSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import com.thinkaurelius.titan.core.TitanGraph;
 import com.tinkerpop.blueprints.Direction;
@@ -9,12 +14,17 @@ import com.tinkerpop.blueprints.Vertex;
 
 import de.uniko.sebschlicht.graphity.titan.EdgeType;
 import de.uniko.sebschlicht.graphity.titan.TitanGraphity;
-import de.uniko.sebschlicht.graphity.titan.model.PostIteratorComparator;
+import de.uniko.sebschlicht.graphity.titan.VertexPrefetcher;
+import de.uniko.sebschlicht.graphity.titan.metrics.TraversalCounter;
+import de.uniko.sebschlicht.graphity.titan.model.FeedCursor;
+import de.uniko.sebschlicht.graphity.titan.model.FeedEntry;
+import de.uniko.sebschlicht.graphity.titan.model.FeedEntryPage;
+import de.uniko.sebschlicht.graphity.titan.model.FolloweeQueue;
+import de.uniko.sebschlicht.graphity.titan.model.PostIteratorHeap;
 import de.uniko.sebschlicht.graphity.titan.model.StatusUpdateProxy;
 import de.uniko.sebschlicht.graphity.titan.model.UserPostIterator;
 import de.uniko.sebschlicht.graphity.titan.model.UserProxy;
 import de.uniko.sebschlicht.socialnet.StatusUpdate;
-import de.uniko.sebschlicht.socialnet.StatusUpdateList;
 
 public class WriteOptimizedGraphity extends TitanGraphity {
 
@@ -28,6 +38,7 @@ public class WriteOptimizedGraphity extends TitanGraphity {
         // try to find the vertex of the user followed
         for (Vertex vIsFollowed : vFollowing.getVertices(Direction.OUT,
                 EdgeType.FOLLOWS.getLabel())) {
+            TraversalCounter.traverseEdge();
             if (vIsFollowed.equals(vFollowed)) {
                 return false;
             }
@@ -44,6 +55,7 @@ public class WriteOptimizedGraphity extends TitanGraphity {
         Edge followship = null;
         for (Edge follows : vFollowing.getEdges(Direction.OUT,
                 EdgeType.FOLLOWS.getLabel())) {
+            TraversalCounter.scanEdge();
             if (follows.getVertex(Direction.IN).equals(vFollowed)) {
                 followship = follows;
                 break;
@@ -62,7 +74,7 @@ public class WriteOptimizedGraphity extends TitanGraphity {
     @Override
     protected long addStatusUpdate(Vertex vAuthor, StatusUpdate statusUpdate) {
         // create new status update vertex and fill via proxy
-        Vertex crrUpdate = graphDb.addVertex(null);
+        Vertex crrUpdate = getTransaction().addVertex(null);
         StatusUpdateProxy pStatusUpdate = new StatusUpdateProxy(crrUpdate);
         //TODO handle service overload
         pStatusUpdate.initVertex(statusUpdate.getPublished(),
@@ -75,43 +87,154 @@ public class WriteOptimizedGraphity extends TitanGraphity {
         return pStatusUpdate.getIdentifier();
     }
 
+    /**
+     * Merges the streams of the users followed.<br>
+     * Streams are opened lazily, newest author first, using the publishing
+     * timestamp of the users' newest status update. A stream is not opened
+     * before the merge has reached this timestamp, thus the number of streams
+     * loaded depends on the number of status updates requested rather than
+     * on the number of users followed.<br>
+     * Streams that have not been opened are not part of the cursor. When
+     * resuming, they are rediscovered and all their status updates published
+     * at or after the cursor boundary are skipped, as these have been
+     * delivered already.
+     */
     @Override
-    protected StatusUpdateList readStatusUpdates(
+    protected FeedEntryPage readFeedEntries(
             Vertex vReader,
-            int numStatusUpdates) {
-        StatusUpdateList statusUpdates = new StatusUpdateList();
+            int numEntries,
+            FeedCursor cursor) {
+        List<FeedEntry> entries = new ArrayList<FeedEntry>();
         if (vReader == null) {
-            return statusUpdates;
+            return new FeedEntryPage(entries, null);
+        }
+        final PostIteratorHeap postIterators = getPostIteratorHeap();
+
+        long boundary = 0;
+        Set<Object> resumedUserIds = Collections.emptySet();
+        if (cursor != null) {
+            // resume merge where the previous page ended
+            cursor.resume(getTransaction(), postIterators);
+            boundary = cursor.getBoundary();
+            resumedUserIds = new HashSet<Object>();
+            for (UserPostIterator postIterator : postIterators) {
+                resumedUserIds.add(postIterator.getUser().getVertex().getId());
+            }
         }
-        final TreeSet<UserPostIterator> postIterators =
-                new TreeSet<UserPostIterator>(new PostIteratorComparator());
 
-        // loop through users followed
-        UserProxy pCrrUser;
-        UserPostIterator postIterator;
+        // queue users followed by their newest status update
+        List<Vertex> followedUsers = new ArrayList<Vertex>();
         for (Vertex vFollowed : vReader.getVertices(Direction.OUT,
                 EdgeType.FOLLOWS.getLabel())) {
-            // add post iterator
-            pCrrUser = new UserProxy(vFollowed);
-            postIterator = new UserPostIterator(pCrrUser);
-
-            if (postIterator.hasNext()) {
-                postIterators.add(postIterator);
+            TraversalCounter.traverseEdge();
+            if (!resumedUserIds.contains(vFollowed.getId())) {
+                followedUsers.add(vFollowed);
             }
         }
+        VertexPrefetcher.loadProperties(getTransaction(), followedUsers);
+        FolloweeQueue followees = new FolloweeQueue();
+        UserProxy pCrrUser;
+        for (Vertex vFollowed : followedUsers) {
+            pCrrUser = new UserProxy(vFollowed);
+            followees.add(pCrrUser, getLastPost(pCrrUser));
+        }
+        // users polled whose newest status update has been loaded
+        ArrayDeque<UserProxy> window =
+                new ArrayDeque<UserProxy>(prefetchWindowSize);
 
         // handle queue
-        while ((statusUpdates.size() < numStatusUpdates)
-                && !postIterators.isEmpty()) {
+        UserPostIterator postIterator;
+        StatusUpdateProxy pStatusUpdate;
+        while (entries.size() < numEntries) {
+            // open streams that may contain the next status update
+            while (!(window.isEmpty() && followees.isEmpty())
+                    && (postIterators.isEmpty() || peekLastPost(followees,
+                            window) >= postIterators.peek().getCrrPublished())) {
+                postIterator =
+                        postIterators.obtain(pollFollowee(followees, window));
+                if (cursor != null) {
+                    postIterator.skipPublishedSince(cursor.getBoundary());
+                }
+                if (postIterator.hasNext()) {
+                    postIterators.add(postIterator);
+                } else {
+                    postIterators.recycle(postIterator);
+                }
+            }
+            if (postIterators.isEmpty()) {
+                break;
+            }
+
             // add last recent status update
-            postIterator = postIterators.pollLast();
-            statusUpdates.add(postIterator.next().getStatusUpdate());
+            postIterator = postIterators.peek();
+            pStatusUpdate = postIterator.next();
+            entries.add(pStatusUpdate.getFeedEntry());
+            boundary = pStatusUpdate.getPublished();
+
+            // re-position iterator, pool it if empty
+            postIterators.updateTop();
+        }
+        FeedCursor nextCursor;
+        if (postIterators.isEmpty()
+                && !(window.isEmpty() && followees.isEmpty())) {
+            // only streams left that have not been opened yet
+            nextCursor = FeedCursor.create(vReader, boundary);
+        } else {
+            nextCursor =
+                    FeedCursor.create(vReader, boundary, postIterators, null);
+        }
+        postIterators.clear();
+        return new FeedEntryPage(entries, nextCursor);
+    }
 
-            // re-add iterator if not empty
-            if (postIterator.hasNext()) {
-                postIterators.add(postIterator);
+    /**
+     * Removes the user having the newest status update from the users
+     * followed. If no user has been loaded ahead, the newest status updates
+     * of the next users are loaded at once.
+     * 
+     * @param followees
+     *            users followed that have not been loaded ahead
+     * @param window
+     *            users loaded ahead
+     * @return user having the newest status update
+     */
+    protected UserProxy pollFollowee(
+            FolloweeQueue followees,
+            ArrayDeque<UserProxy> window) {
+        if (window.isEmpty()) {
+            List<Vertex> userVertices =
+                    new ArrayList<Vertex>(prefetchWindowSize);
+            while (!followees.isEmpty()
+                    && window.size() < prefetchWindowSize) {
+                UserProxy pUser = followees.poll();
+                window.add(pUser);
+                userVertices.add(pUser.getVertex());
             }
+            VertexPrefetcher.loadNewestStatusUpdates(getTransaction(),
+                    userVertices);
         }
-        return statusUpdates;
+        return window.poll();
+    }
+
+    /**
+     * @return publishing timestamp of the newest status update of the user
+     *         returned by the next call of {@link #pollFollowee}
+     */
+    protected static long peekLastPost(
+            FolloweeQueue followees,
+            ArrayDeque<UserProxy> window) {
+        if (!window.isEmpty()) {
+            return getLastPost(window.peek());
+        }
+        return followees.peekLastPost();
+    }
+
+    /**
+     * @return publishing timestamp of the user's newest status update or
+     *         {@link Long#MAX_VALUE} if unknown, to open its stream first
+     */
+    protected static long getLastPost(UserProxy pUser) {
+        long lastPost = pUser.getLastPostTimestamp();
+        return (lastPost != 0) ? lastPost : Long.MAX_VALUE;
     }
 }
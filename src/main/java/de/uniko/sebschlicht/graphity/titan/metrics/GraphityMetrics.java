@@ -0,0 +1,252 @@
+package de.uniko.sebschlicht.graphity.titan.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Instrumentation of the social network operations of a Graphity instance.<br>
+ * Per operation, the latencies are recorded in a histogram along with the
+ * vertices visited and the edges scanned, as counted by
+ * {@link TraversalCounter}. Commits and rollbacks are attributed to the
+ * operation started last by the committing thread, hence a commit of multiple
+ * operations counts once.<br>
+ * Nested operations are recorded as part of the outermost operation. The
+ * metrics can be exposed as MBeans and reported periodically.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class GraphityMetrics {
+
+    /**
+     * default JMX domain of the MBeans
+     */
+    public static final String DEFAULT_DOMAIN = "de.uniko.sebschlicht.graphity";
+
+    protected final EnumMap<Operation, OperationMetrics> _operations;
+
+    /**
+     * operation state per thread
+     */
+    protected final ThreadLocal<OperationState> _states =
+            new ThreadLocal<OperationState>() {
+
+                @Override
+                protected OperationState initialValue() {
+                    return new OperationState();
+                }
+            };
+
+    /**
+     * names of the MBeans registered
+     */
+    protected final List<ObjectName> _mBeanNames;
+
+    protected ScheduledExecutorService _reporting;
+
+    public GraphityMetrics() {
+        _operations =
+                new EnumMap<Operation, OperationMetrics>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            _operations.put(operation, new OperationMetrics(operation));
+        }
+        _mBeanNames = new ArrayList<ObjectName>();
+    }
+
+    /**
+     * @param operation
+     *            social network operation
+     * @return metrics of the operation
+     */
+    public OperationMetrics get(Operation operation) {
+        return _operations.get(operation);
+    }
+
+    /**
+     * Starts measuring an operation executed by the current thread. Has to
+     * be followed by {@link #stop()} in any case.
+     * 
+     * @param operation
+     *            operation started
+     */
+    public void start(Operation operation) {
+        OperationState state = _states.get();
+        if (state.depth++ > 0) {// nested operation
+            return;
+        }
+        TraversalCounter counter = TraversalCounter.get();
+        state.operation = _operations.get(operation);
+        state.numVertices = counter.getNumVertices();
+        state.numEdges = counter.getNumEdges();
+        state.tsStart = System.nanoTime();
+    }
+
+    /**
+     * Stops measuring the operation executed by the current thread and
+     * records its metrics.
+     */
+    public void stop() {
+        long tsStop = System.nanoTime();
+        OperationState state = _states.get();
+        if (state.depth == 0 || --state.depth > 0) {
+            // not started or nested operation
+            return;
+        }
+        TraversalCounter counter = TraversalCounter.get();
+        state.operation.record(tsStop - state.tsStart,
+                counter.getNumVertices() - state.numVertices,
+                counter.getNumEdges() - state.numEdges);
+    }
+
+    /**
+     * Records a commit of the current thread.
+     */
+    public void recordCommit() {
+        OperationMetrics operation = _states.get().operation;
+        if (operation != null) {
+            operation.recordCommit();
+        }
+    }
+
+    /**
+     * Records a rollback of the current thread.
+     */
+    public void recordRollback() {
+        OperationMetrics operation = _states.get().operation;
+        if (operation != null) {
+            operation.recordRollback();
+        }
+    }
+
+    /**
+     * Resets the metrics of all operations.
+     */
+    public void reset() {
+        for (OperationMetrics operation : _operations.values()) {
+            operation.reset();
+        }
+    }
+
+    /**
+     * Registers an MBean per operation at the platform MBean server, named
+     * <i>domain</i>:type=Operation,name=<i>operation</i>.
+     * 
+     * @param domain
+     *            JMX domain, e.g. {@link #DEFAULT_DOMAIN}
+     * @throws IllegalStateException
+     *             if an MBean could not be registered, e.g. because the name
+     *             is in use already
+     */
+    public synchronized void registerMBeans(String domain) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (OperationMetrics operation : _operations.values()) {
+                ObjectName name =
+                        new ObjectName(domain + ":type=Operation,name="
+                                + operation.getName());
+                server.registerMBean(operation, name);
+                _mBeanNames.add(name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("failed to register MBeans", e);
+        }
+    }
+
+    /**
+     * Unregisters the MBeans registered via {@link #registerMBeans(String)}.
+     */
+    public synchronized void unregisterMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : _mBeanNames) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // unregistered already
+            }
+        }
+        _mBeanNames.clear();
+    }
+
+    /**
+     * Reports the metrics periodically in a background thread. Replaces the
+     * reporter that is currently active, if any.
+     * 
+     * @param reporter
+     *            reporter to pass the metrics to
+     * @param period
+     *            time between two reports
+     * @param unit
+     *            time unit of the period
+     */
+    public synchronized void startReporting(
+            final MetricsReporter reporter,
+            long period,
+            TimeUnit unit) {
+        stopReporting();
+        _reporting =
+                Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread =
+                                new Thread(runnable, "graphity-metrics");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        _reporting.scheduleAtFixedRate(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    reporter.report(GraphityMetrics.this);
+                } catch (RuntimeException e) {
+                    // keep reporting
+                    e.printStackTrace();
+                }
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Stops the periodic reporting, if active.
+     */
+    public synchronized void stopReporting() {
+        if (_reporting != null) {
+            _reporting.shutdownNow();
+            _reporting = null;
+        }
+    }
+
+    /**
+     * operation executed by a thread
+     */
+    protected static class OperationState {
+
+        /**
+         * metrics of the operation started last
+         */
+        OperationMetrics operation;
+
+        /**
+         * number of operations started but not stopped
+         */
+        int depth;
+
+        long tsStart;
+
+        long numVertices;
+
+        long numEdges;
+    }
+}
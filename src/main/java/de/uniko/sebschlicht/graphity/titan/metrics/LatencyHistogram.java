@@ -0,0 +1,175 @@
+package de.uniko.sebschlicht.graphity.titan.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies with a bounded relative error, in the
+ * manner of HdrHistogram.<br>
+ * Values below 256 are counted exactly. Larger values are counted in 128
+ * linear buckets per power of two, hence a percentile differs from the value
+ * recorded by less than 1%. Values of 2^40 and more, i.e. about 18 minutes in
+ * nanoseconds, share the last bucket.<br>
+ * Recording a value costs a few atomic increments and does not allocate. The
+ * buckets are read without synchronization, thus percentiles computed while
+ * values are recorded may be off by the values recorded meanwhile.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class LatencyHistogram {
+
+    /**
+     * number of linear buckets per power of two, as power of two
+     */
+    protected static final int SUB_BUCKET_BITS = 7;
+
+    protected static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * values below are counted exactly
+     */
+    protected static final int LINEAR_LIMIT = 2 * SUB_BUCKET_COUNT;
+
+    /**
+     * number of powers of two above the linear limit
+     */
+    protected static final int MAX_SHIFT = 40 - (SUB_BUCKET_BITS + 1);
+
+    protected static final int NUM_BUCKETS = LINEAR_LIMIT + MAX_SHIFT
+            * SUB_BUCKET_COUNT;
+
+    protected final AtomicLongArray _buckets;
+
+    protected final AtomicLong _count;
+
+    protected final AtomicLong _sum;
+
+    protected final AtomicLong _max;
+
+    public LatencyHistogram() {
+        _buckets = new AtomicLongArray(NUM_BUCKETS);
+        _count = new AtomicLong(0);
+        _sum = new AtomicLong(0);
+        _max = new AtomicLong(0);
+    }
+
+    /**
+     * Records a value.
+     * 
+     * @param value
+     *            latency, negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        _buckets.incrementAndGet(getBucket(value));
+        _count.incrementAndGet();
+        _sum.addAndGet(value);
+        long max;
+        while (value > (max = _max.get()) && !_max.compareAndSet(max, value)) {
+            // retry
+        }
+    }
+
+    /**
+     * @return number of values recorded
+     */
+    public long getCount() {
+        return _count.get();
+    }
+
+    /**
+     * @return mean of the values recorded, 0 if empty
+     */
+    public double getMean() {
+        long count = _count.get();
+        return (count > 0) ? (double) _sum.get() / count : 0;
+    }
+
+    /**
+     * @return largest value recorded, 0 if empty
+     */
+    public long getMax() {
+        return _max.get();
+    }
+
+    /**
+     * @param percentile
+     *            percentile in (0, 100]
+     * @return highest value equivalent to the value at the percentile, i.e.
+     *         the upper bound of its bucket<br>
+     *         0 - if empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException(
+                    "percentile must be in (0, 100]");
+        }
+        long[] counts = new long[NUM_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; ++i) {
+            counts[i] = _buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long numValues = 0;
+        for (int i = 0; i < NUM_BUCKETS; ++i) {
+            numValues += counts[i];
+            if (numValues >= rank) {
+                return Math.min(getHighestValue(i), _max.get());
+            }
+        }
+        return _max.get();
+    }
+
+    /**
+     * Removes all values. Values recorded concurrently may be lost partially.
+     */
+    public void reset() {
+        for (int i = 0; i < NUM_BUCKETS; ++i) {
+            _buckets.set(i, 0);
+        }
+        _count.set(0);
+        _sum.set(0);
+        _max.set(0);
+    }
+
+    /**
+     * @param value
+     *            non-negative value
+     * @return index of the bucket counting the value
+     */
+    protected static int getBucket(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift =
+                64 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS + 1);
+        if (shift > MAX_SHIFT) {
+            return NUM_BUCKETS - 1;
+        }
+        // the highest bits of the value select the linear bucket
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKET_COUNT
+                + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    /**
+     * @param bucket
+     *            index of a bucket
+     * @return largest value counted by the bucket
+     */
+    protected static long getHighestValue(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int shift = (bucket - LINEAR_LIMIT) / SUB_BUCKET_COUNT + 1;
+        long top =
+                (bucket - LINEAR_LIMIT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,21 @@
+package de.uniko.sebschlicht.graphity.titan.metrics;
+
+/**
+ * Destination the metrics of a Graphity instance are reported to
+ * periodically, e.g. a log or a monitoring system.
+ * 
+ * @author sebschlicht
+ * 
+ * @see GraphityMetrics#startReporting(MetricsReporter, long,
+ *      java.util.concurrent.TimeUnit)
+ */
+public interface MetricsReporter {
+
+    /**
+     * Reports the current metrics. Called by a single reporting thread.
+     * 
+     * @param metrics
+     *            metrics of a Graphity instance
+     */
+    void report(GraphityMetrics metrics);
+}
@@ -0,0 +1,34 @@
+package de.uniko.sebschlicht.graphity.titan.metrics;
+
+/**
+ * social network operation instrumented by {@link GraphityMetrics}
+ * 
+ * @author sebschlicht
+ * 
+ */
+public enum Operation {
+
+    ADD_USER("addUser"),
+
+    ADD_FOLLOWSHIP("addFollowship"),
+
+    REMOVE_FOLLOWSHIP("removeFollowship"),
+
+    ADD_STATUS_UPDATE("addStatusUpdate"),
+
+    READ_STATUS_UPDATES("readStatusUpdates");
+
+    private final String name;
+
+    private Operation(
+            String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return name of the API method performing the operation
+     */
+    public String getName() {
+        return name;
+    }
+}
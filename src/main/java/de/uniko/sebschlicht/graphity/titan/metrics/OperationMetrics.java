@@ -0,0 +1,152 @@
+package de.uniko.sebschlicht.graphity.titan.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latencies and traversal costs of a social network operation.<br>
+ * Latencies are recorded in nanoseconds and exposed in microseconds via JMX.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+    protected final Operation _operation;
+
+    protected final LatencyHistogram _latencies;
+
+    protected final AtomicLong _numVertices;
+
+    protected final AtomicLong _numEdges;
+
+    protected final AtomicLong _numCommits;
+
+    protected final AtomicLong _numRollbacks;
+
+    public OperationMetrics(
+            Operation operation) {
+        _operation = operation;
+        _latencies = new LatencyHistogram();
+        _numVertices = new AtomicLong(0);
+        _numEdges = new AtomicLong(0);
+        _numCommits = new AtomicLong(0);
+        _numRollbacks = new AtomicLong(0);
+    }
+
+    /**
+     * Records an operation executed.
+     * 
+     * @param latency
+     *            latency in nanoseconds
+     * @param numVertices
+     *            number of vertices visited
+     * @param numEdges
+     *            number of edges scanned
+     */
+    public void record(long latency, long numVertices, long numEdges) {
+        _latencies.record(latency);
+        if (numVertices != 0) {
+            _numVertices.addAndGet(numVertices);
+        }
+        if (numEdges != 0) {
+            _numEdges.addAndGet(numEdges);
+        }
+    }
+
+    public void recordCommit() {
+        _numCommits.incrementAndGet();
+    }
+
+    public void recordRollback() {
+        _numRollbacks.incrementAndGet();
+    }
+
+    public Operation getOperation() {
+        return _operation;
+    }
+
+    /**
+     * @return histogram of the latencies in nanoseconds
+     */
+    public LatencyHistogram getLatencies() {
+        return _latencies;
+    }
+
+    @Override
+    public String getName() {
+        return _operation.getName();
+    }
+
+    @Override
+    public long getCount() {
+        return _latencies.getCount();
+    }
+
+    @Override
+    public double getMeanLatency() {
+        return _latencies.getMean() / 1000;
+    }
+
+    @Override
+    public double getMaxLatency() {
+        return _latencies.getMax() / 1000.0;
+    }
+
+    @Override
+    public double get50thPercentileLatency() {
+        return getPercentileLatency(50);
+    }
+
+    @Override
+    public double get95thPercentileLatency() {
+        return getPercentileLatency(95);
+    }
+
+    @Override
+    public double get99thPercentileLatency() {
+        return getPercentileLatency(99);
+    }
+
+    @Override
+    public double get999thPercentileLatency() {
+        return getPercentileLatency(99.9);
+    }
+
+    /**
+     * @param percentile
+     *            percentile in (0, 100]
+     * @return latency at the percentile in microseconds
+     */
+    public double getPercentileLatency(double percentile) {
+        return _latencies.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    @Override
+    public long getVerticesVisited() {
+        return _numVertices.get();
+    }
+
+    @Override
+    public long getEdgesScanned() {
+        return _numEdges.get();
+    }
+
+    @Override
+    public long getCommits() {
+        return _numCommits.get();
+    }
+
+    @Override
+    public long getRollbacks() {
+        return _numRollbacks.get();
+    }
+
+    @Override
+    public void reset() {
+        _latencies.reset();
+        _numVertices.set(0);
+        _numEdges.set(0);
+        _numCommits.set(0);
+        _numRollbacks.set(0);
+    }
+}
@@ -0,0 +1,58 @@
+package de.uniko.sebschlicht.graphity.titan.metrics;
+
+/**
+ * JMX view on the metrics of a social network operation. Latencies are
+ * given in microseconds.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public interface OperationMetricsMBean {
+
+    /**
+     * @return name of the operation
+     */
+    String getName();
+
+    /**
+     * @return number of operations executed
+     */
+    long getCount();
+
+    double getMeanLatency();
+
+    double getMaxLatency();
+
+    double get50thPercentileLatency();
+
+    double get95thPercentileLatency();
+
+    double get99thPercentileLatency();
+
+    double get999thPercentileLatency();
+
+    /**
+     * @return number of vertices visited by all operations
+     */
+    long getVerticesVisited();
+
+    /**
+     * @return number of edges scanned by all operations
+     */
+    long getEdgesScanned();
+
+    /**
+     * @return number of commits following operations
+     */
+    long getCommits();
+
+    /**
+     * @return number of rollbacks following operations
+     */
+    long getRollbacks();
+
+    /**
+     * Resets all metrics of the operation.
+     */
+    void reset();
+}
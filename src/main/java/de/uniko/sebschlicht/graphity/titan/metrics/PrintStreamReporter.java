@@ -0,0 +1,54 @@
+package de.uniko.sebschlicht.graphity.titan.metrics;
+
+import java.io.PrintStream;
+
+/**
+ * Prints a line per operation executed, e.g. to the console.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class PrintStreamReporter implements MetricsReporter {
+
+    protected final PrintStream _out;
+
+    /**
+     * Creates a reporter printing to the standard output.
+     */
+    public PrintStreamReporter() {
+        this(System.out);
+    }
+
+    /**
+     * @param out
+     *            stream to print the metrics to
+     */
+    public PrintStreamReporter(
+            PrintStream out) {
+        _out = out;
+    }
+
+    @Override
+    public void report(GraphityMetrics metrics) {
+        for (Operation operation : Operation.values()) {
+            OperationMetrics operationMetrics = metrics.get(operation);
+            long count = operationMetrics.getCount();
+            if (count == 0) {
+                continue;
+            }
+            _out.println(String.format("%s: %d ops, latency (us) mean %.1f, "
+                    + "p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f, "
+                    + "%.1f vertices/op, %.1f edges/op, "
+                    + "%d commits, %d rollbacks", operation.getName(), count,
+                    operationMetrics.getMeanLatency(),
+                    operationMetrics.get50thPercentileLatency(),
+                    operationMetrics.get99thPercentileLatency(),
+                    operationMetrics.get999thPercentileLatency(),
+                    operationMetrics.getMaxLatency(),
+                    (double) operationMetrics.getVerticesVisited() / count,
+                    (double) operationMetrics.getEdgesScanned() / count,
+                    operationMetrics.getCommits(),
+                    operationMetrics.getRollbacks()));
+        }
+    }
+}
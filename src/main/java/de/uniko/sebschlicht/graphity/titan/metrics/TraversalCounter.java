@@ -0,0 +1,84 @@
+package de.uniko.sebschlicht.graphity.titan.metrics;
+
+/**
+ * Counts the vertices visited and the edges scanned by the current thread.<br>
+ * The counters are never reset, the traversal costs of an operation are the
+ * differences between the counters before and after the operation. Counting
+ * costs a thread-local lookup and does not synchronize.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class TraversalCounter {
+
+    private static final ThreadLocal<TraversalCounter> COUNTERS =
+            new ThreadLocal<TraversalCounter>() {
+
+                @Override
+                protected TraversalCounter initialValue() {
+                    return new TraversalCounter();
+                }
+            };
+
+    protected long _numVertices;
+
+    protected long _numEdges;
+
+    protected TraversalCounter() {
+    }
+
+    /**
+     * @return counter of the current thread
+     */
+    public static TraversalCounter get() {
+        return COUNTERS.get();
+    }
+
+    /**
+     * Counts a vertex reached or loaded by the current thread.
+     */
+    public static void visitVertex() {
+        COUNTERS.get()._numVertices += 1;
+    }
+
+    /**
+     * Counts vertices reached or loaded by the current thread.
+     * 
+     * @param numVertices
+     *            number of vertices
+     */
+    public static void visitVertices(int numVertices) {
+        COUNTERS.get()._numVertices += numVertices;
+    }
+
+    /**
+     * Counts an edge loaded by the current thread.
+     */
+    public static void scanEdge() {
+        COUNTERS.get()._numEdges += 1;
+    }
+
+    /**
+     * Counts an edge loaded by the current thread along with the adjacent
+     * vertex reached.
+     */
+    public static void traverseEdge() {
+        TraversalCounter counter = COUNTERS.get();
+        counter._numEdges += 1;
+        counter._numVertices += 1;
+    }
+
+    /**
+     * @return number of vertices visited by this thread
+     */
+    public long getNumVertices() {
+        return _numVertices;
+    }
+
+    /**
+     * @return number of edges scanned by this thread
+     */
+    public long getNumEdges() {
+        return _numEdges;
+    }
+}
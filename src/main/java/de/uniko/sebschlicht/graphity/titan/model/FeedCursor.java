@@ -0,0 +1,294 @@
+package de.uniko.sebschlicht.graphity.titan.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * Merge state of a news feed retrieval, allowing to resume the retrieval
+ * where a previous page ended.<br>
+ * The state consists of the publishing timestamp of the last status update
+ * delivered and the position of each author stream that has not been
+ * exhausted yet. The cursor is exchanged with clients as an opaque string.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class FeedCursor {
+
+    /**
+     * prefix of the cursor string format
+     */
+    protected static final String VERSION = "c1";
+
+    /**
+     * separator of cursor fields
+     */
+    protected static final char SEPARATOR = '.';
+
+    /**
+     * separator of stream position fields
+     */
+    protected static final char POSITION_SEPARATOR = '-';
+
+    /**
+     * radix of numbers in the cursor string
+     */
+    protected static final int RADIX = Character.MAX_RADIX;
+
+    /**
+     * identifier of the reader vertex
+     */
+    protected long _readerId;
+
+    /**
+     * publishing timestamp of the last status update delivered
+     */
+    protected long _boundary;
+
+    /**
+     * index of the stream of the user loaded last from the replica layer
+     */
+    protected int _iLastLoaded;
+
+    /**
+     * positions of the author streams
+     */
+    protected List<StreamPosition> _positions;
+
+    protected FeedCursor(
+            long readerId,
+            long boundary,
+            int iLastLoaded,
+            List<StreamPosition> positions) {
+        _readerId = readerId;
+        _boundary = boundary;
+        _iLastLoaded = iLastLoaded;
+        _positions = positions;
+    }
+
+    /**
+     * @return identifier of the reader vertex
+     */
+    public long getReaderId() {
+        return _readerId;
+    }
+
+    /**
+     * @return publishing timestamp of the last status update delivered
+     */
+    public long getBoundary() {
+        return _boundary;
+    }
+
+    /**
+     * Captures the merge state of a news feed retrieval.
+     * 
+     * @param vReader
+     *            user vertex of the reader
+     * @param boundary
+     *            publishing timestamp of the last status update delivered
+     * @param postIterators
+     *            author streams that have not been exhausted yet
+     * @param pLastLoaded
+     *            (optional) user loaded last from the reader's replica layer
+     * @return cursor representing the merge state<br>
+     *         <b>null</b> - if all streams have been exhausted
+     */
+    public static FeedCursor create(
+            Vertex vReader,
+            long boundary,
+            Collection<UserPostIterator> postIterators,
+            UserProxy pLastLoaded) {
+        if (postIterators.isEmpty()) {
+            return null;
+        }
+        List<StreamPosition> positions =
+                new ArrayList<StreamPosition>(postIterators.size());
+        int iLastLoaded = -1;
+        for (UserPostIterator postIterator : postIterators) {
+            if (postIterator.getUser() == pLastLoaded) {
+                iLastLoaded = positions.size();
+            }
+            Vertex vReplica = postIterator.getReplicaVertex();
+            positions.add(new StreamPosition(getId(postIterator.getUser()
+                    .getVertex()), getId(postIterator.getCrrStatusUpdate()
+                    .getVertex()), (vReplica != null) ? getId(vReplica) : 0));
+        }
+        return new FeedCursor(getId(vReader), boundary, iLastLoaded,
+                positions);
+    }
+
+    /**
+     * Creates a cursor without any author streams, for news feeds whose
+     * streams are rediscovered when resuming.
+     * 
+     * @param vReader
+     *            user vertex of the reader
+     * @param boundary
+     *            publishing timestamp of the last status update delivered
+     * @return cursor representing the boundary only
+     */
+    public static FeedCursor create(Vertex vReader, long boundary) {
+        return new FeedCursor(getId(vReader), boundary, -1,
+                new ArrayList<StreamPosition>(0));
+    }
+
+    /**
+     * Restores the author streams of the merge state.
+     * 
+     * @param graphDb
+     *            graph database or transaction to load the vertices from
+     * @param postIterators
+     *            heap to add the restored streams to
+     * @return stream of the user loaded last from the reader's replica
+     *         layer<br>
+     *         <b>null</b> - if no further users have to be loaded
+     */
+    public UserPostIterator resume(
+            TransactionalGraph graphDb,
+            PostIteratorHeap postIterators) {
+        UserPostIterator lastLoaded = null;
+        for (int i = 0; i < _positions.size(); ++i) {
+            StreamPosition position = _positions.get(i);
+            Vertex vUser = graphDb.getVertex(position.userId);
+            Vertex vStatusUpdate = graphDb.getVertex(position.statusUpdateId);
+            if (vUser == null || vStatusUpdate == null) {
+                // concurrent graph modification
+                continue;
+            }
+            Vertex vReplica = null;
+            if (position.replicaId != 0) {
+                vReplica = graphDb.getVertex(position.replicaId);
+                if (vReplica == null) {// user has been unfollowed
+                    continue;
+                }
+            }
+            UserPostIterator postIterator =
+                    postIterators.obtain(new UserProxy(vUser), vStatusUpdate);
+            postIterator.setReplicaVertex(vReplica);
+            postIterators.add(postIterator);
+            if (i == _iLastLoaded) {
+                lastLoaded = postIterator;
+            }
+        }
+        return lastLoaded;
+    }
+
+    /**
+     * @return opaque string representation of the cursor
+     */
+    public String encode() {
+        StringBuilder builder = new StringBuilder(VERSION);
+        builder.append(SEPARATOR).append(Long.toString(_readerId, RADIX));
+        builder.append(SEPARATOR).append(Long.toString(_boundary, RADIX));
+        builder.append(SEPARATOR).append(Integer.toString(_iLastLoaded, RADIX));
+        for (StreamPosition position : _positions) {
+            builder.append(SEPARATOR)
+                    .append(Long.toString(position.userId, RADIX))
+                    .append(POSITION_SEPARATOR)
+                    .append(Long.toString(position.statusUpdateId, RADIX))
+                    .append(POSITION_SEPARATOR)
+                    .append(Long.toString(position.replicaId, RADIX));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+
+    /**
+     * Parses a cursor from its string representation.
+     * 
+     * @param cursor
+     *            opaque string representation of the cursor
+     * @return cursor represented by the string
+     * @throws IllegalArgumentException
+     *             if the string is no valid cursor
+     */
+    public static FeedCursor decode(String cursor) {
+        String[] fields = split(cursor, SEPARATOR);
+        if (fields.length < 4 || !VERSION.equals(fields[0])) {
+            throw new IllegalArgumentException("invalid feed cursor: "
+                    + cursor);
+        }
+        try {
+            long readerId = Long.parseLong(fields[1], RADIX);
+            long boundary = Long.parseLong(fields[2], RADIX);
+            int iLastLoaded = Integer.parseInt(fields[3], RADIX);
+            List<StreamPosition> positions =
+                    new ArrayList<StreamPosition>(fields.length - 4);
+            for (int i = 4; i < fields.length; ++i) {
+                String[] position = split(fields[i], POSITION_SEPARATOR);
+                if (position.length != 3) {
+                    throw new IllegalArgumentException(
+                            "invalid feed cursor: " + cursor);
+                }
+                positions.add(new StreamPosition(Long.parseLong(position[0],
+                        RADIX), Long.parseLong(position[1], RADIX), Long
+                        .parseLong(position[2], RADIX)));
+            }
+            if (iLastLoaded >= positions.size()) {
+                throw new IllegalArgumentException("invalid feed cursor: "
+                        + cursor);
+            }
+            return new FeedCursor(readerId, boundary, iLastLoaded, positions);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid feed cursor: "
+                    + cursor, e);
+        }
+    }
+
+    protected static String[] split(String value, char separator) {
+        List<String> parts = new ArrayList<String>();
+        int start = 0;
+        for (int i = 0; i < value.length(); ++i) {
+            if (value.charAt(i) == separator) {
+                parts.add(value.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(value.substring(start));
+        return parts.toArray(new String[parts.size()]);
+    }
+
+    protected static long getId(Vertex vertex) {
+        return (long) vertex.getId();
+    }
+
+    /**
+     * position within an author stream
+     */
+    protected static class StreamPosition {
+
+        /**
+         * identifier of the author vertex
+         */
+        protected final long userId;
+
+        /**
+         * identifier of the next status update vertex to deliver
+         */
+        protected final long statusUpdateId;
+
+        /**
+         * identifier of the author's replica in the reader's replica layer or
+         * 0 if the stream was not loaded via the replica layer
+         */
+        protected final long replicaId;
+
+        public StreamPosition(
+                long userId,
+                long statusUpdateId,
+                long replicaId) {
+            this.userId = userId;
+            this.statusUpdateId = statusUpdateId;
+            this.replicaId = replicaId;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package de.uniko.sebschlicht.graphity.titan.model;
+
+/**
+ * Lightweight news feed entry, referring to a status update without its
+ * content message.<br>
+ * The messages of multiple entries can be loaded at once via their status
+ * update vertex identifiers.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class FeedEntry {
+
+    /**
+     * MUID of the status update, 0 if bootstrapped
+     */
+    protected final long _identifier;
+
+    /**
+     * identifier of the author
+     */
+    protected final long _authorId;
+
+    /**
+     * timestamp of publishing
+     */
+    protected final long _published;
+
+    /**
+     * identifier of the status update vertex
+     */
+    protected final long _statusUpdateId;
+
+    public FeedEntry(
+            long identifier,
+            long authorId,
+            long published,
+            long statusUpdateId) {
+        _identifier = identifier;
+        _authorId = authorId;
+        _published = published;
+        _statusUpdateId = statusUpdateId;
+    }
+
+    /**
+     * @return MUID of the status update, 0 if the status update has been
+     *         bootstrapped without identifier
+     */
+    public long getIdentifier() {
+        return _identifier;
+    }
+
+    /**
+     * @return identifier of the author
+     */
+    public long getAuthorId() {
+        return _authorId;
+    }
+
+    /**
+     * @return timestamp of publishing
+     */
+    public long getPublished() {
+        return _published;
+    }
+
+    /**
+     * @return identifier of the status update vertex, used to load the
+     *         message
+     */
+    public long getStatusUpdateId() {
+        return _statusUpdateId;
+    }
+}
@@ -0,0 +1,61 @@
+package de.uniko.sebschlicht.graphity.titan.model;
+
+import java.util.List;
+
+/**
+ * Page of a news feed consisting of lightweight entries along with the cursor
+ * to retrieve the next page.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class FeedEntryPage {
+
+    /**
+     * entries of this page, newest first
+     */
+    protected List<FeedEntry> _entries;
+
+    /**
+     * cursor pointing behind this page
+     */
+    protected FeedCursor _cursor;
+
+    public FeedEntryPage(
+            List<FeedEntry> entries,
+            FeedCursor cursor) {
+        _entries = entries;
+        _cursor = cursor;
+    }
+
+    /**
+     * @return entries of this page, newest first
+     */
+    public List<FeedEntry> getEntries() {
+        return _entries;
+    }
+
+    /**
+     * @return merge state this page ended with<br>
+     *         <b>null</b> - if the news feed has been read completely
+     */
+    public FeedCursor getFeedCursor() {
+        return _cursor;
+    }
+
+    /**
+     * @return opaque cursor to retrieve the next page<br>
+     *         <b>null</b> - if the news feed has been read completely
+     */
+    public String getCursor() {
+        return (_cursor != null) ? _cursor.encode() : null;
+    }
+
+    /**
+     * @return true - if there are further entries to retrieve<br>
+     *         false - if the news feed has been read completely
+     */
+    public boolean hasNextPage() {
+        return _cursor != null;
+    }
+}
@@ -0,0 +1,116 @@
+package de.uniko.sebschlicht.graphity.titan.model;
+
+import java.util.Arrays;
+
+/**
+ * Binary max-heap of users followed, ordered by the publishing timestamp of
+ * their newest status update.<br>
+ * Used to open author streams lazily, newest author first: a user whose
+ * newest status update is older than the current head of the merge can not
+ * contribute to the news feed before the merge has passed that timestamp.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class FolloweeQueue {
+
+    protected static final int DEFAULT_CAPACITY = 16;
+
+    protected UserProxy[] _users;
+
+    /**
+     * publishing timestamp of the newest status update, per user
+     */
+    protected long[] _keys;
+
+    protected int _size;
+
+    public FolloweeQueue() {
+        _users = new UserProxy[DEFAULT_CAPACITY];
+        _keys = new long[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Adds a user to the queue.
+     * 
+     * @param pUser
+     *            user followed
+     * @param lastPost
+     *            publishing timestamp of the user's newest status update
+     */
+    public void add(UserProxy pUser, long lastPost) {
+        if (_size == _users.length) {
+            int capacity = _size * 2;
+            _users = Arrays.copyOf(_users, capacity);
+            _keys = Arrays.copyOf(_keys, capacity);
+        }
+        int i = _size++;
+        _users[i] = pUser;
+        _keys[i] = lastPost;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (_keys[parent] >= _keys[i]) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    /**
+     * @return publishing timestamp of the newest status update of the user
+     *         returned by {@link #poll()}
+     */
+    public long peekLastPost() {
+        return _keys[0];
+    }
+
+    /**
+     * Removes the user having the newest status update from the queue.
+     * 
+     * @return user having the newest status update or <b>null</b> if the
+     *         queue is empty
+     */
+    public UserProxy poll() {
+        if (_size == 0) {
+            return null;
+        }
+        UserProxy pUser = _users[0];
+        int last = --_size;
+        _users[0] = _users[last];
+        _keys[0] = _keys[last];
+        _users[last] = null;
+
+        int i = 0, half = _size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < _size && _keys[right] > _keys[child]) {
+                child = right;
+            }
+            if (_keys[i] >= _keys[child]) {
+                break;
+            }
+            swap(i, child);
+            i = child;
+        }
+        return pUser;
+    }
+
+    public boolean isEmpty() {
+        return _size == 0;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    protected void swap(int i, int j) {
+        UserProxy pUser = _users[i];
+        _users[i] = _users[j];
+        _users[j] = pUser;
+        long key = _keys[i];
+        _keys[i] = _keys[j];
+        _keys[j] = key;
+    }
+}
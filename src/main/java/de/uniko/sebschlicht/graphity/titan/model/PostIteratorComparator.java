@@ -1,16 +0,0 @@
-package de.uniko.sebschlicht.graphity.titan.model;
-
-import java.util.Comparator;
-
-// TODO documentation
-public class PostIteratorComparator implements Comparator<PostIterator> {
-
-    @Override
-    public int compare(final PostIterator iter1, final PostIterator iter2) {
-        if (iter1.getCrrPublished() > iter2.getCrrPublished()) {
-            return 1;
-        } else {
-            return -1;
-        }
-    }
-}
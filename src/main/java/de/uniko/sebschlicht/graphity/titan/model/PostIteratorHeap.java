@@ -0,0 +1,251 @@
+package de.uniko.sebschlicht.graphity.titan.model;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * Binary max-heap merging author streams by the publishing timestamp of their
+ * current status update.<br>
+ * The timestamps are held in a primitive array next to the streams, streams
+ * with equal timestamps are ordered by the time they have been (re-)added.
+ * Exhausted streams are kept in a pool and reused by {@link #obtain}, hence a
+ * heap should be reused for subsequent merges of the same thread.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class PostIteratorHeap extends AbstractCollection<UserPostIterator> {
+
+    protected static final int DEFAULT_CAPACITY = 16;
+
+    protected UserPostIterator[] _iterators;
+
+    /**
+     * publishing timestamp of the current status update, per stream
+     */
+    protected long[] _keys;
+
+    /**
+     * sequence number of the last (re-)insertion, per stream
+     */
+    protected long[] _sequences;
+
+    protected int _size;
+
+    protected long _nextSequence;
+
+    /**
+     * streams available for reuse
+     */
+    protected UserPostIterator[] _pool;
+
+    protected int _poolSize;
+
+    public PostIteratorHeap() {
+        _iterators = new UserPostIterator[DEFAULT_CAPACITY];
+        _keys = new long[DEFAULT_CAPACITY];
+        _sequences = new long[DEFAULT_CAPACITY];
+        _pool = new UserPostIterator[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Provides a stream starting at the newest status update of a user.
+     * 
+     * @param pUser
+     *            author of the stream
+     * @return pooled or new stream
+     */
+    public UserPostIterator obtain(UserProxy pUser) {
+        if (_poolSize == 0) {
+            return new UserPostIterator(pUser);
+        }
+        UserPostIterator postIterator = _pool[--_poolSize];
+        _pool[_poolSize] = null;
+        postIterator.reset(pUser);
+        return postIterator;
+    }
+
+    /**
+     * Provides a stream resuming a user's stream at a certain status update.
+     * 
+     * @param pUser
+     *            author of the stream
+     * @param vStatusUpdate
+     *            status update vertex to resume the stream at
+     * @return pooled or new stream
+     */
+    public UserPostIterator obtain(UserProxy pUser, Vertex vStatusUpdate) {
+        if (_poolSize == 0) {
+            return new UserPostIterator(pUser, vStatusUpdate);
+        }
+        UserPostIterator postIterator = _pool[--_poolSize];
+        _pool[_poolSize] = null;
+        postIterator.reset(pUser, vStatusUpdate);
+        return postIterator;
+    }
+
+    /**
+     * Returns a stream that has not been added to the pool.
+     * 
+     * @param postIterator
+     *            stream that is not used anymore
+     */
+    public void recycle(UserPostIterator postIterator) {
+        postIterator.release();
+        if (_poolSize == _pool.length) {
+            _pool = Arrays.copyOf(_pool, _poolSize * 2);
+        }
+        _pool[_poolSize++] = postIterator;
+    }
+
+    /**
+     * Adds a stream to the merge.
+     * 
+     * @param postIterator
+     *            stream having a current status update
+     * @return true
+     */
+    @Override
+    public boolean add(UserPostIterator postIterator) {
+        if (_size == _iterators.length) {
+            int capacity = _size * 2;
+            _iterators = Arrays.copyOf(_iterators, capacity);
+            _keys = Arrays.copyOf(_keys, capacity);
+            _sequences = Arrays.copyOf(_sequences, capacity);
+        }
+        int i = _size++;
+        _iterators[i] = postIterator;
+        _keys[i] = postIterator.getCrrPublished();
+        _sequences[i] = _nextSequence++;
+        siftUp(i);
+        return true;
+    }
+
+    /**
+     * @return stream holding the newest status update or <b>null</b> if the
+     *         heap is empty
+     */
+    public UserPostIterator peek() {
+        return (_size > 0) ? _iterators[0] : null;
+    }
+
+    /**
+     * Restores the heap order after the stream returned by {@link #peek()} has
+     * been advanced. The stream is removed and pooled if it is exhausted.
+     */
+    public void updateTop() {
+        UserPostIterator top = _iterators[0];
+        if (top.hasNext()) {
+            _keys[0] = top.getCrrPublished();
+            _sequences[0] = _nextSequence++;
+        } else {
+            int last = --_size;
+            _iterators[0] = _iterators[last];
+            _keys[0] = _keys[last];
+            _sequences[0] = _sequences[last];
+            _iterators[last] = null;
+            recycle(top);
+        }
+        if (_size > 0) {
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Removes all streams and adds them to the pool.
+     */
+    @Override
+    public void clear() {
+        for (int i = 0; i < _size; ++i) {
+            recycle(_iterators[i]);
+            _iterators[i] = null;
+        }
+        _size = 0;
+        _nextSequence = 0;
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * @return iterator over the streams in heap order, not supporting removal
+     */
+    @Override
+    public Iterator<UserPostIterator> iterator() {
+        return new Iterator<UserPostIterator>() {
+
+            private int _i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return _i < _size;
+            }
+
+            @Override
+            public UserPostIterator next() {
+                if (_i >= _size) {
+                    throw new NoSuchElementException();
+                }
+                return _iterators[_i++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * @return true - if the stream at index i precedes the stream at index j
+     */
+    protected boolean precedes(int i, int j) {
+        return _keys[i] > _keys[j]
+                || (_keys[i] == _keys[j] && _sequences[i] < _sequences[j]);
+    }
+
+    protected void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!precedes(i, parent)) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    protected void siftDown(int i) {
+        int half = _size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < _size && precedes(right, child)) {
+                child = right;
+            }
+            if (!precedes(child, i)) {
+                break;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    protected void swap(int i, int j) {
+        UserPostIterator iterator = _iterators[i];
+        _iterators[i] = _iterators[j];
+        _iterators[j] = iterator;
+        long key = _keys[i];
+        _keys[i] = _keys[j];
+        _keys[j] = key;
+        long sequence = _sequences[i];
+        _sequences[i] = _sequences[j];
+        _sequences[j] = sequence;
+    }
+}
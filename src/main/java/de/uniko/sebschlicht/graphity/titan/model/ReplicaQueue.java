@@ -0,0 +1,180 @@
+package de.uniko.sebschlicht.graphity.titan.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.Vertex;
+
+import de.uniko.sebschlicht.graphity.titan.EdgeType;
+import de.uniko.sebschlicht.graphity.titan.VertexPrefetcher;
+import de.uniko.sebschlicht.graphity.titan.Walker;
+
+/**
+ * Walk along the replica layer of a reader, loading the users followed in the
+ * order of their replicas.<br>
+ * The replicas ahead are loaded in windows: the GRAPHITY chain is walked for
+ * a number of replicas, then the users replicated, their newest status
+ * updates and the status update properties are loaded for the whole window
+ * with a single backend request each.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class ReplicaQueue {
+
+    protected final TransactionalGraph _graphDb;
+
+    /**
+     * number of replicas loaded at once
+     */
+    protected final int _windowSize;
+
+    /**
+     * vertex the GRAPHITY chain is continued at or <b>null</b> if the replica
+     * layer has been walked completely
+     */
+    protected Vertex _vChainEnd;
+
+    /**
+     * replicas loaded but not polled yet
+     */
+    protected final ArrayDeque<Vertex> _replicas;
+
+    /**
+     * users replicated, in the order of the replicas loaded
+     */
+    protected final ArrayDeque<Vertex> _users;
+
+    protected Vertex _vCrrReplica;
+
+    /**
+     * identifiers of the users to be skipped, <b>null</b> if none
+     */
+    protected Set<Object> _skippedUserIds;
+
+    /**
+     * Creates a walk along a replica layer.
+     * 
+     * @param graphDb
+     *            graph database or transaction the vertices have
+     *            been loaded from
+     * @param vStart
+     *            user vertex of the reader or replica vertex to continue
+     *            after, <b>null</b> if no replicas have to be loaded
+     * @param windowSize
+     *            number of replicas loaded at once
+     */
+    public ReplicaQueue(
+            TransactionalGraph graphDb,
+            Vertex vStart,
+            int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException(
+                    "window size must be positive");
+        }
+        _graphDb = graphDb;
+        _windowSize = windowSize;
+        _vChainEnd = vStart;
+        _replicas = new ArrayDeque<Vertex>(windowSize);
+        _users = new ArrayDeque<Vertex>(windowSize);
+    }
+
+    /**
+     * Steps on to the next replica.
+     * 
+     * @return user replicated by the next replica<br>
+     *         <b>null</b> - if the replica layer has been walked completely
+     */
+    public UserProxy poll() {
+        // all replicas of a window may have been skipped
+        while (_replicas.isEmpty() && _vChainEnd != null) {
+            loadWindow();
+        }
+        if (_replicas.isEmpty()) {
+            _vCrrReplica = null;
+            return null;
+        }
+        _vCrrReplica = _replicas.poll();
+        return new UserProxy(_users.poll());
+    }
+
+    /**
+     * Skips the replicas of a user, e.g. because the user's stream has been
+     * restored from a feed cursor.
+     * 
+     * @param vUser
+     *            user vertex
+     */
+    public void skipUser(Vertex vUser) {
+        if (_skippedUserIds == null) {
+            _skippedUserIds = new HashSet<Object>();
+        }
+        _skippedUserIds.add(vUser.getId());
+    }
+
+    /**
+     * @return replica of the user returned by the last call of {@link #poll()}
+     */
+    public Vertex getReplicaVertex() {
+        return _vCrrReplica;
+    }
+
+    protected void loadWindow() {
+        List<Vertex> replicas = new ArrayList<Vertex>(_windowSize);
+        while (_vChainEnd != null && replicas.size() < _windowSize) {
+            _vChainEnd = nextReplica(_vChainEnd);
+            if (_vChainEnd != null) {
+                replicas.add(_vChainEnd);
+            }
+        }
+        if (replicas.isEmpty()) {
+            return;
+        }
+
+        Map<Vertex, Vertex> users =
+                VertexPrefetcher.nextVertices(_graphDb, replicas,
+                        EdgeType.REPLICA.getLabel());
+        for (Vertex vReplica : replicas) {
+            Vertex vUser = users.get(vReplica);
+            if (vUser == null) {// concurrent graph modification
+                continue;
+            }
+            if (!accept(vReplica, vUser)) {
+                continue;
+            }
+            _replicas.add(vReplica);
+            _users.add(vUser);
+        }
+        VertexPrefetcher.loadNewestStatusUpdates(_graphDb, _users);
+    }
+
+    /**
+     * Walks along the GRAPHITY chain to the next replica.
+     * 
+     * @param vertex
+     *            reader or replica in the reader's replica layer
+     * @return next replica in the replica layer<br>
+     *         <b>null</b> - if the replica layer ends here
+     */
+    protected Vertex nextReplica(Vertex vertex) {
+        return Walker.nextVertex(vertex, EdgeType.GRAPHITY.getLabel());
+    }
+
+    /**
+     * @param vReplica
+     *            replica loaded
+     * @param vUser
+     *            user replicated
+     * @return true - if the user has to be polled<br>
+     *         false - if the replica has to be skipped
+     */
+    protected boolean accept(Vertex vReplica, Vertex vUser) {
+        return _skippedUserIds == null
+                || !_skippedUserIds.contains(vUser.getId());
+    }
+}
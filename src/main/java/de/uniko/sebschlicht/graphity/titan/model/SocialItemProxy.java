@@ -23,12 +23,27 @@ public abstract class SocialItemProxy {
     }
 
     /**
-     * @return cached item identifier
+     * Points the proxy to another vertex in order to reuse it.
+     * 
+     * @param vertex
+     *            vertex to be wrapped
+     */
+    protected void setVertex(Vertex vertex) {
+        this.vertex = vertex;
+        identifier = 0;
+    }
+
+    /**
+     * @return cached item identifier<br>
+     *         0 - if the item has no identifier, e.g. a bootstrapped status
+     *         update
      */
     public long getIdentifier() {
         if (identifier == 0) {
-            //TODO catch return value null
-            identifier = vertex.getProperty(PROP_IDENTIFIER);
+            Long value = vertex.getProperty(PROP_IDENTIFIER);
+            if (value != null) {
+                identifier = value;
+            }
         }
         return identifier;
     }
@@ -0,0 +1,66 @@
+package de.uniko.sebschlicht.graphity.titan.model;
+
+import java.util.List;
+
+import de.uniko.sebschlicht.socialnet.StatusUpdate;
+import de.uniko.sebschlicht.socialnet.StatusUpdateList;
+
+/**
+ * Page of a news feed along with the cursor to retrieve the next page.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class StatusUpdatePage {
+
+    /**
+     * status updates of this page, newest first
+     */
+    protected List<StatusUpdate> _statusUpdates;
+
+    /**
+     * cursor pointing behind this page
+     */
+    protected FeedCursor _cursor;
+
+    public StatusUpdatePage(
+            List<StatusUpdate> statusUpdates,
+            FeedCursor cursor) {
+        _statusUpdates = statusUpdates;
+        _cursor = cursor;
+    }
+
+    /**
+     * @return status updates of this page
+     */
+    public StatusUpdateList getStatusUpdates() {
+        StatusUpdateList statusUpdates = new StatusUpdateList();
+        for (StatusUpdate statusUpdate : _statusUpdates) {
+            statusUpdates.add(statusUpdate);
+        }
+        return statusUpdates;
+    }
+
+    /**
+     * @return status updates of this page, newest first
+     */
+    public List<StatusUpdate> getStatusUpdateItems() {
+        return _statusUpdates;
+    }
+
+    /**
+     * @return opaque cursor to retrieve the next page<br>
+     *         <b>null</b> - if the news feed has been read completely
+     */
+    public String getCursor() {
+        return (_cursor != null) ? _cursor.encode() : null;
+    }
+
+    /**
+     * @return true - if there are further status updates to retrieve<br>
+     *         false - if the news feed has been read completely
+     */
+    public boolean hasNextPage() {
+        return _cursor != null;
+    }
+}
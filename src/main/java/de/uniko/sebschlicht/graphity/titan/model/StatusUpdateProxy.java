@@ -52,17 +52,27 @@ public class StatusUpdateProxy extends SocialItemProxy {
         setMessage(message);
     }
 
+    @Override
+    protected void setVertex(Vertex vStatusUpdate) {
+        super.setVertex(vStatusUpdate);
+        published = 0;
+    }
+
     public void setAuthor(UserProxy pAuthor) {
         this.pAuthor = pAuthor;
     }
 
     /**
-     * @return cached timestamp of publishing
+     * @return cached timestamp of publishing<br>
+     *         0 - if the status update has not been written completely yet
      */
     public long getPublished() {
         if (published == 0) {
-            //TODO catch return value null
-            published = vertex.getProperty(PROP_PUBLISHED);
+            Long value = vertex.getProperty(PROP_PUBLISHED);
+            if (value == null) {// concurrent graph modification
+                return 0;
+            }
+            published = value;
         }
         return published;
     }
@@ -92,6 +102,15 @@ public class StatusUpdateProxy extends SocialItemProxy {
         vertex.setProperty(PROP_MESSAGE, message);
     }
 
+    /**
+     * @return news feed entry referring to this status update, without
+     *         loading the content message
+     */
+    public FeedEntry getFeedEntry() {
+        return new FeedEntry(getIdentifier(), pAuthor.getIdentifier(),
+                getPublished(), (long) vertex.getId());
+    }
+
     public StatusUpdate getStatusUpdate() {
         return new StatusUpdate(String.valueOf(pAuthor.getIdentifier()),
                 getPublished(), getMessage());
@@ -11,12 +11,79 @@ public class UserPostIterator implements PostIterator {
 
     protected StatusUpdateProxy pCrrStatusUpdate;
 
+    /**
+     * status update returned by the last call of <i>next</i>, reused when
+     * stepping on
+     */
+    protected StatusUpdateProxy _pLastStatusUpdate;
+
     protected Vertex _vReplica;
 
     public UserPostIterator(
             UserProxy pUser) {
+        reset(pUser);
+    }
+
+    /**
+     * Creates an iterator resuming a user's stream at a certain status
+     * update.
+     * 
+     * @param pUser
+     *            author of the stream
+     * @param vStatusUpdate
+     *            status update vertex to resume the stream at
+     */
+    public UserPostIterator(
+            UserProxy pUser,
+            Vertex vStatusUpdate) {
+        reset(pUser, vStatusUpdate);
+    }
+
+    /**
+     * Restarts the iterator at the newest status update of a user.
+     * 
+     * @param pUser
+     *            author of the stream
+     */
+    public void reset(UserProxy pUser) {
+        reset(pUser,
+                Walker.nextVertex(pUser.getVertex(),
+                        EdgeType.PUBLISHED.getLabel()));
+    }
+
+    /**
+     * Restarts the iterator at a certain status update of a user.
+     * 
+     * @param pUser
+     *            author of the stream
+     * @param vStatusUpdate
+     *            status update vertex to start the stream at or <b>null</b>
+     *            if the stream is empty
+     */
+    public void reset(UserProxy pUser, Vertex vStatusUpdate) {
         this.pUser = pUser;
-        pCrrStatusUpdate = getLastUserPost(pUser);
+        _vReplica = null;
+        if (pCrrStatusUpdate == null) {
+            pCrrStatusUpdate = _pLastStatusUpdate;
+        }
+        _pLastStatusUpdate = null;
+        pCrrStatusUpdate = wrap(vStatusUpdate, pCrrStatusUpdate);
+    }
+
+    /**
+     * Releases all references to graph elements.
+     */
+    public void release() {
+        pUser = null;
+        _vReplica = null;
+        if (pCrrStatusUpdate != null) {
+            pCrrStatusUpdate.setVertex(null);
+            pCrrStatusUpdate.setAuthor(null);
+        }
+        if (_pLastStatusUpdate != null) {
+            _pLastStatusUpdate.setVertex(null);
+            _pLastStatusUpdate.setAuthor(null);
+        }
     }
 
     public UserProxy getUser() {
@@ -31,17 +98,61 @@ public class UserPostIterator implements PostIterator {
         return _vReplica;
     }
 
-    protected static StatusUpdateProxy getLastUserPost(UserProxy pUser) {
-        Vertex vLastPost =
-                Walker.nextVertex(pUser.getVertex(),
-                        EdgeType.PUBLISHED.getLabel());
-        if (vLastPost != null) {
-            StatusUpdateProxy pStatusUpdate = new StatusUpdateProxy(vLastPost);
-            pStatusUpdate.setAuthor(pUser);
-            return pStatusUpdate;
-        } else {
+    /**
+     * Wraps a status update vertex of the stream.
+     * 
+     * @param vStatusUpdate
+     *            status update vertex
+     * @param pStatusUpdate
+     *            proxy that may be reused
+     * @return proxy wrapping the status update vertex<br>
+     *         <b>null</b> - if the vertex is <b>null</b>
+     */
+    protected StatusUpdateProxy wrap(
+            Vertex vStatusUpdate,
+            StatusUpdateProxy pStatusUpdate) {
+        if (vStatusUpdate == null) {
             return null;
         }
+        if (pStatusUpdate == null) {
+            pStatusUpdate = new StatusUpdateProxy(vStatusUpdate);
+        } else {
+            pStatusUpdate.setVertex(vStatusUpdate);
+        }
+        pStatusUpdate.setAuthor(pUser);
+        return pStatusUpdate;
+    }
+
+    /**
+     * @return status update that will be returned by the next call of
+     *         <i>next</i> or <b>null</b> if the stream has been exhausted
+     */
+    public StatusUpdateProxy getCrrStatusUpdate() {
+        return pCrrStatusUpdate;
+    }
+
+    /**
+     * Skips all status updates published after a certain point in time.
+     * 
+     * @param timestamp
+     *            publishing timestamp of the newest status update to keep
+     */
+    public void skipPublishedAfter(long timestamp) {
+        while (hasNext() && pCrrStatusUpdate.getPublished() > timestamp) {
+            next();
+        }
+    }
+
+    /**
+     * Skips all status updates published at or after a certain point in time.
+     * 
+     * @param timestamp
+     *            publishing timestamp all status updates kept are older than
+     */
+    public void skipPublishedSince(long timestamp) {
+        while (hasNext() && pCrrStatusUpdate.getPublished() >= timestamp) {
+            next();
+        }
     }
 
     @Override
@@ -49,6 +160,12 @@ public class UserPostIterator implements PostIterator {
         return (pCrrStatusUpdate != null);
     }
 
+    /**
+     * Steps on to the next status update of the stream.<br>
+     * The proxy returned is reused and thus only valid until the next call.
+     * 
+     * @return status update that was the current one
+     */
     @Override
     public StatusUpdateProxy next() {
         StatusUpdateProxy pOldStatusUpdate = pCrrStatusUpdate;
@@ -56,12 +173,8 @@ public class UserPostIterator implements PostIterator {
             Vertex vNextStatusUpdate =
                     Walker.nextVertex(pOldStatusUpdate.getVertex(),
                             EdgeType.PUBLISHED.getLabel());
-            if (vNextStatusUpdate != null) {
-                pCrrStatusUpdate = new StatusUpdateProxy(vNextStatusUpdate);
-                pCrrStatusUpdate.setAuthor(pUser);
-            } else {
-                pCrrStatusUpdate = null;
-            }
+            pCrrStatusUpdate = wrap(vNextStatusUpdate, _pLastStatusUpdate);
+            _pLastStatusUpdate = pOldStatusUpdate;
         }
         return pOldStatusUpdate;
     }
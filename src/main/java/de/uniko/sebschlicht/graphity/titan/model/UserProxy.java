@@ -13,6 +13,21 @@ public class UserProxy extends SocialItemProxy {
      */
     public static final String PROP_LAST_STREAM_UDPATE = "last_post";
 
+    /**
+     * number of followers
+     */
+    public static final String PROP_NUM_FOLLOWERS = "followers";
+
+    /**
+     * flag whether the user's status updates are pulled by the followers
+     */
+    public static final String PROP_PULLED = "pulled";
+
+    /**
+     * flag whether all followers of a pulled user have been converted to pull
+     */
+    public static final String PROP_CONVERTED = "converted";
+
     /**
      * (optional) last recent status update posted by this user
      */
@@ -42,6 +57,72 @@ public class UserProxy extends SocialItemProxy {
         return _lastPostTimestamp;
     }
 
+    /**
+     * @return number of followers, counted via the user's replicas if not
+     *         stored yet, e.g. for users bootstrapped
+     */
+    public long getNumFollowers() {
+        Long value = vertex.getProperty(PROP_NUM_FOLLOWERS);
+        if (value == null) {
+            value =
+                    vertex.query().direction(Direction.IN)
+                            .labels(EdgeType.REPLICA.getLabel()).count();
+        }
+        return value;
+    }
+
+    /**
+     * Stores the number of followers in vertex.
+     * 
+     * @param numFollowers
+     *            number of followers
+     */
+    public void setNumFollowers(long numFollowers) {
+        vertex.setProperty(PROP_NUM_FOLLOWERS, numFollowers);
+    }
+
+    /**
+     * @return true - if the user's status updates are pulled by the followers
+     *         <br>
+     *         false - if they are pushed into the followers' ego networks
+     */
+    public boolean isPulled() {
+        Boolean value = vertex.getProperty(PROP_PULLED);
+        return (value != null) && value;
+    }
+
+    /**
+     * Stores the flag whether the user's status updates are pulled by the
+     * followers in vertex.
+     * 
+     * @param pulled
+     *            flag whether the user's status updates are pulled
+     */
+    public void setPulled(boolean pulled) {
+        vertex.setProperty(PROP_PULLED, pulled);
+    }
+
+    /**
+     * @return true - if all followers of the user pull its status updates<br>
+     *         false - if some followers may still have the user's replica in
+     *         their ego networks
+     */
+    public boolean isConverted() {
+        Boolean value = vertex.getProperty(PROP_CONVERTED);
+        return (value != null) && value;
+    }
+
+    /**
+     * Stores the flag whether all followers of the user have been converted to
+     * pull in vertex.
+     * 
+     * @param converted
+     *            flag whether all followers pull the user's status updates
+     */
+    public void setConverted(boolean converted) {
+        vertex.setProperty(PROP_CONVERTED, converted);
+    }
+
     public void addStatusUpdate(StatusUpdateProxy statusUpdate) {
         statusUpdate.setAuthor(this);
         /**
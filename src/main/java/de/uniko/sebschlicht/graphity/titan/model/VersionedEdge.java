@@ -32,11 +32,13 @@ public class VersionedEdge {
     }
 
     /**
-     * @return (cached) time stamp of edge creation
+     * @return (cached) time stamp of edge creation<br>
+     *         0 - if the edge is not versioned
      */
     public long getTimestamp() {
         if (_timestamp == -1) {
-            _timestamp = _edge.getProperty(PROP_TIMESTAMP);
+            Long value = _edge.getProperty(PROP_TIMESTAMP);
+            _timestamp = (value == null) ? 0L : value;
         }
         return _timestamp;
     }
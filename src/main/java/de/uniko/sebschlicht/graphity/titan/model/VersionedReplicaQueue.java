@@ -0,0 +1,80 @@
+package de.uniko.sebschlicht.graphity.titan.model;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.Vertex;
+
+import de.uniko.sebschlicht.graphity.titan.EdgeType;
+import de.uniko.sebschlicht.graphity.titan.Walker;
+
+/**
+ * Walk along a replica layer that is written without locks.<br>
+ * Vertices may have multiple GRAPHITY edges, the most recent edge is followed.
+ * A user is polled once, even if the reader has multiple replicas of the user.
+ * Replicas that are not linked to a user are skipped and a cycle ends the
+ * walk.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class VersionedReplicaQueue extends ReplicaQueue {
+
+    /**
+     * identifiers of the replicas walked along
+     */
+    protected final Set<Object> _replicaIds;
+
+    /**
+     * identifiers of the users polled or to be polled
+     */
+    protected final Set<Object> _userIds;
+
+    /**
+     * Creates a walk along a replica layer.
+     * 
+     * @param graphDb
+     *            graph database or transaction the vertices have
+     *            been loaded from
+     * @param vStart
+     *            user vertex of the reader or replica vertex to continue
+     *            after, <b>null</b> if no replicas have to be loaded
+     * @param windowSize
+     *            number of replicas loaded at once
+     */
+    public VersionedReplicaQueue(
+            TransactionalGraph graphDb,
+            Vertex vStart,
+            int windowSize) {
+        super(graphDb, vStart, windowSize);
+        _replicaIds = new HashSet<Object>();
+        _userIds = new HashSet<Object>();
+        if (vStart != null) {
+            _replicaIds.add(vStart.getId());
+        }
+    }
+
+    @Override
+    public void skipUser(Vertex vUser) {
+        _userIds.add(vUser.getId());
+    }
+
+    @Override
+    protected Vertex nextReplica(Vertex vertex) {
+        Vertex vNext =
+                Walker.nextMostRecentVertex(vertex,
+                        EdgeType.GRAPHITY.getLabel());
+        if (vNext != null && !_replicaIds.add(vNext.getId())) {
+            // cycle
+            return null;
+        }
+        return vNext;
+    }
+
+    @Override
+    protected boolean accept(Vertex vReplica, Vertex vUser) {
+        // skip duplicate replicas
+        return _userIds.add(vUser.getId());
+    }
+}
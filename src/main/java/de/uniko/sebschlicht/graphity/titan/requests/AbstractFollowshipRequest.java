@@ -0,0 +1,41 @@
+package de.uniko.sebschlicht.graphity.titan.requests;
+
+import de.uniko.sebschlicht.socialnet.requests.RequestType;
+
+/**
+ * request changing the followship between two users
+ * 
+ * @author sebschlicht
+ * 
+ */
+public abstract class AbstractFollowshipRequest extends AbstractServiceRequest {
+
+    protected final long _idSubscriber;
+
+    protected final long _idFollowed;
+
+    protected AbstractFollowshipRequest(
+            RequestType type,
+            long idSubscriber,
+            long idFollowed) {
+        super(type);
+        _idSubscriber = idSubscriber;
+        _idFollowed = idFollowed;
+    }
+
+    @Override
+    public long getSubscriberId() {
+        return _idSubscriber;
+    }
+
+    public long getFollowedId() {
+        return _idFollowed;
+    }
+
+    @Override
+    public String[] toStringArray() {
+        return new String[] {
+            String.valueOf(_idSubscriber), String.valueOf(_idFollowed)
+        };
+    }
+}
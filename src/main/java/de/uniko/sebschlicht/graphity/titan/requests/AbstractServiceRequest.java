@@ -1,5 +1,6 @@
 package de.uniko.sebschlicht.graphity.titan.requests;
 
+import de.uniko.sebschlicht.graphity.titan.TitanGraphity;
 import de.uniko.sebschlicht.socialnet.requests.Request;
 import de.uniko.sebschlicht.socialnet.requests.RequestType;
 
@@ -21,4 +22,21 @@ public abstract class AbstractServiceRequest extends Request {
     public long getTimestamp() {
         return _timestamp;
     }
+
+    /**
+     * @return identifier of the user issuing the request, whose replica layer
+     *         may be modified
+     */
+    abstract public long getSubscriberId();
+
+    /**
+     * Applies the request to the graph and commits the changes.
+     * 
+     * @param graphity
+     *            Graphity instance to apply the request to
+     * @return request result
+     * @throws Exception
+     *             if the request is invalid
+     */
+    abstract protected Object execute(TitanGraphity graphity) throws Exception;
 }
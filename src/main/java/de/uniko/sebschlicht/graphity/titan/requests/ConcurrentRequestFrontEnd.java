@@ -0,0 +1,341 @@
+package de.uniko.sebschlicht.graphity.titan.requests;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.thinkaurelius.titan.core.TitanTransaction;
+
+import de.metalcon.exceptions.ServiceOverloadedException;
+import de.uniko.sebschlicht.graphity.titan.TitanGraphity;
+import de.uniko.sebschlicht.socialnet.StatusUpdateList;
+
+/**
+ * Front end executing concurrent service requests on a single graph
+ * instance.<br>
+ * Each request runs in its own task with an explicit Titan transaction that
+ * is bound to the task instead of the thread-bound transaction of the graph
+ * database. Thus tasks do not depend on the threads executing them and may be
+ * run by any executor, e.g. one creating a lightweight thread per task.<br>
+ * The number of requests in flight is limited by admission control rather
+ * than by the number of threads: A request has to obtain a permit before it
+ * is submitted. If no permit becomes available within the admission timeout,
+ * the request is rejected with a {@link ServiceOverloadedException}.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class ConcurrentRequestFrontEnd {
+
+    protected final TitanGraphity _graphity;
+
+    protected final ExecutorService _executor;
+
+    /**
+     * permits of the requests that may be in flight
+     */
+    protected final Semaphore _permits;
+
+    protected final int _maxInFlight;
+
+    /**
+     * time in nanoseconds a request waits for a permit
+     */
+    protected final long _admissionTimeout;
+
+    /**
+     * number of requests admitted
+     */
+    protected final AtomicLong _numAdmitted;
+
+    /**
+     * number of requests rejected due to the lack of permits
+     */
+    protected final AtomicLong _numRejected;
+
+    /**
+     * number of requests committed or read successfully
+     */
+    protected final AtomicLong _numCompleted;
+
+    /**
+     * number of requests that failed
+     */
+    protected final AtomicLong _numFailed;
+
+    /**
+     * Creates a front end executing each request in a thread of a cached
+     * thread pool. Threads are created on demand, hence the concurrency is
+     * bounded by the number of permits only.
+     * 
+     * @param graphity
+     *            Graphity instance to apply the requests to
+     * @param maxInFlight
+     *            maximum number of requests executed concurrently
+     * @param admissionTimeout
+     *            maximum time a request waits for a permit, 0 to reject
+     *            requests immediately if all permits have been taken
+     * @param unit
+     *            time unit of the admission timeout
+     */
+    public ConcurrentRequestFrontEnd(
+            TitanGraphity graphity,
+            int maxInFlight,
+            long admissionTimeout,
+            TimeUnit unit) {
+        this(graphity,
+                Executors.newCachedThreadPool(new RequestThreadFactory()),
+                maxInFlight, admissionTimeout, unit);
+    }
+
+    /**
+     * Creates a front end executing the requests via an executor.
+     * 
+     * @param graphity
+     *            Graphity instance to apply the requests to
+     * @param executor
+     *            executor running the request tasks, must not limit the
+     *            number of tasks running concurrently below the number of
+     *            permits
+     * @param maxInFlight
+     *            maximum number of requests executed concurrently
+     * @param admissionTimeout
+     *            maximum time a request waits for a permit, 0 to reject
+     *            requests immediately if all permits have been taken
+     * @param unit
+     *            time unit of the admission timeout
+     */
+    public ConcurrentRequestFrontEnd(
+            TitanGraphity graphity,
+            ExecutorService executor,
+            int maxInFlight,
+            long admissionTimeout,
+            TimeUnit unit) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException(
+                    "number of requests in flight must be positive");
+        }
+        _graphity = graphity;
+        _executor = executor;
+        _maxInFlight = maxInFlight;
+        _permits = new Semaphore(maxInFlight);
+        _admissionTimeout = unit.toNanos(admissionTimeout);
+        _numAdmitted = new AtomicLong(0);
+        _numRejected = new AtomicLong(0);
+        _numCompleted = new AtomicLong(0);
+        _numFailed = new AtomicLong(0);
+    }
+
+    /**
+     * Submits a followship creation.
+     * 
+     * @param idFollowing
+     *            identifier of the user that wants to follow another user
+     * @param idFollowed
+     *            identifier of the user that will be followed
+     * @return future of the creation result
+     * @throws ServiceOverloadedException
+     *             if the request has not been admitted in time
+     */
+    public Future<Boolean> addFollowship(long idFollowing, long idFollowed)
+            throws ServiceOverloadedException {
+        return submit(new ServiceRequestFollow(idFollowing, idFollowed));
+    }
+
+    /**
+     * Submits a followship removal.
+     * 
+     * @param idFollowing
+     *            identifier of the user that wants to unfollow a user
+     * @param idFollowed
+     *            identifier of the user that will be unfollowed
+     * @return future of the removal result
+     * @throws ServiceOverloadedException
+     *             if the request has not been admitted in time
+     */
+    public Future<Boolean> removeFollowship(long idFollowing, long idFollowed)
+            throws ServiceOverloadedException {
+        return submit(new ServiceRequestUnfollow(idFollowing, idFollowed));
+    }
+
+    /**
+     * Submits a status update.
+     * 
+     * @param idAuthor
+     *            identifier of the author
+     * @param message
+     *            status update content
+     * @return future of the status update identifier
+     * @throws ServiceOverloadedException
+     *             if the request has not been admitted in time
+     */
+    public Future<Long> addStatusUpdate(long idAuthor, String message)
+            throws ServiceOverloadedException {
+        return submit(new ServiceRequestPost(idAuthor, message));
+    }
+
+    /**
+     * Submits a news feed retrieval.
+     * 
+     * @param idReader
+     *            identifier of the reader
+     * @param numStatusUpdates
+     *            maximum number of status updates to be retrieved
+     * @return future of the news feed
+     * @throws ServiceOverloadedException
+     *             if the request has not been admitted in time
+     */
+    public Future<StatusUpdateList> readStatusUpdates(
+            long idReader,
+            int numStatusUpdates) throws ServiceOverloadedException {
+        return submit(new ServiceRequestFeed(idReader, numStatusUpdates));
+    }
+
+    /**
+     * Admits a service request and submits it for execution in its own
+     * transaction.
+     * 
+     * @param request
+     *            service request, its time stamp is overwritten
+     * @return future of the request result
+     * @throws ServiceOverloadedException
+     *             if the request has not been admitted in time
+     */
+    public <V> Future<V> submit(final AbstractServiceRequest request)
+            throws ServiceOverloadedException {
+        boolean admitted;
+        try {
+            admitted =
+                    _permits.tryAcquire(_admissionTimeout,
+                            TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        if (!admitted) {
+            _numRejected.incrementAndGet();
+            throw new ServiceOverloadedException("too many requests in flight ("
+                    + _maxInFlight + " requests)");
+        }
+        request._timestamp = System.currentTimeMillis();
+        try {
+            Future<V> future = _executor.submit(new Callable<V>() {
+
+                @Override
+                public V call() throws Exception {
+                    try {
+                        return execute(request);
+                    } finally {
+                        _permits.release();
+                    }
+                }
+            });
+            _numAdmitted.incrementAndGet();
+            return future;
+        } catch (RuntimeException e) {
+            // executor has been shut down
+            _permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Executes a request in a new transaction bound to the current task.
+     * 
+     * @param request
+     *            service request
+     * @return request result
+     * @throws Exception
+     *             if the request is invalid or failed to commit
+     */
+    @SuppressWarnings("unchecked")
+    protected <V> V execute(AbstractServiceRequest request) throws Exception {
+        TitanTransaction tx = _graphity.getGraph().newTransaction();
+        _graphity.bindTransaction(tx);
+        try {
+            V result = (V) request.execute(_graphity);
+            _numCompleted.incrementAndGet();
+            return result;
+        } catch (Exception e) {
+            if (tx.isOpen()) {
+                // concurrent graph modification or invalid request
+                _graphity.rollback();
+            } else {
+                // failed commit, the changes staged must not leak into the
+                // next request of this thread
+                _graphity.discardDeferred();
+            }
+            _numFailed.incrementAndGet();
+            throw e;
+        } finally {
+            _graphity.unbindTransaction();
+            if (tx.isOpen()) {
+                tx.rollback();
+            }
+        }
+    }
+
+    /**
+     * Stops admitting requests and waits for the requests in flight.
+     * 
+     * @param timeout
+     *            maximum time to wait
+     * @param unit
+     *            time unit of the timeout
+     * @return true - if all requests have been executed<br>
+     *         false - if the timeout elapsed before
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public boolean shutdown(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        _executor.shutdown();
+        return _executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * @return number of requests admitted but not completed yet
+     */
+    public int getNumInFlight() {
+        return _maxInFlight - _permits.availablePermits();
+    }
+
+    public long getNumAdmitted() {
+        return _numAdmitted.get();
+    }
+
+    public long getNumRejected() {
+        return _numRejected.get();
+    }
+
+    public long getNumCompleted() {
+        return _numCompleted.get();
+    }
+
+    public long getNumFailed() {
+        return _numFailed.get();
+    }
+
+    /**
+     * factory of daemon threads executing requests
+     */
+    protected static class RequestThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger _numThreads = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread =
+                    new Thread(task, "request-"
+                            + _numThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,646 @@
+package de.uniko.sebschlicht.graphity.titan.requests;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.metalcon.exceptions.ServiceOverloadedException;
+import de.uniko.sebschlicht.graphity.titan.TitanGraphity;
+import de.uniko.sebschlicht.socialnet.StatusUpdateList;
+
+/**
+ * Execution engine for service requests.<br>
+ * A request is stamped with the time it has been accepted and is queued at
+ * the worker responsible for its subscriber, i.e. the following user or the
+ * author. Each worker executes its requests one after another in its own
+ * transaction, hence followship requests of the same subscriber never
+ * conflict with each other.<br>
+ * However, a status update rewrites the replica layers of all followers of
+ * its author on the author's worker. It may conflict with followship requests
+ * of these followers executed by other workers at the same time, which then
+ * fail like concurrent requests without this executor.<br>
+ * Followship requests are held back for a coalescing window after they have
+ * been accepted, other requests are executed as soon as possible, even if
+ * followship requests accepted before are still held back. If a followship
+ * request is accepted while another request for the same pair of users is
+ * queued, the queued request is superseded and never touches the graph, e.g.
+ * a follow followed by an unfollow of the same user results in a single
+ * unfollow. Superseded requests complete along with the request superseding
+ * them, with the result they would have had if executed one after
+ * another.<br>
+ * The number of requests queued per worker is limited. Requests exceeding
+ * the limit are rejected with a {@link ServiceOverloadedException}.
+ * 
+ * @author sebschlicht
+ * 
+ */
+public class ServiceRequestExecutor {
+
+    /**
+     * interval in milliseconds idle workers check for a shutdown
+     */
+    protected static final long IDLE_INTERVAL = 100;
+
+    protected final TitanGraphity _graphity;
+
+    /**
+     * time in nanoseconds a followship request is held back after it has been
+     * accepted
+     */
+    protected final long _window;
+
+    /**
+     * maximum number of requests queued per worker
+     */
+    protected final int _queueCapacity;
+
+    protected final Worker[] _workers;
+
+    protected volatile boolean _shutdown;
+
+    /**
+     * number of requests accepted
+     */
+    protected final AtomicLong _numAccepted;
+
+    /**
+     * number of requests rejected due to a full queue
+     */
+    protected final AtomicLong _numRejected;
+
+    /**
+     * number of requests superseded by a later request
+     */
+    protected final AtomicLong _numCoalesced;
+
+    /**
+     * number of requests executed successfully
+     */
+    protected final AtomicLong _numExecuted;
+
+    /**
+     * number of requests that failed
+     */
+    protected final AtomicLong _numFailed;
+
+    /**
+     * Creates and starts a request execution engine.
+     * 
+     * @param graphity
+     *            Graphity instance to apply the requests to
+     * @param numWorkers
+     *            number of worker threads, each executing the requests of
+     *            its subscribers
+     * @param window
+     *            time a followship request is held back to be coalesced with
+     *            later requests, 0 to coalesce only requests waiting anyway
+     * @param unit
+     *            time unit of the window
+     * @param queueCapacity
+     *            maximum number of requests queued per worker
+     */
+    public ServiceRequestExecutor(
+            TitanGraphity graphity,
+            int numWorkers,
+            long window,
+            TimeUnit unit,
+            int queueCapacity) {
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException(
+                    "number of workers must be positive");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException(
+                    "queue capacity must be positive");
+        }
+        _graphity = graphity;
+        _window = unit.toNanos(window);
+        _queueCapacity = queueCapacity;
+        _numAccepted = new AtomicLong(0);
+        _numRejected = new AtomicLong(0);
+        _numCoalesced = new AtomicLong(0);
+        _numExecuted = new AtomicLong(0);
+        _numFailed = new AtomicLong(0);
+        _workers = new Worker[numWorkers];
+        for (int i = 0; i < numWorkers; ++i) {
+            _workers[i] = new Worker();
+            Thread thread =
+                    new Thread(_workers[i], "service-request-" + (i + 1));
+            thread.setDaemon(true);
+            _workers[i]._thread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Accepts a followship creation.
+     * 
+     * @param idFollowing
+     *            identifier of the user that wants to follow another user
+     * @param idFollowed
+     *            identifier of the user that will be followed
+     * @return future of the creation result, completes when the followship
+     *         has been committed or the request has been superseded
+     * @throws ServiceOverloadedException
+     *             if the queue of the subscriber's worker is full
+     */
+    public Future<Boolean> addFollowship(long idFollowing, long idFollowed)
+            throws ServiceOverloadedException {
+        return submit(new ServiceRequestFollow(idFollowing, idFollowed));
+    }
+
+    /**
+     * Accepts a followship removal.
+     * 
+     * @param idFollowing
+     *            identifier of the user that wants to unfollow a user
+     * @param idFollowed
+     *            identifier of the user that will be unfollowed
+     * @return future of the removal result, completes when the removal has
+     *         been committed or the request has been superseded
+     * @throws ServiceOverloadedException
+     *             if the queue of the subscriber's worker is full
+     */
+    public Future<Boolean> removeFollowship(long idFollowing, long idFollowed)
+            throws ServiceOverloadedException {
+        return submit(new ServiceRequestUnfollow(idFollowing, idFollowed));
+    }
+
+    /**
+     * Accepts a status update.
+     * 
+     * @param idAuthor
+     *            identifier of the author
+     * @param message
+     *            status update content
+     * @return future of the status update identifier, completes when the
+     *         status update has been committed
+     * @throws ServiceOverloadedException
+     *             if the queue of the author's worker is full
+     */
+    public Future<Long> addStatusUpdate(long idAuthor, String message)
+            throws ServiceOverloadedException {
+        return submit(new ServiceRequestPost(idAuthor, message));
+    }
+
+    /**
+     * Accepts a news feed retrieval.
+     * 
+     * @param idReader
+     *            identifier of the reader
+     * @param numStatusUpdates
+     *            maximum number of status updates to be retrieved
+     * @return future of the news feed
+     * @throws ServiceOverloadedException
+     *             if the queue of the reader's worker is full
+     */
+    public Future<StatusUpdateList> readStatusUpdates(
+            long idReader,
+            int numStatusUpdates) throws ServiceOverloadedException {
+        return submit(new ServiceRequestFeed(idReader, numStatusUpdates));
+    }
+
+    /**
+     * Accepts a service request and queues it at the worker responsible for
+     * its subscriber.
+     * 
+     * @param request
+     *            service request, its time stamp is overwritten
+     * @return future of the request result
+     * @throws ServiceOverloadedException
+     *             if the queue of the subscriber's worker is full
+     */
+    public <V> Future<V> submit(AbstractServiceRequest request)
+            throws ServiceOverloadedException {
+        if (_shutdown) {
+            throw new IllegalStateException("executor has been shut down");
+        }
+        PendingRequest<V> pending = new PendingRequest<V>(request);
+        getWorker(request.getSubscriberId()).enqueue(pending);
+        _numAccepted.incrementAndGet();
+        return pending;
+    }
+
+    /**
+     * Stops accepting requests and waits for the workers to execute the
+     * requests queued. Requests are not held back any longer.
+     * 
+     * @param timeout
+     *            maximum time to wait per worker
+     * @param unit
+     *            time unit of the timeout
+     * @return true - if all workers have terminated<br>
+     *         false - if the timeout elapsed before
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public boolean shutdown(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        _shutdown = true;
+        for (Worker worker : _workers) {
+            synchronized (worker) {
+                worker.notifyAll();
+            }
+        }
+        boolean terminated = true;
+        for (Worker worker : _workers) {
+            worker._thread.join(unit.toMillis(timeout));
+            terminated &= !worker._thread.isAlive();
+        }
+        return terminated;
+    }
+
+    /**
+     * @param idSubscriber
+     *            identifier of the subscriber
+     * @return worker responsible for the subscriber
+     */
+    protected Worker getWorker(long idSubscriber) {
+        // spreads sequential user identifiers across the workers
+        long hash = idSubscriber * 0x9E3779B97F4A7C15L;
+        return _workers[(int) ((hash >>> 33) % _workers.length)];
+    }
+
+    /**
+     * @return number of requests waiting for a worker
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Worker worker : _workers) {
+            synchronized (worker) {
+                depth += worker._queue.size();
+            }
+        }
+        return depth;
+    }
+
+    public long getNumAccepted() {
+        return _numAccepted.get();
+    }
+
+    public long getNumRejected() {
+        return _numRejected.get();
+    }
+
+    public long getNumCoalesced() {
+        return _numCoalesced.get();
+    }
+
+    public long getNumExecuted() {
+        return _numExecuted.get();
+    }
+
+    public long getNumFailed() {
+        return _numFailed.get();
+    }
+
+    /**
+     * worker executing the requests of a partition of the subscribers
+     */
+    protected class Worker implements Runnable {
+
+        protected final ArrayDeque<PendingRequest<?>> _queue;
+
+        /**
+         * followship requests queued per pair of users
+         */
+        protected final Map<Followship, PendingRequest<?>> _followships;
+
+        protected Thread _thread;
+
+        public Worker() {
+            _queue = new ArrayDeque<PendingRequest<?>>();
+            _followships = new HashMap<Followship, PendingRequest<?>>();
+        }
+
+        /**
+         * Stamps and queues a request, superseding a queued request for the
+         * same followship. A request superseding another one takes its place
+         * in the queue and is released when the window of the request
+         * superseded elapses.
+         * 
+         * @param pending
+         *            request to be queued
+         * @throws ServiceOverloadedException
+         *             if the queue is full
+         */
+        protected synchronized void enqueue(PendingRequest<?> pending)
+                throws ServiceOverloadedException {
+            AbstractServiceRequest request = pending._request;
+            PendingRequest<?> superseded = null;
+            if (request instanceof AbstractFollowshipRequest) {
+                AbstractFollowshipRequest followshipRequest =
+                        (AbstractFollowshipRequest) request;
+                pending._followship =
+                        new Followship(followshipRequest.getSubscriberId(),
+                                followshipRequest.getFollowedId());
+                superseded = _followships.get(pending._followship);
+            }
+            if (superseded == null && _queue.size() >= _queueCapacity) {
+                _numRejected.incrementAndGet();
+                throw new ServiceOverloadedException(
+                        "request queue is full (" + _queueCapacity
+                                + " requests)");
+            }
+            request._timestamp = System.currentTimeMillis();
+            if (superseded != null) {
+                /*
+                 * Take the place of the request superseded, otherwise a pair
+                 * of users toggling within the window would be held back
+                 * forever.
+                 */
+                pending._accepted = superseded._accepted;
+                for (int i = _queue.size(); i > 0; --i) {
+                    PendingRequest<?> queued = _queue.poll();
+                    _queue.add((queued == superseded) ? pending : queued);
+                }
+                _numCoalesced.incrementAndGet();
+                List<PendingRequest<?>> chain = superseded._superseded;
+                if (chain == null) {
+                    chain = new ArrayList<PendingRequest<?>>(2);
+                }
+                chain.add(superseded);
+                superseded._superseded = null;
+                pending._superseded = chain;
+            } else {
+                pending._accepted = System.nanoTime();
+                _queue.add(pending);
+            }
+            if (pending._followship != null) {
+                _followships.put(pending._followship, pending);
+            }
+            notifyAll();
+        }
+
+        /**
+         * Takes the first request that is not held back, i.e. any request
+         * other than a followship request or a followship request whose
+         * coalescing window has elapsed.
+         * 
+         * @return next request to be executed<br>
+         *         <b>null</b> - if the executor has been shut down and all
+         *         requests have been executed
+         * @throws InterruptedException
+         *             if interrupted while waiting
+         */
+        protected synchronized PendingRequest<?> take()
+                throws InterruptedException {
+            while (true) {
+                if (_queue.isEmpty()) {
+                    if (_shutdown) {
+                        return null;
+                    }
+                    wait(IDLE_INTERVAL);
+                    continue;
+                }
+                Iterator<PendingRequest<?>> iQueue = _queue.iterator();
+                while (iQueue.hasNext()) {
+                    PendingRequest<?> pending = iQueue.next();
+                    if (pending._followship != null && !_shutdown
+                            && getRemainingWindow(pending) > 0) {
+                        continue;
+                    }
+                    iQueue.remove();
+                    if (pending._followship != null) {
+                        _followships.remove(pending._followship);
+                    }
+                    return pending;
+                }
+                /*
+                 * All requests queued are followship requests held back. As
+                 * the window is the same for all of them, the first request
+                 * queued is the first one to be released.
+                 */
+                long remaining = getRemainingWindow(_queue.peek());
+                if (remaining > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            }
+        }
+
+        /**
+         * @param pending
+         *            followship request queued
+         * @return time in nanoseconds the request is held back further
+         */
+        protected long getRemainingWindow(PendingRequest<?> pending) {
+            return pending._accepted + _window - System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            try {
+                PendingRequest<?> pending;
+                while ((pending = take()) != null) {
+                    execute(pending);
+                }
+            } catch (InterruptedException e) {
+                synchronized (this) {
+                    for (PendingRequest<?> pending : _queue) {
+                        pending.fail(e);
+                    }
+                    _queue.clear();
+                    _followships.clear();
+                }
+            }
+        }
+
+        protected void execute(PendingRequest<?> pending) {
+            try {
+                Object result = pending._request.execute(_graphity);
+                _numExecuted.incrementAndGet();
+                if (pending._superseded != null) {
+                    completeCoalesced(pending, (Boolean) result);
+                } else {
+                    pending.complete(result);
+                }
+            } catch (Exception e) {
+                // concurrent graph modification or invalid request
+                _graphity.rollback();
+                _numFailed.incrementAndGet();
+                if (pending._superseded != null) {
+                    for (PendingRequest<?> superseded : pending._superseded) {
+                        superseded.fail(e);
+                    }
+                }
+                pending.fail(e);
+            }
+        }
+
+        /**
+         * Completes a followship request executed and the requests it
+         * superseded with the results they would have had if executed one
+         * after another.
+         * 
+         * @param pending
+         *            followship request executed
+         * @param result
+         *            result of the request executed
+         */
+        protected void completeCoalesced(
+                PendingRequest<?> pending,
+                boolean result) {
+            // state of the followship before the first request
+            boolean following = isFollow(pending) ? !result : result;
+            for (PendingRequest<?> superseded : pending._superseded) {
+                following = completeInSequence(superseded, following);
+            }
+            completeInSequence(pending, following);
+        }
+
+        /**
+         * Completes a followship request as if it was executed on a
+         * followship state.
+         * 
+         * @param pending
+         *            followship request
+         * @param following
+         *            whether the subscriber is following the user before the
+         *            request
+         * @return whether the subscriber is following the user after the
+         *         request
+         */
+        protected boolean completeInSequence(
+                PendingRequest<?> pending,
+                boolean following) {
+            if (isFollow(pending)) {
+                pending.complete(!following);
+                return true;
+            }
+            pending.complete(following);
+            return false;
+        }
+
+        protected boolean isFollow(PendingRequest<?> pending) {
+            return pending._request instanceof ServiceRequestFollow;
+        }
+    }
+
+    /**
+     * pair of users a followship request refers to
+     */
+    protected static class Followship {
+
+        protected final long _idSubscriber;
+
+        protected final long _idFollowed;
+
+        public Followship(
+                long idSubscriber,
+                long idFollowed) {
+            _idSubscriber = idSubscriber;
+            _idFollowed = idFollowed;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Followship)) {
+                return false;
+            }
+            Followship followship = (Followship) o;
+            return _idSubscriber == followship._idSubscriber
+                    && _idFollowed == followship._idFollowed;
+        }
+
+        @Override
+        public int hashCode() {
+            long hash = _idSubscriber * 31 + _idFollowed;
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+
+    /**
+     * service request along with the future of its result
+     * 
+     * @param <V>
+     *            result type
+     */
+    protected static class PendingRequest<V> implements Future<V> {
+
+        protected final AbstractServiceRequest _request;
+
+        private final CountDownLatch _done = new CountDownLatch(1);
+
+        /**
+         * time in nanoseconds the request has been accepted
+         */
+        protected long _accepted;
+
+        /**
+         * pair of users if a followship request, <b>null</b> otherwise
+         */
+        protected Followship _followship;
+
+        /**
+         * followship requests superseded by this request, in order of
+         * acceptance, <b>null</b> if none
+         */
+        protected List<PendingRequest<?>> _superseded;
+
+        private V _result;
+
+        private Throwable _error;
+
+        public PendingRequest(
+                AbstractServiceRequest request) {
+            _request = request;
+        }
+
+        @SuppressWarnings("unchecked")
+        protected void complete(Object result) {
+            _result = (V) result;
+            _done.countDown();
+        }
+
+        protected void fail(Throwable error) {
+            _error = error;
+            _done.countDown();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return _done.getCount() == 0;
+        }
+
+        @Override
+        public V get() throws InterruptedException, ExecutionException {
+            _done.await();
+            return getResult();
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws InterruptedException,
+                ExecutionException, TimeoutException {
+            if (!_done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return getResult();
+        }
+
+        private V getResult() throws ExecutionException {
+            if (_error != null) {
+                throw new ExecutionException(_error);
+            }
+            return _result;
+        }
+    }
+}
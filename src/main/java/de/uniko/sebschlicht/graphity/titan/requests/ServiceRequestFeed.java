@@ -0,0 +1,47 @@
+package de.uniko.sebschlicht.graphity.titan.requests;
+
+import de.uniko.sebschlicht.graphity.titan.TitanGraphity;
+import de.uniko.sebschlicht.socialnet.StatusUpdateList;
+import de.uniko.sebschlicht.socialnet.requests.RequestType;
+
+public class ServiceRequestFeed extends AbstractServiceRequest {
+
+    protected final long _idReader;
+
+    protected final int _numStatusUpdates;
+
+    public ServiceRequestFeed(
+            long idReader,
+            int numStatusUpdates) {
+        super(RequestType.FEED);
+        _idReader = idReader;
+        _numStatusUpdates = numStatusUpdates;
+    }
+
+    @Override
+    public long getSubscriberId() {
+        return _idReader;
+    }
+
+    public int getNumStatusUpdates() {
+        return _numStatusUpdates;
+    }
+
+    @Override
+    protected StatusUpdateList execute(TitanGraphity graphity)
+            throws Exception {
+        try {
+            return graphity.readStatusUpdates(_idReader, _numStatusUpdates);
+        } finally {
+            // reads do not change the graph
+            graphity.rollback();
+        }
+    }
+
+    @Override
+    public String[] toStringArray() {
+        return new String[] {
+            String.valueOf(_idReader), String.valueOf(_numStatusUpdates)
+        };
+    }
+}
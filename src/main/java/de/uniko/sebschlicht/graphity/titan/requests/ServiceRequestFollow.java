@@ -2,17 +2,19 @@ package de.uniko.sebschlicht.graphity.titan.requests;
 
 import com.tinkerpop.blueprints.Vertex;
 
+import de.uniko.sebschlicht.graphity.titan.TitanGraphity;
 import de.uniko.sebschlicht.socialnet.requests.RequestType;
 
-public class ServiceRequestFollow extends AbstractServiceRequest {
+public class ServiceRequestFollow extends AbstractFollowshipRequest {
 
     protected Vertex _vSubscriber;
 
     protected Vertex _vFollowed;
 
-    protected ServiceRequestFollow(
-            RequestType type) {
-        super(RequestType.FOLLOW);
+    public ServiceRequestFollow(
+            long idSubscriber,
+            long idFollowed) {
+        super(RequestType.FOLLOW, idSubscriber, idFollowed);
     }
 
     public void setSubscriberVertex(Vertex vSubscriber) {
@@ -32,7 +34,7 @@ public class ServiceRequestFollow extends AbstractServiceRequest {
     }
 
     @Override
-    public String[] toStringArray() {
-        return null;
+    protected Boolean execute(TitanGraphity graphity) throws Exception {
+        return graphity.addFollowship(this, true);
     }
 }
@@ -0,0 +1,40 @@
+package de.uniko.sebschlicht.graphity.titan.requests;
+
+import de.uniko.sebschlicht.graphity.titan.TitanGraphity;
+import de.uniko.sebschlicht.socialnet.requests.RequestType;
+
+public class ServiceRequestPost extends AbstractServiceRequest {
+
+    protected final long _idAuthor;
+
+    protected final String _message;
+
+    public ServiceRequestPost(
+            long idAuthor,
+            String message) {
+        super(RequestType.POST);
+        _idAuthor = idAuthor;
+        _message = message;
+    }
+
+    @Override
+    public long getSubscriberId() {
+        return _idAuthor;
+    }
+
+    public String getMessage() {
+        return _message;
+    }
+
+    @Override
+    protected Long execute(TitanGraphity graphity) throws Exception {
+        return graphity.addStatusUpdate(_idAuthor, _message, true);
+    }
+
+    @Override
+    public String[] toStringArray() {
+        return new String[] {
+            String.valueOf(_idAuthor), _message
+        };
+    }
+}
@@ -0,0 +1,40 @@
+package de.uniko.sebschlicht.graphity.titan.requests;
+
+import com.tinkerpop.blueprints.Vertex;
+
+import de.uniko.sebschlicht.graphity.titan.TitanGraphity;
+import de.uniko.sebschlicht.socialnet.requests.RequestType;
+
+public class ServiceRequestUnfollow extends AbstractFollowshipRequest {
+
+    protected Vertex _vSubscriber;
+
+    protected Vertex _vFollowed;
+
+    public ServiceRequestUnfollow(
+            long idSubscriber,
+            long idFollowed) {
+        super(RequestType.UNFOLLOW, idSubscriber, idFollowed);
+    }
+
+    public void setSubscriberVertex(Vertex vSubscriber) {
+        _vSubscriber = vSubscriber;
+    }
+
+    public Vertex getSubscriberVertex() {
+        return _vSubscriber;
+    }
+
+    public void setFollowedVertex(Vertex vFollowed) {
+        _vFollowed = vFollowed;
+    }
+
+    public Vertex getFollowedVertex() {
+        return _vFollowed;
+    }
+
+    @Override
+    protected Boolean execute(TitanGraphity graphity) throws Exception {
+        return graphity.removeFollowship(this, true);
+    }
+}